@@ -0,0 +1,112 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.OptionalInt;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import configuration.ConnectionProvider;
+import configuration.DBConfiguration;
+import dao.AccountDao;
+import dao.CachingAccountDao;
+import dao.LedgerAccountDao;
+import dao.SqliteAccountDao;
+import model.Account;
+import model.Card;
+import model.TransferResult;
+import security.PinVerifier;
+
+/**
+ * Measures every {@link AccountDao} operation against databases of 10k, 1M and 10M accounts: on the database alone,
+ * with the account cache in front of it, and served from the in-memory balance ledger. The ledger writes its changes in
+ * the background, so its write operations only measure the in-memory part.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountDaoBenchmark {
+
+  @Param({"10000", "1000000", "10000000"})
+  private int rows;
+
+  @Param({"sqlite", "cache", "ledger"})
+  private String dao;
+
+  private final AtomicLong newAccounts = new AtomicLong();
+
+  private Path               database;
+  private ConnectionProvider connectionProvider;
+  private AccountDao         accountDao;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, SQLException {
+    database = BenchmarkDatabase.copy(rows);
+    connectionProvider = new DBConfiguration(database.toString()).getConnectionProvider();
+    accountDao = switch (dao) {
+      case "cache" -> {
+        PinVerifier pinVerifier = PinVerifier.defaults();
+        yield new CachingAccountDao(new SqliteAccountDao(connectionProvider, null, pinVerifier), pinVerifier, 100_000);
+      }
+      case "ledger" -> new LedgerAccountDao(new SqliteAccountDao(connectionProvider), 100);
+      default -> new SqliteAccountDao(connectionProvider);
+    };
+    newAccounts.set(rows);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    accountDao.close();
+    BenchmarkDatabase.delete(database);
+  }
+
+  @Benchmark
+  public Account get() {
+    return accountDao.get(randomCardNumber(), BenchmarkDatabase.PIN).orElseThrow();
+  }
+
+  @Benchmark
+  public boolean contains() {
+    return accountDao.contains(randomCardNumber());
+  }
+
+  @Benchmark
+  public OptionalInt update() {
+    return accountDao.update(randomCardNumber(), 1);
+  }
+
+  @Benchmark
+  public void save() {
+    String cardNumber = BenchmarkDatabase.cardNumber(newAccounts.getAndIncrement());
+    accountDao.save(new Account(new Card(cardNumber, BenchmarkDatabase.PIN), 0));
+  }
+
+  @Benchmark
+  public TransferResult transfer() {
+    return accountDao.transfer(randomCardNumber(), randomCardNumber(), 1);
+  }
+
+  private String randomCardNumber() {
+    return BenchmarkDatabase.cardNumber(ThreadLocalRandom.current().nextInt(rows));
+  }
+
+}
@@ -0,0 +1,85 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import configuration.ConnectionProvider;
+import configuration.DBConfiguration;
+import configuration.PooledConnection;
+import dao.AccountDao;
+import dao.SqliteAccountDao;
+import model.Account;
+
+/**
+ * Measures account lookups against databases of growing size. <br/>
+ * With the index on account number the average time should stay flat as {@code rows} grows, without it the lookups
+ * degrade linearly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountLookupBenchmark {
+
+  @Param({"10000", "100000", "1000000"})
+  private int rows;
+
+  @Param({"true", "false"})
+  private boolean indexed;
+
+  private Path               database;
+  private ConnectionProvider connectionProvider;
+  private AccountDao         accountDao;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, SQLException {
+    database = BenchmarkDatabase.copy(rows);
+    connectionProvider = new DBConfiguration(database.toString()).getConnectionProvider();
+    accountDao = new SqliteAccountDao(connectionProvider);
+
+    if (!indexed) {
+      try (PooledConnection connection = connectionProvider.writer();
+           Statement statement = connection.getConnection().createStatement()) {
+        statement.executeUpdate("DROP INDEX account_number_idx");
+      }
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    connectionProvider.close();
+    BenchmarkDatabase.delete(database);
+  }
+
+  @Benchmark
+  public Account get() {
+    String cardNumber = BenchmarkDatabase.cardNumber(ThreadLocalRandom.current().nextInt(rows));
+    return accountDao.get(cardNumber, BenchmarkDatabase.PIN).orElseThrow();
+  }
+
+  @Benchmark
+  public boolean contains() {
+    return accountDao.contains(BenchmarkDatabase.cardNumber(ThreadLocalRandom.current().nextInt(rows)));
+  }
+
+}
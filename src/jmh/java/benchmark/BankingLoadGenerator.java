@@ -0,0 +1,162 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import configuration.ApplicationArguments;
+
+/**
+ * Opens many concurrent sessions to a running {@code BankingServer} and measures the throughput of the menu
+ * operations. <br/>
+ * Every session registers two accounts and logs into the first one. Once all sessions are logged in, they repeatedly
+ * add income, transfer to the second account and check the balance until the time is up, then exit. Start the server
+ * with {@code -port} and run the generator with:
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Dexec.args="-classpath %classpath benchmark.BankingLoadGenerator -port 8080 -sessions 2000 -duration 30"
+ * </pre>
+ */
+public class BankingLoadGenerator {
+
+  private static final long SESSION_STACK_SIZE = 256 * 1024;
+
+  private final String host;
+  private final int    port;
+  private final int    sessions;
+  private final long   durationNanos;
+
+  private final CountDownLatch loggedIn;
+  private final CountDownLatch start      = new CountDownLatch(1);
+  private final LongAdder      operations = new LongAdder();
+  private final LongAdder      latency    = new LongAdder();
+  private final AtomicInteger  failures   = new AtomicInteger();
+
+  private volatile long deadline;
+
+  private BankingLoadGenerator(String host, int port, int sessions, int durationSeconds) {
+    this.host = host;
+    this.port = port;
+    this.sessions = sessions;
+    this.durationNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+    this.loggedIn = new CountDownLatch(sessions);
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    ApplicationArguments arguments = new ApplicationArguments(args);
+
+    new BankingLoadGenerator(arguments.get("-host", "localhost"),
+                             arguments.getInt("-port", 8080),
+                             arguments.getInt("-sessions", 1_000),
+                             arguments.getInt("-duration", 30)).run();
+  }
+
+  private void run() throws InterruptedException {
+    List<Thread> threads = new ArrayList<>(sessions);
+    long connecting = System.nanoTime();
+
+    for (int i = 0; i < sessions; i++) {
+      Thread thread = new Thread(null, this::session, "load-" + i, SESSION_STACK_SIZE);
+      thread.start();
+      threads.add(thread);
+    }
+
+    loggedIn.await();
+    System.out.printf("%d sessions logged in after %d ms, %d failed%n", sessions - failures.get(),
+                      TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connecting), failures.get());
+
+    long started = System.nanoTime();
+    deadline = started + durationNanos;
+    start.countDown();
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    double seconds = (System.nanoTime() - started) / 1e9;
+    long count = operations.sum();
+    System.out.printf("%d operations in %.1f s: %.0f ops/s, average latency %.2f ms, %d sessions failed%n", count,
+                      seconds, count / seconds, count == 0 ? 0 : latency.sum() / 1e6 / count, failures.get());
+  }
+
+  private void session() {
+    boolean counted = false;
+
+    try (Socket socket = new Socket(host, port);
+         BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+         PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8)) {
+      socket.setTcpNoDelay(true);
+      readMenu(in);
+
+      String[] sender = register(in, out);
+      String[] recipient = register(in, out);
+      request(in, out, "2\n" + sender[0] + "\n" + sender[1]);
+
+      counted = true;
+      loggedIn.countDown();
+      start.await();
+
+      while (System.nanoTime() < deadline) {
+        measure(in, out, "2\n10");
+        measure(in, out, "3\n" + recipient[0] + "\n5");
+        measure(in, out, "1");
+      }
+
+      out.println("0");
+    } catch (IOException e) {
+      failures.incrementAndGet();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      if (!counted) {
+        loggedIn.countDown();
+      }
+    }
+  }
+
+  /**
+   * It creates an account and returns its card number and PIN.
+   */
+  private static String[] register(BufferedReader in, PrintWriter out) throws IOException {
+    List<String> lines = request(in, out, "1");
+    return new String[] {lines.get(lines.indexOf("Your card number:") + 1), lines.get(lines.indexOf("Your card PIN:") + 1)};
+  }
+
+  private void measure(BufferedReader in, PrintWriter out, String input) throws IOException {
+    long started = System.nanoTime();
+    request(in, out, input);
+    latency.add(System.nanoTime() - started);
+    operations.increment();
+  }
+
+  /**
+   * It sends the input and reads the response up to the end of the next menu.
+   */
+  private static List<String> request(BufferedReader in, PrintWriter out, String input) throws IOException {
+    out.println(input);
+    return readMenu(in);
+  }
+
+  private static List<String> readMenu(BufferedReader in) throws IOException {
+    List<String> lines = new ArrayList<>();
+    String line;
+
+    while ((line = in.readLine()) != null) {
+      if (line.equals("0. Exit")) {
+        return lines;
+      }
+      lines.add(line);
+    }
+    throw new IOException("The server closed the session!");
+  }
+
+}
@@ -0,0 +1,79 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import configuration.ConnectionProvider;
+import configuration.DBConfiguration;
+import dao.AccountDao;
+import dao.SqliteAccountDao;
+import generator.CardGenerator;
+import model.Account;
+import model.Card;
+import model.TransferResult;
+
+/**
+ * Measures the end-to-end session of a new customer: register an account, log into it, add income and transfer money to
+ * an existing account, making the same calls the banking system menu makes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BankingScenarioBenchmark {
+
+  @Param({"10000", "1000000"})
+  private int rows;
+
+  private final CardGenerator cardGenerator = new CardGenerator(new Random());
+
+  private Path               database;
+  private ConnectionProvider connectionProvider;
+  private AccountDao         accountDao;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, SQLException {
+    database = BenchmarkDatabase.copy(rows);
+    connectionProvider = new DBConfiguration(database.toString()).getConnectionProvider();
+    accountDao = new SqliteAccountDao(connectionProvider);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    connectionProvider.close();
+    BenchmarkDatabase.delete(database);
+  }
+
+  @Benchmark
+  public TransferResult registerLogInAndTransfer() {
+    Card card = cardGenerator.generateCredentials();
+    accountDao.save(new Account(card, 0));
+
+    Account account = accountDao.get(card.number(), card.pin()).orElseThrow();
+    accountDao.update(account.getCard().number(), 100);
+
+    String recipient = BenchmarkDatabase.cardNumber(ThreadLocalRandom.current().nextInt(rows));
+    return accountDao.transfer(account.getCard().number(), recipient, 50);
+  }
+
+}
@@ -0,0 +1,97 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import configuration.ConnectionProvider;
+import configuration.DBConfiguration;
+import configuration.PooledConnection;
+import dao.AccountDao;
+import dao.SqliteAccountDao;
+import generator.CardGenerator;
+import model.Account;
+import model.Card;
+
+/**
+ * Seeded databases shared by the benchmarks. <br/>
+ * Seeding millions of accounts takes a while, so every size is seeded once into {@code target/benchmark-data} and each
+ * trial works on its own copy of it.
+ */
+final class BenchmarkDatabase {
+
+  static final String PIN             = "1234";
+  static final int    INITIAL_BALANCE = 1_000_000;
+
+  private static final Path          DIRECTORY      = Path.of("target", "benchmark-data");
+  private static final CardGenerator CARD_GENERATOR = new CardGenerator(new Random());
+
+  private BenchmarkDatabase() {
+  }
+
+  /**
+   * It returns a fresh copy of a database holding {@code rows} accounts, numbered by {@link #cardNumber(long)}, each with
+   * {@link #INITIAL_BALANCE} on it.
+   */
+  static Path copy(int rows) throws IOException, SQLException {
+    Files.createDirectories(DIRECTORY);
+    Path template = DIRECTORY.resolve("accounts-" + rows + ".s3db");
+
+    if (Files.notExists(template)) {
+      Path seeding = DIRECTORY.resolve("seeding-" + rows + ".s3db");
+      Files.deleteIfExists(seeding);
+      seed(seeding, rows);
+      Files.move(seeding, template, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    Path copy = Files.createTempFile(DIRECTORY, "accounts-" + rows + "-", ".s3db");
+    Files.copy(template, copy, StandardCopyOption.REPLACE_EXISTING);
+    return copy;
+  }
+
+  /**
+   * It deletes the copy together with its WAL files.
+   */
+  static void delete(Path database) throws IOException {
+    Files.deleteIfExists(database);
+    Files.deleteIfExists(Path.of(database + "-wal"));
+    Files.deleteIfExists(Path.of(database + "-shm"));
+  }
+
+  /**
+   * It returns the valid card number of the account with the given index.
+   */
+  static String cardNumber(long index) {
+    long payload = 400_000_000_000_000L + index;
+    return Long.toString(payload * 10 + CARD_GENERATOR.luhnChecksum(payload));
+  }
+
+  private static void seed(Path database, int rows) throws SQLException {
+    ConnectionProvider connectionProvider = new DBConfiguration(database.toString()).getConnectionProvider();
+    AccountDao accountDao = new SqliteAccountDao(connectionProvider);
+    List<Account> chunk = new ArrayList<>();
+
+    for (int i = 0; i < rows; i++) {
+      chunk.add(new Account(new Card(cardNumber(i), PIN), 0));
+
+      if (chunk.size() == 50_000 || i == rows - 1) {
+        accountDao.saveAll(chunk);
+        chunk.clear();
+      }
+    }
+
+    try (PooledConnection connection = connectionProvider.writer();
+         Statement statement = connection.getConnection().createStatement()) {
+      statement.executeUpdate("UPDATE account SET balance = " + INITIAL_BALANCE);
+      statement.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+    }
+    connectionProvider.close();
+  }
+
+}
@@ -0,0 +1,88 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import configuration.ConnectionProvider;
+import configuration.DBConfiguration;
+import dao.AccountDao;
+import dao.BloomFilterAccountDao;
+import dao.BloomFilterStats;
+import dao.SqliteAccountDao;
+
+/**
+ * Measures the recipient check of issued and never issued card numbers, with and without the card number filter. <br/>
+ * The filter statistics, including the time it took to load the card numbers, are printed after every trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CardFilterBenchmark {
+
+  @Param({"100000", "1000000"})
+  private int rows;
+
+  @Param({"0", "0.01"})
+  private double cardFilterFpp;
+
+  private Path               database;
+  private ConnectionProvider connectionProvider;
+  private AccountDao         accountDao;
+  private long               loadMillis;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, SQLException {
+    database = BenchmarkDatabase.copy(rows);
+    connectionProvider = new DBConfiguration(database.toString()).getConnectionProvider();
+    accountDao = new SqliteAccountDao(connectionProvider);
+
+    if (cardFilterFpp > 0) {
+      long start = System.nanoTime();
+      accountDao = new BloomFilterAccountDao(accountDao, cardFilterFpp);
+      loadMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    if (accountDao instanceof BloomFilterAccountDao bloomFilterAccountDao) {
+      BloomFilterStats stats = bloomFilterAccountDao.getStats();
+      System.out.printf("%nLoaded %d cards in %d ms into %d KiB, false-positive rate %.3f%% (expected %.3f%%)%n",
+                        stats.entries(), loadMillis, stats.memoryBytes() / 1024, stats.observedFalsePositiveRate() * 100,
+                        stats.expectedFalsePositiveRate() * 100);
+    }
+    connectionProvider.close();
+    BenchmarkDatabase.delete(database);
+  }
+
+  @Benchmark
+  public boolean containsIssued() {
+    return accountDao.contains(BenchmarkDatabase.cardNumber(ThreadLocalRandom.current().nextInt(rows)));
+  }
+
+  @Benchmark
+  public boolean containsMissing() {
+    return accountDao.contains(BenchmarkDatabase.cardNumber(rows + ThreadLocalRandom.current().nextInt(rows)));
+  }
+
+}
@@ -0,0 +1,47 @@
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import generator.CardGenerator;
+import model.Card;
+
+/**
+ * Measures the generation of card numbers and PINs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CardGeneratorBenchmark {
+
+  private final CardGenerator cardGenerator = new CardGenerator(new Random());
+
+  @Benchmark
+  public String generateCard() {
+    return cardGenerator.generateCard();
+  }
+
+  @Benchmark
+  public String generatePIN() {
+    return cardGenerator.generatePIN();
+  }
+
+  @Benchmark
+  public Card generateCredentials() {
+    return cardGenerator.generateCredentials();
+  }
+
+}
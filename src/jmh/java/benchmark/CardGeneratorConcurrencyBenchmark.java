@@ -0,0 +1,57 @@
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import generator.CardGenerator;
+
+/**
+ * Measures card generation from all available cores at once. <br/>
+ * Compare the results with {@code -t 1} to see how every generator scales: the shared {@link Random} serializes the
+ * threads on its seed, the per-thread generators should scale with the number of cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(Threads.MAX)
+public class CardGeneratorConcurrencyBenchmark {
+
+  private final CardGenerator sharedRandom = new CardGenerator(new Random());
+  private final CardGenerator threadLocal  = CardGenerator.concurrent();
+  private final CardGenerator sequence     = CardGenerator.concurrent(CardGenerator.identifierSequence(42, 0));
+
+  @Benchmark
+  public long sharedRandom() {
+    return sharedRandom.generateCardNumber();
+  }
+
+  @Benchmark
+  public long threadLocalRandom() {
+    return threadLocal.generateCardNumber();
+  }
+
+  @Benchmark
+  public long identifierSequence() {
+    return sequence.generateCardNumber();
+  }
+
+  @Benchmark
+  public String threadLocalRandomString() {
+    return threadLocal.generateCard();
+  }
+
+}
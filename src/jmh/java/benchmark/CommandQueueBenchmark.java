@@ -0,0 +1,88 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.OptionalInt;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sqlite.SQLiteConfig.SynchronousMode;
+
+import configuration.DBConfiguration;
+import configuration.DatabaseSettings;
+import dao.AccountDao;
+import dao.CommandQueueAccountDao;
+import dao.SqliteAccountDao;
+import model.TransferResult;
+
+/**
+ * Measures the write throughput of concurrent sessions writing the database themselves ({@code direct}) and through the
+ * single writer thread of the command queue ({@code queue}), with SQLite syncing on checkpoints ({@code NORMAL}) or on
+ * every commit ({@code FULL}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class CommandQueueBenchmark {
+
+  private static final int ROWS = 10_000;
+
+  @Param({"direct", "queue"})
+  private String writer;
+
+  @Param({"NORMAL", "FULL"})
+  private SynchronousMode synchronous;
+
+  private Path       database;
+  private AccountDao accountDao;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, SQLException {
+    database = BenchmarkDatabase.copy(ROWS);
+
+    DatabaseSettings settings = DatabaseSettings.builder().synchronous(synchronous).build();
+    SqliteAccountDao sqliteAccountDao = new SqliteAccountDao(new DBConfiguration(database.toString(), settings)
+                                                                 .getConnectionProvider());
+    accountDao = "queue".equals(writer)
+                 ? new CommandQueueAccountDao(sqliteAccountDao, 4_096, 1_024)
+                 : sqliteAccountDao;
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    accountDao.close();
+    BenchmarkDatabase.delete(database);
+  }
+
+  @Benchmark
+  public OptionalInt update() {
+    return accountDao.update(BenchmarkDatabase.cardNumber(ThreadLocalRandom.current().nextInt(ROWS)), 1);
+  }
+
+  @Benchmark
+  public TransferResult transfer() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    return accountDao.transfer(BenchmarkDatabase.cardNumber(random.nextInt(ROWS)),
+                               BenchmarkDatabase.cardNumber(random.nextInt(ROWS)), 1);
+  }
+
+}
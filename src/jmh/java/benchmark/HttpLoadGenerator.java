@@ -0,0 +1,207 @@
+package benchmark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import configuration.ApplicationArguments;
+import metrics.LatencyHistogram;
+
+/**
+ * Sends requests to a running HTTP API at fixed rates and reports the latency percentiles of every rate. <br/>
+ * The load is open-loop: requests are scheduled at the rate whether or not the previous ones were answered, and are
+ * sent over a fixed number of keep-alive connections. Every latency is measured from the time the request was due, so
+ * a stalled server shows up in the percentiles instead of slowing the load down; requests that don't fit in the queue
+ * are counted as dropped. 80% of the requests read the balance, 10% deposit and 10% transfer between the test
+ * accounts; the first rate is run for {@code -warmup} seconds before measuring. Start the application with
+ * {@code -httpPort} and run the generator with:
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Dexec.args="-classpath %classpath benchmark.HttpLoadGenerator -port 8080 -rates 1000,10000,50000 -duration 10 -connections 64"
+ * </pre>
+ */
+public class HttpLoadGenerator {
+
+  private static final Pattern FIELD      = Pattern.compile("\"(\\w+)\":\"([^\"]*)\"");
+  private static final int     MAX_QUEUED = 100_000;
+  private static final long    STOP       = -1;
+
+  private final HttpClient   httpClient = HttpClient.newHttpClient();
+  private final String       baseUri;
+  private final int          connections;
+  private final List<String> cardNumbers = new ArrayList<>();
+  private final List<String> tokens      = new ArrayList<>();
+
+  private HttpLoadGenerator(String host, int port, int connections) {
+    this.baseUri = "http://" + host + ":" + port;
+    this.connections = connections;
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    ApplicationArguments arguments = new ApplicationArguments(args);
+    HttpLoadGenerator generator = new HttpLoadGenerator(arguments.get("-host", "localhost"), arguments.getInt("-port", 8080),
+                                                            arguments.getInt("-connections", 64));
+    int duration = arguments.getInt("-duration", 10);
+
+    String[] rates = arguments.get("-rates", "1000,10000,50000").split(",");
+
+    generator.createAccounts(arguments.getInt("-accounts", 100));
+    generator.run(Integer.parseInt(rates[0].trim()), arguments.getInt("-warmup", 5), false);
+
+    System.out.println("     rate       sent  completed   errors  dropped   achieved    p50 ms    p99 ms  p99.9 ms    max ms");
+
+    for (String rate : rates) {
+      generator.run(Integer.parseInt(rate.trim()), duration, true);
+    }
+  }
+
+  private void createAccounts(int count) throws IOException, InterruptedException {
+    for (int i = 0; i < count; i++) {
+      String account = send(request("/accounts", null).POST(HttpRequest.BodyPublishers.noBody()));
+      String number = field(account, "number");
+      String token = field(send(form("/login", null, "number=" + number + "&pin=" + field(account, "pin"))), "token");
+      send(form("/deposit", token, "amount=1000000000"));
+
+      cardNumbers.add(number);
+      tokens.add(token);
+    }
+  }
+
+  /**
+   * It sends the requests at the rate for the duration and prints the latencies, unless it is the warmup.
+   */
+  private void run(int rate, int durationSeconds, boolean report) throws InterruptedException {
+    LatencyHistogram histogram = new LatencyHistogram();
+    LongAdder errors = new LongAdder();
+    BlockingQueue<Long> queue = new ArrayBlockingQueue<>(MAX_QUEUED);
+    long sent = 0;
+    long dropped = 0;
+
+    long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+    long start = System.nanoTime();
+    long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+    List<Thread> workers = new ArrayList<>(connections);
+
+    for (int i = 0; i < connections; i++) {
+      Thread worker = new Thread(() -> send(queue, start, interval, histogram, errors), "http-load-" + i);
+      worker.start();
+      workers.add(worker);
+    }
+
+    for (long i = 0; start + i * interval < end; i++) {
+      long wait = start + i * interval - System.nanoTime();
+
+      if (wait > 0) {
+        LockSupport.parkNanos(wait);
+      }
+
+      if (queue.offer(i)) {
+        sent++;
+      } else {
+        dropped++;
+      }
+    }
+
+    for (int i = 0; i < connections; i++) {
+      queue.put(STOP);
+    }
+
+    for (Thread worker : workers) {
+      worker.join();
+    }
+
+    if (!report) {
+      return;
+    }
+
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    System.out.printf("%9d %10d %10d %8d %8d %10.0f %9.2f %9.2f %9.2f %9.2f%n", rate, sent, histogram.getCount(),
+                      errors.sum(), dropped, histogram.getCount() / seconds, histogram.percentile(0.5) / 1e6,
+                      histogram.percentile(0.99) / 1e6, histogram.percentile(0.999) / 1e6, histogram.getMax() / 1e6);
+  }
+
+  /**
+   * It sends the scheduled requests one after another over one connection until it is stopped.
+   */
+  private void send(BlockingQueue<Long> queue, long start, long interval, LatencyHistogram histogram, LongAdder errors) {
+    try {
+      for (long i = queue.take(); i != STOP; i = queue.take()) {
+        try {
+          HttpResponse<Void> response = httpClient.send(request(i).build(), HttpResponse.BodyHandlers.discarding());
+
+          if (response.statusCode() >= 400) {
+            errors.increment();
+          }
+        } catch (IOException e) {
+          errors.increment();
+        }
+        histogram.record(System.nanoTime() - (start + i * interval));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * It builds the i-th request of the mix.
+   */
+  private HttpRequest.Builder request(long i) {
+    int account = (int) (i % tokens.size());
+    String token = tokens.get(account);
+
+    return switch ((int) (i % 10)) {
+      case 8 -> form("/deposit", token, "amount=1");
+      case 9 -> form("/transfer", token, "to=" + cardNumbers.get((account + 1) % cardNumbers.size()) + "&amount=1");
+      default -> request("/balance", token).GET();
+    };
+  }
+
+  private HttpRequest.Builder form(String path, String token, String form) {
+    return request(path, token)
+        .header("Content-Type", "application/x-www-form-urlencoded")
+        .POST(HttpRequest.BodyPublishers.ofString(form));
+  }
+
+  private HttpRequest.Builder request(String path, String token) {
+    HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUri + path));
+
+    if (token != null) {
+      request.header("Authorization", "Bearer " + token);
+    }
+    return request;
+  }
+
+  private String send(HttpRequest.Builder request) throws IOException, InterruptedException {
+    HttpResponse<String> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+
+    if (response.statusCode() >= 400) {
+      throw new IOException("The server answered " + response.statusCode() + ": " + response.body());
+    }
+    return response.body();
+  }
+
+  private static String field(String json, String name) throws IOException {
+    Matcher matcher = FIELD.matcher(json);
+
+    while (matcher.find()) {
+      if (matcher.group(1).equals(name)) {
+        return matcher.group(2);
+      }
+    }
+    throw new IOException("No " + name + " in " + json);
+  }
+
+}
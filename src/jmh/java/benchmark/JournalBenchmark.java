@@ -0,0 +1,101 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.OptionalInt;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sqlite.SQLiteConfig.SynchronousMode;
+
+import configuration.DBConfiguration;
+import configuration.DatabaseSettings;
+import dao.SqliteAccountDao;
+import journal.TransactionJournal;
+import model.TransferResult;
+
+/**
+ * Measures the write throughput of concurrent sessions for the ways of making a change durable: SQLite syncing on
+ * checkpoints ({@code normal}) or on every commit ({@code full}), and the transaction journal with group commit in front
+ * of an unsynced database ({@code journal}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class JournalBenchmark {
+
+  private static final int ROWS = 10_000;
+
+  @Param({"normal", "full", "journal"})
+  private String durability;
+
+  private Path             database;
+  private Path             journalDirectory;
+  private SqliteAccountDao accountDao;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, SQLException {
+    database = BenchmarkDatabase.copy(ROWS);
+    journalDirectory = Files.createTempDirectory("journal");
+
+    SynchronousMode synchronous = switch (durability) {
+      case "full" -> SynchronousMode.FULL;
+      case "journal" -> SynchronousMode.OFF;
+      default -> SynchronousMode.NORMAL;
+    };
+    DatabaseSettings settings = DatabaseSettings.builder().synchronous(synchronous).build();
+    TransactionJournal journal = "journal".equals(durability)
+                                 ? new TransactionJournal(journalDirectory, 64 * 1024 * 1024)
+                                 : null;
+
+    accountDao = new SqliteAccountDao(new DBConfiguration(database.toString(), settings).getConnectionProvider(),
+                                      journal);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    accountDao.close();
+    BenchmarkDatabase.delete(database);
+
+    try (Stream<Path> files = Files.walk(journalDirectory)) {
+      for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  @Benchmark
+  public OptionalInt update() {
+    return accountDao.update(BenchmarkDatabase.cardNumber(ThreadLocalRandom.current().nextInt(ROWS)), 1);
+  }
+
+  @Benchmark
+  public TransferResult transfer() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    return accountDao.transfer(BenchmarkDatabase.cardNumber(random.nextInt(ROWS)),
+                               BenchmarkDatabase.cardNumber(random.nextInt(ROWS)), 1);
+  }
+
+}
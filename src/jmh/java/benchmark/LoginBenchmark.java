@@ -0,0 +1,94 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import configuration.DBConfiguration;
+import dao.SqliteAccountDao;
+import model.Account;
+import security.PinHasher;
+import security.PinVerifier;
+
+/**
+ * Measures the logins per second of concurrent sessions with the PINs stored in plain text ({@code plain}) or hashed
+ * ({@code hashed}), with and without the verification cache. The sessions log into the same thousand returning cards,
+ * whose logins are cached in the setup when the cache is on. A login with a wrong PIN is never cached, so
+ * {@code wrongPin} shows the cost of guessing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class LoginBenchmark {
+
+  private static final int ROWS        = 10_000;
+  private static final int LOGIN_CARDS = 1_000;
+
+  @Param({"plain", "hashed"})
+  private String pins;
+
+  @Param({"0", "100000"})
+  private int pinCacheSize;
+
+  private Path             database;
+  private SqliteAccountDao accountDao;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, SQLException {
+    database = BenchmarkDatabase.copy(ROWS);
+    accountDao = new SqliteAccountDao(new DBConfiguration(database.toString()).getConnectionProvider(), null,
+                                      new PinVerifier(new PinHasher(PinHasher.DEFAULT_ITERATIONS), pinCacheSize,
+                                                      Runtime.getRuntime().availableProcessors()));
+
+    if (pins.equals("hashed")) {
+      accountDao.migratePins();
+    }
+
+    for (int i = 0; i < LOGIN_CARDS && pinCacheSize > 0; i++) {
+      accountDao.get(BenchmarkDatabase.cardNumber(i), BenchmarkDatabase.PIN).orElseThrow();
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    accountDao.close();
+    BenchmarkDatabase.delete(database);
+  }
+
+  @Benchmark
+  public Account login() {
+    return accountDao.get(randomCardNumber(), BenchmarkDatabase.PIN).orElseThrow();
+  }
+
+  @Benchmark
+  public Optional<Account> wrongPin() {
+    return accountDao.get(randomCardNumber(), "0000");
+  }
+
+  private static String randomCardNumber() {
+    return BenchmarkDatabase.cardNumber(ThreadLocalRandom.current().nextInt(LOGIN_CARDS));
+  }
+
+}
@@ -0,0 +1,102 @@
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import generator.CardGenerator;
+
+/**
+ * Compares the Luhn checksum and card number validation with the former string based implementation. <br/>
+ * Run it with {@code -prof gc} to see the allocation rate next to the throughput.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LuhnBenchmark {
+
+  private static final int BIN = 400_000;
+
+  private final CardGenerator cardGenerator = new CardGenerator(new Random());
+
+  private int    accountIdentifier;
+  private String cardNumber;
+  private long   cardNumberAsLong;
+  private char[] cardNumberAsChars;
+
+  @Setup
+  public void setUp() {
+    accountIdentifier = 493_832_089;
+    cardNumber = "4000004938320896";
+    cardNumberAsLong = Long.parseLong(cardNumber);
+    cardNumberAsChars = cardNumber.toCharArray();
+  }
+
+  @Benchmark
+  public int legacyLuhnAlgorithm() {
+    return legacyLuhnAlgorithm(BIN, accountIdentifier);
+  }
+
+  @Benchmark
+  public int luhnAlgorithm() {
+    return cardGenerator.luhnAlgorithm(BIN, accountIdentifier);
+  }
+
+  @Benchmark
+  public boolean legacyIsValid() {
+    int bin = Integer.parseInt(cardNumber.substring(0, 6));
+    int identifier = Integer.parseInt(cardNumber.substring(6, 15));
+    int checkSum = Integer.parseInt(cardNumber.substring(15));
+    return legacyLuhnAlgorithm(bin, identifier) == checkSum;
+  }
+
+  @Benchmark
+  public boolean isValidString() {
+    return cardGenerator.isValid(cardNumber);
+  }
+
+  @Benchmark
+  public boolean isValidLong() {
+    return cardGenerator.isValid(cardNumberAsLong);
+  }
+
+  @Benchmark
+  public boolean isValidChars() {
+    return cardGenerator.isValid(cardNumberAsChars);
+  }
+
+  /**
+   * The implementation the checksum had before it was made allocation-free.
+   */
+  private static int legacyLuhnAlgorithm(int bin, int accountIdentifier) {
+    String cardNumbersWithoutChecksum = String.format("%d%d", bin, accountIdentifier);
+    int sum = 0;
+
+    for (int i = 0; i < cardNumbersWithoutChecksum.length(); i++) {
+      int digit = Integer.parseInt(cardNumbersWithoutChecksum.substring(i, i + 1));
+
+      if (i % 2 == 0) {
+        digit *= 2;
+      }
+
+      digit = (digit % 10) + (digit / 10);
+      sum += digit;
+    }
+
+    return (10 - (sum % 10)) % 10;
+  }
+
+}
@@ -0,0 +1,101 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import configuration.DBConfiguration;
+import dao.AccountDao;
+import dao.LedgerAccountDao;
+import dao.MeteredAccountDao;
+import dao.SqliteAccountDao;
+import metrics.MetricsRegistry;
+import metrics.Timer;
+import model.Account;
+
+/**
+ * Measures the cost of the metrics: recording into a timer alone, and the operations of the in-memory balance ledger,
+ * the fastest data access object, with and without {@link MeteredAccountDao} in front of it. Every thread records into
+ * the same timers, as the sessions of the server do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class MetricsBenchmark {
+
+  private static final int ROWS = 10_000;
+
+  @Param({"false", "true"})
+  private boolean metered;
+
+  private Path       database;
+  private AccountDao accountDao;
+  private Timer      timer;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, SQLException {
+    database = BenchmarkDatabase.copy(ROWS);
+    accountDao = new LedgerAccountDao(new SqliteAccountDao(new DBConfiguration(database.toString())
+                                                               .getConnectionProvider()), 100);
+    MetricsRegistry registry = new MetricsRegistry();
+
+    if (metered) {
+      accountDao = new MeteredAccountDao(accountDao, registry);
+    }
+    timer = registry.timer("benchmark");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    accountDao.close();
+    BenchmarkDatabase.delete(database);
+  }
+
+  @Benchmark
+  public void timerRecord() {
+    timer.recordSince(System.nanoTime());
+  }
+
+  @Benchmark
+  public Optional<Account> get() {
+    return accountDao.get(randomCardNumber(), BenchmarkDatabase.PIN);
+  }
+
+  @Benchmark
+  public boolean contains() {
+    return accountDao.contains(randomCardNumber());
+  }
+
+  @Benchmark
+  public OptionalInt update() {
+    return accountDao.update(randomCardNumber(), 1);
+  }
+
+  private static String randomCardNumber() {
+    return BenchmarkDatabase.cardNumber(ThreadLocalRandom.current().nextInt(ROWS));
+  }
+
+}
@@ -0,0 +1,99 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.OptionalInt;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import configuration.DBConfiguration;
+import dao.AccountDao;
+import dao.OperationKeys;
+import dao.SqliteAccountDao;
+import model.TransferResult;
+import security.PinVerifier;
+
+/**
+ * Measures what the operation keys add to a deposit and a transfer: without a key ({@code none}), with a new key every
+ * call, which is looked up and recorded in the transaction ({@code unique}), and retried with a key that was applied
+ * already, which is answered from memory ({@code retry}) or from the database when the memory holds no keys
+ * ({@code retryFromDatabase}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OperationKeyBenchmark {
+
+  private static final int ROWS         = 10_000;
+  private static final int RETRIED_KEYS = 1_000;
+
+  @Param({"none", "unique", "retry", "retryFromDatabase"})
+  private String key;
+
+  private final AtomicLong operations = new AtomicLong();
+
+  private Path       database;
+  private AccountDao accountDao;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, SQLException {
+    database = BenchmarkDatabase.copy(ROWS);
+    OperationKeys operationKeys = new OperationKeys(OperationKeys.DEFAULT_TTL_MILLIS,
+                                                    "retryFromDatabase".equals(key) ? 0 : 100_000);
+    accountDao = new SqliteAccountDao(new DBConfiguration(database.toString()).getConnectionProvider(), null,
+                                      PinVerifier.defaults(), operationKeys);
+
+    for (int i = 0; i < RETRIED_KEYS; i++) {
+      accountDao.update(BenchmarkDatabase.cardNumber(i), 1, "retried-" + i);
+      accountDao.transfer(BenchmarkDatabase.cardNumber(i), BenchmarkDatabase.cardNumber(i + 1), 1,
+                          "retried-transfer-" + i);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    accountDao.close();
+    BenchmarkDatabase.delete(database);
+  }
+
+  @Benchmark
+  public OptionalInt update() {
+    int retried = ThreadLocalRandom.current().nextInt(RETRIED_KEYS);
+    return accountDao.update(BenchmarkDatabase.cardNumber(retried), 1, operationKey("retried-" + retried));
+  }
+
+  @Benchmark
+  public TransferResult transfer() {
+    int retried = ThreadLocalRandom.current().nextInt(RETRIED_KEYS);
+    return accountDao.transfer(BenchmarkDatabase.cardNumber(retried), BenchmarkDatabase.cardNumber(retried + 1), 1,
+                               operationKey("retried-transfer-" + retried));
+  }
+
+  private String operationKey(String retried) {
+    return switch (key) {
+      case "unique" -> "unique-" + operations.incrementAndGet();
+      case "none" -> null;
+      default -> retried;
+    };
+  }
+
+}
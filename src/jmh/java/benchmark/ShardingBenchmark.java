@@ -0,0 +1,120 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import configuration.ConnectionProvider;
+import configuration.DBConfiguration;
+import configuration.PooledConnection;
+import dao.ShardedAccountDao;
+import dao.SqliteAccountDao;
+import model.TransferResult;
+
+/**
+ * Measures the write throughput of concurrent sessions with the accounts spread over 1, 2 and 4 database files. Every
+ * shard starts as a copy of the same database, with the accounts of the other shards deleted. A transfer picks both
+ * cards at random, so with more shards most of them are made between shards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class ShardingBenchmark {
+
+  private static final int ROWS = 10_000;
+
+  @Param({"1", "2", "4"})
+  private int shards;
+
+  private List<Path>        databases;
+  private ShardedAccountDao accountDao;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, SQLException {
+    databases = new ArrayList<>(shards);
+    List<SqliteAccountDao> daos = new ArrayList<>(shards);
+
+    for (int shard = 0; shard < shards; shard++) {
+      Path database = BenchmarkDatabase.copy(ROWS);
+      ConnectionProvider connectionProvider = new DBConfiguration(database.toString()).getConnectionProvider();
+      keepShard(connectionProvider, shard);
+      databases.add(database);
+      daos.add(new SqliteAccountDao(connectionProvider));
+    }
+
+    accountDao = new ShardedAccountDao(daos);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    accountDao.close();
+
+    for (Path database : databases) {
+      BenchmarkDatabase.delete(database);
+    }
+  }
+
+  @Benchmark
+  public OptionalInt update() {
+    return accountDao.update(BenchmarkDatabase.cardNumber(ThreadLocalRandom.current().nextInt(ROWS)), 1);
+  }
+
+  @Benchmark
+  public TransferResult transfer() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    return accountDao.transfer(BenchmarkDatabase.cardNumber(random.nextInt(ROWS)),
+                               BenchmarkDatabase.cardNumber(random.nextInt(ROWS)), 1);
+  }
+
+  /**
+   * It deletes the accounts of the other shards and records the database as the shard.
+   */
+  private void keepShard(ConnectionProvider connectionProvider, int shard) throws SQLException {
+    try (PooledConnection connection = connectionProvider.writer()) {
+      connection.beginTransaction();
+      PreparedStatement delete = connection.prepare("DELETE FROM account WHERE number = ?");
+
+      for (int i = 0; i < ROWS; i++) {
+        String cardNumber = BenchmarkDatabase.cardNumber(i);
+
+        if (ShardedAccountDao.shardOf(cardNumber, shards) != shard) {
+          delete.setString(1, cardNumber);
+          delete.addBatch();
+        }
+      }
+
+      delete.executeBatch();
+      PreparedStatement claim = connection.prepare("INSERT INTO shard (id, position, count) VALUES (0, ?, ?)");
+      claim.setInt(1, shard);
+      claim.setInt(2, shards);
+      claim.executeUpdate();
+      connection.commit();
+    }
+  }
+
+}
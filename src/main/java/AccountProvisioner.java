@@ -0,0 +1,81 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import dao.AccountDao;
+import generator.CardGenerator;
+import lombok.RequiredArgsConstructor;
+import model.Account;
+import model.Card;
+
+/**
+ * A class that issues cards in bulk, e.g. when onboarding a partner. <br/>
+ * Cards are generated and inserted in chunks, every chunk being a single transaction. A generated number that is
+ * already taken is rejected by the unique index and replaced in the next chunk, so exactly the requested number of
+ * cards is issued. The issued cards are streamed to a CSV file with {@code number,pin} lines.
+ */
+@RequiredArgsConstructor
+public class AccountProvisioner {
+
+  private final AccountDao    accountDao;
+  private final CardGenerator cardGenerator;
+  private final int           chunkSize;
+
+  /**
+   * Issue the cards and print the statistics.
+   *
+   * @param count
+   *     How many cards to issue.
+   * @param output
+   *     The CSV file for the issued cards.
+   */
+  public void provision(int count, Path output) throws IOException {
+    long start = System.nanoTime();
+    long collisions = 0;
+    int issued = 0;
+    List<Account> chunk = new ArrayList<>(chunkSize);
+
+    try (BufferedWriter writer = Files.newBufferedWriter(output)) {
+      writer.write("number,pin");
+      writer.newLine();
+
+      while (issued < count) {
+        int size = Math.min(chunkSize, count - issued);
+
+        for (int i = 0; i < size; i++) {
+          chunk.add(new Account(cardGenerator.generateCredentials(), 0));
+        }
+
+        List<Account> saved = accountDao.saveAll(chunk);
+
+        if (saved.isEmpty()) {
+          throw new IOException("Cannot create accounts, " + issued + " cards were issued");
+        }
+
+        for (Account account : saved) {
+          Card card = account.getCard();
+          writer.write(card.number());
+          writer.write(',');
+          writer.write(card.pin());
+          writer.newLine();
+        }
+
+        issued += saved.size();
+        collisions += size - saved.size();
+        chunk.clear();
+      }
+    }
+
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.printf("""
+                      Cards issued: %d
+                      Card number collisions: %d
+                      Time: %.3f s
+                      Throughput: %.0f cards/s
+                      """, issued, collisions, seconds, issued / seconds);
+  }
+
+}
@@ -0,0 +1,124 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dao.AccountDao;
+import generator.CardGenerator;
+import security.LoginThrottle;
+import server.VirtualThreads;
+
+/**
+ * A class that serves the banking system over TCP. <br/>
+ * Every connection gets its own {@link BankingSystem} session speaking the same line protocol as the console, and all
+ * sessions share the account data access object and the login throttle, which knows a session by its client address.
+ * A session runs on a virtual thread when the runtime has them (Java 21+), otherwise on a platform thread with a small
+ * stack, so thousands of mostly idle sessions fit in memory. The session ends when the user exits or disconnects.
+ */
+public class BankingServer implements AutoCloseable {
+
+  private static final int BACKLOG = 4_096;
+
+  private final AccountDao      accountDao;
+  private final CardGenerator   cardGenerator;
+  private final LoginThrottle   loginThrottle;
+  private final ExecutorService sessions = VirtualThreads.newThreadPerTaskExecutor("banking-session");
+  private final Set<Socket>     clients  = ConcurrentHashMap.newKeySet();
+  private final AtomicLong      served   = new AtomicLong();
+
+  private ServerSocket serverSocket;
+
+  public BankingServer(final AccountDao accountDao, final CardGenerator cardGenerator,
+                       final LoginThrottle loginThrottle) {
+    this.accountDao = accountDao;
+    this.cardGenerator = cardGenerator;
+    this.loginThrottle = loginThrottle;
+  }
+
+  /**
+   * It starts accepting connections in the background.
+   *
+   * @param port
+   *     The port to listen on, 0 picks a free one.
+   *
+   * @return The port the server listens on.
+   */
+  public int start(int port) throws IOException {
+    serverSocket = new ServerSocket(port, BACKLOG);
+
+    Thread acceptor = new Thread(this::accept, "banking-acceptor");
+    acceptor.start();
+
+    return serverSocket.getLocalPort();
+  }
+
+  /**
+   * It returns the number of sessions that are connected now.
+   */
+  public int getActiveSessions() {
+    return clients.size();
+  }
+
+  /**
+   * It stops accepting connections and disconnects the sessions that are still running.
+   */
+  @Override
+  public void close() {
+    try {
+      if (serverSocket != null) {
+        serverSocket.close();
+      }
+
+      for (Socket client : clients) {
+        client.close();
+      }
+    } catch (IOException e) {
+      System.err.println("Cannot close the server socket!");
+    }
+    sessions.shutdown();
+    System.err.println("Banking server: sessions served=" + served.get());
+  }
+
+  private void accept() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket client = serverSocket.accept();
+        client.setTcpNoDelay(true);
+        clients.add(client);
+        sessions.execute(() -> serve(client));
+      } catch (SocketException e) {
+        // The server socket was closed.
+      } catch (IOException e) {
+        System.err.println("Cannot accept the connection!");
+      }
+    }
+  }
+
+  private void serve(Socket client) {
+    try (client;
+         Scanner scanner = new Scanner(new BufferedInputStream(client.getInputStream()), StandardCharsets.UTF_8);
+         PrintStream out = new PrintStream(new BufferedOutputStream(client.getOutputStream()), false,
+                                           StandardCharsets.UTF_8)) {
+      new BankingSystem(accountDao, cardGenerator, loginThrottle, client.getInetAddress().getHostAddress(), scanner, out,
+                        () -> {}).showMenu();
+    } catch (NoSuchElementException e) {
+      // The user disconnected without exiting.
+    } catch (IOException e) {
+      System.err.println("Cannot serve the session!");
+    } finally {
+      clients.remove(client);
+      served.incrementAndGet();
+    }
+  }
+
+}
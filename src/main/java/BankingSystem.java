@@ -1,39 +1,86 @@
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
 import java.util.Scanner;
 
 import dao.AccountDao;
-import lombok.AllArgsConstructor;
+import generator.CardGenerator;
 import lombok.RequiredArgsConstructor;
+import metrics.MetricsRegistry;
+import metrics.Timer;
 import model.Account;
 import model.Card;
+import model.ReadConsistency;
+import model.Transaction;
+import model.TransferResult;
+import security.LoginThrottle;
 
 /**
- * A class that represents a banking system.
+ * A class that represents a session of the banking system. <br/>
+ * It runs the menus for one user over the given input and output, so any number of sessions can share the account data
+ * access object, e.g. the console session or one session per network connection. The output is flushed every time the
+ * session waits for input. Every menu action is timed in the global {@link MetricsRegistry}.
  */
 @RequiredArgsConstructor
-@AllArgsConstructor
 public class BankingSystem {
 
+  private static final MetricsRegistry   METRICS             = MetricsRegistry.global();
+  private static final Timer             REGISTER            = METRICS.timer("menu.register");
+  private static final Timer             LOGIN               = METRICS.timer("menu.login");
+  private static final Timer             BALANCE             = METRICS.timer("menu.balance");
+  private static final Timer             ADD_INCOME          = METRICS.timer("menu.addIncome");
+  private static final Timer             TRANSFER            = METRICS.timer("menu.transfer");
+  private static final Timer             CLOSE_ACCOUNT       = METRICS.timer("menu.closeAccount");
+  private static final Timer             LOG_OUT             = METRICS.timer("menu.logOut");
+  private static final Timer             STATEMENT           = METRICS.timer("menu.statement");
+  private static final int               STATEMENT_PAGE_SIZE = 10;
+  private static final int               CREATE_ATTEMPTS     = 3;
+  private static final DateTimeFormatter TIMESTAMP_FORMAT    = DateTimeFormatter
+      .ofPattern("yyyy-MM-dd HH:mm:ss")
+      .withZone(ZoneId.systemDefault());
+
   private final AccountDao    accountDao;
   private final CardGenerator cardGenerator;
+  private final LoginThrottle loginThrottle;
+  private final String        session;
   private final Scanner       scanner;
+  private final PrintStream   out;
+  private final Runnable      onExit;
   private       Account       currentAccount;
+  private       boolean       changedAccount;
+  private       boolean       running = true;
+  private       long          excludedNanos;
+
+  /**
+   * It creates the console session, which closes the account data access object and stops the application on exit.
+   */
+  public static BankingSystem console(AccountDao accountDao, CardGenerator cardGenerator, LoginThrottle loginThrottle,
+                                      Scanner scanner) {
+    return new BankingSystem(accountDao, cardGenerator, loginThrottle, "console", scanner, System.out, () -> {
+      scanner.close();
+      accountDao.close();
+      System.exit(0);
+    });
+  }
 
   /**
-   * While the application is running, show the welcome menu, get the user's input, and if the input is 0, stop the
-   * application, if the input is 1, register an account, if the input is 2, log into an account, otherwise, show an
-   * error message.
+   * While the session is running, show the welcome menu, get the user's input, and if the input is 0, stop the
+   * session, if the input is 1, register an account, if the input is 2, log into an account, otherwise, show an error
+   * message.
    */
   public void showMenu() {
-    while (true) {
+    while (running) {
       welcomeMenu();
 
-      String input = scanner.next();
+      String input = read();
 
       switch (input) {
         case "0" -> stopApplication();
-        case "1" -> registerAccount();
-        case "2" -> logIntoAccount();
-        default -> System.out.println("You've entered invalid menu item.\n");
+        case "1" -> timed(REGISTER, this::registerAccount);
+        case "2" -> timed(LOGIN, this::logIntoAccount);
+        default -> out.println("You've entered invalid menu item.\n");
       }
     }
   }
@@ -42,7 +89,7 @@ public class BankingSystem {
    * Show the welcome menu.
    */
   public void welcomeMenu() {
-    System.out.println("""
+    out.println("""
                        1. Create an account
                        2. Log into account
                        0. Exit""");
@@ -50,34 +97,57 @@ public class BankingSystem {
 
   /**
    * Register an account. <br/>
-   * A method that is called when the user selects the first option in the welcome menu.
+   * A method that is called when the user selects the first option in the welcome menu. A card the database refuses,
+   * e.g. because its number is already taken, is replaced by a new one a few times before giving up.
    */
   public void registerAccount() {
-    Card card = cardGenerator.generateCredentials();
-    accountDao.save(new Account(card, 0));
-    System.out.printf("""
+    Card card = null;
+
+    for (int attempt = 0; attempt < CREATE_ATTEMPTS && card == null; attempt++) {
+      Card generated = cardGenerator.generateCredentials();
+      card = accountDao.save(new Account(generated, 0)) ? generated : null;
+    }
+
+    if (card == null) {
+      out.println("The card cannot be created! Try again later.\n");
+      return;
+    }
+
+    out.printf("""
                       Your card has been created
                       Your card number:
                       %s
                       Your card PIN:
                       %s""", card.number(), card.pin());
 
-    System.out.print("\n".repeat(2));
+    out.print("\n".repeat(2));
   }
 
   /**
    * Log into an account. <br/>
-   * A method that is called when the user selects the second option in the welcome menu.
+   * A method that is called when the user selects the second option in the welcome menu. A card or session with too
+   * many failed logins is turned away before the account is read.
    */
   public void logIntoAccount() {
-    System.out.println("\nEnter your card number:");
-    String inCardNum = scanner.next();
-    System.out.println("Enter your PIN:");
-    String inCardPIN = scanner.next();
+    out.println("\nEnter your card number:");
+    String inCardNum = read();
+    out.println("Enter your PIN:");
+    String inCardPIN = read();
+
+    if (!loginThrottle.isAllowed(session, inCardNum)) {
+      out.println("\nToo many failed attempts! Try again later.\n");
+      return;
+    }
 
     accountDao
         .get(inCardNum, inCardPIN)
-        .ifPresentOrElse(this::logInSuccess, () -> System.out.println("\nWrong card number or PIN!\n"));
+        .ifPresentOrElse(account -> {
+          loginThrottle.recordSuccess(inCardNum);
+          logInSuccess(account);
+        }, () -> {
+          loginThrottle.recordFailure(session, inCardNum);
+          out.println("\nWrong card number or PIN!\n");
+        });
   }
 
   /**
@@ -89,7 +159,8 @@ public class BankingSystem {
    */
   public void logInSuccess(Account account) {
     currentAccount = account;
-    System.out.println("\nYou have successfully logged in!\n");
+    changedAccount = false;
+    out.println("\nYou have successfully logged in!\n");
     accountMenu();
   }
 
@@ -99,35 +170,43 @@ public class BankingSystem {
    */
   public void accountMenu() {
     while (currentAccount != null) {
-      System.out.println("""
+      out.println("""
                          1. Balance
                          2. Add income
                          3. Do transfer
                          4. Close account
                          5. Log out
+                         6. Statement
                          0. Exit""");
 
-      String input = scanner.next();
-      System.out.println();
+      String input = read();
+      out.println();
 
       switch (input) {
         case "0" -> stopApplication();
-        case "1" -> getBalance();
-        case "2" -> addIncome();
-        case "3" -> doTransfer();
-        case "4" -> closeAccount();
-        case "5" -> logOut();
-        default -> System.out.println("You've entered invalid menu item.\n");
+        case "1" -> timed(BALANCE, this::getBalance);
+        case "2" -> timed(ADD_INCOME, this::addIncome);
+        case "3" -> timed(TRANSFER, this::doTransfer);
+        case "4" -> timed(CLOSE_ACCOUNT, this::closeAccount);
+        case "5" -> timed(LOG_OUT, this::logOut);
+        case "6" -> timed(STATEMENT, this::showStatement);
+        default -> out.println("You've entered invalid menu item.\n");
       }
     }
   }
 
   /**
    * Get the balance. <br/>
-   * A method that is called when the user selects the first option in the main menu.
+   * A method that is called when the user selects the first option in the main menu. The balance is read from a
+   * snapshot of the database, unless the session changed the account since logging in, so it always sees its own
+   * deposits and transfers.
    */
   public void getBalance() {
-    System.out.printf("Balance: %d\n", currentAccount.getBalance());
+    accountDao
+        .getBalance(currentAccount.getCard().number(),
+                    changedAccount ? ReadConsistency.CONSISTENT : ReadConsistency.SNAPSHOT)
+        .ifPresent(currentAccount::setBalance);
+    out.printf("Balance: %d\n", currentAccount.getBalance());
   }
 
   /**
@@ -135,20 +214,20 @@ public class BankingSystem {
    * A method that is called when the user selects the second option in the main menu.
    */
   public void addIncome() {
-    System.out.println("Enter income:");
+    out.println("Enter income:");
 
     try {
-      int income = Integer.parseInt(scanner.next());
+      int income = Integer.parseInt(read());
 
       if (income < 0 || income == 0) {
-        System.out.println("Money can't be a zero or a negative number!\n");
+        out.println("Money can't be a zero or a negative number!\n");
         return;
       }
 
       updateAccount(currentAccount.getCard().number(), income);
-      System.out.println("Income was added!\n");
+      out.println("Income was added!\n");
     } catch (NumberFormatException e) {
-      System.out.println("You should enter the amount of money you want to add to your balance!\n");
+      out.println("You should enter the amount of money you want to add to your balance!\n");
       addIncome();
     }
   }
@@ -158,36 +237,33 @@ public class BankingSystem {
    * A method that is called when the user selects the third option in the main menu.
    */
   public void doTransfer() {
-    System.out.println("Transfer\n" + "Enter card number:");
-    String recipientCardNumber = scanner.next();
+    out.println("Transfer\n" + "Enter card number:");
+    String recipientCardNumber = read();
 
     if (!recipientCredentialsValidation(recipientCardNumber)) {
       return;
     }
 
-    System.out.println("Enter how much money you want to transfer:");
+    out.println("Enter how much money you want to transfer:");
 
     try {
-      int moneyToTransfer = Integer.parseInt(scanner.next());
+      int moneyToTransfer = Integer.parseInt(read());
 
       if (moneyToTransfer < 0 || moneyToTransfer == 0) {
-        System.out.println("Money can't be a zero or a negative number!\n");
+        out.println("Money can't be a zero or a negative number!\n");
         return;
       }
 
-      if (moneyToTransfer > currentAccount.getBalance()) {
-        System.out.println("Not enough money!\n");
-        return;
-      }
-
-      accountDao.update(recipientCardNumber, moneyToTransfer);
+      TransferResult result = accountDao.transfer(currentAccount.getCard().number(), recipientCardNumber,
+                                                  moneyToTransfer);
 
-      int negateRemittance = -moneyToTransfer;
-      updateAccount(currentAccount.getCard().number(), negateRemittance);
-
-      System.out.println("Success!\n");
+      if (result.isMade()) {
+        currentAccount.setBalance(result.balance());
+        changedAccount = true;
+      }
+      out.println(result.status().getMessage() + "\n");
     } catch (NumberFormatException e) {
-      System.out.println("You should enter the amount of money you want to transfer!\n");
+      out.println("You should enter the amount of money you want to transfer!\n");
       doTransfer();
     }
   }
@@ -198,7 +274,7 @@ public class BankingSystem {
    */
   public void closeAccount() {
     accountDao.delete(currentAccount);
-    System.out.println("The account has been closed!\n");
+    out.println("The account has been closed!\n");
     currentAccount = null;
   }
 
@@ -208,18 +284,61 @@ public class BankingSystem {
    */
   public void logOut() {
     currentAccount = null;
-    System.out.println("You have successfully logged out!\n");
+    out.println("You have successfully logged out!\n");
+  }
+
+  /**
+   * Show the statement. <br/>
+   * A method that is called when the user selects the sixth option in the main menu. It shows the latest transactions a
+   * page at a time, and the next page on request.
+   */
+  public void showStatement() {
+    Transaction last = null;
+
+    while (true) {
+      List<Transaction> page = accountDao.getStatement(currentAccount.getCard().number(), last, STATEMENT_PAGE_SIZE);
+
+      if (page.isEmpty()) {
+        out.println(last == null ? "There are no transactions yet.\n" : "There are no older transactions.\n");
+        return;
+      }
+
+      for (Transaction transaction : page) {
+        String line = String.format("%s %-12s %+d %s",
+                                    TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(transaction.timestamp())),
+                                    transaction.type(), transaction.amount(), transaction.counterparty());
+        out.println(line.stripTrailing());
+      }
+
+      if (page.size() < STATEMENT_PAGE_SIZE) {
+        out.println();
+        return;
+      }
+
+      out.println("""
+
+                         1. Older transactions
+                         0. Back""");
+
+      if (!read().equals("1")) {
+        out.println();
+        return;
+      }
+      last = page.get(page.size() - 1);
+    }
   }
 
   /**
    * Update account. <br/>
-   * Updating the account balance.
+   * Updating the account balance, the balance is taken from the database since other sessions may have changed it.
    */
   public void updateAccount(String cardNumber, int transferredMoney) {
-    accountDao.update(cardNumber, transferredMoney);
     accountDao
-        .get(cardNumber, currentAccount.getCard().pin())
-        .ifPresent(account -> currentAccount.setBalance(currentAccount.getBalance() + transferredMoney));
+        .update(cardNumber, transferredMoney)
+        .ifPresent(balance -> {
+          currentAccount.setBalance(balance);
+          changedAccount = true;
+        });
   }
 
   /**
@@ -227,21 +346,7 @@ public class BankingSystem {
    * A method that is called when the user enters the card number of the recipient.
    */
   public boolean cardNumberValidation(String cardNumber) {
-    if (cardNumber.length() != 16) {
-      return false;
-    }
-
-    int bin, accountIdentifier, checkSum;
-
-    try {
-      bin = Integer.parseInt(cardNumber.substring(0, 6));
-      accountIdentifier = Integer.parseInt(cardNumber.substring(6, 15));
-      checkSum = Integer.parseInt(cardNumber.substring(15));
-    } catch (NumberFormatException e) {
-      return false;
-    }
-
-    return cardGenerator.luhnAlgorithm(bin, accountIdentifier) == checkSum;
+    return cardGenerator.isValid(cardNumber);
   }
 
   /**
@@ -250,17 +355,17 @@ public class BankingSystem {
    */
   public boolean recipientCredentialsValidation(String recipientCardNumber) {
     if (recipientCardNumber.equals(currentAccount.getCard().number())) {
-      System.out.println("You can't transfer money to the same account!\n");
+      out.println("You can't transfer money to the same account!\n");
       return false;
     }
 
     if (!cardNumberValidation(recipientCardNumber)) {
-      System.out.println("Probably you made a mistake in the card number. Please try again!\n");
+      out.println("Probably you made a mistake in the card number. Please try again!\n");
       return false;
     }
 
     if (!accountDao.contains(recipientCardNumber)) {
-      System.out.println("Such a card does not exist.\n");
+      out.println("Such a card does not exist.\n");
       return false;
     }
 
@@ -268,14 +373,50 @@ public class BankingSystem {
   }
 
   /**
-   * Stop the application. <br/>
+   * Stop the session. <br/>
    * A method that is called when the user selects the last option in the main menu.
    */
   public void stopApplication() {
-    scanner.close();
-    accountDao.getDbConfiguration().closeConnection();
-    System.out.println("Bye!");
-    System.exit(0);
+    running = false;
+    currentAccount = null;
+    out.println("Bye!");
+    out.flush();
+    onExit.run();
+  }
+
+  /**
+   * It runs the menu action and records how long it took, without the time spent waiting for the user's input or in
+   * the actions it started, e.g. the account menu after logging in.
+   */
+  private void timed(Timer timer, Runnable action) {
+    long excludedBefore = excludedNanos;
+    long start = System.nanoTime();
+
+    try {
+      action.run();
+    } catch (RuntimeException e) {
+      timer.recordError();
+      throw e;
+    } finally {
+      long elapsed = System.nanoTime() - start;
+      timer.record(elapsed - (excludedNanos - excludedBefore));
+      excludedNanos = excludedBefore + elapsed;
+    }
+  }
+
+  /**
+   * Read the next input, after the output written so far was sent to the user.
+   */
+  private String read() {
+    out.flush();
+
+    long start = System.nanoTime();
+
+    try {
+      return scanner.next();
+    } finally {
+      excludedNanos += System.nanoTime() - start;
+    }
   }
 
 }
@@ -0,0 +1,125 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import dao.AccountDao;
+import generator.CardGenerator;
+import lombok.RequiredArgsConstructor;
+import model.Transfer;
+import model.TransferStatus;
+
+/**
+ * A class that applies card-to-card transfers from a settlement file. <br/>
+ * The file is a CSV with {@code from,to,amount} on every line, an optional header line is skipped. It is streamed and
+ * applied in chunks, every chunk being a single transaction, and the rows that cannot be applied are reported without
+ * stopping the rest of the file.
+ */
+@RequiredArgsConstructor
+public class BatchTransferProcessor {
+
+  private final AccountDao    accountDao;
+  private final CardGenerator cardGenerator;
+  private final int           chunkSize;
+
+  private final List<Transfer> chunk = new ArrayList<>();
+  private final List<Long>     lines = new ArrayList<>();
+  private       long           applied;
+  private       long           rejected;
+
+  /**
+   * Apply the transfers from the file and print the failed rows and the throughput statistics.
+   *
+   * @param file
+   *     The settlement file.
+   */
+  public void process(Path file) throws IOException {
+    long start = System.nanoTime();
+    long lineNumber = 0;
+
+    try (BufferedReader reader = Files.newBufferedReader(file)) {
+      String line;
+
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+
+        if (line.isBlank() || lineNumber == 1 && !Character.isDigit(line.charAt(0))) {
+          continue;
+        }
+
+        parse(lineNumber, line);
+
+        if (chunk.size() == chunkSize) {
+          applyChunk();
+        }
+      }
+    }
+    applyChunk();
+
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.printf("""
+                      Transfers applied: %d
+                      Transfers rejected: %d
+                      Time: %.3f s
+                      Throughput: %.0f transfers/s
+                      """, applied, rejected, seconds, (applied + rejected) / seconds);
+  }
+
+  private void parse(long lineNumber, String line) {
+    String[] fields = line.split(",");
+
+    if (fields.length != 3) {
+      reject(lineNumber, "Wrong number of fields!");
+      return;
+    }
+
+    String from = fields[0].trim();
+    String to = fields[1].trim();
+    int amount;
+
+    try {
+      amount = Integer.parseInt(fields[2].trim());
+    } catch (NumberFormatException e) {
+      reject(lineNumber, "Wrong amount of money!");
+      return;
+    }
+
+    if (amount <= 0) {
+      reject(lineNumber, "Money can't be a zero or a negative number!");
+    } else if (!cardGenerator.isValid(from) || !cardGenerator.isValid(to)) {
+      reject(lineNumber, "Probably you made a mistake in the card number.");
+    } else if (from.equals(to)) {
+      reject(lineNumber, "You can't transfer money to the same account!");
+    } else {
+      chunk.add(new Transfer(from, to, amount));
+      lines.add(lineNumber);
+    }
+  }
+
+  private void applyChunk() {
+    if (chunk.isEmpty()) {
+      return;
+    }
+
+    List<TransferStatus> statuses = accountDao.transfer(chunk);
+
+    for (int i = 0; i < statuses.size(); i++) {
+      if (statuses.get(i).isMade()) {
+        applied++;
+      } else {
+        reject(lines.get(i), statuses.get(i).getMessage());
+      }
+    }
+
+    chunk.clear();
+    lines.clear();
+  }
+
+  private void reject(long lineNumber, String reason) {
+    rejected++;
+    System.out.printf("Line %d: %s%n", lineNumber, reason);
+  }
+
+}
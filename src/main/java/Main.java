@@ -1,31 +1,434 @@
-import java.util.Random;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 
-import org.sqlite.SQLiteDataSource;
+import org.sqlite.SQLiteConfig.JournalMode;
+import org.sqlite.SQLiteConfig.SynchronousMode;
+import org.sqlite.SQLiteConfig.TempStore;
 
+import configuration.ApplicationArguments;
 import configuration.DBConfiguration;
+import configuration.DatabaseSettings;
+import dao.AccountArchive;
 import dao.AccountDao;
+import dao.AccountLocks;
+import dao.BloomFilterAccountDao;
+import dao.CachingAccountDao;
+import dao.CardSequenceDao;
+import dao.CommandQueueAccountDao;
+import dao.LedgerAccountDao;
+import dao.LockingAccountDao;
+import dao.MeteredAccountDao;
+import dao.OperationKeys;
+import dao.ShardedAccountDao;
+import dao.SqliteAccountDao;
+import dao.SqliteCardSequenceDao;
+import dao.SqliteLockoutDao;
+import generator.AccountIdentifierSequence;
+import generator.CardGenerator;
+import journal.TransactionJournal;
+import metrics.MetricsRegistry;
+import metrics.MetricsServer;
+import security.LoginThrottle;
+import security.PinHasher;
+import security.PinVerifier;
+import server.BankingHttpServer;
 
 public class Main {
 
+  private static final int JOURNAL_SEGMENT_SIZE = 64 * 1024 * 1024;
+
   public static void main(String[] args) {
-    if (!(args.length == 2 && args[0].equals("-fileName"))) {
+    ApplicationArguments arguments = new ApplicationArguments(args);
+
+    if (!arguments.has("-fileName")) {
       throw new IllegalArgumentException("""
                                          You should pass the -fileName as the first argument
                                          and SQLite db name (.s3db extension) as the second one!""");
     }
 
-    SQLiteDataSource dataSource = new SQLiteDataSource();
-    DBConfiguration dbConfiguration = new DBConfiguration(dataSource, args[1]);
-    AccountDao accountDao = new AccountDao(dbConfiguration);
+    if (arguments.has("-journal") && ledger(arguments)) {
+      throw new IllegalArgumentException("The -journal cannot be combined with the -ledger!");
+    }
+
+    String[] fileNames = arguments.get("-fileName", null).split(",");
+
+    if (fileNames.length > 1 && (arguments.has("-journal") || ledger(arguments))) {
+      throw new IllegalArgumentException("Several database files cannot be combined with the -journal or the -ledger!");
+    }
+
+    if (arguments.has("-writeQueue") && (fileNames.length > 1 || ledger(arguments))) {
+      throw new IllegalArgumentException(
+          "The -writeQueue cannot be combined with several database files or the -ledger!");
+    }
+
+    DatabaseSettings settings = databaseSettings(arguments);
+    List<DBConfiguration> dbConfigurations = new ArrayList<>(fileNames.length);
+
+    for (String fileName : fileNames) {
+      dbConfigurations.add(new DBConfiguration(fileName, settings));
+    }
+
+    if (arguments.has("-exportAccounts") || arguments.has("-importAccounts")) {
+      archiveAccounts(dbConfigurations, arguments);
+      return;
+    }
+
+    AccountDao accountDao;
+
+    try {
+      accountDao = accountDao(dbConfigurations, arguments);
+    } catch (IOException e) {
+      System.err.println("Cannot open the transaction journal: " + e.getMessage());
+      dbConfigurations.forEach(dbConfiguration -> dbConfiguration.getConnectionProvider().close());
+      return;
+    }
+
+    AccountIdentifierSequence identifiers = arguments.has("-cardSequenceKey")
+                                            ? cardSequence(dbConfigurations.get(0), arguments)
+                                            : null;
+    CardGenerator cardGenerator = identifiers != null
+                                  ? CardGenerator.concurrent(identifiers)
+                                  : CardGenerator.concurrent();
+
+    if (arguments.has("-batchTransfers")) {
+      int chunkSize = arguments.getInt("-chunkSize", 10_000);
+      batchTransfers(new BatchTransferProcessor(accountDao, cardGenerator, chunkSize),
+                     arguments.get("-batchTransfers", null));
+      accountDao.close();
+      return;
+    }
+
+    if (arguments.has("-provision")) {
+      int chunkSize = arguments.getInt("-chunkSize", 10_000);
+      provision(new AccountProvisioner(accountDao, cardGenerator, chunkSize),
+                arguments.getInt("-provision", 0),
+                arguments.get("-output", "cards.csv"));
+      accountDao.close();
+
+      if (identifiers != null) {
+        System.out.println("The card sequence stopped at position " + identifiers.getPosition());
+      }
+      return;
+    }
+
+    if (arguments.has("-exportStatement")) {
+      exportStatement(new StatementExporter(accountDao, ZoneId.systemDefault()), arguments);
+      accountDao.close();
+      return;
+    }
+
+    LoginThrottle loginThrottle = loginThrottle(dbConfigurations.get(0), arguments);
+    MetricsServer metricsServer = exportMetrics(arguments);
 
-    Random random = new Random();
-    CardGenerator cardGenerator = new CardGenerator(random);
+    if (arguments.has("-port") || arguments.has("-httpPort")) {
+      serve(accountDao, cardGenerator, loginThrottle, metricsServer, arguments);
+      return;
+    }
 
     Scanner scanner = new Scanner(System.in);
 
-    BankingSystem bankingSystem = new BankingSystem(accountDao, cardGenerator, scanner);
+    BankingSystem bankingSystem = BankingSystem.console(accountDao, cardGenerator, loginThrottle, scanner);
     bankingSystem.showMenu();
   }
 
+  /**
+   * It creates the account data access object: the cache in front of the database unless its size is set to 0, the
+   * per-account locks in front of the cache, and the card number filter in front of them unless its false-positive
+   * rate is set to 0. With -ledger all accounts are served from memory instead, and a shutdown hook writes the changes
+   * that are not persisted yet. With -journal every change is written to the transaction journal in that directory,
+   * which is replayed over the database first. With several comma-separated -fileName databases the accounts are
+   * sharded over them, and the transfers between shards that were interrupted are finished first. With -migratePins
+   * true the plain PINs stored by earlier versions are hashed before anything else. With -writeQueue N the deposits,
+   * transfers and closings are queued for a single writer thread, which applies up to -writeBatch of them in one
+   * transaction. The keys of the deposits and transfers made with an operation key are kept for
+   * -operationKeyTtlMillis. Every call is timed in front of all of them unless -metrics is false.
+   */
+  private static AccountDao accountDao(List<DBConfiguration> dbConfigurations, ApplicationArguments arguments)
+      throws IOException {
+    TransactionJournal journal = arguments.has("-journal")
+                                 ? new TransactionJournal(Path.of(arguments.get("-journal", null)),
+                                                          JOURNAL_SEGMENT_SIZE)
+                                 : null;
+    PinVerifier pinVerifier = new PinVerifier(new PinHasher(arguments.getInt("-pinHashIterations",
+                                                                              PinHasher.DEFAULT_ITERATIONS)),
+                                              arguments.getInt("-pinCacheSize", 100_000),
+                                              arguments.getInt("-loginThreads",
+                                                               Runtime.getRuntime().availableProcessors()));
+    OperationKeys operationKeys = new OperationKeys(arguments.getLong("-operationKeyTtlMillis",
+                                                                      OperationKeys.DEFAULT_TTL_MILLIS),
+                                                    arguments.getInt("-operationKeyCacheSize", 100_000));
+    List<SqliteAccountDao> shards = new ArrayList<>(dbConfigurations.size());
+
+    for (DBConfiguration dbConfiguration : dbConfigurations) {
+      shards.add(new SqliteAccountDao(dbConfiguration.getConnectionProvider(), journal, pinVerifier, operationKeys));
+    }
+
+    SqliteAccountDao sqliteAccountDao = shards.get(0);
+    ShardedAccountDao shardedAccountDao = shards.size() > 1 ? new ShardedAccountDao(shards) : null;
+    MetricsRegistry metrics = MetricsRegistry.global();
+    metrics.gauge("database_errors", "Database errors since the start.",
+                  shardedAccountDao != null ? shardedAccountDao::getErrors : sqliteAccountDao::getErrors);
+    metrics.gauge("pin_cache_hits", "Logins verified from the PIN cache.", () -> pinVerifier.getCounters().hits());
+    metrics.gauge("pin_cache_misses", "Logins verified by hashing the PIN.", () -> pinVerifier.getCounters().misses());
+
+    if (journal != null) {
+      System.err.println("Transaction journal: replayed " + sqliteAccountDao.recover() + " changes");
+    }
+
+    if (shardedAccountDao != null) {
+      System.err.println("Transfers between shards: finished " + shardedAccountDao.recover() + " interrupted");
+      metrics.gauge("parked_transfers", "Transfers between shards waiting for the recipient shard.",
+                    shardedAccountDao::getParkedTransfers);
+    }
+
+    if (Boolean.parseBoolean(arguments.get("-migratePins", "false"))) {
+      long migrated = 0;
+
+      for (SqliteAccountDao shard : shards) {
+        migrated += shard.migratePins();
+      }
+      System.err.println("PINs migrated: " + migrated);
+    }
+
+    if (ledger(arguments)) {
+      LedgerAccountDao ledgerAccountDao = new LedgerAccountDao(sqliteAccountDao,
+                                                               arguments.getLong("-ledgerFlushMillis", 100));
+      Runtime.getRuntime().addShutdownHook(new Thread(ledgerAccountDao::close));
+      return metered(ledgerAccountDao, arguments);
+    }
+
+    AccountDao accountDao = shardedAccountDao != null ? shardedAccountDao : sqliteAccountDao;
+
+    if (arguments.has("-writeQueue")) {
+      accountDao = new CommandQueueAccountDao(sqliteAccountDao, arguments.getInt("-writeQueue", 4_096),
+                                              arguments.getInt("-writeBatch", 1_024));
+    }
+    int accountCacheSize = arguments.getInt("-accountCacheSize", 100_000);
+
+    if (accountCacheSize > 0) {
+      CachingAccountDao cachingAccountDao = new CachingAccountDao(accountDao, pinVerifier, accountCacheSize);
+
+      if (shardedAccountDao != null) {
+        shardedAccountDao.setFinishListener(cachingAccountDao::evict);
+      }
+      accountDao = cachingAccountDao;
+    }
+
+    accountDao = new LockingAccountDao(accountDao, new AccountLocks(arguments.getInt("-lockStripes", 1_024)));
+
+    double cardFilterFpp = arguments.getDouble("-cardFilterFpp", 0.01);
+
+    if (cardFilterFpp > 0) {
+      accountDao = new BloomFilterAccountDao(accountDao, cardFilterFpp);
+    }
+    return metered(accountDao, arguments);
+  }
+
+  /**
+   * It tells whether the balances are kept in the in-memory ledger, the same way for the checks of the conflicting
+   * arguments and for building the data access object.
+   */
+  private static boolean ledger(ApplicationArguments arguments) {
+    return Boolean.parseBoolean(arguments.get("-ledger", "false"));
+  }
+
+  private static AccountDao metered(AccountDao accountDao, ApplicationArguments arguments) {
+    return Boolean.parseBoolean(arguments.get("-metrics", "true"))
+           ? new MeteredAccountDao(accountDao, MetricsRegistry.global())
+           : accountDao;
+  }
+
+  /**
+   * It exports the metrics over JMX with -jmx true, and in the Prometheus format on the loopback address with
+   * -metricsPort.
+   *
+   * @return The metrics server, or null if no port is passed.
+   */
+  private static MetricsServer exportMetrics(ApplicationArguments arguments) {
+    if (Boolean.parseBoolean(arguments.get("-jmx", "false"))) {
+      MetricsRegistry.global().registerJmx();
+    }
+
+    if (!arguments.has("-metricsPort")) {
+      return null;
+    }
+
+    MetricsServer metricsServer = new MetricsServer(MetricsRegistry.global());
+
+    try {
+      System.out.println("Metrics served on port " + metricsServer.start(arguments.getInt("-metricsPort", 0)));
+      return metricsServer;
+    } catch (IOException e) {
+      System.err.println("Cannot start the metrics server: " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * It applies the transfers from the settlement file instead of starting the interactive menu.
+   */
+  private static void batchTransfers(BatchTransferProcessor processor, String fileName) {
+    try {
+      processor.process(Path.of(fileName));
+    } catch (IOException e) {
+      System.err.println("Cannot read the transfers file: " + fileName);
+    }
+  }
+
+  /**
+   * It issues the cards in bulk instead of starting the interactive menu.
+   */
+  private static void provision(AccountProvisioner provisioner, int count, String fileName) {
+    try {
+      provisioner.provision(count, Path.of(fileName));
+    } catch (IOException e) {
+      System.err.println("Cannot write the cards file: " + fileName);
+    }
+  }
+
+  /**
+   * It writes every account into the binary archive -exportAccounts, or restores the accounts of the archive
+   * -importAccounts into the empty databases, sending -chunkSize rows to the database in one batch, instead of starting
+   * the interactive menu. With several comma-separated -fileName databases the accounts are routed to their shards.
+   */
+  private static void archiveAccounts(List<DBConfiguration> dbConfigurations, ApplicationArguments arguments) {
+    List<SqliteAccountDao> databases = new ArrayList<>(dbConfigurations.size());
+
+    for (DBConfiguration dbConfiguration : dbConfigurations) {
+      databases.add(new SqliteAccountDao(dbConfiguration.getConnectionProvider()));
+    }
+
+    try {
+      AccountArchive archive = new AccountArchive(databases, arguments.getInt("-chunkSize", 10_000));
+      long started = System.nanoTime();
+
+      if (arguments.has("-exportAccounts")) {
+        long exported = archive.export(Path.of(arguments.get("-exportAccounts", null)));
+        System.out.printf("Accounts exported: %d in %d ms%n", exported,
+                          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+      } else {
+        long imported = archive.restore(Path.of(arguments.get("-importAccounts", null)));
+        System.out.printf("Accounts imported: %d in %d ms%n", imported,
+                          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+      }
+    } catch (IOException e) {
+      System.err.println("Cannot " + (arguments.has("-exportAccounts") ? "export" : "import") + " the accounts: "
+                         + e.getMessage());
+    } finally {
+      databases.forEach(SqliteAccountDao::close);
+    }
+  }
+
+  /**
+   * It exports the statement of the card for the days from -from to -to, both inclusive, instead of starting the
+   * interactive menu.
+   */
+  private static void exportStatement(StatementExporter exporter, ApplicationArguments arguments) {
+    String fileName = arguments.get("-output", "statement.csv");
+
+    try {
+      exporter.export(arguments.get("-exportStatement", null),
+                      LocalDate.parse(arguments.get("-from", "1970-01-01")),
+                      LocalDate.parse(arguments.get("-to", LocalDate.now().toString())),
+                      Path.of(fileName));
+    } catch (IOException e) {
+      System.err.println("Cannot write the statement file: " + fileName);
+    } catch (DateTimeParseException e) {
+      System.err.println("Wrong date, use the yyyy-mm-dd format: " + e.getParsedString());
+    }
+  }
+
+  /**
+   * It serves the banking sessions over TCP and the HTTP API, whichever port is passed, instead of the console until
+   * the application is stopped.
+   */
+  private static void serve(AccountDao accountDao, CardGenerator cardGenerator, LoginThrottle loginThrottle,
+                            MetricsServer metricsServer, ApplicationArguments arguments) {
+    BankingServer server = new BankingServer(accountDao, cardGenerator, loginThrottle);
+    BankingHttpServer httpServer = new BankingHttpServer(accountDao, cardGenerator, loginThrottle);
+
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      server.close();
+      httpServer.close();
+
+      if (metricsServer != null) {
+        metricsServer.close();
+      }
+      accountDao.close();
+    }));
+
+    try {
+      if (arguments.has("-port")) {
+        System.out.println("Listening on port " + server.start(arguments.getInt("-port", 0)));
+      }
+
+      if (arguments.has("-httpPort")) {
+        System.out.println("HTTP API listening on port " + httpServer.start(arguments.getInt("-httpPort", 0)));
+      }
+    } catch (IOException e) {
+      System.err.println("Cannot start the server: " + e.getMessage());
+    }
+  }
+
+  /**
+   * It creates the card number sequence for -cardSequenceKey. It continues from the position stored in the first
+   * database file, or from -cardSequenceStart if that is further, and stores the end of every block it reserves there.
+   */
+  private static AccountIdentifierSequence cardSequence(DBConfiguration dbConfiguration,
+                                                        ApplicationArguments arguments) {
+    CardSequenceDao cardSequenceDao = new SqliteCardSequenceDao(dbConfiguration.getConnectionProvider());
+    long key = arguments.getLong("-cardSequenceKey", 0);
+    long start = Math.max(arguments.getLong("-cardSequenceStart", 0), cardSequenceDao.getPosition(key).orElse(0));
+
+    return CardGenerator.identifierSequence(key, start, end -> cardSequenceDao.save(key, end));
+  }
+
+  /**
+   * It creates the login throttle, which keeps its lockouts in the database: a card is locked for -lockoutMinutes after
+   * -maxLoginFailures wrong PINs within -loginWindowMinutes, a session is turned away after -maxSessionLoginFailures.
+   */
+  private static LoginThrottle loginThrottle(DBConfiguration dbConfiguration, ApplicationArguments arguments) {
+    LoginThrottle loginThrottle = new LoginThrottle(
+        new SqliteLockoutDao(dbConfiguration.getConnectionProvider()),
+        arguments.getInt("-maxLoginFailures", LoginThrottle.DEFAULT_MAX_CARD_FAILURES),
+        arguments.getInt("-maxSessionLoginFailures", LoginThrottle.DEFAULT_MAX_SESSION_FAILURES),
+        TimeUnit.MINUTES.toMillis(arguments.getLong("-loginWindowMinutes", 15)),
+        TimeUnit.MINUTES.toMillis(arguments.getLong("-lockoutMinutes", 15)),
+        System::currentTimeMillis);
+
+    MetricsRegistry.global().gauge("login_rejected", "Logins turned away by the throttle.", loginThrottle::getRejected);
+    MetricsRegistry.global().gauge("login_lockouts", "Cards locked after too many failed logins.",
+                                   loginThrottle::getLockouts);
+    return loginThrottle;
+  }
+
+  /**
+   * It reads the optional SQLite tuning options, every option that is not passed keeps its default value. The
+   * transaction journal makes the database recoverable by itself, so with -journal it is not synced by default.
+   */
+  private static DatabaseSettings databaseSettings(ApplicationArguments arguments) {
+    DatabaseSettings defaults = DatabaseSettings.defaults();
+
+    return DatabaseSettings
+        .builder()
+        .journalMode(arguments.getEnum("-journalMode", JournalMode.class, defaults.getJournalMode()))
+        .synchronous(arguments.getEnum("-synchronous", SynchronousMode.class,
+                                       arguments.has("-journal") ? SynchronousMode.OFF : defaults.getSynchronous()))
+        .cacheSize(arguments.getInt("-cacheSize", defaults.getCacheSize()))
+        .mmapSize(arguments.getLong("-mmapSize", defaults.getMmapSize()))
+        .tempStore(arguments.getEnum("-tempStore", TempStore.class, defaults.getTempStore()))
+        .busyTimeout(arguments.getInt("-busyTimeout", defaults.getBusyTimeout()))
+        .readers(arguments.getInt("-readers", defaults.getReaders()))
+        .snapshotReaders(arguments.getInt("-snapshotReaders", defaults.getSnapshotReaders()))
+        .snapshotStalenessMillis(arguments.getLong("-snapshotStaleness", defaults.getSnapshotStalenessMillis()))
+        .build();
+  }
+
 }
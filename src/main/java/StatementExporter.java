@@ -0,0 +1,75 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+import dao.AccountDao;
+import lombok.RequiredArgsConstructor;
+import model.Transaction;
+
+/**
+ * A class that exports the statement of an account for a range of days, e.g. for a customer or an audit. <br/>
+ * The entries are streamed from the database to a CSV file with {@code id,timestamp,type,amount,counterparty} lines,
+ * oldest first, so the size of the statement doesn't matter. The days are taken in the given time zone.
+ */
+@RequiredArgsConstructor
+public class StatementExporter {
+
+  private final AccountDao accountDao;
+  private final ZoneId     zone;
+
+  /**
+   * Export the statement and print how many entries were written.
+   *
+   * @param from
+   *     The first day of the statement.
+   * @param to
+   *     The last day of the statement, inclusive.
+   * @param output
+   *     The CSV file for the statement.
+   *
+   * @return The number of entries written.
+   */
+  public long export(String cardNumber, LocalDate from, LocalDate to, Path output) throws IOException {
+    long start = from.atStartOfDay(zone).toInstant().toEpochMilli();
+    long end = to.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+    long[] exported = new long[1];
+
+    try (BufferedWriter writer = Files.newBufferedWriter(output)) {
+      writer.write("id,timestamp,type,amount,counterparty");
+      writer.newLine();
+
+      accountDao.forEachTransaction(cardNumber, start, end, transaction -> {
+        try {
+          write(writer, transaction);
+          exported[0]++;
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+
+    System.out.printf("Transactions exported: %d%n", exported[0]);
+    return exported[0];
+  }
+
+  private static void write(BufferedWriter writer, Transaction transaction) throws IOException {
+    writer.write(Long.toString(transaction.id()));
+    writer.write(',');
+    writer.write(Instant.ofEpochMilli(transaction.timestamp()).toString());
+    writer.write(',');
+    writer.write(transaction.type().name());
+    writer.write(',');
+    writer.write(Integer.toString(transaction.amount()));
+    writer.write(',');
+    writer.write(transaction.counterparty());
+    writer.newLine();
+  }
+
+}
@@ -0,0 +1,83 @@
+package configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * This class represents the command line arguments, passed as {@code -name value} pairs.
+ */
+public class ApplicationArguments {
+
+  private final Map<String, String> options = new HashMap<>();
+
+  public ApplicationArguments(final String[] args) {
+    if (args.length % 2 != 0) {
+      throw new IllegalArgumentException("Every option should be followed by its value: " + String.join(" ", args));
+    }
+
+    for (int i = 0; i < args.length; i += 2) {
+      if (!args[i].startsWith("-")) {
+        throw new IllegalArgumentException("Option name should start with '-': " + args[i]);
+      }
+      options.put(args[i], args[i + 1]);
+    }
+  }
+
+  /**
+   * It checks if the option was passed.
+   *
+   * @param name
+   *     The option name, including the leading dash.
+   *
+   * @return true if the option is present.
+   */
+  public boolean has(String name) {
+    return options.containsKey(name);
+  }
+
+  /**
+   * It returns the option value, or the default value if the option was not passed.
+   */
+  public String get(String name, String defaultValue) {
+    return options.getOrDefault(name, defaultValue);
+  }
+
+  /**
+   * It returns the option value as an int, or the default value if the option was not passed.
+   */
+  public int getInt(String name, int defaultValue) {
+    return has(name) ? parse(name, Integer::parseInt) : defaultValue;
+  }
+
+  /**
+   * It returns the option value as a long, or the default value if the option was not passed.
+   */
+  public long getLong(String name, long defaultValue) {
+    return has(name) ? parse(name, Long::parseLong) : defaultValue;
+  }
+
+  /**
+   * It returns the option value as a double, or the default value if the option was not passed.
+   */
+  public double getDouble(String name, double defaultValue) {
+    return has(name) ? parse(name, Double::parseDouble) : defaultValue;
+  }
+
+  /**
+   * It returns the option value as an enum constant, ignoring the case, or the default value if the option was not
+   * passed.
+   */
+  public <E extends Enum<E>> E getEnum(String name, Class<E> type, E defaultValue) {
+    return has(name) ? parse(name, value -> Enum.valueOf(type, value.toUpperCase())) : defaultValue;
+  }
+
+  private <T> T parse(String name, Function<String, T> parser) {
+    try {
+      return parser.apply(options.get(name));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Wrong value of " + name + ": " + options.get(name), e);
+    }
+  }
+
+}
@@ -0,0 +1,192 @@
+package configuration;
+
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteConfig.Pragma;
+
+/**
+ * This class provides pooled connections to the SQLite database. <br/>
+ * SQLite allows a single writer at a time, so the pool holds exactly one read-write connection and a bounded number of
+ * read-only connections that can be used in parallel. <br/>
+ * Reads that may be stale can lease a snapshot connection instead, which stays in a read transaction between leases:
+ * in WAL mode it keeps reading the database as of the snapshot without waiting for anything, and skips starting a
+ * transaction for every read. A snapshot is used for at most the staleness bound; a background thread also ends the
+ * snapshots of idle connections after that long, since the WAL cannot be checkpointed past the oldest snapshot.
+ */
+public class ConnectionProvider implements AutoCloseable {
+
+  private final BlockingQueue<PooledConnection> writers;
+  private final BlockingQueue<PooledConnection> readers;
+  private final BlockingQueue<PooledConnection> snapshots;
+  private final long                            snapshotStalenessMillis;
+  private volatile boolean                      closed;
+
+  public ConnectionProvider(final String url, final SQLiteConfig config, final int readers) throws SQLException {
+    this(url, config, readers, 0, 0);
+  }
+
+  /**
+   * @param snapshotReaders
+   *     The number of snapshot connections, 0 leases the reader connections for the snapshot reads.
+   * @param snapshotStalenessMillis
+   *     The most milliseconds a snapshot is used for.
+   */
+  public ConnectionProvider(final String url, final SQLiteConfig config, final int readers, final int snapshotReaders,
+                            final long snapshotStalenessMillis) throws SQLException {
+    if (readers < 1) {
+      throw new IllegalArgumentException("There should be at least one reader connection: " + readers);
+    }
+
+    this.writers = new ArrayBlockingQueue<>(1);
+    this.readers = new ArrayBlockingQueue<>(readers);
+    this.snapshots = snapshotReaders > 0 ? new ArrayBlockingQueue<>(snapshotReaders) : null;
+    this.snapshotStalenessMillis = snapshotStalenessMillis;
+
+    writers.add(new PooledConnection(config.createConnection(url), this, PooledConnection.Kind.WRITER));
+
+    // The journal mode is stored in the database file and is switched by the writer, a read-only connection cannot do it
+    Properties readOnlyProperties = config.toProperties();
+    readOnlyProperties.remove(Pragma.JOURNAL_MODE.pragmaName);
+    SQLiteConfig readOnlyConfig = new SQLiteConfig(readOnlyProperties);
+    readOnlyConfig.setReadOnly(true);
+
+    for (int i = 0; i < readers; i++) {
+      this.readers.add(new PooledConnection(readOnlyConfig.createConnection(url), this, PooledConnection.Kind.READER));
+    }
+
+    for (int i = 0; i < snapshotReaders; i++) {
+      snapshots.add(new PooledConnection(readOnlyConfig.createConnection(url), this, PooledConnection.Kind.SNAPSHOT));
+    }
+
+    if (snapshots != null) {
+      Thread expiry = new Thread(this::expireSnapshots, "snapshot-expiry");
+      expiry.setDaemon(true);
+      expiry.start();
+    }
+  }
+
+  /**
+   * It leases the read-write connection, waiting while another caller holds it.
+   *
+   * @return The writer connection, which must be closed to return it to the pool.
+   */
+  public PooledConnection writer() throws SQLException {
+    return acquire(writers);
+  }
+
+  /**
+   * It leases one of the read-only connections, waiting while all of them are in use.
+   *
+   * @return A reader connection, which must be closed to return it to the pool.
+   */
+  public PooledConnection reader() throws SQLException {
+    return acquire(readers);
+  }
+
+  /**
+   * It leases one of the snapshot connections, waiting while all of them are in use, and takes a new snapshot if its
+   * snapshot is older than the staleness bound. Without snapshot connections it leases a reader connection.
+   *
+   * @return A connection reading a snapshot at most the staleness bound old, which must be closed to return it to the
+   *     pool.
+   */
+  public PooledConnection snapshot() throws SQLException {
+    if (snapshots == null) {
+      return reader();
+    }
+
+    PooledConnection connection = acquire(snapshots);
+
+    try {
+      connection.refreshSnapshot(System.currentTimeMillis(), snapshotStalenessMillis);
+      return connection;
+    } catch (SQLException e) {
+      connection.close();
+      throw e;
+    }
+  }
+
+  /**
+   * It closes all idle connections; connections that are still leased are closed when they are returned.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    drain(writers);
+    drain(readers);
+
+    if (snapshots != null) {
+      drain(snapshots);
+    }
+  }
+
+  void release(PooledConnection connection, PooledConnection.Kind kind) {
+    BlockingQueue<PooledConnection> pool = switch (kind) {
+      case WRITER -> writers;
+      case READER -> readers;
+      case SNAPSHOT -> snapshots;
+    };
+    pool.add(connection);
+
+    if (closed) {
+      drain(pool);
+    }
+  }
+
+  private PooledConnection acquire(BlockingQueue<PooledConnection> pool) throws SQLException {
+    if (closed) {
+      throw new SQLException("The connection pool is closed!");
+    }
+
+    try {
+      return pool.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for a connection!", e);
+    }
+  }
+
+  /**
+   * It ends the snapshots that are older than the staleness bound on the idle connections, every staleness bound.
+   */
+  private void expireSnapshots() {
+    long periodNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, snapshotStalenessMillis));
+
+    while (!closed) {
+      LockSupport.parkNanos(this, periodNanos);
+      long now = System.currentTimeMillis();
+
+      for (int i = snapshots.size(); i > 0 && !closed; i--) {
+        PooledConnection connection = snapshots.poll();
+
+        if (connection == null) {
+          break;
+        }
+
+        try {
+          if (connection.getSnapshotMillis() != 0 && now - connection.getSnapshotMillis() > snapshotStalenessMillis) {
+            connection.endSnapshot();
+          }
+        } catch (SQLException e) {
+          System.err.println("Cannot end the database snapshot!");
+        }
+        release(connection, PooledConnection.Kind.SNAPSHOT);
+      }
+    }
+  }
+
+  private void drain(BlockingQueue<PooledConnection> pool) {
+    PooledConnection connection;
+
+    while ((connection = pool.poll()) != null) {
+      connection.closeConnection();
+    }
+  }
+
+}
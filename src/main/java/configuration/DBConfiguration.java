@@ -1,11 +1,9 @@
 package configuration;
 
-import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
-import org.sqlite.SQLiteDataSource;
-
 import lombok.Getter;
 
 /**
@@ -18,54 +16,201 @@ public class DBConfiguration {
                                                    id INTEGER PRIMARY KEY,
                                                    number TEXT,
                                                    pin TEXT,
-                                                   balance INTEGER DEFAULT 0)""";
+                                                   balance INTEGER DEFAULT 0,
+                                                   lsn INTEGER NOT NULL DEFAULT 0)""";
+
+  private static final String CREATE_TRANSACTIONS_TABLE_QUERY = """
+                                                                CREATE TABLE IF NOT EXISTS transactions(
+                                                                id INTEGER PRIMARY KEY,
+                                                                number TEXT NOT NULL,
+                                                                timestamp INTEGER NOT NULL,
+                                                                type TEXT NOT NULL,
+                                                                amount INTEGER NOT NULL,
+                                                                counterparty TEXT NOT NULL DEFAULT '')""";
+
+  private static final String CREATE_LOCKOUT_TABLE_QUERY = """
+                                                           CREATE TABLE IF NOT EXISTS lockout(
+                                                           number TEXT PRIMARY KEY,
+                                                           until INTEGER NOT NULL)""";
+
+  private static final String CREATE_CARD_SEQUENCE_TABLE_QUERY = """
+                                                                 CREATE TABLE IF NOT EXISTS card_sequence(
+                                                                 sequence_key INTEGER PRIMARY KEY,
+                                                                 position INTEGER NOT NULL)""";
+
+  private static final String CREATE_PENDING_TRANSFER_TABLE_QUERY = """
+                                                                    CREATE TABLE IF NOT EXISTS pending_transfer(
+                                                                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                                                                    from_number TEXT NOT NULL,
+                                                                    to_number TEXT NOT NULL,
+                                                                    amount INTEGER NOT NULL,
+                                                                    timestamp INTEGER NOT NULL,
+                                                                    operation TEXT)""";
+
+  private static final String CREATE_APPLIED_TRANSFER_TABLE_QUERY = """
+                                                                    CREATE TABLE IF NOT EXISTS applied_transfer(
+                                                                    source INTEGER NOT NULL,
+                                                                    id INTEGER NOT NULL,
+                                                                    PRIMARY KEY (source, id)) WITHOUT ROWID""";
+
+  private static final String CREATE_SHARD_TABLE_QUERY = """
+                                                         CREATE TABLE IF NOT EXISTS shard(
+                                                         id INTEGER PRIMARY KEY CHECK (id = 0),
+                                                         position INTEGER NOT NULL,
+                                                         count INTEGER NOT NULL)""";
+
+  private static final String CREATE_OPERATION_KEY_TABLE_QUERY = """
+                                                                 CREATE TABLE IF NOT EXISTS operation_key(
+                                                                 number TEXT NOT NULL,
+                                                                 operation TEXT NOT NULL,
+                                                                 balance INTEGER NOT NULL,
+                                                                 expires INTEGER NOT NULL,
+                                                                 PRIMARY KEY (number, operation)) WITHOUT ROWID""";
+
+  private static final String CREATE_JOURNAL_CHECKPOINT_TABLE_QUERY = """
+                                                                      CREATE TABLE IF NOT EXISTS journal_checkpoint(
+                                                                      id INTEGER PRIMARY KEY CHECK (id = 0),
+                                                                      lsn INTEGER NOT NULL)""";
+
+  private static final String GET_COLUMNS_QUERY           = "PRAGMA table_info(account)";
+  private static final String ADD_LSN_QUERY               = "ALTER TABLE account ADD COLUMN lsn INTEGER NOT NULL DEFAULT 0";
+  private static final String GET_PENDING_COLUMNS_QUERY   = "PRAGMA table_info(pending_transfer)";
+  private static final String ADD_PENDING_OPERATION_QUERY = "ALTER TABLE pending_transfer ADD COLUMN operation TEXT";
+
+  private static final String CREATE_UNIQUE_NUMBER_INDEX_QUERY = "CREATE UNIQUE INDEX IF NOT EXISTS account_number_idx ON account(number)";
+  private static final String CREATE_NUMBER_INDEX_QUERY        = "CREATE INDEX IF NOT EXISTS account_number_idx ON account(number)";
+  private static final String CREATE_STATEMENT_INDEX_QUERY     = "CREATE INDEX IF NOT EXISTS transactions_number_time_idx ON transactions(number, timestamp, id)";
+  private static final String CREATE_EXPIRES_INDEX_QUERY       = "CREATE INDEX IF NOT EXISTS operation_key_expires_idx ON operation_key(expires)";
+
+  private static final String[] REPORTED_PRAGMAS = {
+      "journal_mode", "synchronous", "cache_size", "mmap_size", "temp_store", "busy_timeout"
+  };
 
-  private final SQLiteDataSource dataSource;
   @Getter
-  private       Connection       connection;
+  private ConnectionProvider connectionProvider;
 
-  public DBConfiguration(final SQLiteDataSource dataSource, final String dbName) {
-    this.dataSource = dataSource;
+  public DBConfiguration(final String dbName) {
+    this(dbName, DatabaseSettings.defaults());
+  }
 
+  public DBConfiguration(final String dbName, final DatabaseSettings settings) {
     if (dbName.contains(".s3db")) {
-      dataSource.setUrl("jdbc:sqlite:" + dbName);
-      dbConnectionAttempt();
+      dbConnectionAttempt("jdbc:sqlite:" + dbName, settings);
       createTable();
+      addColumns();
+      createIndexes();
+      logSettings();
     } else {
       throw new IllegalArgumentException("Wrong file extension: " + dbName);
     }
   }
 
   /**
-   * Try to get a connection from the data source, and if it fails, print an error message.
+   * Try to open the connection pool for the database, and if it fails, print an error message.
    */
-  public void dbConnectionAttempt() {
+  public void dbConnectionAttempt(String url, DatabaseSettings settings) {
     try {
-      connection = dataSource.getConnection();
+      connectionProvider = new ConnectionProvider(url, settings.toSqliteConfig(), settings.getReaders(),
+                                                  settings.getSnapshotReaders(), settings.getSnapshotStalenessMillis());
     } catch (SQLException e) {
       System.err.println("Cannot connect to database!");
     }
   }
 
   /**
-   * It creates a table in the database
+   * It creates the tables in the database: the accounts, the transactions of their statements, the cards locked after
+   * too many failed logins, the bookkeeping of the transfers between shards, the keys of the operations applied
+   * recently and the position of the transaction journal the database is known to hold.
    */
   public void createTable() {
-    try (Statement statement = connection.createStatement()) {
+    try (PooledConnection connection = connectionProvider.writer();
+         Statement statement = connection.getConnection().createStatement()) {
       statement.executeUpdate(CREATE_TABLE_QUERY);
+      statement.executeUpdate(CREATE_TRANSACTIONS_TABLE_QUERY);
+      statement.executeUpdate(CREATE_LOCKOUT_TABLE_QUERY);
+      statement.executeUpdate(CREATE_CARD_SEQUENCE_TABLE_QUERY);
+      statement.executeUpdate(CREATE_PENDING_TRANSFER_TABLE_QUERY);
+      statement.executeUpdate(CREATE_APPLIED_TRANSFER_TABLE_QUERY);
+      statement.executeUpdate(CREATE_SHARD_TABLE_QUERY);
+      statement.executeUpdate(CREATE_OPERATION_KEY_TABLE_QUERY);
+      statement.executeUpdate(CREATE_JOURNAL_CHECKPOINT_TABLE_QUERY);
     } catch (SQLException e) {
       System.err.println("Cannot create table in the database!");
     }
   }
 
   /**
-   * It closes the connection with the database
+   * It adds the columns that databases created by earlier versions don't have yet: the log sequence number of the last
+   * journaled change of the account, and the operation key of a pending transfer between shards.
    */
-  public void closeConnection() {
-    try {
-      connection.close();
+  public void addColumns() {
+    try (PooledConnection connection = connectionProvider.writer();
+         Statement statement = connection.getConnection().createStatement()) {
+      boolean hasLsn = false;
+
+      try (ResultSet resultSet = statement.executeQuery(GET_COLUMNS_QUERY)) {
+        while (resultSet.next()) {
+          hasLsn |= "lsn".equals(resultSet.getString("name"));
+        }
+      }
+
+      if (!hasLsn) {
+        statement.executeUpdate(ADD_LSN_QUERY);
+      }
+
+      boolean hasOperation = false;
+
+      try (ResultSet resultSet = statement.executeQuery(GET_PENDING_COLUMNS_QUERY)) {
+        while (resultSet.next()) {
+          hasOperation |= "operation".equals(resultSet.getString("name"));
+        }
+      }
+
+      if (!hasOperation) {
+        statement.executeUpdate(ADD_PENDING_OPERATION_QUERY);
+      }
+    } catch (SQLException e) {
+      System.err.println("Cannot add columns to the table in the database!");
+    }
+  }
+
+  /**
+   * It creates the indexes used by the account lookups, the statements and the expiry of the operation keys. <br/>
+   * Databases created before the index existed are migrated in place; if they already hold duplicate card numbers the
+   * unique constraint cannot be applied, so a plain index is created instead to keep the lookups fast.
+   */
+  public void createIndexes() {
+    try (PooledConnection connection = connectionProvider.writer();
+         Statement statement = connection.getConnection().createStatement()) {
+      try {
+        statement.executeUpdate(CREATE_UNIQUE_NUMBER_INDEX_QUERY);
+      } catch (SQLException e) {
+        System.err.println("Duplicate card numbers found, cannot create unique index on account number!");
+        statement.executeUpdate(CREATE_NUMBER_INDEX_QUERY);
+      }
+      statement.executeUpdate(CREATE_STATEMENT_INDEX_QUERY);
+      statement.executeUpdate(CREATE_EXPIRES_INDEX_QUERY);
+    } catch (SQLException e) {
+      System.err.println("Cannot create index in the database!");
+    }
+  }
+
+  /**
+   * It prints the settings the database actually runs with, as reported by SQLite itself.
+   */
+  public void logSettings() {
+    StringBuilder settings = new StringBuilder("Database settings:");
+
+    try (PooledConnection connection = connectionProvider.writer();
+         Statement statement = connection.getConnection().createStatement()) {
+      for (String pragma : REPORTED_PRAGMAS) {
+        try (ResultSet resultSet = statement.executeQuery("PRAGMA " + pragma)) {
+          settings.append(' ').append(pragma).append('=').append(resultSet.next() ? resultSet.getString(1) : "?");
+        }
+      }
+      System.err.println(settings);
     } catch (SQLException e) {
-      System.err.println("Error closing the connection with database!");
+      System.err.println("Cannot read the database settings!");
     }
   }
 
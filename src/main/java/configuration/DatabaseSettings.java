@@ -0,0 +1,75 @@
+package configuration;
+
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteConfig.JournalMode;
+import org.sqlite.SQLiteConfig.Pragma;
+import org.sqlite.SQLiteConfig.SynchronousMode;
+import org.sqlite.SQLiteConfig.TempStore;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * This class holds the tunable SQLite settings applied to every connection of the pool. <br/>
+ * The defaults favour concurrency: in WAL mode readers never block on the writer, and {@code synchronous=NORMAL} is
+ * still safe from corruption while syncing only on checkpoints.
+ */
+@Getter
+@Builder
+public class DatabaseSettings {
+
+  @Builder.Default
+  private final JournalMode     journalMode             = JournalMode.WAL;
+  @Builder.Default
+  private final SynchronousMode synchronous             = SynchronousMode.NORMAL;
+  /**
+   * Page cache size, in pages when positive and in KiB when negative, as in {@code PRAGMA cache_size}.
+   */
+  @Builder.Default
+  private final int             cacheSize               = -64_000;
+  @Builder.Default
+  private final long            mmapSize                = 256L * 1024 * 1024;
+  @Builder.Default
+  private final TempStore       tempStore               = TempStore.MEMORY;
+  @Builder.Default
+  private final int             busyTimeout             = 5_000;
+  @Builder.Default
+  private final int             readers                 = Runtime.getRuntime().availableProcessors();
+  /**
+   * Read-only connections that keep a snapshot of the database for the reads that may be stale, 0 serves them from
+   * the readers.
+   */
+  @Builder.Default
+  private final int             snapshotReaders         = 0;
+  /**
+   * The most milliseconds a snapshot is used for after it was taken.
+   */
+  @Builder.Default
+  private final long            snapshotStalenessMillis = 1_000;
+
+  /**
+   * It returns the default settings.
+   *
+   * @return The settings with every value left at its default.
+   */
+  public static DatabaseSettings defaults() {
+    return builder().build();
+  }
+
+  /**
+   * It converts the settings into the driver configuration used to open connections.
+   *
+   * @return A new SQLite configuration.
+   */
+  public SQLiteConfig toSqliteConfig() {
+    SQLiteConfig config = new SQLiteConfig();
+    config.setJournalMode(journalMode);
+    config.setSynchronous(synchronous);
+    config.setCacheSize(cacheSize);
+    config.setPragma(Pragma.MMAP_SIZE, String.valueOf(mmapSize));
+    config.setTempStore(tempStore);
+    config.setBusyTimeout(busyTimeout);
+    return config;
+  }
+
+}
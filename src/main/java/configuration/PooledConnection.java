@@ -0,0 +1,149 @@
+package configuration;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class represents a connection leased from the {@link ConnectionProvider}. <br/>
+ * Statements prepared through it are cached for the lifetime of the underlying connection, so callers must not close
+ * them. Closing the lease returns the connection to its pool. A snapshot connection stays in a read transaction
+ * between leases, so every lease reads the database as it was when the snapshot was taken.
+ */
+public class PooledConnection implements AutoCloseable {
+
+  /**
+   * The pools a connection belongs to.
+   */
+  enum Kind {
+    WRITER, READER, SNAPSHOT
+  }
+
+  private final Connection                     connection;
+  private final ConnectionProvider             provider;
+  private final Kind                           kind;
+  private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+  private long snapshotMillis;
+
+  PooledConnection(final Connection connection, final ConnectionProvider provider, final Kind kind) {
+    this.connection = connection;
+    this.provider = provider;
+    this.kind = kind;
+  }
+
+  /**
+   * It returns the cached statement for the given query, preparing it on the first use.
+   *
+   * @param sql
+   *     The query to prepare.
+   *
+   * @return The prepared statement bound to this connection.
+   */
+  public PreparedStatement prepare(String sql) throws SQLException {
+    PreparedStatement statement = statements.get(sql);
+
+    if (statement == null) {
+      statement = connection.prepareStatement(sql);
+      statements.put(sql, statement);
+    }
+
+    return statement;
+  }
+
+  /**
+   * It returns the underlying connection, e.g. to control transactions.
+   *
+   * @return The JDBC connection.
+   */
+  public Connection getConnection() {
+    return connection;
+  }
+
+  /**
+   * It starts a transaction, which lasts until {@link #commit()} is called. A transaction that is not committed when the
+   * connection is returned to the pool is rolled back.
+   */
+  public void beginTransaction() throws SQLException {
+    connection.setAutoCommit(false);
+  }
+
+  /**
+   * It commits the current transaction and switches the connection back to auto-commit mode.
+   */
+  public void commit() throws SQLException {
+    connection.commit();
+    connection.setAutoCommit(true);
+  }
+
+  /**
+   * It returns the time the snapshot of the connection was taken, or 0 if it has none.
+   */
+  public long getSnapshotMillis() {
+    return snapshotMillis;
+  }
+
+  /**
+   * It returns the connection to the pool, rolling back a transaction that was left open together with the statement
+   * batches it did not execute. A snapshot connection keeps its read transaction.
+   */
+  @Override
+  public void close() {
+    try {
+      if (kind != Kind.SNAPSHOT && !connection.getAutoCommit()) {
+        for (PreparedStatement statement : statements.values()) {
+          statement.clearBatch();
+        }
+        connection.rollback();
+        connection.setAutoCommit(true);
+      }
+    } catch (SQLException e) {
+      System.err.println("Cannot reset the connection with database!");
+    }
+    provider.release(this, kind);
+  }
+
+  /**
+   * It keeps the snapshot if it was taken at most the given milliseconds ago, and otherwise ends its read transaction
+   * and starts a new one. The new snapshot is taken by the first read, so its time is when this method returns at the
+   * latest.
+   */
+  void refreshSnapshot(long now, long stalenessMillis) throws SQLException {
+    if (snapshotMillis != 0 && now - snapshotMillis <= stalenessMillis) {
+      return;
+    }
+
+    endSnapshot();
+    connection.setAutoCommit(false);
+    snapshotMillis = now;
+  }
+
+  /**
+   * It ends the read transaction of the snapshot, so the database doesn't keep the old pages for it.
+   */
+  void endSnapshot() throws SQLException {
+    if (!connection.getAutoCommit()) {
+      connection.commit();
+      connection.setAutoCommit(true);
+    }
+    snapshotMillis = 0;
+  }
+
+  /**
+   * It closes the cached statements and the underlying connection.
+   */
+  void closeConnection() {
+    try {
+      for (PreparedStatement statement : statements.values()) {
+        statement.close();
+      }
+      statements.clear();
+      connection.close();
+    } catch (SQLException e) {
+      System.err.println("Error closing the connection with database!");
+    }
+  }
+
+}
@@ -0,0 +1,264 @@
+package dao;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class dumps the accounts of the databases into a compact binary archive and restores them from it. <br/>
+ * The archive starts with a magic number, a version and the checkpoint of the transaction journal, followed by one
+ * record per account: its length as a varint, the card number packed into 8 bytes, the length of the PIN hash as a
+ * varint followed by the hash, the balance as a zigzag varint and the log sequence number of the last journaled change
+ * as a varint. A record of length 0 ends the archive, followed by the number of accounts in 8 bytes, so a truncated
+ * archive is detected. A card number is packed like the keys of the {@link BalanceLedger}. <br/>
+ * The sequence numbers and the checkpoint are restored with the accounts, so the journal of the exported databases can
+ * be replayed over the restored ones like over the originals: only the changes they don't hold are applied. <br/>
+ * Both directions stream the accounts through a direct buffer of a file channel, so the memory used doesn't grow with
+ * the number of accounts. The accounts are restored into empty databases, routed to the shards like
+ * {@link ShardedAccountDao} does, each in a single transaction.
+ */
+public class AccountArchive {
+
+  private static final long MAGIC       = 0x42414E4B41434354L; // "BANKACCT"
+  private static final byte VERSION     = 2;
+  private static final int  BUFFER_SIZE = 1 << 20;
+  private static final int  MAX_RECORD  = 1 << 16;
+
+  private final List<SqliteAccountDao> databases;
+  private final int                    batchSize;
+
+  /**
+   * @param databases
+   *     The databases, the shards in their order if there are several.
+   * @param batchSize
+   *     The number of rows sent to the database in one JDBC batch when restoring.
+   */
+  public AccountArchive(final List<SqliteAccountDao> databases, final int batchSize) {
+    this.databases = List.copyOf(databases);
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * This method writes every account of the databases into the archive, replacing the file.
+   *
+   * @return The number of accounts exported.
+   */
+  public long export(Path file) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    long[] count = new long[1];
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+      long checkpoint = 0;
+
+      for (SqliteAccountDao database : databases) {
+        checkpoint = Math.max(checkpoint, database.getJournalCheckpoint());
+      }
+
+      buffer.putLong(MAGIC).put(VERSION).putLong(checkpoint);
+
+      for (SqliteAccountDao database : databases) {
+        database.readAccounts(account -> {
+          try {
+            long cardNumber = pack(account.cardNumber());
+            byte[] pin = account.pin().getBytes(StandardCharsets.UTF_8);
+            long balance = Integer.toUnsignedLong(zigzag(account.balance()));
+            int length = Long.BYTES + varintSize(pin.length) + pin.length + varintSize(balance)
+                         + varintSize(account.lsn());
+
+            if (buffer.remaining() < varintSize(length) + length) {
+              drain(channel, buffer);
+            }
+
+            putVarint(buffer, length);
+            buffer.putLong(cardNumber);
+            putVarint(buffer, pin.length);
+            buffer.put(pin);
+            putVarint(buffer, balance);
+            putVarint(buffer, account.lsn());
+            count[0]++;
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+      }
+
+      putVarint(buffer, 0);
+      buffer.putLong(count[0]);
+      drain(channel, buffer);
+      channel.force(false);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } catch (SQLException e) {
+      throw new IOException("Cannot read the accounts! " + e.getMessage(), e);
+    }
+    return count[0];
+  }
+
+  /**
+   * This method restores the accounts of the archive into the databases, which must have no accounts. Several
+   * databases become the shards in their order. A database failure or a damaged archive rolls every database back that
+   * was not committed yet.
+   *
+   * @return The number of accounts restored.
+   */
+  public long restore(Path file) throws IOException {
+    List<AccountRestore> restores = new ArrayList<>(databases.size());
+
+    if (databases.size() > 1) {
+      try {
+        // The shards remember their positions, so they are opened in the same order afterwards
+        new ShardedAccountDao(databases);
+      } catch (IllegalArgumentException e) {
+        throw new IOException(e.getMessage(), e);
+      }
+    }
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      for (SqliteAccountDao database : databases) {
+        restores.add(database.restore(batchSize));
+      }
+
+      ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).flip();
+      fill(channel, buffer, Long.BYTES * 2 + 1);
+
+      if (buffer.getLong() != MAGIC || buffer.get() != VERSION) {
+        throw new IOException("The file is not an account archive of this version!");
+      }
+
+      long checkpoint = buffer.getLong();
+
+      long count = 0;
+
+      while (true) {
+        fill(channel, buffer, 5);
+        long length = getVarint(buffer);
+
+        if (length == 0) {
+          break;
+        }
+
+        if (length < Long.BYTES + 3 || length > MAX_RECORD) {
+          throw new IOException("The account archive is damaged!");
+        }
+
+        fill(channel, buffer, (int) length);
+        long end = buffer.position() + length;
+        String cardNumber = Long.toString(buffer.getLong());
+        byte[] pin = new byte[(int) Math.min(getVarint(buffer), MAX_RECORD)];
+        buffer.get(pin);
+        int balance = unzigzag((int) getVarint(buffer));
+        long lsn = getVarint(buffer);
+
+        if (buffer.position() != end) {
+          throw new IOException("The account archive is damaged!");
+        }
+
+        int shard = databases.size() > 1 ? ShardedAccountDao.shardOf(cardNumber, databases.size()) : 0;
+        restores.get(shard).add(cardNumber, new String(pin, StandardCharsets.UTF_8), balance, lsn);
+        count++;
+      }
+
+      fill(channel, buffer, Long.BYTES);
+
+      if (buffer.getLong() != count) {
+        throw new IOException("The account archive is damaged!");
+      }
+
+      for (AccountRestore restore : restores) {
+        restore.finish(checkpoint);
+      }
+      return count;
+    } catch (SQLException e) {
+      throw new IOException("Cannot restore the accounts! " + e.getMessage(), e);
+    } catch (RuntimeException e) {
+      throw new IOException("The account archive is damaged!", e);
+    } finally {
+      restores.forEach(AccountRestore::close);
+    }
+  }
+
+  private static long pack(String cardNumber) throws IOException {
+    long key = BalanceLedger.key(cardNumber);
+
+    if (key == BalanceLedger.MISSING) {
+      throw new IOException("Cannot archive the card number " + cardNumber + "!");
+    }
+    return key;
+  }
+
+  private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * It reads from the channel until the buffer holds at least the wanted bytes, or the rest of the file if it is
+   * shorter; the reads that follow detect a truncated file.
+   */
+  private static void fill(FileChannel channel, ByteBuffer buffer, int wanted) throws IOException {
+    if (buffer.remaining() >= wanted) {
+      return;
+    }
+
+    buffer.compact();
+
+    while (buffer.position() < wanted) {
+      if (channel.read(buffer) < 0) {
+        break;
+      }
+    }
+    buffer.flip();
+
+    if (!buffer.hasRemaining()) {
+      throw new EOFException("The account archive is truncated!");
+    }
+  }
+
+  private static void putVarint(ByteBuffer buffer, long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer.put((byte) (value & 0x7F | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  private static long getVarint(ByteBuffer buffer) throws IOException {
+    long value = 0;
+
+    for (int shift = 0; shift < Long.SIZE; shift += 7) {
+      byte b = buffer.get();
+      value |= (b & 0x7FL) << shift;
+
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new IOException("The account archive is damaged!");
+  }
+
+  private static int varintSize(long value) {
+    return value == 0 ? 1 : (Long.SIZE - Long.numberOfLeadingZeros(value) + 6) / 7;
+  }
+
+  private static int zigzag(int value) {
+    return value << 1 ^ value >> 31;
+  }
+
+  private static int unzigzag(int value) {
+    return value >>> 1 ^ -(value & 1);
+  }
+
+}
@@ -0,0 +1,73 @@
+package dao;
+
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+
+import model.TransferResult;
+import model.TransferStatus;
+
+/**
+ * This class represents a write queued for the {@link CommandQueueAccountDao}. The commands are the slots of its ring
+ * buffer, allocated once and filled again for every write; the future is the only object made per write. The future
+ * of every kind of write gets a transfer result: the balance if the write was applied, otherwise the status saying
+ * why not.
+ */
+final class AccountCommand {
+
+  /**
+   * The kinds of writes.
+   */
+  enum Type {
+    DEPOSIT, TRANSFER, CLOSE
+  }
+
+  Type                              type;
+  String                            cardNumber;
+  String                            toCardNumber;
+  int                               amount;
+  String                            operationKey;
+  OptionalInt                       result;
+  TransferStatus                    status;
+  CompletableFuture<TransferResult> future;
+
+  void set(Type type, String cardNumber, String toCardNumber, int amount, String operationKey,
+           CompletableFuture<TransferResult> future) {
+    this.type = type;
+    this.cardNumber = cardNumber;
+    this.toCardNumber = toCardNumber;
+    this.amount = amount;
+    this.operationKey = operationKey;
+    this.result = OptionalInt.empty();
+    this.status = TransferStatus.FAILED;
+    this.future = future;
+  }
+
+  /**
+   * It completes the future with the result and drops the references, so the slot doesn't keep them alive.
+   */
+  void complete() {
+    TransferResult completedResult = result.isPresent()
+                                     ? TransferResult.success(result.getAsInt())
+                                     : TransferResult.refused(status);
+    clear().complete(completedResult);
+  }
+
+  /**
+   * It completes the future with the failure and drops the references.
+   */
+  void fail(Throwable failure) {
+    clear().completeExceptionally(failure);
+  }
+
+  private CompletableFuture<TransferResult> clear() {
+    CompletableFuture<TransferResult> completed = future;
+
+    cardNumber = null;
+    toCardNumber = null;
+    operationKey = null;
+    result = null;
+    future = null;
+    return completed;
+  }
+
+}
@@ -1,120 +1,140 @@
 package dao;
 
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import java.util.List;
 import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.function.Consumer;
 
-import configuration.DBConfiguration;
-import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 import model.Account;
-import model.Card;
+import model.ReadConsistency;
+import model.Transaction;
+import model.Transfer;
+import model.TransferResult;
+import model.TransferStatus;
 
 /**
- * This class represents an data access object for account.
+ * This interface represents an data access object for account. <br/>
+ * {@link SqliteAccountDao} stores the accounts, the other implementations decorate it.
  */
-@RequiredArgsConstructor
-public class AccountDao {
+public interface AccountDao extends AutoCloseable {
 
-  private static final String GET_ACCOUNT_QUERY        = "SELECT number, pin, balance FROM account WHERE number = ? AND pin = ?";
-  private static final String ACCOUNT_IS_PRESENT_QUERY = "SELECT number FROM account WHERE number = ?";
-  private static final String CREATE_ACCOUNT_QUERY     = "INSERT INTO account (number, pin) VALUES (?, ?)";
-  private static final String UPDATE_ACCOUNT_QUERY     = "UPDATE account SET balance = balance + ? WHERE number = ?";
-  private static final String DELETE_ACCOUNT_QUERY     = "DELETE FROM account WHERE number = ?";
+  /**
+   * This method returns an account by its number and pin.
+   */
+  Optional<Account> get(String cardNumber, String cardPIN);
 
-  @Getter
-  private final DBConfiguration dbConfiguration;
+  /**
+   * This method returns an account as it is stored, with the hash of its PIN in place of the PIN, without checking the
+   * PIN. A cache in front of the database verifies the logins against this hash.
+   *
+   * @return The stored account, or empty if there is no such account.
+   */
+  Optional<Account> getStored(String cardNumber);
 
   /**
-   * This method returns an account by its number and pin.
+   * This method returns the balance of an account, without checking its PIN. A snapshot read may miss the writes of
+   * the last moments, up to the staleness bound of the database, but doesn't compete with the other reads.
+   *
+   * @return The balance, or empty if there is no such account.
+   */
+  OptionalInt getBalance(String cardNumber, ReadConsistency consistency);
+
+  /**
+   * This method checks if an account with the given number exists.
+   */
+  boolean contains(String cardNumber);
+
+  /**
+   * This method returns the number of accounts.
+   */
+  long count();
+
+  /**
+   * This method passes the card number of every account to the action, without loading all of them into memory.
+   */
+  void forEachCardNumber(Consumer<String> action);
+
+  /**
+   * This method creates an account.
+   *
+   * @return false if the account was not created, e.g. because its card number is already taken.
+   */
+  boolean save(Account account);
+
+  /**
+   * This method creates the accounts in one go, skipping those whose card number is already taken.
    *
-   * @param cardNumber
-   * @param cardPIN
+   * @return The accounts that were created.
+   */
+  List<Account> saveAll(List<Account> accounts);
+
+  /**
+   * This method adds the income to the account balance.
    *
-   * @return
-   */
-  public Optional<Account> get(String cardNumber, String cardPIN) {
-    try (PreparedStatement statement = dbConfiguration.getConnection().prepareStatement(GET_ACCOUNT_QUERY)) {
-      statement.setString(1, cardNumber);
-      statement.setString(2, cardPIN);
-      ResultSet resultSet = statement.executeQuery();
-
-      if (resultSet.next()) {
-        int balance = resultSet.getInt("balance");
-        Account resultAccount = new Account(new Card(cardNumber, cardPIN), balance);
-        return Optional.of(resultAccount);
-      }
-    } catch (SQLException e) {
-      System.err.println("Wrong input!");
-    }
-    return Optional.empty();
-  }
-
-  /**
-   * This method checks if an account with the given number is present in the database.
+   * @return The new balance, or empty if there is no such account.
+   */
+  OptionalInt update(String cardNumber, int income);
+
+  /**
+   * This method adds the income to the account balance once per operation key: a call with a key that was applied to
+   * the card recently returns the balance of that call without changing anything, so a client can retry it safely.
+   *
+   * @param operationKey
+   *     The key the client picked for the operation, or null to apply it anyway.
    *
-   * @param cardNumber
+   * @return The new balance, or empty if there is no such account.
+   */
+  OptionalInt update(String cardNumber, int income, String operationKey);
+
+  /**
+   * This method transfers money between two accounts atomically.
    *
-   * @return boolean
+   * @return The status of the transfer with the new balance of the sender if it was made.
    */
-  public boolean contains(String cardNumber) {
-    try (PreparedStatement statement = dbConfiguration.getConnection().prepareStatement(ACCOUNT_IS_PRESENT_QUERY)) {
-      statement.setString(1, cardNumber);
-      ResultSet resultSet = statement.executeQuery();
+  TransferResult transfer(String fromCardNumber, String toCardNumber, int amount);
 
-      if (resultSet.next()) {
-        return true;
-      }
-    } catch (SQLException e) {
-      e.printStackTrace();
-    }
-    return false;
-  }
+  /**
+   * This method transfers money between two accounts atomically, once per operation key of the sender, like
+   * {@link #update(String, int, String)}.
+   *
+   * @return The status of the transfer with the new balance of the sender, or the balance recorded for the key.
+   */
+  TransferResult transfer(String fromCardNumber, String toCardNumber, int amount, String operationKey);
 
   /**
-   * This method creates an account in the database.
+   * This method applies a batch of transfers in order, a transfer that cannot be made doesn't affect the others.
    *
-   * @param account
+   * @return The status of every transfer, in the same order.
    */
-  public void save(Account account) {
-    try (PreparedStatement statement = dbConfiguration.getConnection().prepareStatement(CREATE_ACCOUNT_QUERY)) {
-      statement.setString(1, account.getCard().number());
-      statement.setString(2, account.getCard().pin());
-      statement.executeUpdate();
-    } catch (SQLException e) {
-      e.printStackTrace();
-    }
-  }
+  List<TransferStatus> transfer(List<Transfer> transfers);
 
   /**
-   * This method updates an account in the database.
+   * This method returns a page of the account statement, newest first. The next page is the one before the last entry
+   * of the previous page, so reading a page costs the same however long the statement is.
    *
-   * @param cardNumber
-   * @param income
+   * @param before
+   *     The last entry of the previous page, or null for the first page.
    */
-  public void update(String cardNumber, int income) {
-    try (PreparedStatement statement = dbConfiguration.getConnection().prepareStatement(UPDATE_ACCOUNT_QUERY)) {
-      statement.setString(1, String.valueOf(income));
-      statement.setString(2, cardNumber);
-      statement.executeUpdate();
-    } catch (SQLException e) {
-      System.err.println("Cannot update account!");
-    }
-  }
+  List<Transaction> getStatement(String cardNumber, Transaction before, int limit);
 
   /**
-   * This method deletes an account from the database.
+   * This method passes the statement entries of the account from the given time, inclusive, to the given time,
+   * exclusive, oldest first, without loading all of them into memory. The entries may be read from a snapshot, like
+   * {@link ReadConsistency#SNAPSHOT} reads.
+   */
+  void forEachTransaction(String cardNumber, long from, long to, Consumer<Transaction> action);
+
+  /**
+   * This method deletes an account.
    *
-   * @param account
-   */
-  public void delete(Account account) {
-    try (PreparedStatement statement = dbConfiguration.getConnection().prepareStatement(DELETE_ACCOUNT_QUERY)) {
-      statement.setString(1, account.getCard().number());
-      statement.executeUpdate();
-    } catch (SQLException e) {
-      System.err.println("Cannot delete account!");
-    }
-  }
+   * @return true if the account was deleted by this call, false if it was missing, e.g. closed concurrently.
+   */
+  boolean delete(Account account);
+
+  /**
+   * This method releases the resources held by the data access object.
+   */
+  @Override
+  void close();
 
 }
@@ -0,0 +1,112 @@
+package dao;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class represents a fixed set of locks shared by all card numbers, a card always maps to the same stripe. <br/>
+ * Several cards are locked in ascending stripe order, and a stripe that two of them share is locked once, so threads
+ * that lock overlapping cards in any order cannot deadlock. Cards on different stripes don't block each other.
+ */
+public class AccountLocks {
+
+  private final ReentrantLock[] stripes;
+
+  /**
+   * @param stripes
+   *     The number of locks, rounded up to a power of two.
+   */
+  public AccountLocks(final int stripes) {
+    if (stripes < 1 || stripes > 1 << 30) {
+      throw new IllegalArgumentException("Wrong number of lock stripes: " + stripes);
+    }
+
+    int size = 1;
+
+    while (size < stripes) {
+      size <<= 1;
+    }
+
+    this.stripes = new ReentrantLock[size];
+
+    for (int i = 0; i < this.stripes.length; i++) {
+      this.stripes[i] = new ReentrantLock();
+    }
+  }
+
+  /**
+   * It locks the card until the returned handle is closed.
+   */
+  public Locked lock(String cardNumber) {
+    return lockStripes(new int[] {stripe(cardNumber)});
+  }
+
+  /**
+   * It locks both cards of a transfer until the returned handle is closed.
+   */
+  public Locked lock(String fromCardNumber, String toCardNumber) {
+    int from = stripe(fromCardNumber);
+    int to = stripe(toCardNumber);
+
+    if (from == to) {
+      return lockStripes(new int[] {from});
+    }
+    return lockStripes(new int[] {Math.min(from, to), Math.max(from, to)});
+  }
+
+  /**
+   * It locks all the cards until the returned handle is closed, e.g. the cards of a batch of transfers.
+   */
+  public Locked lockAll(Collection<String> cardNumbers) {
+    BitSet used = new BitSet(stripes.length);
+
+    for (String cardNumber : cardNumbers) {
+      used.set(stripe(cardNumber));
+    }
+    return lockStripes(used.stream().toArray());
+  }
+
+  /**
+   * It checks if the card is locked by the current thread.
+   */
+  public boolean isHeldByCurrentThread(String cardNumber) {
+    return stripes[stripe(cardNumber)].isHeldByCurrentThread();
+  }
+
+  int stripe(String cardNumber) {
+    int hash = cardNumber.hashCode();
+    return (hash ^ hash >>> 16) & (stripes.length - 1);
+  }
+
+  /**
+   * It locks the stripes, which must be sorted in ascending order.
+   */
+  private Locked lockStripes(int[] sorted) {
+    for (int stripe : sorted) {
+      stripes[stripe].lock();
+    }
+    return new Locked(sorted);
+  }
+
+  /**
+   * The locks held by the current thread, closing it unlocks them in the reverse order.
+   */
+  public final class Locked implements AutoCloseable {
+
+    private final int[] stripes;
+
+    private Locked(final int[] stripes) {
+      this.stripes = stripes;
+    }
+
+    @Override
+    public void close() {
+      for (int i = stripes.length - 1; i >= 0; i--) {
+        AccountLocks.this.stripes[stripes[i]].unlock();
+      }
+    }
+
+  }
+
+}
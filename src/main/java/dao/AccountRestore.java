@@ -0,0 +1,138 @@
+package dao;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import configuration.PooledConnection;
+
+/**
+ * This class restores accounts into an empty account table of one database, in a single transaction. <br/>
+ * The index on the card number is dropped first and built again when the restore is finished, which sorts the card
+ * numbers once instead of updating the index for every row; a card number that appears twice fails building it and
+ * rolls the whole restore back. The rows are sent to the database in JDBC batches. The sorter spills to temporary files
+ * during the restore, so building the index doesn't hold all card numbers in memory.
+ */
+final class AccountRestore implements AutoCloseable {
+
+  private static final String HAS_ACCOUNTS_QUERY        = "SELECT 1 FROM account LIMIT 1";
+  private static final String INSERT_ACCOUNT_QUERY      = "INSERT INTO account (number, pin, balance, lsn) VALUES (?, ?, ?, ?)";
+  private static final String SET_CHECKPOINT_QUERY      = "INSERT OR REPLACE INTO journal_checkpoint (id, lsn) VALUES (0, ?)";
+  private static final String DROP_NUMBER_INDEX_QUERY   = "DROP INDEX IF EXISTS account_number_idx";
+  private static final String CREATE_NUMBER_INDEX_QUERY = "CREATE UNIQUE INDEX account_number_idx ON account(number)";
+  private static final String CHECKPOINT_QUERY          = "PRAGMA wal_checkpoint(TRUNCATE)";
+  private static final String GET_TEMP_STORE_QUERY      = "PRAGMA temp_store";
+  private static final String SET_TEMP_STORE_QUERY      = "PRAGMA temp_store = ";
+  private static final int    TEMP_STORE_FILE           = 1;
+
+  private final PooledConnection  connection;
+  private final int               batchSize;
+  private final int               tempStore;
+  private final PreparedStatement insert;
+
+  private int     batched;
+  private long    restored;
+  private boolean finished;
+
+  /**
+   * It checks that the account table is empty, and begins the transaction without the index on the card number.
+   */
+  AccountRestore(final PooledConnection connection, final int batchSize) throws SQLException {
+    this.connection = connection;
+    this.batchSize = batchSize;
+
+    try (Statement statement = connection.getConnection().createStatement()) {
+      try (ResultSet resultSet = statement.executeQuery(GET_TEMP_STORE_QUERY)) {
+        resultSet.next();
+        this.tempStore = resultSet.getInt(1);
+      }
+      statement.execute(SET_TEMP_STORE_QUERY + TEMP_STORE_FILE);
+      connection.beginTransaction();
+
+      try (ResultSet resultSet = statement.executeQuery(HAS_ACCOUNTS_QUERY)) {
+        if (resultSet.next()) {
+          throw new SQLException("The database has accounts already!");
+        }
+      }
+
+      statement.executeUpdate(DROP_NUMBER_INDEX_QUERY);
+      this.insert = connection.getConnection().prepareStatement(INSERT_ACCOUNT_QUERY);
+    } catch (SQLException e) {
+      connection.close();
+      throw e;
+    }
+  }
+
+  /**
+   * It adds the account, with the PIN hash and the log sequence number of its last journaled change as they were
+   * stored.
+   */
+  void add(String cardNumber, String pin, int balance, long lsn) throws SQLException {
+    insert.setString(1, cardNumber);
+    insert.setString(2, pin);
+    insert.setInt(3, balance);
+    insert.setLong(4, lsn);
+    insert.addBatch();
+    restored++;
+
+    if (++batched == batchSize) {
+      insert.executeBatch();
+      batched = 0;
+    }
+  }
+
+  /**
+   * It inserts the remaining rows, builds the index on the card number, records the checkpoint of the transaction
+   * journal and commits. The whole database was written to the write-ahead log, so it is copied into the database file
+   * and the log is emptied right away.
+   *
+   * @param checkpoint
+   *     The sequence number of the journal the exported database held, 0 without a journal.
+   *
+   * @return The number of accounts restored.
+   */
+  long finish(long checkpoint) throws SQLException {
+    insert.executeBatch();
+
+    try (Statement statement = connection.getConnection().createStatement()) {
+      statement.executeUpdate(CREATE_NUMBER_INDEX_QUERY);
+    }
+
+    PreparedStatement journalCheckpoint = connection.prepare(SET_CHECKPOINT_QUERY);
+    journalCheckpoint.setLong(1, checkpoint);
+    journalCheckpoint.executeUpdate();
+
+    connection.commit();
+    finished = true;
+
+    try (Statement statement = connection.getConnection().createStatement()) {
+      statement.execute(CHECKPOINT_QUERY);
+    }
+    return restored;
+  }
+
+  /**
+   * It rolls the restore back unless it was finished, and returns the connection to the pool with its former
+   * temporary storage.
+   */
+  @Override
+  public void close() {
+    try {
+      insert.close();
+
+      if (!finished) {
+        connection.getConnection().rollback();
+        connection.getConnection().setAutoCommit(true);
+      }
+
+      try (Statement statement = connection.getConnection().createStatement()) {
+        statement.execute(SET_TEMP_STORE_QUERY + tempStore);
+      }
+    } catch (SQLException e) {
+      System.err.println("Cannot finish restoring the accounts! " + e.getMessage());
+    }
+    connection.close();
+  }
+
+}
@@ -0,0 +1,558 @@
+package dao;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * This class represents the balances of all accounts in primitive arrays, keyed by the card number as a long. <br/>
+ * It is an open-addressing hash map with linear probing: the card numbers, PINs and balances of one slot sit at the
+ * same index of three long arrays, so a lookup doesn't box or allocate anything. A numeric PIN is kept as a number, any
+ * other PIN, such as a hash, as a string at the same index of a fourth array; the PINs are checked by the caller. Every
+ * change marks the card as dirty until {@link #drainChanges()} hands it to the persistence. <br/>
+ * Writes take the write lock of a {@link StampedLock}; reads are optimistic and only take the read lock if a write
+ * happened meanwhile. The arrays are replaced together when the table grows, so an optimistic read always sees arrays
+ * of the same size.
+ */
+class BalanceLedger {
+
+  /**
+   * The balance of a card that is not in the ledger, balances are never negative.
+   */
+  static final long MISSING     = -1;
+  /**
+   * The result of a transfer whose sender can't cover the amount.
+   */
+  static final long NOT_ENOUGH  = -2;
+  /**
+   * The result of a change that would take a balance over {@link #MAX_BALANCE}.
+   */
+  static final long TOO_LARGE   = -3;
+  /**
+   * The largest balance, the data access objects return balances as ints.
+   */
+  static final long MAX_BALANCE = Integer.MAX_VALUE;
+
+  private static final long  EMPTY       = 0;
+  private static final long  OTHER_PIN   = -1;
+  private static final float LOAD_FACTOR = 0.5f;
+
+  private final StampedLock lock = new StampedLock();
+
+  private Table  table;
+  private int    size;
+  private long[] dirtyKeys = new long[1_024];
+  private int    dirtyCount;
+
+  BalanceLedger(final int expectedSize) {
+    int capacity = 16;
+
+    while (capacity < expectedSize / LOAD_FACTOR && capacity < 1 << 30) {
+      capacity <<= 1;
+    }
+    table = new Table(capacity);
+  }
+
+  /**
+   * It converts the card number into the key of the ledger.
+   *
+   * @return The card number as a long, or {@link #MISSING} if it is not made of 1 to 18 digits without leading zeros.
+   */
+  static long key(String cardNumber) {
+    int length = cardNumber.length();
+
+    if (length == 0 || length > 18 || cardNumber.charAt(0) == '0') {
+      return MISSING;
+    }
+
+    long key = 0;
+
+    for (int i = 0; i < length; i++) {
+      int digit = cardNumber.charAt(i) - '0';
+
+      if (digit < 0 || digit > 9) {
+        return MISSING;
+      }
+      key = key * 10 + digit;
+    }
+    return key;
+  }
+
+  /**
+   * It adds the account unless the card is already in the ledger.
+   *
+   * @return true if the account was added.
+   */
+  boolean put(long key, String pin, long balance) {
+    return add(key, pin, balance, true);
+  }
+
+  /**
+   * It loads an account that is already persisted, so it is not marked as dirty.
+   */
+  void load(long key, String pin, long balance) {
+    add(key, pin, balance, false);
+  }
+
+  boolean contains(long key) {
+    long stamp = lock.tryOptimisticRead();
+    boolean present = slot(key) >= 0;
+
+    if (!lock.validate(stamp)) {
+      stamp = lock.readLock();
+
+      try {
+        present = slot(key) >= 0;
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+    return present;
+  }
+
+  /**
+   * It returns the balance of the card.
+   *
+   * @return The balance, or {@link #MISSING} if the card is not in the ledger.
+   */
+  long balance(long key) {
+    long stamp = lock.tryOptimisticRead();
+    long balance = balance(table, key);
+
+    if (!lock.validate(stamp)) {
+      stamp = lock.readLock();
+
+      try {
+        balance = balance(table, key);
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+    return balance;
+  }
+
+  /**
+   * It returns the PIN as it is stored, which is a hash unless it was stored by an earlier version. The slot is read
+   * optimistically like the balance, and the PIN is decoded only once the read is validated.
+   *
+   * @return The PIN, or null if the card is not in the ledger.
+   */
+  String pin(long key) {
+    long stamp = lock.tryOptimisticRead();
+    Table current = table;
+    int slot = slot(current, key);
+    long pin = slot < 0 ? EMPTY : current.pins[slot];
+    String otherPin = slot < 0 ? null : current.otherPins[slot];
+
+    if (!lock.validate(stamp)) {
+      stamp = lock.readLock();
+
+      try {
+        slot = slot(key);
+        pin = slot < 0 ? EMPTY : table.pins[slot];
+        otherPin = slot < 0 ? null : table.otherPins[slot];
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+
+    if (slot < 0) {
+      return null;
+    }
+    return pin == OTHER_PIN ? otherPin : decode(pin);
+  }
+
+  /**
+   * It adds the amount to the balance unless that takes it over {@link #MAX_BALANCE}. The action runs under the lock
+   * once the balance changed, e.g. to queue the statement entry, so {@link #drainChanges(Runnable)} sees both or none.
+   *
+   * @return The new balance, {@link #MISSING} if the card is not in the ledger or {@link #TOO_LARGE}.
+   */
+  long add(long key, long amount, Runnable applied) {
+    long stamp = lock.writeLock();
+
+    try {
+      int slot = slot(key);
+
+      if (slot < 0) {
+        return MISSING;
+      }
+
+      if (table.balances[slot] > MAX_BALANCE - amount) {
+        return TOO_LARGE;
+      }
+
+      table.balances[slot] += amount;
+      markDirty(slot);
+      applied.run();
+      return table.balances[slot];
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * It moves the amount between the cards if the sender can cover it and the recipient stays within
+   * {@link #MAX_BALANCE}, both legs are applied at once. The action runs under the lock once they are, as in
+   * {@link #add(long, long, Runnable)}.
+   *
+   * @return The new balance of the sender, {@link #MISSING} if either card is not in the ledger, {@link #NOT_ENOUGH} or
+   *     {@link #TOO_LARGE}.
+   */
+  long transfer(long from, long to, long amount, Runnable applied) {
+    long stamp = lock.writeLock();
+
+    try {
+      int sender = slot(from);
+      int recipient = slot(to);
+
+      if (sender < 0 || recipient < 0) {
+        return MISSING;
+      }
+
+      long[] balances = table.balances;
+
+      if (balances[sender] < amount) {
+        return NOT_ENOUGH;
+      }
+
+      if (balances[recipient] > MAX_BALANCE - amount) {
+        return TOO_LARGE;
+      }
+
+      balances[sender] -= amount;
+      balances[recipient] += amount;
+      markDirty(sender);
+      markDirty(recipient);
+      applied.run();
+      return balances[sender];
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * It removes the card, a removed card that is still dirty is persisted as deleted.
+   *
+   * @return true if the card was in the ledger.
+   */
+  boolean remove(long key) {
+    long stamp = lock.writeLock();
+
+    try {
+      int slot = slot(key);
+
+      if (slot < 0) {
+        return false;
+      }
+
+      if (!table.dirty[slot]) {
+        appendDirty(key);
+      }
+
+      delete(slot);
+      return true;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  int size() {
+    long stamp = lock.readLock();
+
+    try {
+      return size;
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * It returns a copy of the card numbers in the ledger.
+   */
+  long[] keys() {
+    long stamp = lock.readLock();
+
+    try {
+      long[] keys = new long[size];
+      int count = 0;
+
+      for (long key : table.keys) {
+        if (key != EMPTY) {
+          keys[count++] = key;
+        }
+      }
+      return keys;
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  int getDirtyCount() {
+    long stamp = lock.readLock();
+
+    try {
+      return dirtyCount;
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * It takes the cards changed since the previous call with their current state, and marks them as clean. The action
+   * runs under the same lock, e.g. to take the statement entries queued by the changes.
+   */
+  Changes drainChanges(Runnable drained) {
+    long stamp = lock.writeLock();
+
+    try {
+      drained.run();
+      Changes changes = new Changes(dirtyCount);
+
+      for (int i = 0; i < dirtyCount; i++) {
+        long key = dirtyKeys[i];
+        int slot = slot(key);
+
+        changes.keys[i] = key;
+
+        if (slot >= 0) {
+          table.dirty[slot] = false;
+          changes.present[i] = true;
+          changes.balances[i] = table.balances[slot];
+          changes.pins[i] = table.pins[slot] == OTHER_PIN ? table.otherPins[slot] : decode(table.pins[slot]);
+        }
+      }
+
+      dirtyCount = 0;
+      return changes;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * It marks the cards as dirty again, e.g. after their changes could not be persisted.
+   */
+  void restore(Changes changes) {
+    long stamp = lock.writeLock();
+
+    try {
+      for (int i = 0; i < changes.size; i++) {
+        int slot = slot(changes.keys[i]);
+
+        if (slot >= 0) {
+          markDirty(slot);
+        } else {
+          appendDirty(changes.keys[i]);
+        }
+      }
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  private boolean add(long key, String pin, long balance, boolean changed) {
+    long stamp = lock.writeLock();
+
+    try {
+      if (slot(key) >= 0) {
+        return false;
+      }
+
+      if (size + 1 > table.keys.length * LOAD_FACTOR) {
+        grow();
+      }
+
+      long encoded = encode(pin);
+      int slot = insert(table, key, encoded, encoded == OTHER_PIN ? pin : null, balance);
+      size++;
+
+      if (changed) {
+        markDirty(slot);
+      }
+      return true;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * It returns the balance of the card in the table, or {@link #MISSING}. The table is read once, so an optimistic read
+   * sees arrays of the same size.
+   */
+  private static long balance(Table table, long key) {
+    int slot = slot(table, key);
+    return slot < 0 ? MISSING : table.balances[slot];
+  }
+
+  private int slot(long key) {
+    return slot(table, key);
+  }
+
+  /**
+   * It returns the slot of the card, or -1. Called without a lock it may see a torn state, which the caller validates.
+   */
+  private static int slot(Table table, long key) {
+    long[] keys = table.keys;
+    int mask = keys.length - 1;
+
+    for (int slot = index(key, mask), probes = 0; probes <= mask; slot = slot + 1 & mask, probes++) {
+      long current = keys[slot];
+
+      if (current == key) {
+        return slot;
+      }
+
+      if (current == EMPTY) {
+        return -1;
+      }
+    }
+    return -1;
+  }
+
+  private static int insert(Table table, long key, long pin, String otherPin, long balance) {
+    long[] keys = table.keys;
+    int mask = keys.length - 1;
+    int slot = index(key, mask);
+
+    while (keys[slot] != EMPTY) {
+      slot = slot + 1 & mask;
+    }
+
+    keys[slot] = key;
+    table.pins[slot] = pin;
+    table.otherPins[slot] = otherPin;
+    table.balances[slot] = balance;
+    return slot;
+  }
+
+  /**
+   * It empties the slot and shifts the following entries of the probe sequence back, so no tombstones are needed.
+   */
+  private void delete(int slot) {
+    long[] keys = table.keys;
+    int mask = keys.length - 1;
+    int hole = slot;
+
+    for (int next = hole + 1 & mask; keys[next] != EMPTY; next = next + 1 & mask) {
+      int home = index(keys[next], mask);
+
+      if ((next - home & mask) >= (next - hole & mask)) {
+        keys[hole] = keys[next];
+        table.pins[hole] = table.pins[next];
+        table.otherPins[hole] = table.otherPins[next];
+        table.balances[hole] = table.balances[next];
+        table.dirty[hole] = table.dirty[next];
+        hole = next;
+      }
+    }
+
+    keys[hole] = EMPTY;
+    table.otherPins[hole] = null;
+    table.dirty[hole] = false;
+    size--;
+  }
+
+  private void grow() {
+    Table old = table;
+    Table grown = new Table(old.keys.length * 2);
+
+    for (int i = 0; i < old.keys.length; i++) {
+      if (old.keys[i] != EMPTY) {
+        grown.dirty[insert(grown, old.keys[i], old.pins[i], old.otherPins[i], old.balances[i])] = old.dirty[i];
+      }
+    }
+    table = grown;
+  }
+
+  private void markDirty(int slot) {
+    if (!table.dirty[slot]) {
+      table.dirty[slot] = true;
+      appendDirty(table.keys[slot]);
+    }
+  }
+
+  private void appendDirty(long key) {
+    if (dirtyCount == dirtyKeys.length) {
+      dirtyKeys = Arrays.copyOf(dirtyKeys, dirtyCount * 2);
+    }
+    dirtyKeys[dirtyCount++] = key;
+  }
+
+  private static int index(long key, int mask) {
+    long z = key * 0x9E3779B97F4A7C15L;
+    return (int) (z ^ z >>> 32) & mask;
+  }
+
+  /**
+   * It packs a PIN of up to 15 digits with its length, so leading zeros are kept, or returns {@link #OTHER_PIN}.
+   */
+  private static long encode(String pin) {
+    int length = pin.length();
+
+    if (length == 0 || length > 15) {
+      return OTHER_PIN;
+    }
+
+    long value = 0;
+
+    for (int i = 0; i < length; i++) {
+      int digit = pin.charAt(i) - '0';
+
+      if (digit < 0 || digit > 9) {
+        return OTHER_PIN;
+      }
+      value = value * 10 + digit;
+    }
+    return (long) length << 56 | value;
+  }
+
+  private static String decode(long pin) {
+    int length = (int) (pin >>> 56);
+    String digits = Long.toString(pin & (1L << 56) - 1);
+    return "0".repeat(length - digits.length()) + digits;
+  }
+
+  /**
+   * The arrays of the hash table, the card number, PIN and balance of a slot are at the same index. A PIN that is not a
+   * number is in {@code otherPins}, which is null at the slots of numeric PINs.
+   */
+  private static final class Table {
+
+    private final long[]    keys;
+    private final long[]    pins;
+    private final String[]  otherPins;
+    private final long[]    balances;
+    private final boolean[] dirty;
+
+    private Table(final int capacity) {
+      this.keys = new long[capacity];
+      this.pins = new long[capacity];
+      this.otherPins = new String[capacity];
+      this.balances = new long[capacity];
+      this.dirty = new boolean[capacity];
+    }
+
+  }
+
+  /**
+   * The cards changed since the previous drain, a card that is not present was deleted.
+   */
+  static final class Changes {
+
+    final int       size;
+    final long[]    keys;
+    final boolean[] present;
+    final long[]    balances;
+    final String[]  pins;
+
+    private Changes(final int size) {
+      this.size = size;
+      this.keys = new long[size];
+      this.present = new boolean[size];
+      this.balances = new long[size];
+      this.pins = new String[size];
+    }
+
+  }
+
+}
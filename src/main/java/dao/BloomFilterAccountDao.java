@@ -0,0 +1,190 @@
+package dao;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import model.Account;
+import model.ReadConsistency;
+import model.Transaction;
+import model.Transfer;
+import model.TransferResult;
+import model.TransferStatus;
+
+/**
+ * This class represents a filter of the issued card numbers in front of another account data access object. <br/>
+ * Lookups of a card number that was never issued, e.g. a mistyped recipient, are answered from memory without reaching
+ * the database; the few missing cards the filter lets through are checked by the database as before. The filter is
+ * filled by streaming the card numbers when it is created and is kept current when accounts are created or deleted.
+ */
+public class BloomFilterAccountDao implements AccountDao {
+
+  /**
+   * The filter is sized for this many times the accounts present at startup, so it keeps its false-positive rate while
+   * new cards are issued.
+   */
+  private static final int  GROWTH_FACTOR   = 2;
+  private static final long MINIMUM_ENTRIES = 100_000;
+
+  private final AccountDao          delegate;
+  private final CountingBloomFilter filter;
+
+  private final LongAdder rejected       = new LongAdder();
+  private final LongAdder falsePositives = new LongAdder();
+
+  public BloomFilterAccountDao(final AccountDao delegate, final double falsePositiveRate) {
+    this.delegate = delegate;
+    this.filter = new CountingBloomFilter(Math.max(delegate.count() * GROWTH_FACTOR, MINIMUM_ENTRIES), falsePositiveRate);
+
+    delegate.forEachCardNumber(filter::add);
+  }
+
+  @Override
+  public Optional<Account> get(String cardNumber, String cardPIN) {
+    if (!filter.mightContain(cardNumber)) {
+      return Optional.empty();
+    }
+    return delegate.get(cardNumber, cardPIN);
+  }
+
+  @Override
+  public Optional<Account> getStored(String cardNumber) {
+    if (!filter.mightContain(cardNumber)) {
+      return Optional.empty();
+    }
+    return delegate.getStored(cardNumber);
+  }
+
+  @Override
+  public OptionalInt getBalance(String cardNumber, ReadConsistency consistency) {
+    if (!filter.mightContain(cardNumber)) {
+      return OptionalInt.empty();
+    }
+    return delegate.getBalance(cardNumber, consistency);
+  }
+
+  @Override
+  public boolean contains(String cardNumber) {
+    if (!filter.mightContain(cardNumber)) {
+      rejected.increment();
+      return false;
+    }
+
+    boolean present = delegate.contains(cardNumber);
+
+    if (!present) {
+      falsePositives.increment();
+    }
+    return present;
+  }
+
+  @Override
+  public long count() {
+    return delegate.count();
+  }
+
+  @Override
+  public void forEachCardNumber(Consumer<String> action) {
+    delegate.forEachCardNumber(action);
+  }
+
+  /**
+   * It adds the card to the filter only if the database created it, a refused number is usually taken by an account
+   * the filter already counts.
+   */
+  @Override
+  public boolean save(Account account) {
+    if (!delegate.save(account)) {
+      return false;
+    }
+    filter.add(account.getCard().number());
+    return true;
+  }
+
+  @Override
+  public List<Account> saveAll(List<Account> accounts) {
+    List<Account> saved = delegate.saveAll(accounts);
+
+    for (Account account : saved) {
+      filter.add(account.getCard().number());
+    }
+    return saved;
+  }
+
+  @Override
+  public OptionalInt update(String cardNumber, int income) {
+    return delegate.update(cardNumber, income);
+  }
+
+  @Override
+  public OptionalInt update(String cardNumber, int income, String operationKey) {
+    return delegate.update(cardNumber, income, operationKey);
+  }
+
+  @Override
+  public TransferResult transfer(String fromCardNumber, String toCardNumber, int amount) {
+    if (!filter.mightContain(toCardNumber)) {
+      return TransferResult.refused(TransferStatus.NO_SUCH_RECIPIENT);
+    }
+    return delegate.transfer(fromCardNumber, toCardNumber, amount);
+  }
+
+  @Override
+  public TransferResult transfer(String fromCardNumber, String toCardNumber, int amount, String operationKey) {
+    if (!filter.mightContain(toCardNumber)) {
+      return TransferResult.refused(TransferStatus.NO_SUCH_RECIPIENT);
+    }
+    return delegate.transfer(fromCardNumber, toCardNumber, amount, operationKey);
+  }
+
+  @Override
+  public List<TransferStatus> transfer(List<Transfer> transfers) {
+    return delegate.transfer(transfers);
+  }
+
+  @Override
+  public List<Transaction> getStatement(String cardNumber, Transaction before, int limit) {
+    return delegate.getStatement(cardNumber, before, limit);
+  }
+
+  @Override
+  public void forEachTransaction(String cardNumber, long from, long to, Consumer<Transaction> action) {
+    delegate.forEachTransaction(cardNumber, from, to, action);
+  }
+
+  /**
+   * It removes the card from the filter only if this call deleted the account, so concurrent closings of the same card
+   * remove it once; removing a card that is not in the filter could hide another one.
+   */
+  @Override
+  public boolean delete(Account account) {
+    if (!delegate.delete(account)) {
+      return false;
+    }
+
+    filter.remove(account.getCard().number());
+    return true;
+  }
+
+  @Override
+  public void close() {
+    BloomFilterStats stats = getStats();
+    System.err.printf("Card filter: cards=%d memory=%d KiB hash functions=%d rejected=%d false positives=%d "
+                      + "false-positive rate=%.3f%% (expected %.3f%%)%n", stats.entries(), stats.memoryBytes() / 1024,
+                      stats.hashFunctions(), stats.rejected(), stats.falsePositives(),
+                      stats.observedFalsePositiveRate() * 100, stats.expectedFalsePositiveRate() * 100);
+    delegate.close();
+  }
+
+  /**
+   * It returns the memory footprint of the filter with its expected and observed false-positive rate.
+   */
+  public BloomFilterStats getStats() {
+    return new BloomFilterStats(filter.getEntries(), filter.getSize(), filter.getHashFunctions(),
+                                filter.getMemoryBytes(), filter.getExpectedFalsePositiveRate(), rejected.sum(),
+                                falsePositives.sum());
+  }
+
+}
@@ -0,0 +1,32 @@
+package dao;
+
+/**
+ * This record represents the state of the card number filter.
+ *
+ * @param entries
+ *     The number of cards in the filter.
+ * @param counters
+ *     The number of 4-bit counters.
+ * @param hashFunctions
+ *     The number of counters every card uses.
+ * @param memoryBytes
+ *     The memory taken by the counters.
+ * @param expectedFalsePositiveRate
+ *     The false-positive rate expected for the current number of cards.
+ * @param rejected
+ *     The lookups of cards the filter knew were missing, which didn't reach the database.
+ * @param falsePositives
+ *     The lookups of missing cards the filter let through to the database.
+ */
+public record BloomFilterStats(long entries, long counters, int hashFunctions, long memoryBytes,
+                               double expectedFalsePositiveRate, long rejected, long falsePositives) {
+
+  /**
+   * It returns the share of the missing cards the filter failed to reject.
+   */
+  public double observedFalsePositiveRate() {
+    long missing = rejected + falsePositives;
+    return missing == 0 ? 0 : (double) falsePositives / missing;
+  }
+
+}
@@ -0,0 +1,16 @@
+package dao;
+
+/**
+ * This record represents the counters of the account cache.
+ */
+public record CacheStats(long hits, long misses, long evictions, int size) {
+
+  /**
+   * It returns the share of lookups served from the cache.
+   */
+  public double hitRate() {
+    long lookups = hits + misses;
+    return lookups == 0 ? 0 : (double) hits / lookups;
+  }
+
+}
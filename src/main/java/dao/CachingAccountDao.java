@@ -0,0 +1,283 @@
+package dao;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import model.Account;
+import model.Card;
+import model.ReadConsistency;
+import model.Transaction;
+import model.Transfer;
+import model.TransferResult;
+import model.TransferStatus;
+import security.PinVerifier;
+
+/**
+ * This class represents a write-through cache in front of another account data access object. <br/>
+ * It keeps the most recently used accounts as card number -> (stored PIN hash, balance), so repeated logins and
+ * recipient checks don't reach the database. A login is verified against the stored hash by the {@link PinVerifier},
+ * whose keyed cache makes a repeated login with the right PIN cheap and keeps a wrong one slow. Every write goes to the
+ * database first and then drops the cached balance, which is read again with the hash on the next login; the existence
+ * of the account stays cached until the account is deleted or evicted.
+ */
+public class CachingAccountDao implements AccountDao {
+
+  private static final int STRIPES = 1_024;
+
+  private final AccountDao                           delegate;
+  private final PinVerifier                          pinVerifier;
+  private final LinkedHashMap<String, CachedAccount> accounts;
+
+  /**
+   * Every write to a card increments the counter of its stripe. A lookup that missed stores the value it read only if
+   * the counter did not change meanwhile, so it cannot overwrite a newer write with the balance it read before.
+   */
+  private final AtomicLongArray writes = new AtomicLongArray(STRIPES);
+
+  private final LongAdder hits      = new LongAdder();
+  private final LongAdder misses    = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  public CachingAccountDao(final AccountDao delegate, final PinVerifier pinVerifier, final int capacity) {
+    this.delegate = delegate;
+    this.pinVerifier = pinVerifier;
+    this.accounts = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CachedAccount> eldest) {
+        if (size() > capacity) {
+          evictions.increment();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  @Override
+  public Optional<Account> get(String cardNumber, String cardPIN) {
+    CachedAccount cached = lookup(cardNumber);
+
+    if (cached != null && cached.pinHash() != null && cached.balance() != null) {
+      hits.increment();
+    } else {
+      misses.increment();
+      long version = writes.get(stripe(cardNumber));
+      Optional<Account> stored = delegate.getStored(cardNumber);
+
+      if (stored.isEmpty()) {
+        return Optional.empty();
+      }
+
+      cached = new CachedAccount(stored.get().getCard().pin(), stored.get().getBalance());
+      store(cardNumber, cached, version);
+    }
+
+    if (!pinVerifier.verify(cardPIN, cached.pinHash())) {
+      return Optional.empty();
+    }
+    return Optional.of(new Account(new Card(cardNumber, cardPIN), cached.balance()));
+  }
+
+  @Override
+  public Optional<Account> getStored(String cardNumber) {
+    return delegate.getStored(cardNumber);
+  }
+
+  /**
+   * This method returns the cached balance, which is never older than the database, or reads it through.
+   */
+  @Override
+  public OptionalInt getBalance(String cardNumber, ReadConsistency consistency) {
+    CachedAccount cached = lookup(cardNumber);
+
+    if (cached != null && cached.balance() != null) {
+      hits.increment();
+      return OptionalInt.of(cached.balance());
+    }
+
+    misses.increment();
+    return delegate.getBalance(cardNumber, consistency);
+  }
+
+  @Override
+  public boolean contains(String cardNumber) {
+    if (lookup(cardNumber) != null) {
+      hits.increment();
+      return true;
+    }
+
+    misses.increment();
+    long version = writes.get(stripe(cardNumber));
+    boolean present = delegate.contains(cardNumber);
+
+    if (present) {
+      store(cardNumber, new CachedAccount(null, null), version);
+    }
+    return present;
+  }
+
+  @Override
+  public long count() {
+    return delegate.count();
+  }
+
+  @Override
+  public void forEachCardNumber(Consumer<String> action) {
+    delegate.forEachCardNumber(action);
+  }
+
+  @Override
+  public boolean save(Account account) {
+    boolean saved = delegate.save(account);
+    invalidate(account.getCard().number(), false);
+    return saved;
+  }
+
+  @Override
+  public List<Account> saveAll(List<Account> accounts) {
+    List<Account> saved = delegate.saveAll(accounts);
+
+    for (Account account : saved) {
+      invalidate(account.getCard().number(), false);
+    }
+    return saved;
+  }
+
+  @Override
+  public OptionalInt update(String cardNumber, int income) {
+    OptionalInt balance = delegate.update(cardNumber, income);
+    invalidate(cardNumber, true);
+    return balance;
+  }
+
+  @Override
+  public OptionalInt update(String cardNumber, int income, String operationKey) {
+    OptionalInt balance = delegate.update(cardNumber, income, operationKey);
+    invalidate(cardNumber, true);
+    return balance;
+  }
+
+  @Override
+  public TransferResult transfer(String fromCardNumber, String toCardNumber, int amount) {
+    TransferResult result = delegate.transfer(fromCardNumber, toCardNumber, amount);
+
+    if (result.isMade()) {
+      invalidate(fromCardNumber, true);
+      invalidate(toCardNumber, true);
+    }
+    return result;
+  }
+
+  @Override
+  public TransferResult transfer(String fromCardNumber, String toCardNumber, int amount, String operationKey) {
+    TransferResult result = delegate.transfer(fromCardNumber, toCardNumber, amount, operationKey);
+
+    if (result.isMade()) {
+      invalidate(fromCardNumber, true);
+      invalidate(toCardNumber, true);
+    }
+    return result;
+  }
+
+  @Override
+  public List<TransferStatus> transfer(List<Transfer> transfers) {
+    List<TransferStatus> statuses = delegate.transfer(transfers);
+
+    for (int i = 0; i < statuses.size(); i++) {
+      if (statuses.get(i).isMade()) {
+        invalidate(transfers.get(i).fromCardNumber(), true);
+        invalidate(transfers.get(i).toCardNumber(), true);
+      }
+    }
+    return statuses;
+  }
+
+  @Override
+  public List<Transaction> getStatement(String cardNumber, Transaction before, int limit) {
+    return delegate.getStatement(cardNumber, before, limit);
+  }
+
+  @Override
+  public void forEachTransaction(String cardNumber, long from, long to, Consumer<Transaction> action) {
+    delegate.forEachTransaction(cardNumber, from, to, action);
+  }
+
+  @Override
+  public boolean delete(Account account) {
+    boolean deleted = delegate.delete(account);
+    invalidate(account.getCard().number(), false);
+    return deleted;
+  }
+
+  @Override
+  public void close() {
+    CacheStats stats = getStats();
+    System.err.printf("Account cache: hits=%d misses=%d evictions=%d size=%d hit rate=%.1f%%%n", stats.hits(),
+                      stats.misses(), stats.evictions(), stats.size(), stats.hitRate() * 100);
+    delegate.close();
+  }
+
+  /**
+   * It drops the cached balance of the card after it was changed past this cache, e.g. by a transfer between shards
+   * that was finished in the background.
+   */
+  public void evict(String cardNumber) {
+    invalidate(cardNumber, true);
+  }
+
+  /**
+   * It returns the cache counters.
+   */
+  public CacheStats getStats() {
+    synchronized (accounts) {
+      return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), accounts.size());
+    }
+  }
+
+  private CachedAccount lookup(String cardNumber) {
+    synchronized (accounts) {
+      return accounts.get(cardNumber);
+    }
+  }
+
+  private void store(String cardNumber, CachedAccount account, long version) {
+    synchronized (accounts) {
+      if (writes.get(stripe(cardNumber)) == version) {
+        CachedAccount cached = accounts.get(cardNumber);
+        accounts.put(cardNumber, cached != null && account.pinHash() == null ? cached : account);
+      }
+    }
+  }
+
+  /**
+   * It drops the cached balance of the card, and the whole entry unless the account is known to still exist.
+   */
+  private void invalidate(String cardNumber, boolean keepAccount) {
+    synchronized (accounts) {
+      writes.incrementAndGet(stripe(cardNumber));
+      CachedAccount cached = accounts.get(cardNumber);
+
+      if (cached != null && keepAccount) {
+        accounts.put(cardNumber, new CachedAccount(cached.pinHash(), null));
+      } else if (cached != null) {
+        accounts.remove(cardNumber);
+      }
+    }
+  }
+
+  private static int stripe(String cardNumber) {
+    return cardNumber.hashCode() & (STRIPES - 1);
+  }
+
+  /**
+   * The cached part of an account, the stored PIN hash or the balance is null when it is not known.
+   */
+  private record CachedAccount(String pinHash, Integer balance) {}
+
+}
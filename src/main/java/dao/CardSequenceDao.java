@@ -0,0 +1,25 @@
+package dao;
+
+import java.util.OptionalLong;
+
+/**
+ * This interface represents a data access object for the positions of the card number sequences, so a sequence
+ * continues after a restart instead of handing out its numbers again.
+ */
+public interface CardSequenceDao {
+
+  /**
+   * This method returns the position the sequence with the given key may continue from.
+   *
+   * @return An empty optional if the sequence was never used or the position cannot be read.
+   */
+  OptionalLong getPosition(long key);
+
+  /**
+   * This method stores the position the sequence with the given key continues from after a restart.
+   *
+   * @return false if the position was not stored.
+   */
+  boolean save(long key, long position);
+
+}
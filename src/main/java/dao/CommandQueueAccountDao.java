@@ -0,0 +1,311 @@
+package dao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import model.Account;
+import model.ReadConsistency;
+import model.Transaction;
+import model.Transfer;
+import model.TransferResult;
+import model.TransferStatus;
+
+/**
+ * This class represents a data access object whose deposits, transfers and closings are applied by a single writer
+ * thread. <br/>
+ * A write is put into a ring buffer of pre-allocated commands: the session claims the next sequence number, fills the
+ * command in the slot of that number and publishes it, then waits for its future. The writer takes every published
+ * command, up to the batch size, applies them in one transaction of the database and completes their futures, so the
+ * sessions never wait for the writer connection and a batch costs one commit, and one journal sync, however many
+ * commands it holds. A session finding the buffer full waits until the writer frees a slot. <br/>
+ * Reads, account openings and batch transfers go to the database directly.
+ */
+public class CommandQueueAccountDao implements AccountDao {
+
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+
+  private final SqliteAccountDao delegate;
+  private final AccountCommand[] slots;
+  private final AtomicLongArray  published;
+  private final int              mask;
+  private final int              maxBatch;
+  private final AtomicLong       claimed = new AtomicLong();
+  private final AtomicBoolean    closed  = new AtomicBoolean();
+  private final Thread           writer;
+
+  private volatile long    released;
+  private volatile boolean idle;
+
+  private long batches;
+  private long commands;
+
+  /**
+   * @param capacity
+   *     The number of commands the ring buffer holds, rounded up to a power of two.
+   * @param maxBatch
+   *     The most commands applied in one transaction.
+   */
+  public CommandQueueAccountDao(final SqliteAccountDao delegate, final int capacity, final int maxBatch) {
+    if (capacity < 1 || maxBatch < 1) {
+      throw new IllegalArgumentException("Wrong command queue size!");
+    }
+
+    int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+    this.delegate = delegate;
+    this.slots = new AccountCommand[size];
+    this.published = new AtomicLongArray(size);
+    this.mask = size - 1;
+    this.maxBatch = maxBatch;
+
+    for (int i = 0; i < size; i++) {
+      slots[i] = new AccountCommand();
+      published.set(i, -1);
+    }
+
+    this.writer = new Thread(this::write, "account-writer");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  @Override
+  public Optional<Account> get(String cardNumber, String cardPIN) {
+    return delegate.get(cardNumber, cardPIN);
+  }
+
+  @Override
+  public Optional<Account> getStored(String cardNumber) {
+    return delegate.getStored(cardNumber);
+  }
+
+  @Override
+  public OptionalInt getBalance(String cardNumber, ReadConsistency consistency) {
+    return delegate.getBalance(cardNumber, consistency);
+  }
+
+  @Override
+  public boolean contains(String cardNumber) {
+    return delegate.contains(cardNumber);
+  }
+
+  @Override
+  public long count() {
+    return delegate.count();
+  }
+
+  @Override
+  public void forEachCardNumber(Consumer<String> action) {
+    delegate.forEachCardNumber(action);
+  }
+
+  @Override
+  public boolean save(Account account) {
+    return delegate.save(account);
+  }
+
+  @Override
+  public List<Account> saveAll(List<Account> accounts) {
+    return delegate.saveAll(accounts);
+  }
+
+  @Override
+  public OptionalInt update(String cardNumber, int income) {
+    return submit(AccountCommand.Type.DEPOSIT, cardNumber, null, income, null).getBalance();
+  }
+
+  /**
+   * This method answers a retry whose key is in memory at once, and queues the others with their key, which the
+   * writer looks up and records in the transaction of the batch.
+   */
+  @Override
+  public OptionalInt update(String cardNumber, int income, String operationKey) {
+    OptionalInt recent = recent(cardNumber, operationKey);
+    return recent.isPresent()
+           ? recent
+           : submit(AccountCommand.Type.DEPOSIT, cardNumber, null, income, operationKey).getBalance();
+  }
+
+  @Override
+  public TransferResult transfer(String fromCardNumber, String toCardNumber, int amount) {
+    return submit(AccountCommand.Type.TRANSFER, fromCardNumber, toCardNumber, amount, null);
+  }
+
+  @Override
+  public TransferResult transfer(String fromCardNumber, String toCardNumber, int amount, String operationKey) {
+    OptionalInt recent = recent(fromCardNumber, operationKey);
+    return recent.isPresent()
+           ? TransferResult.success(recent.getAsInt())
+           : submit(AccountCommand.Type.TRANSFER, fromCardNumber, toCardNumber, amount, operationKey);
+  }
+
+  @Override
+  public List<TransferStatus> transfer(List<Transfer> transfers) {
+    return delegate.transfer(transfers);
+  }
+
+  @Override
+  public List<Transaction> getStatement(String cardNumber, Transaction before, int limit) {
+    return delegate.getStatement(cardNumber, before, limit);
+  }
+
+  @Override
+  public void forEachTransaction(String cardNumber, long from, long to, Consumer<Transaction> action) {
+    delegate.forEachTransaction(cardNumber, from, to, action);
+  }
+
+  @Override
+  public boolean delete(Account account) {
+    return submit(AccountCommand.Type.CLOSE, account.getCard().number(), null, 0, null).isMade();
+  }
+
+  /**
+   * It applies the commands queued so far, stops the writer and closes the database. Only the first call has an
+   * effect.
+   */
+  @Override
+  public void close() {
+    if (!closed.compareAndSet(false, true)) {
+      return;
+    }
+
+    LockSupport.unpark(writer);
+
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    System.err.printf("Command queue: commands=%d batches=%d average batch=%.1f%n", commands, batches,
+                      batches == 0 ? 0.0 : (double) commands / batches);
+    delegate.close();
+  }
+
+  /**
+   * It puts the command into the ring buffer and waits until the writer applied it. The queue can be closed between
+   * the check and the claim of the sequence number; the writer then may have stopped before the claim, so the command
+   * is refused once the writer stopped without applying it.
+   */
+  private TransferResult submit(AccountCommand.Type type, String cardNumber, String toCardNumber, int amount,
+                                String operationKey) {
+    if (closed.get()) {
+      throw new IllegalStateException("The command queue is closed!");
+    }
+
+    long sequence = claimed.getAndIncrement();
+
+    while (sequence - slots.length >= released) {
+      if (closed.get() && !writer.isAlive()) {
+        throw new IllegalStateException("The command queue is closed!");
+      }
+      LockSupport.parkNanos(this, FULL_PARK_NANOS);
+    }
+
+    CompletableFuture<TransferResult> future = new CompletableFuture<>();
+    int index = (int) (sequence & mask);
+    slots[index].set(type, cardNumber, toCardNumber, amount, operationKey, future);
+    published.set(index, sequence);
+
+    if (idle) {
+      LockSupport.unpark(writer);
+    }
+
+    if (closed.get()) {
+      // The writer stops only after applying every command claimed before it saw the queue closed
+      awaitWriter();
+
+      if (!future.isDone()) {
+        throw new IllegalStateException("The command queue is closed!");
+      }
+    }
+    return future.join();
+  }
+
+  /**
+   * It waits until the writer thread stopped, keeping the interrupt status of the waiting thread.
+   */
+  private void awaitWriter() {
+    boolean interrupted = false;
+
+    while (writer.isAlive()) {
+      try {
+        writer.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * The loop of the writer thread: it applies the published commands in batches, in the order of their sequence
+   * numbers, until the queue is closed and empty.
+   */
+  private void write() {
+    List<AccountCommand> batch = new ArrayList<>(maxBatch);
+    long next = 0;
+
+    while (true) {
+      for (long sequence = next; batch.size() < maxBatch && isPublished(sequence); sequence++) {
+        batch.add(slots[(int) (sequence & mask)]);
+      }
+
+      if (batch.isEmpty()) {
+        if (closed.get() && claimed.get() == next) {
+          return;
+        }
+
+        idle = true;
+
+        if (!isPublished(next)) {
+          LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+        idle = false;
+        continue;
+      }
+
+      try {
+        delegate.apply(batch);
+
+        for (AccountCommand command : batch) {
+          command.complete();
+        }
+      } catch (RuntimeException e) {
+        System.err.println("Cannot apply the account commands! " + e.getMessage());
+
+        for (AccountCommand command : batch) {
+          command.fail(e);
+        }
+      }
+
+      batches++;
+      commands += batch.size();
+      next += batch.size();
+      released = next;
+      batch.clear();
+    }
+  }
+
+  private OptionalInt recent(String cardNumber, String operationKey) {
+    return operationKey == null
+           ? OptionalInt.empty()
+           : delegate.getOperationKeys().recent(cardNumber, operationKey, System.currentTimeMillis());
+  }
+
+  private boolean isPublished(long sequence) {
+    return published.get((int) (sequence & mask)) == sequence;
+  }
+
+}
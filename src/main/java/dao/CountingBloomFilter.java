@@ -0,0 +1,161 @@
+package dao;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class represents a counting Bloom filter of card numbers. <br/>
+ * A card number increments k of the m 4-bit counters, picked by double hashing. A card whose counters are not all set
+ * was never added, so a negative answer is always right and a positive one is wrong with the false-positive rate.
+ * Removing a card decrements its counters; a counter that reached 15 stays saturated, so it can never drop to zero
+ * while a card that uses it still exists. The counters are packed 16 to a long and updated with compare-and-set, so
+ * the filter is safe to use from any number of threads.
+ */
+class CountingBloomFilter {
+
+  private static final int  COUNTER_BITS      = 4;
+  private static final int  COUNTERS_PER_WORD = Long.SIZE / COUNTER_BITS;
+  private static final long COUNTER_MAX       = (1L << COUNTER_BITS) - 1;
+
+  private final AtomicLongArray counters;
+  private final long            size;
+  private final int             hashFunctions;
+  private final AtomicLong      entries = new AtomicLong();
+
+  /**
+   * It sizes the filter so it has the given false-positive rate when it holds the expected number of cards.
+   */
+  CountingBloomFilter(final long expectedEntries, final double falsePositiveRate) {
+    if (expectedEntries < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+      throw new IllegalArgumentException("Wrong Bloom filter size: " + expectedEntries + " entries with false-positive rate "
+                                         + falsePositiveRate);
+    }
+
+    long bits = (long) Math.ceil(-expectedEntries * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+    int words = Math.toIntExact((bits + COUNTERS_PER_WORD - 1) / COUNTERS_PER_WORD);
+
+    this.counters = new AtomicLongArray(words);
+    this.size = (long) words * COUNTERS_PER_WORD;
+    this.hashFunctions = Math.max(1, (int) Math.round((double) size / expectedEntries * Math.log(2)));
+  }
+
+  void add(String cardNumber) {
+    long first = mix(key(cardNumber));
+    long second = mix(first) | 1;
+
+    for (int i = 0; i < hashFunctions; i++) {
+      increment(Long.remainderUnsigned(first + i * second, size));
+    }
+    entries.incrementAndGet();
+  }
+
+  /**
+   * It removes a card that was added before, removing a card that was not added breaks the filter.
+   */
+  void remove(String cardNumber) {
+    long first = mix(key(cardNumber));
+    long second = mix(first) | 1;
+
+    for (int i = 0; i < hashFunctions; i++) {
+      decrement(Long.remainderUnsigned(first + i * second, size));
+    }
+    entries.decrementAndGet();
+  }
+
+  /**
+   * It checks if the card may have been added.
+   *
+   * @return false if the card was certainly not added.
+   */
+  boolean mightContain(String cardNumber) {
+    long first = mix(key(cardNumber));
+    long second = mix(first) | 1;
+
+    for (int i = 0; i < hashFunctions; i++) {
+      if (counter(Long.remainderUnsigned(first + i * second, size)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  long getEntries() {
+    return entries.get();
+  }
+
+  long getSize() {
+    return size;
+  }
+
+  int getHashFunctions() {
+    return hashFunctions;
+  }
+
+  long getMemoryBytes() {
+    return (long) counters.length() * Long.BYTES;
+  }
+
+  /**
+   * It returns the false-positive rate expected for the cards the filter holds now.
+   */
+  double getExpectedFalsePositiveRate() {
+    return Math.pow(1 - Math.exp(-hashFunctions * (double) Math.max(entries.get(), 0) / size), hashFunctions);
+  }
+
+  private long counter(long index) {
+    return counters.get((int) (index / COUNTERS_PER_WORD)) >>> shift(index) & COUNTER_MAX;
+  }
+
+  private void increment(long index) {
+    int word = (int) (index / COUNTERS_PER_WORD);
+    int shift = shift(index);
+    long current;
+
+    do {
+      current = counters.get(word);
+
+      if ((current >>> shift & COUNTER_MAX) == COUNTER_MAX) {
+        return;
+      }
+    } while (!counters.compareAndSet(word, current, current + (1L << shift)));
+  }
+
+  private void decrement(long index) {
+    int word = (int) (index / COUNTERS_PER_WORD);
+    int shift = shift(index);
+    long current;
+
+    do {
+      current = counters.get(word);
+      long counter = current >>> shift & COUNTER_MAX;
+
+      if (counter == 0 || counter == COUNTER_MAX) {
+        return;
+      }
+    } while (!counters.compareAndSet(word, current, current - (1L << shift)));
+  }
+
+  private static int shift(long index) {
+    return (int) (index % COUNTERS_PER_WORD) * COUNTER_BITS;
+  }
+
+  /**
+   * It returns the card number itself when it is made of up to 18 digits, so card numbers never share a key.
+   */
+  private static long key(String cardNumber) {
+    long key = 0;
+
+    for (int i = 0; i < cardNumber.length(); i++) {
+      key = key * 10 + (cardNumber.charAt(i) - '0');
+    }
+    return key;
+  }
+
+  private static long mix(long value) {
+    long z = value + 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+}
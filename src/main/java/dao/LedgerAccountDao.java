@@ -0,0 +1,349 @@
+package dao;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import model.Account;
+import model.Card;
+import model.ReadConsistency;
+import model.Transaction;
+import model.TransactionType;
+import model.Transfer;
+import model.TransferResult;
+import model.TransferStatus;
+
+/**
+ * This class represents a data access object that serves every account from memory and persists the changes later.
+ * <br/>
+ * All accounts are loaded into a {@link BalanceLedger} when it is created. A write is applied to the ledger and
+ * returns at once; a background thread writes the accounts changed since its previous run to the database in one
+ * transaction every flush interval, so a crash loses at most the writes of the last interval. A batch that cannot be
+ * written is retried with the next one. Closing the data access object writes the remaining changes, so does the
+ * shutdown hook the application registers for it. <br/>
+ * The statement entries of the changes are queued and written in the same transaction as the balances; reading a
+ * statement flushes first, so it is always complete. <br/>
+ * The keys of the operations are written in the same transaction too. The operations with a key hold the lock of the
+ * flush, so a retry finds its key in memory, among the keys not written yet, or in the database. <br/>
+ * The database must not be written by anything else while the ledger is in use.
+ */
+public class LedgerAccountDao implements AccountDao {
+
+  private final SqliteAccountDao delegate;
+  private final BalanceLedger    ledger;
+  private final long             flushIntervalNanos;
+  private final Thread           flusher;
+  private final AtomicBoolean    closed = new AtomicBoolean();
+
+  private final Queue<Transaction> pendingTransactions = new ConcurrentLinkedQueue<>();
+
+  /**
+   * The keys of the operations applied since the previous flush, guarded by the lock of the flush.
+   */
+  private final Map<String, RecordedOperation> pendingOperations = new HashMap<>();
+
+  private long flushes;
+  private long accountsWritten;
+
+  public LedgerAccountDao(final SqliteAccountDao delegate, final long flushIntervalMillis) {
+    this.delegate = delegate;
+    this.ledger = new BalanceLedger((int) Math.min(Integer.MAX_VALUE / 4, delegate.count()));
+    this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+
+    delegate.forEachAccount(account -> {
+      long key = BalanceLedger.key(account.getCard().number());
+
+      if (key == BalanceLedger.MISSING) {
+        System.err.println("Cannot load card number into the balance ledger: " + account.getCard().number());
+        return;
+      }
+      ledger.load(key, account.getCard().pin(), account.getBalance());
+    });
+
+    this.flusher = new Thread(this::flushPeriodically, "ledger-flusher");
+    this.flusher.setDaemon(true);
+    this.flusher.start();
+  }
+
+  @Override
+  public Optional<Account> get(String cardNumber, String cardPIN) {
+    long key = BalanceLedger.key(cardNumber);
+    String storedPin = ledger.pin(key);
+
+    if (storedPin == null || !delegate.getPinVerifier().verify(cardPIN, storedPin)) {
+      return Optional.empty();
+    }
+
+    long balance = ledger.balance(key);
+
+    if (balance == BalanceLedger.MISSING) {
+      return Optional.empty();
+    }
+    return Optional.of(new Account(new Card(cardNumber, cardPIN), Math.toIntExact(balance)));
+  }
+
+  @Override
+  public Optional<Account> getStored(String cardNumber) {
+    long key = BalanceLedger.key(cardNumber);
+    String storedPin = ledger.pin(key);
+    long balance = ledger.balance(key);
+
+    if (storedPin == null || balance == BalanceLedger.MISSING) {
+      return Optional.empty();
+    }
+    return Optional.of(new Account(new Card(cardNumber, storedPin), Math.toIntExact(balance)));
+  }
+
+  /**
+   * This method reads the balance from the ledger, which is always current, whatever the consistency asked for.
+   */
+  @Override
+  public OptionalInt getBalance(String cardNumber, ReadConsistency consistency) {
+    long balance = ledger.balance(BalanceLedger.key(cardNumber));
+    return balance == BalanceLedger.MISSING ? OptionalInt.empty() : OptionalInt.of(Math.toIntExact(balance));
+  }
+
+  @Override
+  public boolean contains(String cardNumber) {
+    return ledger.contains(BalanceLedger.key(cardNumber));
+  }
+
+  @Override
+  public long count() {
+    return ledger.size();
+  }
+
+  @Override
+  public void forEachCardNumber(Consumer<String> action) {
+    for (long key : ledger.keys()) {
+      action.accept(Long.toString(key));
+    }
+  }
+
+  @Override
+  public boolean save(Account account) {
+    long key = BalanceLedger.key(account.getCard().number());
+
+    if (key == BalanceLedger.MISSING) {
+      System.err.println("Cannot create account with card number " + account.getCard().number() + "!");
+      return false;
+    }
+    return ledger.put(key, delegate.getPinVerifier().hash(account.getCard().pin()), account.getBalance());
+  }
+
+  @Override
+  public List<Account> saveAll(List<Account> accounts) {
+    List<Account> saved = new ArrayList<>(accounts.size());
+    List<String> pinHashes = delegate.getPinVerifier()
+                                     .hashAll(accounts.stream().map(account -> account.getCard().pin()).toList());
+
+    for (int i = 0; i < accounts.size(); i++) {
+      Account account = accounts.get(i);
+      long key = BalanceLedger.key(account.getCard().number());
+
+      if (key != BalanceLedger.MISSING && ledger.put(key, pinHashes.get(i), account.getBalance())) {
+        saved.add(account);
+      }
+    }
+    return saved;
+  }
+
+  @Override
+  public OptionalInt update(String cardNumber, int income) {
+    Transaction deposit = new Transaction(0, cardNumber, System.currentTimeMillis(), TransactionType.DEPOSIT, income,
+                                          "");
+    long balance = ledger.add(BalanceLedger.key(cardNumber), income, () -> pendingTransactions.add(deposit));
+
+    return balance < 0 ? OptionalInt.empty() : OptionalInt.of(Math.toIntExact(balance));
+  }
+
+  @Override
+  public synchronized OptionalInt update(String cardNumber, int income, String operationKey) {
+    if (operationKey == null) {
+      return update(cardNumber, income);
+    }
+
+    OptionalInt recorded = getOperation(cardNumber, operationKey);
+    return recorded.isPresent() ? recorded : record(cardNumber, operationKey, update(cardNumber, income));
+  }
+
+  @Override
+  public TransferResult transfer(String fromCardNumber, String toCardNumber, int amount) {
+    long timestamp = System.currentTimeMillis();
+    long balance = ledger.transfer(BalanceLedger.key(fromCardNumber), BalanceLedger.key(toCardNumber), amount,
+                                   () -> addTransfer(fromCardNumber, toCardNumber, amount, timestamp));
+
+    return balance < 0 ? TransferResult.refused(status(balance)) : TransferResult.success(Math.toIntExact(balance));
+  }
+
+  @Override
+  public synchronized TransferResult transfer(String fromCardNumber, String toCardNumber, int amount,
+                                              String operationKey) {
+    if (operationKey == null) {
+      return transfer(fromCardNumber, toCardNumber, amount);
+    }
+
+    OptionalInt recorded = getOperation(fromCardNumber, operationKey);
+
+    if (recorded.isPresent()) {
+      return TransferResult.success(recorded.getAsInt());
+    }
+
+    TransferResult result = transfer(fromCardNumber, toCardNumber, amount);
+    record(fromCardNumber, operationKey, result.getBalance());
+    return result;
+  }
+
+  @Override
+  public List<TransferStatus> transfer(List<Transfer> transfers) {
+    List<TransferStatus> statuses = new ArrayList<>(transfers.size());
+    long timestamp = System.currentTimeMillis();
+
+    for (Transfer transfer : transfers) {
+      long recipient = BalanceLedger.key(transfer.toCardNumber());
+
+      if (!ledger.contains(recipient)) {
+        statuses.add(TransferStatus.NO_SUCH_RECIPIENT);
+        continue;
+      }
+
+      long balance = ledger.transfer(BalanceLedger.key(transfer.fromCardNumber()), recipient, transfer.amount(),
+                                     () -> addTransfer(transfer.fromCardNumber(), transfer.toCardNumber(),
+                                                       transfer.amount(), timestamp));
+
+      statuses.add(balance < 0 ? status(balance) : TransferStatus.SUCCESS);
+    }
+    return statuses;
+  }
+
+  @Override
+  public List<Transaction> getStatement(String cardNumber, Transaction before, int limit) {
+    flush();
+    return delegate.getStatement(cardNumber, before, limit);
+  }
+
+  @Override
+  public void forEachTransaction(String cardNumber, long from, long to, Consumer<Transaction> action) {
+    flush();
+    delegate.forEachTransaction(cardNumber, from, to, action);
+  }
+
+  @Override
+  public boolean delete(Account account) {
+    return ledger.remove(BalanceLedger.key(account.getCard().number()));
+  }
+
+  /**
+   * It stops the background flusher, writes the remaining changes and closes the database. Only the first call has an
+   * effect, so the shutdown hook can call it after the application did.
+   */
+  @Override
+  public void close() {
+    if (!closed.compareAndSet(false, true)) {
+      return;
+    }
+
+    LockSupport.unpark(flusher);
+
+    try {
+      flusher.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    flush();
+    System.err.printf("Balance ledger: accounts=%d flushes=%d accounts written=%d%n", ledger.size(), flushes,
+                      accountsWritten);
+    delegate.close();
+  }
+
+  /**
+   * It writes the accounts changed since the previous flush and their statement entries to the database, and keeps
+   * them pending if that fails. Every write queues its entries under the lock of the ledger, and the entries are taken
+   * under it together with the changes, so the balances written match the entries exactly.
+   *
+   * @return The number of accounts written.
+   */
+  synchronized int flush() {
+    List<Transaction> transactions = new ArrayList<>();
+
+    BalanceLedger.Changes changes = ledger.drainChanges(() -> {
+      for (Transaction transaction = pendingTransactions.poll(); transaction != null;
+           transaction = pendingTransactions.poll()) {
+        transactions.add(transaction);
+      }
+    });
+
+    if (changes.size == 0 && transactions.isEmpty() && pendingOperations.isEmpty()) {
+      return 0;
+    }
+
+    if (!delegate.persist(changes, transactions, List.copyOf(pendingOperations.values()))) {
+      ledger.restore(changes);
+      pendingTransactions.addAll(transactions);
+      return 0;
+    }
+
+    OperationKeys operationKeys = delegate.getOperationKeys();
+
+    for (RecordedOperation operation : pendingOperations.values()) {
+      operationKeys.recorded(operation.cardNumber(), operation.operationKey(), operation.balance(),
+                             operationKeys.expires(operation.timestamp()));
+    }
+    pendingOperations.clear();
+
+    flushes++;
+    accountsWritten += changes.size;
+    return changes.size;
+  }
+
+  /**
+   * It returns the balance recorded for the operation key: from memory, from the keys not written yet or from the
+   * database, which has all the others while the lock of the flush is held.
+   */
+  private OptionalInt getOperation(String cardNumber, String operationKey) {
+    RecordedOperation pending = pendingOperations.get(OperationKeys.id(cardNumber, operationKey));
+    return pending != null ? OptionalInt.of(pending.balance()) : delegate.getOperation(cardNumber, operationKey);
+  }
+
+  private OptionalInt record(String cardNumber, String operationKey, OptionalInt balance) {
+    balance.ifPresent(applied -> pendingOperations.put(OperationKeys.id(cardNumber, operationKey),
+                                                       new RecordedOperation(cardNumber, operationKey, applied,
+                                                                             System.currentTimeMillis())));
+    return balance;
+  }
+
+  /**
+   * It returns the status of a transfer the ledger refused with the given result.
+   */
+  private static TransferStatus status(long refused) {
+    if (refused == BalanceLedger.TOO_LARGE) {
+      return TransferStatus.FAILED;
+    }
+    return refused == BalanceLedger.MISSING ? TransferStatus.NO_SUCH_RECIPIENT : TransferStatus.NOT_ENOUGH_MONEY;
+  }
+
+  private void addTransfer(String fromCardNumber, String toCardNumber, int amount, long timestamp) {
+    pendingTransactions.add(new Transaction(0, fromCardNumber, timestamp, TransactionType.TRANSFER_OUT, -amount,
+                                            toCardNumber));
+    pendingTransactions.add(new Transaction(0, toCardNumber, timestamp, TransactionType.TRANSFER_IN, amount,
+                                            fromCardNumber));
+  }
+
+  private void flushPeriodically() {
+    while (!closed.get()) {
+      LockSupport.parkNanos(this, flushIntervalNanos);
+      flush();
+    }
+  }
+
+}
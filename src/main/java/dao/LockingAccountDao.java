@@ -0,0 +1,146 @@
+package dao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.function.Consumer;
+
+import model.Account;
+import model.ReadConsistency;
+import model.Transaction;
+import model.Transfer;
+import model.TransferResult;
+import model.TransferStatus;
+
+/**
+ * This class represents a data access object that serializes the writes to every account. <br/>
+ * A write holds the lock of its card, and a transfer holds the locks of both cards, taken in a fixed order, for as long
+ * as the decorated data access objects take to apply it, so no other session changes the balances in between. Writes
+ * to unrelated accounts take different locks and proceed in parallel; reads don't lock.
+ */
+public class LockingAccountDao implements AccountDao {
+
+  private final AccountDao   delegate;
+  private final AccountLocks locks;
+
+  public LockingAccountDao(final AccountDao delegate, final AccountLocks locks) {
+    this.delegate = delegate;
+    this.locks = locks;
+  }
+
+  @Override
+  public Optional<Account> get(String cardNumber, String cardPIN) {
+    return delegate.get(cardNumber, cardPIN);
+  }
+
+  @Override
+  public Optional<Account> getStored(String cardNumber) {
+    return delegate.getStored(cardNumber);
+  }
+
+  @Override
+  public OptionalInt getBalance(String cardNumber, ReadConsistency consistency) {
+    return delegate.getBalance(cardNumber, consistency);
+  }
+
+  @Override
+  public boolean contains(String cardNumber) {
+    return delegate.contains(cardNumber);
+  }
+
+  @Override
+  public long count() {
+    return delegate.count();
+  }
+
+  @Override
+  public void forEachCardNumber(Consumer<String> action) {
+    delegate.forEachCardNumber(action);
+  }
+
+  @Override
+  public boolean save(Account account) {
+    try (AccountLocks.Locked ignored = locks.lock(account.getCard().number())) {
+      return delegate.save(account);
+    }
+  }
+
+  @Override
+  public List<Account> saveAll(List<Account> accounts) {
+    List<String> cardNumbers = new ArrayList<>(accounts.size());
+
+    for (Account account : accounts) {
+      cardNumbers.add(account.getCard().number());
+    }
+
+    try (AccountLocks.Locked ignored = locks.lockAll(cardNumbers)) {
+      return delegate.saveAll(accounts);
+    }
+  }
+
+  @Override
+  public OptionalInt update(String cardNumber, int income) {
+    try (AccountLocks.Locked ignored = locks.lock(cardNumber)) {
+      return delegate.update(cardNumber, income);
+    }
+  }
+
+  @Override
+  public OptionalInt update(String cardNumber, int income, String operationKey) {
+    try (AccountLocks.Locked ignored = locks.lock(cardNumber)) {
+      return delegate.update(cardNumber, income, operationKey);
+    }
+  }
+
+  @Override
+  public TransferResult transfer(String fromCardNumber, String toCardNumber, int amount) {
+    try (AccountLocks.Locked ignored = locks.lock(fromCardNumber, toCardNumber)) {
+      return delegate.transfer(fromCardNumber, toCardNumber, amount);
+    }
+  }
+
+  @Override
+  public TransferResult transfer(String fromCardNumber, String toCardNumber, int amount, String operationKey) {
+    try (AccountLocks.Locked ignored = locks.lock(fromCardNumber, toCardNumber)) {
+      return delegate.transfer(fromCardNumber, toCardNumber, amount, operationKey);
+    }
+  }
+
+  @Override
+  public List<TransferStatus> transfer(List<Transfer> transfers) {
+    List<String> cardNumbers = new ArrayList<>(transfers.size() * 2);
+
+    for (Transfer transfer : transfers) {
+      cardNumbers.add(transfer.fromCardNumber());
+      cardNumbers.add(transfer.toCardNumber());
+    }
+
+    try (AccountLocks.Locked ignored = locks.lockAll(cardNumbers)) {
+      return delegate.transfer(transfers);
+    }
+  }
+
+  @Override
+  public List<Transaction> getStatement(String cardNumber, Transaction before, int limit) {
+    return delegate.getStatement(cardNumber, before, limit);
+  }
+
+  @Override
+  public void forEachTransaction(String cardNumber, long from, long to, Consumer<Transaction> action) {
+    delegate.forEachTransaction(cardNumber, from, to, action);
+  }
+
+  @Override
+  public boolean delete(Account account) {
+    try (AccountLocks.Locked ignored = locks.lock(account.getCard().number())) {
+      return delegate.delete(account);
+    }
+  }
+
+  @Override
+  public void close() {
+    delegate.close();
+  }
+
+}
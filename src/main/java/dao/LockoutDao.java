@@ -0,0 +1,27 @@
+package dao;
+
+import java.util.Map;
+
+/**
+ * This interface represents a data access object for the cards locked after too many failed logins.
+ */
+public interface LockoutDao {
+
+  /**
+   * This method returns the lockouts that are still in effect at the given time.
+   *
+   * @return The time each locked card is unlocked at, by card number.
+   */
+  Map<String, Long> getActive(long now);
+
+  /**
+   * This method locks the card until the given time, replacing an earlier lockout.
+   */
+  void save(String cardNumber, long lockedUntil);
+
+  /**
+   * This method removes the lockouts that ended before the given time.
+   */
+  void deleteExpired(long now);
+
+}
@@ -0,0 +1,290 @@
+package dao;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.function.Consumer;
+
+import metrics.MetricsRegistry;
+import metrics.Timer;
+import model.Account;
+import model.ReadConsistency;
+import model.Transaction;
+import model.Transfer;
+import model.TransferResult;
+import model.TransferStatus;
+
+/**
+ * This class represents a data access object that measures every call of the decorated one. <br/>
+ * Each method has its own {@link Timer}, named {@code dao.<method>} and {@code dao.transferBatch} for the batch
+ * transfer, which counts the calls, records their latency and counts the calls that threw. A call costs two
+ * {@link System#nanoTime()} reads and a few lock-free counter updates, so it can stay on in production.
+ */
+public class MeteredAccountDao implements AccountDao {
+
+  private static final String PREFIX = "dao.";
+
+  private final AccountDao delegate;
+  private final Timer      get;
+  private final Timer      getStored;
+  private final Timer      getBalance;
+  private final Timer      contains;
+  private final Timer      count;
+  private final Timer      forEachCardNumber;
+  private final Timer      save;
+  private final Timer      saveAll;
+  private final Timer      update;
+  private final Timer      transfer;
+  private final Timer      transferBatch;
+  private final Timer      getStatement;
+  private final Timer      forEachTransaction;
+  private final Timer      delete;
+
+  public MeteredAccountDao(final AccountDao delegate, final MetricsRegistry registry) {
+    this.delegate = delegate;
+    this.get = registry.timer(PREFIX + "get");
+    this.getStored = registry.timer(PREFIX + "getStored");
+    this.getBalance = registry.timer(PREFIX + "getBalance");
+    this.contains = registry.timer(PREFIX + "contains");
+    this.count = registry.timer(PREFIX + "count");
+    this.forEachCardNumber = registry.timer(PREFIX + "forEachCardNumber");
+    this.save = registry.timer(PREFIX + "save");
+    this.saveAll = registry.timer(PREFIX + "saveAll");
+    this.update = registry.timer(PREFIX + "update");
+    this.transfer = registry.timer(PREFIX + "transfer");
+    this.transferBatch = registry.timer(PREFIX + "transferBatch");
+    this.getStatement = registry.timer(PREFIX + "getStatement");
+    this.forEachTransaction = registry.timer(PREFIX + "forEachTransaction");
+    this.delete = registry.timer(PREFIX + "delete");
+  }
+
+  @Override
+  public Optional<Account> get(String cardNumber, String cardPIN) {
+    long start = System.nanoTime();
+
+    try {
+      return delegate.get(cardNumber, cardPIN);
+    } catch (RuntimeException e) {
+      get.recordError();
+      throw e;
+    } finally {
+      get.recordSince(start);
+    }
+  }
+
+  @Override
+  public Optional<Account> getStored(String cardNumber) {
+    long start = System.nanoTime();
+
+    try {
+      return delegate.getStored(cardNumber);
+    } catch (RuntimeException e) {
+      getStored.recordError();
+      throw e;
+    } finally {
+      getStored.recordSince(start);
+    }
+  }
+
+  @Override
+  public OptionalInt getBalance(String cardNumber, ReadConsistency consistency) {
+    long start = System.nanoTime();
+
+    try {
+      return delegate.getBalance(cardNumber, consistency);
+    } catch (RuntimeException e) {
+      getBalance.recordError();
+      throw e;
+    } finally {
+      getBalance.recordSince(start);
+    }
+  }
+
+  @Override
+  public boolean contains(String cardNumber) {
+    long start = System.nanoTime();
+
+    try {
+      return delegate.contains(cardNumber);
+    } catch (RuntimeException e) {
+      contains.recordError();
+      throw e;
+    } finally {
+      contains.recordSince(start);
+    }
+  }
+
+  @Override
+  public long count() {
+    long start = System.nanoTime();
+
+    try {
+      return delegate.count();
+    } catch (RuntimeException e) {
+      count.recordError();
+      throw e;
+    } finally {
+      count.recordSince(start);
+    }
+  }
+
+  @Override
+  public void forEachCardNumber(Consumer<String> action) {
+    long start = System.nanoTime();
+
+    try {
+      delegate.forEachCardNumber(action);
+    } catch (RuntimeException e) {
+      forEachCardNumber.recordError();
+      throw e;
+    } finally {
+      forEachCardNumber.recordSince(start);
+    }
+  }
+
+  @Override
+  public boolean save(Account account) {
+    long start = System.nanoTime();
+
+    try {
+      return delegate.save(account);
+    } catch (RuntimeException e) {
+      save.recordError();
+      throw e;
+    } finally {
+      save.recordSince(start);
+    }
+  }
+
+  @Override
+  public List<Account> saveAll(List<Account> accounts) {
+    long start = System.nanoTime();
+
+    try {
+      return delegate.saveAll(accounts);
+    } catch (RuntimeException e) {
+      saveAll.recordError();
+      throw e;
+    } finally {
+      saveAll.recordSince(start);
+    }
+  }
+
+  @Override
+  public OptionalInt update(String cardNumber, int income) {
+    long start = System.nanoTime();
+
+    try {
+      return delegate.update(cardNumber, income);
+    } catch (RuntimeException e) {
+      update.recordError();
+      throw e;
+    } finally {
+      update.recordSince(start);
+    }
+  }
+
+  @Override
+  public OptionalInt update(String cardNumber, int income, String operationKey) {
+    long start = System.nanoTime();
+
+    try {
+      return delegate.update(cardNumber, income, operationKey);
+    } catch (RuntimeException e) {
+      update.recordError();
+      throw e;
+    } finally {
+      update.recordSince(start);
+    }
+  }
+
+  @Override
+  public TransferResult transfer(String fromCardNumber, String toCardNumber, int amount) {
+    long start = System.nanoTime();
+
+    try {
+      return delegate.transfer(fromCardNumber, toCardNumber, amount);
+    } catch (RuntimeException e) {
+      transfer.recordError();
+      throw e;
+    } finally {
+      transfer.recordSince(start);
+    }
+  }
+
+  @Override
+  public TransferResult transfer(String fromCardNumber, String toCardNumber, int amount, String operationKey) {
+    long start = System.nanoTime();
+
+    try {
+      return delegate.transfer(fromCardNumber, toCardNumber, amount, operationKey);
+    } catch (RuntimeException e) {
+      transfer.recordError();
+      throw e;
+    } finally {
+      transfer.recordSince(start);
+    }
+  }
+
+  @Override
+  public List<TransferStatus> transfer(List<Transfer> transfers) {
+    long start = System.nanoTime();
+
+    try {
+      return delegate.transfer(transfers);
+    } catch (RuntimeException e) {
+      transferBatch.recordError();
+      throw e;
+    } finally {
+      transferBatch.recordSince(start);
+    }
+  }
+
+  @Override
+  public List<Transaction> getStatement(String cardNumber, Transaction before, int limit) {
+    long start = System.nanoTime();
+
+    try {
+      return delegate.getStatement(cardNumber, before, limit);
+    } catch (RuntimeException e) {
+      getStatement.recordError();
+      throw e;
+    } finally {
+      getStatement.recordSince(start);
+    }
+  }
+
+  @Override
+  public void forEachTransaction(String cardNumber, long from, long to, Consumer<Transaction> action) {
+    long start = System.nanoTime();
+
+    try {
+      delegate.forEachTransaction(cardNumber, from, to, action);
+    } catch (RuntimeException e) {
+      forEachTransaction.recordError();
+      throw e;
+    } finally {
+      forEachTransaction.recordSince(start);
+    }
+  }
+
+  @Override
+  public boolean delete(Account account) {
+    long start = System.nanoTime();
+
+    try {
+      return delegate.delete(account);
+    } catch (RuntimeException e) {
+      delete.recordError();
+      throw e;
+    } finally {
+      delete.recordSince(start);
+    }
+  }
+
+  @Override
+  public void close() {
+    delegate.close();
+  }
+
+}
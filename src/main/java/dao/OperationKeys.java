@@ -0,0 +1,152 @@
+package dao;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class remembers the deposits and transfers applied recently under an operation key, so an operation retried by
+ * a client, e.g. after a timeout, is not applied twice. <br/>
+ * The keys are stored in the {@code operation_key} table by {@link SqliteAccountDao}, looked up and recorded in the
+ * same transaction as the balance change, together with the balance the operation returned; a retry within the time to
+ * live gets that balance back instead of changing it again. A key belongs to the card it was used with, so different
+ * clients may pick the same key. Operations that were not applied are not recorded and can be retried. <br/>
+ * The keys recorded recently are also kept in a bounded in-memory map, evicting the least recently used, which answers
+ * most retries without taking the writer connection. Expired keys are deleted by the writes, at most once a purge
+ * interval. Operations without a key skip all of this.
+ */
+public class OperationKeys implements AutoCloseable {
+
+  /**
+   * How long a key is remembered unless configured otherwise, a day, longer than any client keeps retrying.
+   */
+  public static final long DEFAULT_TTL_MILLIS = 24 * 60 * 60 * 1_000L;
+
+  private static final long PURGE_INTERVAL_MILLIS = 60_000;
+
+  private final long                            ttlMillis;
+  private final LinkedHashMap<String, Recorded> recent;
+  private final AtomicLong                      nextPurge = new AtomicLong();
+
+  private final LongAdder     recorded   = new LongAdder();
+  private final LongAdder     replayed   = new LongAdder();
+  private final LongAdder     memoryHits = new LongAdder();
+  private final LongAdder     purged     = new LongAdder();
+  private final AtomicBoolean closed     = new AtomicBoolean();
+
+  /**
+   * @param ttlMillis
+   *     How long a key is remembered after its operation was applied.
+   * @param capacity
+   *     The number of keys kept in memory.
+   */
+  public OperationKeys(final long ttlMillis, final int capacity) {
+    this.ttlMillis = ttlMillis;
+    this.recent = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Recorded> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * It returns keys that are remembered for 24 hours, 100000 of them in memory.
+   */
+  public static OperationKeys defaults() {
+    return new OperationKeys(DEFAULT_TTL_MILLIS, 100_000);
+  }
+
+  /**
+   * It returns the balance recorded for the key of the card if the key is in memory and has not expired.
+   */
+  OptionalInt recent(String cardNumber, String operationKey, long now) {
+    Recorded found;
+
+    synchronized (recent) {
+      found = recent.get(id(cardNumber, operationKey));
+    }
+
+    if (found == null || found.expires() <= now) {
+      return OptionalInt.empty();
+    }
+
+    memoryHits.increment();
+    replayed.increment();
+    return OptionalInt.of(found.balance());
+  }
+
+  /**
+   * It keeps the balance of a key that was read from the database, so the next retry is answered from memory.
+   */
+  OptionalInt replayed(String cardNumber, String operationKey, int balance, long expires) {
+    replayed.increment();
+    remember(cardNumber, operationKey, balance, expires);
+    return OptionalInt.of(balance);
+  }
+
+  /**
+   * It keeps the balance of a key whose operation was committed.
+   */
+  void recorded(String cardNumber, String operationKey, int balance, long expires) {
+    recorded.increment();
+    remember(cardNumber, operationKey, balance, expires);
+  }
+
+  /**
+   * It drops the key of an operation that was undone, e.g. a transfer between shards that was refunded.
+   */
+  void forget(String cardNumber, String operationKey) {
+    synchronized (recent) {
+      recent.remove(id(cardNumber, operationKey));
+    }
+  }
+
+  /**
+   * It returns when a key recorded now expires.
+   */
+  long expires(long now) {
+    return now + ttlMillis;
+  }
+
+  /**
+   * It returns true to the first caller after the purge interval passed, which then deletes the expired keys.
+   */
+  boolean purgeDue(long now) {
+    long next = nextPurge.get();
+    return now >= next && nextPurge.compareAndSet(next, now + PURGE_INTERVAL_MILLIS);
+  }
+
+  void purged(int keys) {
+    purged.add(keys);
+  }
+
+  /**
+   * It prints the statistics of the keys. Only the first call has an effect, so the shards can share the keys.
+   */
+  @Override
+  public void close() {
+    if (!closed.compareAndSet(false, true)) {
+      return;
+    }
+
+    System.err.printf("Operation keys: recorded=%d replayed=%d replayed from memory=%d purged=%d%n", recorded.sum(),
+                      replayed.sum(), memoryHits.sum(), purged.sum());
+  }
+
+  private void remember(String cardNumber, String operationKey, int balance, long expires) {
+    synchronized (recent) {
+      recent.put(id(cardNumber, operationKey), new Recorded(balance, expires));
+    }
+  }
+
+  static String id(String cardNumber, String operationKey) {
+    return cardNumber + '/' + operationKey;
+  }
+
+  private record Recorded(int balance, long expires) {}
+
+}
@@ -0,0 +1,10 @@
+package dao;
+
+/**
+ * This record represents a transfer between two shards whose money has left the sender but may not have reached the
+ * recipient yet. It is kept in the database of the sender until the recipient has it, with the operation key it was
+ * made with, or null. The balance the transfer left to the sender is only known to the call that prepared it, a
+ * transfer read back from the database has 0.
+ */
+record PendingTransfer(long id, String fromCardNumber, String toCardNumber, int amount, long timestamp,
+                       String operationKey, int senderBalance) {}
@@ -0,0 +1,7 @@
+package dao;
+
+/**
+ * This record represents a deposit or transfer applied under an operation key, with the balance it returned, whose key
+ * is not in the database yet.
+ */
+record RecordedOperation(String cardNumber, String operationKey, int balance, long timestamp) {}
@@ -0,0 +1,457 @@
+package dao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import model.Account;
+import model.ReadConsistency;
+import model.Transaction;
+import model.Transfer;
+import model.TransferResult;
+import model.TransferStatus;
+
+/**
+ * This class represents a data access object that spreads the accounts over several SQLite databases, the shards. <br/>
+ * An account lives in the shard picked by a hash of its account identifier, the digits between the BIN and the
+ * checksum of the card number. Every shard has its own connections and writer, so writes to accounts in different
+ * shards don't wait for each other. The shards must always be passed in the same order; every database remembers its
+ * position, and a database with accounts that was not a shard yet is refused, since its accounts would be looked up in
+ * the wrong shards. <br/>
+ * A transfer within a shard is a single transaction of that shard. A transfer between shards is made in steps, each a
+ * transaction of one shard: the money is taken from the sender together with a pending transfer record, it is given to
+ * the recipient together with a record that the transfer was applied, and then both records are dropped. If the
+ * recipient is missing the money goes back to the sender. A transfer interrupted by a crash stays pending and is
+ * finished by {@link #recover()}; the applied record makes repeating a step harmless, so money is never lost or made.
+ * <br/>
+ * If the shard of the recipient fails, giving it the money is tried again a few times. A transfer that still fails, or
+ * whose records the shard of the sender fails to drop, is {@link TransferStatus#PENDING}: the money has left the
+ * sender, and the transfer is parked for a finisher thread that retries it in the background until the shards work
+ * again.
+ */
+public class ShardedAccountDao implements AccountDao {
+
+  private static final int  CARD_NUMBER_LENGTH       = 16;
+  private static final int  ACCOUNT_IDENTIFIER_START = 6;
+  private static final int  ACCOUNT_IDENTIFIER_END   = 15;
+  private static final long GOLDEN_RATIO             = 0x9E3779B97F4A7C15L;
+  private static final int  FINISH_ATTEMPTS          = 3;
+  private static final long FINISHER_INTERVAL_NANOS  = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private final List<SqliteAccountDao> shards;
+  private final AtomicBoolean          closed = new AtomicBoolean();
+
+  /**
+   * The transfers whose recipient shard failed, guarded by itself for starting the finisher.
+   */
+  private final Queue<ParkedTransfer> parked = new ConcurrentLinkedQueue<>();
+
+  private volatile Consumer<String> finishListener = cardNumber -> {
+  };
+
+  /**
+   * The thread finishing the parked transfers, started with the first of them.
+   */
+  private Thread finisher;
+
+  public ShardedAccountDao(final List<SqliteAccountDao> shards) {
+    this.shards = List.copyOf(shards);
+
+    for (int i = 0; i < this.shards.size(); i++) {
+      if (!this.shards.get(i).claimShard(i, this.shards.size())) {
+        throw new IllegalArgumentException("Database " + (i + 1) + " is not shard " + (i + 1) + " of "
+                                           + this.shards.size() + ", pass the shards in their original order!");
+      }
+    }
+  }
+
+  /**
+   * It returns the shard of the card number: a hash of the account identifier, scaled to the number of shards. Card
+   * numbers of another length are hashed as a whole.
+   */
+  public static int shardOf(String cardNumber, int shards) {
+    long key;
+
+    if (cardNumber.length() == CARD_NUMBER_LENGTH) {
+      key = 0;
+
+      for (int i = ACCOUNT_IDENTIFIER_START; i < ACCOUNT_IDENTIFIER_END; i++) {
+        key = key * 10 + cardNumber.charAt(i) - '0';
+      }
+    } else {
+      key = cardNumber.hashCode();
+    }
+    return (int) (((key * GOLDEN_RATIO >>> 32) * shards) >>> 32);
+  }
+
+  @Override
+  public Optional<Account> get(String cardNumber, String cardPIN) {
+    return shard(cardNumber).get(cardNumber, cardPIN);
+  }
+
+  @Override
+  public Optional<Account> getStored(String cardNumber) {
+    return shard(cardNumber).getStored(cardNumber);
+  }
+
+  @Override
+  public OptionalInt getBalance(String cardNumber, ReadConsistency consistency) {
+    return shard(cardNumber).getBalance(cardNumber, consistency);
+  }
+
+  @Override
+  public boolean contains(String cardNumber) {
+    return shard(cardNumber).contains(cardNumber);
+  }
+
+  @Override
+  public long count() {
+    long count = 0;
+
+    for (SqliteAccountDao shard : shards) {
+      count += shard.count();
+    }
+    return count;
+  }
+
+  @Override
+  public void forEachCardNumber(Consumer<String> action) {
+    for (SqliteAccountDao shard : shards) {
+      shard.forEachCardNumber(action);
+    }
+  }
+
+  @Override
+  public boolean save(Account account) {
+    return shard(account.getCard().number()).save(account);
+  }
+
+  /**
+   * This method creates the accounts of every shard in one transaction of that shard.
+   *
+   * @return The accounts that were created, grouped by shard.
+   */
+  @Override
+  public List<Account> saveAll(List<Account> accounts) {
+    List<List<Account>> groups = new ArrayList<>(shards.size());
+
+    for (int i = 0; i < shards.size(); i++) {
+      groups.add(new ArrayList<>());
+    }
+
+    for (Account account : accounts) {
+      groups.get(shardOf(account.getCard().number(), shards.size())).add(account);
+    }
+
+    List<Account> saved = new ArrayList<>(accounts.size());
+
+    for (int i = 0; i < shards.size(); i++) {
+      if (!groups.get(i).isEmpty()) {
+        saved.addAll(shards.get(i).saveAll(groups.get(i)));
+      }
+    }
+    return saved;
+  }
+
+  @Override
+  public OptionalInt update(String cardNumber, int income) {
+    return shard(cardNumber).update(cardNumber, income);
+  }
+
+  @Override
+  public OptionalInt update(String cardNumber, int income, String operationKey) {
+    return shard(cardNumber).update(cardNumber, income, operationKey);
+  }
+
+  @Override
+  public TransferResult transfer(String fromCardNumber, String toCardNumber, int amount) {
+    return transfer(fromCardNumber, toCardNumber, amount, null);
+  }
+
+  /**
+   * This method records the operation key in the shard of the sender, in the transaction that takes the money from
+   * the sender. A retry of a transfer between shards whose key was recorded gets the balance recorded for it. A
+   * transfer between shards returns the balance that transaction left to the sender.
+   */
+  @Override
+  public TransferResult transfer(String fromCardNumber, String toCardNumber, int amount, String operationKey) {
+    int from = shardOf(fromCardNumber, shards.size());
+    int to = shardOf(toCardNumber, shards.size());
+
+    if (from == to) {
+      return shards.get(from).transfer(fromCardNumber, toCardNumber, amount, operationKey);
+    }
+
+    if (operationKey != null) {
+      OptionalInt recorded = shards.get(from).getOperation(fromCardNumber, operationKey);
+
+      if (recorded.isPresent()) {
+        return TransferResult.success(recorded.getAsInt());
+      }
+    }
+
+    TransferResult result = transfer(from, to, new Transfer(fromCardNumber, toCardNumber, amount), operationKey);
+
+    if (result.status() == TransferStatus.NOT_ENOUGH_MONEY && operationKey != null) {
+      // A concurrent retry with the same key may have made the transfer meanwhile
+      OptionalInt recorded = shards.get(from).getOperation(fromCardNumber, operationKey);
+
+      if (recorded.isPresent()) {
+        return TransferResult.success(recorded.getAsInt());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * This method applies the batch in order: every run of transfers within the same shard in one transaction of that
+   * shard, and every transfer between shards in steps.
+   */
+  @Override
+  public List<TransferStatus> transfer(List<Transfer> transfers) {
+    List<TransferStatus> statuses = new ArrayList<>(transfers.size());
+    int start = 0;
+
+    while (start < transfers.size()) {
+      Transfer first = transfers.get(start);
+      int from = shardOf(first.fromCardNumber(), shards.size());
+      int to = shardOf(first.toCardNumber(), shards.size());
+
+      if (from != to) {
+        statuses.add(transfer(from, to, first, null).status());
+        start++;
+        continue;
+      }
+
+      int end = start + 1;
+
+      while (end < transfers.size()
+             && shardOf(transfers.get(end).fromCardNumber(), shards.size()) == from
+             && shardOf(transfers.get(end).toCardNumber(), shards.size()) == from) {
+        end++;
+      }
+
+      statuses.addAll(shards.get(from).transfer(transfers.subList(start, end)));
+      start = end;
+    }
+    return statuses;
+  }
+
+  @Override
+  public List<Transaction> getStatement(String cardNumber, Transaction before, int limit) {
+    return shard(cardNumber).getStatement(cardNumber, before, limit);
+  }
+
+  @Override
+  public void forEachTransaction(String cardNumber, long from, long to, Consumer<Transaction> action) {
+    shard(cardNumber).forEachTransaction(cardNumber, from, to, action);
+  }
+
+  @Override
+  public boolean delete(Account account) {
+    return shard(account.getCard().number()).delete(account);
+  }
+
+  /**
+   * This method finishes the transfers between shards that were interrupted, e.g. by a crash: the money of a pending
+   * transfer is given to the recipient unless it has it already, or back to the sender if the recipient is missing.
+   *
+   * @return The number of transfers that were finished.
+   */
+  public int recover() {
+    int finished = 0;
+
+    for (int from = 0; from < shards.size(); from++) {
+      for (PendingTransfer pending : shards.get(from).getPendingTransfers()) {
+        int to = shardOf(pending.toCardNumber(), shards.size());
+        finished += finish(from, to, pending) != TransferStatus.FAILED ? 1 : 0;
+      }
+    }
+    return finished;
+  }
+
+  /**
+   * This method sets the action called with the card number whose balance a parked transfer changed when the finisher
+   * thread finishes it: the recipient, or the sender if the money went back. A cache in front of the shards drops the
+   * balance with it.
+   */
+  public void setFinishListener(Consumer<String> finishListener) {
+    this.finishListener = finishListener;
+  }
+
+  /**
+   * This method returns the number of transfers between shards that are parked for the finisher thread.
+   */
+  public int getParkedTransfers() {
+    return parked.size();
+  }
+
+  /**
+   * This method returns the number of database errors of all shards.
+   */
+  public long getErrors() {
+    long errors = 0;
+
+    for (SqliteAccountDao shard : shards) {
+      errors += shard.getErrors();
+    }
+    return errors;
+  }
+
+  /**
+   * This method returns the shards, in their order.
+   */
+  public List<SqliteAccountDao> getShards() {
+    return shards;
+  }
+
+  /**
+   * It stops the finisher thread before closing the shards; the transfers still parked stay pending in the shards of
+   * their senders and are finished by {@link #recover()} on the next start.
+   */
+  @Override
+  public void close() {
+    if (!closed.compareAndSet(false, true)) {
+      return;
+    }
+
+    Thread parkedFinisher;
+
+    synchronized (parked) {
+      parkedFinisher = finisher;
+    }
+
+    if (parkedFinisher != null) {
+      LockSupport.unpark(parkedFinisher);
+
+      try {
+        parkedFinisher.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    for (SqliteAccountDao shard : shards) {
+      shard.close();
+    }
+  }
+
+  private SqliteAccountDao shard(String cardNumber) {
+    return shards.get(shardOf(cardNumber, shards.size()));
+  }
+
+  /**
+   * It makes a transfer between two shards, which returns the balance the preparing transaction left to the sender.
+   */
+  private TransferResult transfer(int from, int to, Transfer transfer, String operationKey) {
+    if (!shards.get(to).contains(transfer.toCardNumber())) {
+      return TransferResult.refused(TransferStatus.NO_SUCH_RECIPIENT);
+    }
+
+    Optional<PendingTransfer> pending = shards.get(from).prepareTransfer(transfer.fromCardNumber(),
+                                                                         transfer.toCardNumber(), transfer.amount(),
+                                                                         operationKey);
+
+    if (pending.isEmpty()) {
+      return TransferResult.refused(TransferStatus.NOT_ENOUGH_MONEY);
+    }
+
+    TransferStatus status = settle(from, to, pending.get());
+    return status.isMade() ? new TransferResult(status, pending.get().senderBalance()) : TransferResult.refused(status);
+  }
+
+  /**
+   * It finishes the prepared transfer, or parks it for the background finisher if the recipient shard keeps failing.
+   */
+  private TransferStatus settle(int from, int to, PendingTransfer pending) {
+    TransferStatus status = finish(from, to, pending);
+
+    if (status == TransferStatus.FAILED) {
+      park(new ParkedTransfer(from, to, pending));
+      return TransferStatus.PENDING;
+    }
+    return status;
+  }
+
+  /**
+   * It gives the money of the pending transfer to the recipient, or back to the sender if the recipient is missing,
+   * and then drops the records of the transfer. A failure of the recipient shard is tried again a few times; if it
+   * keeps failing the transfer stays pending. The record that the transfer was applied is dropped only once the sender
+   * has forgotten the transfer: while the transfer is pending, that record is what keeps a repeated step from paying
+   * the recipient twice.
+   *
+   * @return FAILED if the transfer is still pending.
+   */
+  private TransferStatus finish(int from, int to, PendingTransfer pending) {
+    TransferStatus status = TransferStatus.FAILED;
+
+    for (int attempt = 0; attempt < FINISH_ATTEMPTS && status == TransferStatus.FAILED; attempt++) {
+      status = shards.get(to).applyTransfer(from, pending);
+    }
+
+    switch (status) {
+      case SUCCESS -> {
+        if (!shards.get(from).completeTransfer(pending.id())) {
+          return TransferStatus.FAILED;
+        }
+        shards.get(to).forgetTransfer(from, pending.id());
+      }
+      case NO_SUCH_RECIPIENT -> {
+        if (!shards.get(from).cancelTransfer(pending)) {
+          return TransferStatus.FAILED;
+        }
+      }
+      default -> {
+      }
+    }
+    return status;
+  }
+
+
+  private void park(ParkedTransfer transfer) {
+    parked.add(transfer);
+
+    synchronized (parked) {
+      if (finisher == null && !closed.get()) {
+        finisher = new Thread(this::finishParked, "shard-transfer-finisher");
+        finisher.setDaemon(true);
+        finisher.start();
+      }
+    }
+  }
+
+  /**
+   * It tries the parked transfers again periodically, each of them once per round, and parks those that fail again at
+   * the end of the queue.
+   */
+  private void finishParked() {
+    while (!closed.get()) {
+      LockSupport.parkNanos(this, FINISHER_INTERVAL_NANOS);
+
+      for (int i = parked.size(); i > 0 && !closed.get(); i--) {
+        ParkedTransfer transfer = parked.peek();
+
+        switch (finish(transfer.from(), transfer.to(), transfer.pending())) {
+          case SUCCESS -> finishListener.accept(transfer.pending().toCardNumber());
+          case NO_SUCH_RECIPIENT -> finishListener.accept(transfer.pending().fromCardNumber());
+          default -> parked.add(transfer);
+        }
+        // Only this thread takes from the queue, so the transfer is still at its head and counted until now
+        parked.remove();
+      }
+    }
+  }
+
+  /**
+   * A transfer between shards whose recipient shard failed, with the positions of both shards.
+   */
+  private record ParkedTransfer(int from, int to, PendingTransfer pending) {}
+
+}
@@ -0,0 +1,1683 @@
+package dao;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import configuration.ConnectionProvider;
+import configuration.PooledConnection;
+import journal.JournalRecord;
+import journal.TransactionJournal;
+import model.Account;
+import model.Card;
+import model.ReadConsistency;
+import model.Transaction;
+import model.TransactionType;
+import model.Transfer;
+import model.TransferResult;
+import model.TransferStatus;
+import security.PinVerifier;
+
+/**
+ * This class represents an data access object for account, backed by the SQLite database. <br/>
+ * Every deposit and transfer adds its entries to the {@code transactions} table in the same transaction, which the
+ * statements are read from. <br/>
+ * With a {@link TransactionJournal} every change is also appended to the journal while the writer connection is held,
+ * and the call returns once the journal is on the disk. Each account row keeps the log sequence number of the last
+ * change applied to it, so {@link #recover()} can replay the journal over the database without applying a change
+ * twice. <br/>
+ * PINs are stored as salted hashes. They are hashed before the writer connection is taken and verified after the
+ * reader connection is returned, both on the login pool of the {@link PinVerifier}. <br/>
+ * Snapshot reads of balances and the statement exports are served from the snapshot connections of the pool, which
+ * skip the reader connections the logins and the consistent reads use. <br/>
+ * Deposits and transfers made with an operation key look the key up and record it in their transaction, see
+ * {@link OperationKeys}. <br/>
+ * As a shard of the {@link ShardedAccountDao} it also keeps the transfers to other shards that are pending, and those
+ * from other shards that were applied, so a transfer between shards is made in steps that can be repeated.
+ */
+public class SqliteAccountDao implements AccountDao {
+
+  private static final String GET_ACCOUNT_QUERY        = "SELECT number, pin, balance FROM account WHERE number = ?";
+  private static final String ACCOUNT_IS_PRESENT_QUERY = "SELECT number FROM account WHERE number = ?";
+  private static final String CREATE_ACCOUNT_QUERY     = "INSERT INTO account (number, pin, lsn) VALUES (?, ?, ?)";
+  private static final String CREATE_IF_ABSENT_QUERY   = "INSERT OR IGNORE INTO account (number, pin, lsn) VALUES (?, ?, ?)";
+  private static final String UPDATE_ACCOUNT_QUERY     = "UPDATE account SET balance = balance + ?, lsn = max(lsn, ?) WHERE number = ?";
+  private static final String DELETE_ACCOUNT_QUERY     = "DELETE FROM account WHERE number = ?";
+  private static final String WITHDRAW_QUERY           = "UPDATE account SET balance = balance - ?, lsn = max(lsn, ?) WHERE number = ? AND balance >= ?";
+  private static final String GET_BALANCE_QUERY        = "SELECT balance FROM account WHERE number = ?";
+  private static final String COUNT_ACCOUNTS_QUERY     = "SELECT COUNT(*) FROM account";
+  private static final String GET_NUMBERS_QUERY        = "SELECT number FROM account";
+  private static final String GET_ACCOUNTS_QUERY       = "SELECT number, pin, balance FROM account";
+  private static final String EXPORT_ACCOUNTS_QUERY    = "SELECT number, pin, balance, lsn FROM account";
+  private static final String SET_ACCOUNT_QUERY        = "UPDATE account SET pin = ?, balance = ? WHERE number = ?";
+  private static final String RESTORE_ACCOUNT_QUERY    = "INSERT INTO account (number, pin, balance) VALUES (?, ?, ?)";
+
+  private static final String REPLAY_OPEN_QUERY        = """
+                                                        INSERT INTO account (number, pin, lsn) SELECT ?, ?, ?
+                                                        WHERE NOT EXISTS (SELECT 1 FROM account WHERE number = ?)""";
+  private static final String REPLAY_DEPOSIT_QUERY     = "UPDATE account SET balance = balance + ?, lsn = ? WHERE number = ? AND lsn < ?";
+  private static final String REPLAY_WITHDRAW_QUERY    = "UPDATE account SET balance = balance - ?, lsn = ? WHERE number = ? AND lsn < ? AND balance >= ?";
+  private static final String REPLAY_CLOSE_QUERY       = "DELETE FROM account WHERE number = ? AND lsn < ?";
+  private static final String MAX_LSN_QUERY            = "SELECT max(lsn) FROM account";
+  private static final String GET_CHECKPOINT_QUERY     = "SELECT lsn FROM journal_checkpoint";
+  private static final String SET_CHECKPOINT_QUERY     = "INSERT OR REPLACE INTO journal_checkpoint (id, lsn) VALUES (0, ?)";
+  private static final String GET_SYNCHRONOUS_QUERY    = "PRAGMA synchronous";
+  private static final String SET_SYNCHRONOUS_QUERY    = "PRAGMA synchronous = ";
+  private static final String DATABASE_FILE_QUERY      = "SELECT file FROM pragma_database_list WHERE name = 'main'";
+  private static final int    SYNCHRONOUS_FULL         = 2;
+  private static final String INSERT_TRANSACTION_QUERY = "INSERT INTO transactions (number, timestamp, type, amount, counterparty) VALUES (?, ?, ?, ?, ?)";
+  private static final String GET_STATEMENT_QUERY      = """
+                                                        SELECT id, number, timestamp, type, amount, counterparty FROM transactions
+                                                        WHERE number = ? AND (timestamp, id) < (?, ?)
+                                                        ORDER BY timestamp DESC, id DESC LIMIT ?""";
+  private static final String GET_TRANSACTIONS_QUERY   = """
+                                                        SELECT id, number, timestamp, type, amount, counterparty FROM transactions
+                                                        WHERE number = ? AND timestamp >= ? AND timestamp < ?
+                                                        ORDER BY timestamp, id""";
+
+  private static final String GET_PLAIN_PINS_QUERY     = "SELECT number, pin FROM account WHERE pin NOT LIKE 'pbkdf2$%'";
+  private static final String SET_PIN_QUERY            = "UPDATE account SET pin = ? WHERE number = ? AND pin = ?";
+
+  private static final String INSERT_PENDING_QUERY     = "INSERT INTO pending_transfer (from_number, to_number, amount, timestamp, operation) VALUES (?, ?, ?, ?, ?)";
+  private static final String DELETE_PENDING_QUERY     = "DELETE FROM pending_transfer WHERE id = ?";
+  private static final String GET_PENDING_QUERY        = "SELECT id, from_number, to_number, amount, timestamp, operation FROM pending_transfer ORDER BY id";
+  private static final String INSERT_APPLIED_QUERY     = "INSERT OR IGNORE INTO applied_transfer (source, id) VALUES (?, ?)";
+  private static final String DELETE_APPLIED_QUERY     = "DELETE FROM applied_transfer WHERE source = ? AND id = ?";
+  private static final String LAST_ID_QUERY            = "SELECT last_insert_rowid()";
+  private static final String GET_SHARD_QUERY          = "SELECT position, count FROM shard";
+  private static final String SET_SHARD_QUERY          = "INSERT INTO shard (id, position, count) VALUES (0, ?, ?)";
+
+  private static final String GET_OPERATION_QUERY      = "SELECT balance, expires FROM operation_key WHERE number = ? AND operation = ? AND expires > ?";
+  private static final String SET_OPERATION_QUERY      = "INSERT OR REPLACE INTO operation_key (number, operation, balance, expires) VALUES (?, ?, ?, ?)";
+  private static final String PURGE_OPERATIONS_QUERY   = "DELETE FROM operation_key WHERE expires <= ?";
+  private static final String DELETE_OPERATION_QUERY   = "DELETE FROM operation_key WHERE number = ? AND operation = ?";
+  private static final String REPLAY_OPERATION_QUERY   = "INSERT OR IGNORE INTO operation_key (number, operation, balance, expires) VALUES (?, ?, ?, ?)";
+
+  private static final int FETCH_SIZE = 10_000;
+
+  private final ConnectionProvider connectionProvider;
+  private final TransactionJournal journal;
+  private final PinVerifier        pinVerifier;
+  private final OperationKeys      operationKeys;
+  private final LongAdder          errors = new LongAdder();
+
+  /**
+   * The journal segment that was current at the last checkpoint, 0 before the journal was recovered or while a
+   * checkpoint is being taken. A later segment makes the next write take a checkpoint.
+   */
+  private final AtomicLong checkpointedSegment = new AtomicLong();
+
+  public SqliteAccountDao(final ConnectionProvider connectionProvider) {
+    this(connectionProvider, null);
+  }
+
+  public SqliteAccountDao(final ConnectionProvider connectionProvider, final TransactionJournal journal) {
+    this(connectionProvider, journal, PinVerifier.defaults());
+  }
+
+  public SqliteAccountDao(final ConnectionProvider connectionProvider, final TransactionJournal journal,
+                          final PinVerifier pinVerifier) {
+    this(connectionProvider, journal, pinVerifier, OperationKeys.defaults());
+  }
+
+  public SqliteAccountDao(final ConnectionProvider connectionProvider, final TransactionJournal journal,
+                          final PinVerifier pinVerifier, final OperationKeys operationKeys) {
+    this.connectionProvider = connectionProvider;
+    this.journal = journal;
+    this.pinVerifier = pinVerifier;
+    this.operationKeys = operationKeys;
+  }
+
+  /**
+   * This method returns an account by its number and pin.
+   *
+   * @param cardNumber
+   * @param cardPIN
+   *
+   * @return
+   */
+  @Override
+  public Optional<Account> get(String cardNumber, String cardPIN) {
+    String storedPin;
+    int balance;
+
+    try (PooledConnection connection = connectionProvider.reader()) {
+      PreparedStatement statement = connection.prepare(GET_ACCOUNT_QUERY);
+      statement.setString(1, cardNumber);
+
+      try (ResultSet resultSet = statement.executeQuery()) {
+        if (!resultSet.next()) {
+          return Optional.empty();
+        }
+
+        storedPin = resultSet.getString("pin");
+        balance = resultSet.getInt("balance");
+      }
+    } catch (SQLException e) {
+      error("Wrong input!", e);
+      return Optional.empty();
+    }
+
+    if (!pinVerifier.verify(cardPIN, storedPin)) {
+      return Optional.empty();
+    }
+    return Optional.of(new Account(new Card(cardNumber, cardPIN), balance));
+  }
+
+  /**
+   * This method returns an account with the hash of its PIN, read from a reader connection.
+   *
+   * @param cardNumber
+   *
+   * @return The stored account, or empty if there is no such account.
+   */
+  @Override
+  public Optional<Account> getStored(String cardNumber) {
+    try (PooledConnection connection = connectionProvider.reader()) {
+      PreparedStatement statement = connection.prepare(GET_ACCOUNT_QUERY);
+      statement.setString(1, cardNumber);
+
+      try (ResultSet resultSet = statement.executeQuery()) {
+        if (resultSet.next()) {
+          return Optional.of(new Account(new Card(cardNumber, resultSet.getString("pin")),
+                                         resultSet.getInt("balance")));
+        }
+      }
+    } catch (SQLException e) {
+      error("Cannot read the account!", e);
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * This method reads the balance from a snapshot connection or from a reader connection, as asked.
+   *
+   * @param cardNumber
+   * @param consistency
+   *
+   * @return The balance, or empty if there is no such account.
+   */
+  @Override
+  public OptionalInt getBalance(String cardNumber, ReadConsistency consistency) {
+    try (PooledConnection connection = consistency == ReadConsistency.SNAPSHOT
+                                       ? connectionProvider.snapshot()
+                                       : connectionProvider.reader()) {
+      PreparedStatement statement = connection.prepare(GET_BALANCE_QUERY);
+      statement.setString(1, cardNumber);
+
+      try (ResultSet resultSet = statement.executeQuery()) {
+        if (resultSet.next()) {
+          return OptionalInt.of(resultSet.getInt("balance"));
+        }
+      }
+    } catch (SQLException e) {
+      error("Cannot read the balance!", e);
+    }
+    return OptionalInt.empty();
+  }
+
+  /**
+   * This method checks if an account with the given number is present in the database.
+   *
+   * @param cardNumber
+   *
+   * @return boolean
+   */
+  @Override
+  public boolean contains(String cardNumber) {
+    try (PooledConnection connection = connectionProvider.reader()) {
+      PreparedStatement statement = connection.prepare(ACCOUNT_IS_PRESENT_QUERY);
+      statement.setString(1, cardNumber);
+
+      try (ResultSet resultSet = statement.executeQuery()) {
+        if (resultSet.next()) {
+          return true;
+        }
+      }
+    } catch (SQLException e) {
+      error("Cannot check the card number!", e);
+    }
+    return false;
+  }
+
+  /**
+   * This method returns the number of accounts in the database.
+   *
+   * @return long
+   */
+  @Override
+  public long count() {
+    try (PooledConnection connection = connectionProvider.reader()) {
+      PreparedStatement statement = connection.prepare(COUNT_ACCOUNTS_QUERY);
+
+      try (ResultSet resultSet = statement.executeQuery()) {
+        resultSet.next();
+        return resultSet.getLong(1);
+      }
+    } catch (SQLException e) {
+      error("Cannot count accounts!", e);
+    }
+    return 0;
+  }
+
+  /**
+   * This method streams the card numbers from the database, the rows are fetched in chunks rather than all at once.
+   *
+   * @param action
+   */
+  @Override
+  public void forEachCardNumber(Consumer<String> action) {
+    try (PooledConnection connection = connectionProvider.reader()) {
+      PreparedStatement statement = connection.prepare(GET_NUMBERS_QUERY);
+      statement.setFetchSize(FETCH_SIZE);
+
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          action.accept(resultSet.getString(1));
+        }
+      }
+    } catch (SQLException e) {
+      error("Cannot read card numbers!", e);
+    }
+  }
+
+  /**
+   * This method streams every account from the database, the rows are fetched in chunks rather than all at once.
+   *
+   * @param action
+   */
+  void forEachAccount(Consumer<Account> action) {
+    try (PooledConnection connection = connectionProvider.reader()) {
+      PreparedStatement statement = connection.prepare(GET_ACCOUNTS_QUERY);
+      statement.setFetchSize(FETCH_SIZE);
+
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          action.accept(new Account(new Card(resultSet.getString(1), resultSet.getString(2)), resultSet.getInt(3)));
+        }
+      }
+    } catch (SQLException e) {
+      error("Cannot read accounts!", e);
+    }
+  }
+
+  /**
+   * This method streams every account from the database as it is stored, with the PIN hash and the log sequence number
+   * of its last journaled change, and lets the caller handle a failure of the database. The accounts are read in a
+   * single query, so they are a consistent snapshot.
+   *
+   * @param action
+   */
+  void readAccounts(Consumer<StoredAccount> action) throws SQLException {
+    try (PooledConnection connection = connectionProvider.reader()) {
+      PreparedStatement statement = connection.prepare(EXPORT_ACCOUNTS_QUERY);
+      statement.setFetchSize(FETCH_SIZE);
+
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          action.accept(new StoredAccount(resultSet.getString(1), resultSet.getString(2), resultSet.getInt(3),
+                                          resultSet.getLong(4)));
+        }
+      }
+    }
+  }
+
+  /**
+   * This method returns the sequence number of the transaction journal the database is known to hold durably, 0 if it
+   * was never used with a journal.
+   */
+  long getJournalCheckpoint() throws SQLException {
+    try (PooledConnection connection = connectionProvider.reader()) {
+      return getCheckpoint(connection);
+    }
+  }
+
+  /**
+   * This method starts restoring accounts into the empty account table, on the writer connection until the restore
+   * is closed.
+   *
+   * @param batchSize
+   *     The number of rows sent to the database in one JDBC batch.
+   */
+  AccountRestore restore(int batchSize) throws SQLException {
+    return new AccountRestore(connectionProvider.writer(), batchSize);
+  }
+
+  /**
+   * This method writes the state of the changed accounts in a single transaction: deleted accounts are removed, the
+   * others get their PIN and balance set, and those not in the database yet are created. The statement entries of the
+   * changes and the keys of the operations are added in the same transaction.
+   *
+   * @param changes
+   * @param transactions
+   * @param operations
+   *
+   * @return true if the changes were committed.
+   */
+  boolean persist(BalanceLedger.Changes changes, List<Transaction> transactions, List<RecordedOperation> operations) {
+    try (PooledConnection connection = connectionProvider.writer()) {
+      connection.beginTransaction();
+
+      PreparedStatement delete = connection.prepare(DELETE_ACCOUNT_QUERY);
+      PreparedStatement setAccount = connection.prepare(SET_ACCOUNT_QUERY);
+      PreparedStatement create = connection.prepare(RESTORE_ACCOUNT_QUERY);
+
+      for (int i = 0; i < changes.size; i++) {
+        String cardNumber = Long.toString(changes.keys[i]);
+
+        if (!changes.present[i]) {
+          delete.setString(1, cardNumber);
+          delete.executeUpdate();
+          continue;
+        }
+
+        setAccount.setString(1, changes.pins[i]);
+        setAccount.setLong(2, changes.balances[i]);
+        setAccount.setString(3, cardNumber);
+
+        if (setAccount.executeUpdate() == 0) {
+          create.setString(1, cardNumber);
+          create.setString(2, changes.pins[i]);
+          create.setLong(3, changes.balances[i]);
+          create.executeUpdate();
+        }
+      }
+
+      PreparedStatement history = connection.prepare(INSERT_TRANSACTION_QUERY);
+
+      for (Transaction transaction : transactions) {
+        addTransaction(history, transaction.cardNumber(), transaction.timestamp(), transaction.type(),
+                       transaction.amount(), transaction.counterparty());
+        history.addBatch();
+      }
+
+      history.executeBatch();
+
+      for (RecordedOperation operation : operations) {
+        setOperation(connection, operation.cardNumber(), operation.operationKey(), operation.balance(),
+                     operation.timestamp());
+      }
+
+      connection.commit();
+      return true;
+    } catch (SQLException e) {
+      error("Cannot persist the balance ledger!", e);
+    }
+    return false;
+  }
+
+  /**
+   * This method creates an account in the database.
+   *
+   * @param account
+   * @return false if the insert failed, e.g. on the unique index of the card number.
+   */
+  @Override
+  public boolean save(Account account) {
+    String pinHash = pinVerifier.hash(account.getCard().pin());
+    long lsn = 0;
+    boolean saved = false;
+
+    try (PooledConnection connection = connectionProvider.writer()) {
+      lsn = nextLsn();
+
+      PreparedStatement statement = connection.prepare(CREATE_ACCOUNT_QUERY);
+      statement.setString(1, account.getCard().number());
+      statement.setString(2, pinHash);
+      statement.setLong(3, lsn);
+      statement.executeUpdate();
+      journal(JournalRecord.open(lsn, account.getCard().number(), pinHash));
+      saved = true;
+    } catch (SQLException e) {
+      error("Cannot create account!", e);
+    }
+    awaitDurable(lsn);
+    return saved;
+  }
+
+  /**
+   * This method creates the accounts in the database in a single transaction, using one JDBC batch. <br/>
+   * Accounts whose card number is already taken are skipped thanks to the unique index on the number.
+   *
+   * @param accounts
+   *
+   * @return The accounts that were created.
+   */
+  @Override
+  public List<Account> saveAll(List<Account> accounts) {
+    List<Account> saved = new ArrayList<>(accounts.size());
+    List<String> pinHashes = pinVerifier.hashAll(accounts.stream().map(account -> account.getCard().pin()).toList());
+    long lsn = 0;
+
+    try (PooledConnection connection = connectionProvider.writer()) {
+      connection.beginTransaction();
+
+      PreparedStatement statement = connection.prepare(CREATE_IF_ABSENT_QUERY);
+      long[] lsns = new long[accounts.size()];
+
+      for (int i = 0; i < accounts.size(); i++) {
+        Account account = accounts.get(i);
+        lsns[i] = nextLsn();
+        statement.setString(1, account.getCard().number());
+        statement.setString(2, pinHashes.get(i));
+        statement.setLong(3, lsns[i]);
+        statement.addBatch();
+      }
+
+      int[] counts = statement.executeBatch();
+      connection.commit();
+
+      for (int i = 0; i < counts.length; i++) {
+        if (counts[i] > 0) {
+          saved.add(accounts.get(i));
+          journal(JournalRecord.open(lsns[i], accounts.get(i).getCard().number(), pinHashes.get(i)));
+          lsn = lsns[i];
+        }
+      }
+    } catch (SQLException e) {
+      error("Cannot create accounts!", e);
+      saved.clear();
+    }
+    awaitDurable(lsn);
+    return saved;
+  }
+
+  /**
+   * This method updates an account in the database and reads the new balance in the same transaction.
+   *
+   * @param cardNumber
+   * @param income
+   *
+   * @return The new balance, or empty if there is no such account.
+   */
+  @Override
+  public OptionalInt update(String cardNumber, int income) {
+    return update(cardNumber, income, null);
+  }
+
+  /**
+   * This method adds the income to the account balance in a single transaction, unless the operation key was recorded
+   * already; the key is looked up and recorded in that transaction.
+   *
+   * @param cardNumber
+   * @param income
+   * @param operationKey
+   *
+   * @return The new balance, or the balance recorded for the key, or empty if there is no such account.
+   */
+  @Override
+  public OptionalInt update(String cardNumber, int income, String operationKey) {
+    long now = System.currentTimeMillis();
+    OptionalInt result = operationKey == null
+                         ? OptionalInt.empty()
+                         : operationKeys.recent(cardNumber, operationKey, now);
+    long lsn = 0;
+
+    if (result.isPresent()) {
+      return result;
+    }
+
+    try (PooledConnection connection = connectionProvider.writer()) {
+      connection.beginTransaction();
+
+      if (operationKey != null) {
+        OptionalInt recorded = getOperation(connection, cardNumber, operationKey, now);
+
+        if (recorded.isPresent()) {
+          return recorded;
+        }
+      }
+
+      long next = nextLsn();
+      PreparedStatement statement = connection.prepare(UPDATE_ACCOUNT_QUERY);
+      statement.setInt(1, income);
+      statement.setLong(2, next);
+      statement.setString(3, cardNumber);
+
+      if (statement.executeUpdate() == 0) {
+        return OptionalInt.empty();
+      }
+
+      PreparedStatement balance = connection.prepare(GET_BALANCE_QUERY);
+      balance.setString(1, cardNumber);
+
+      try (ResultSet resultSet = balance.executeQuery()) {
+        resultSet.next();
+        result = OptionalInt.of(resultSet.getInt("balance"));
+      }
+
+      PreparedStatement history = connection.prepare(INSERT_TRANSACTION_QUERY);
+      addTransaction(history, cardNumber, now, TransactionType.DEPOSIT, income, "");
+      history.executeUpdate();
+      setOperation(connection, cardNumber, operationKey, result.getAsInt(), now);
+
+      connection.commit();
+      journal(JournalRecord.deposit(next, cardNumber, income, operationKey, result.getAsInt()));
+      lsn = next;
+      recorded(cardNumber, operationKey, result.getAsInt(), now);
+    } catch (SQLException e) {
+      error("Cannot update account!", e);
+    }
+    awaitDurable(lsn);
+    return result;
+  }
+
+  /**
+   * This method transfers money between two accounts in a single transaction. <br/>
+   * The sender is debited only if its balance covers the amount, and nothing is changed if either account is missing.
+   *
+   * @param fromCardNumber
+   * @param toCardNumber
+   * @param amount
+   *
+   * @return The status of the transfer with the new balance of the sender if it was made.
+   */
+  @Override
+  public TransferResult transfer(String fromCardNumber, String toCardNumber, int amount) {
+    return transfer(fromCardNumber, toCardNumber, amount, null);
+  }
+
+  /**
+   * This method transfers money between two accounts in a single transaction, unless the operation key of the sender
+   * was recorded already; the key is looked up and recorded in that transaction.
+   *
+   * @param fromCardNumber
+   * @param toCardNumber
+   * @param amount
+   * @param operationKey
+   *
+   * @return The status of the transfer with the new balance of the sender, or the balance recorded for the key.
+   */
+  @Override
+  public TransferResult transfer(String fromCardNumber, String toCardNumber, int amount, String operationKey) {
+    long now = System.currentTimeMillis();
+    OptionalInt recent = operationKey == null
+                         ? OptionalInt.empty()
+                         : operationKeys.recent(fromCardNumber, operationKey, now);
+    TransferResult result = TransferResult.refused(TransferStatus.FAILED);
+    long lsn = 0;
+
+    if (recent.isPresent()) {
+      return TransferResult.success(recent.getAsInt());
+    }
+
+    try (PooledConnection connection = connectionProvider.writer()) {
+      connection.beginTransaction();
+
+      if (operationKey != null) {
+        OptionalInt recorded = getOperation(connection, fromCardNumber, operationKey, now);
+
+        if (recorded.isPresent()) {
+          return TransferResult.success(recorded.getAsInt());
+        }
+      }
+
+      long next = nextLsn();
+      PreparedStatement withdraw = connection.prepare(WITHDRAW_QUERY);
+      withdraw.setInt(1, amount);
+      withdraw.setLong(2, next);
+      withdraw.setString(3, fromCardNumber);
+      withdraw.setInt(4, amount);
+
+      if (withdraw.executeUpdate() == 0) {
+        return TransferResult.refused(TransferStatus.NOT_ENOUGH_MONEY);
+      }
+
+      PreparedStatement deposit = connection.prepare(UPDATE_ACCOUNT_QUERY);
+      deposit.setInt(1, amount);
+      deposit.setLong(2, next);
+      deposit.setString(3, toCardNumber);
+
+      if (deposit.executeUpdate() == 0) {
+        return TransferResult.refused(TransferStatus.NO_SUCH_RECIPIENT);
+      }
+
+      PreparedStatement balance = connection.prepare(GET_BALANCE_QUERY);
+      balance.setString(1, fromCardNumber);
+      int left;
+
+      try (ResultSet resultSet = balance.executeQuery()) {
+        resultSet.next();
+        left = resultSet.getInt("balance");
+      }
+
+      PreparedStatement history = connection.prepare(INSERT_TRANSACTION_QUERY);
+      addTransfer(history, fromCardNumber, toCardNumber, amount, now);
+      history.executeBatch();
+      setOperation(connection, fromCardNumber, operationKey, left, now);
+
+      connection.commit();
+      journal(JournalRecord.transfer(next, fromCardNumber, toCardNumber, amount, operationKey, left));
+      lsn = next;
+      recorded(fromCardNumber, operationKey, left, now);
+      result = TransferResult.success(left);
+    } catch (SQLException e) {
+      error("Cannot transfer money!", e);
+    }
+    awaitDurable(lsn);
+    return result;
+  }
+
+  /**
+   * This method applies a batch of transfers in a single transaction, in the order they are given. <br/>
+   * Deposits are sent to the database in JDBC batches, which are flushed before debiting a card that has pending
+   * deposits, so every transfer sees the balances left by the previous ones. A transfer that cannot be made is skipped
+   * without affecting the rest of the batch.
+   *
+   * @param transfers
+   *
+   * @return The status of every transfer, in the same order.
+   */
+  @Override
+  public List<TransferStatus> transfer(List<Transfer> transfers) {
+    List<TransferStatus> statuses = new ArrayList<>(transfers.size());
+    long lsn = 0;
+
+    try (PooledConnection connection = connectionProvider.writer()) {
+      connection.beginTransaction();
+
+      PreparedStatement contains = connection.prepare(ACCOUNT_IS_PRESENT_QUERY);
+      PreparedStatement withdraw = connection.prepare(WITHDRAW_QUERY);
+      PreparedStatement deposit = connection.prepare(UPDATE_ACCOUNT_QUERY);
+      PreparedStatement history = connection.prepare(INSERT_TRANSACTION_QUERY);
+      long timestamp = System.currentTimeMillis();
+      Set<String> pendingDeposits = new HashSet<>();
+      long[] lsns = new long[transfers.size()];
+
+      for (Transfer transfer : transfers) {
+        contains.setString(1, transfer.toCardNumber());
+
+        try (ResultSet resultSet = contains.executeQuery()) {
+          if (!resultSet.next()) {
+            statuses.add(TransferStatus.NO_SUCH_RECIPIENT);
+            continue;
+          }
+        }
+
+        if (pendingDeposits.contains(transfer.fromCardNumber())) {
+          deposit.executeBatch();
+          pendingDeposits.clear();
+        }
+
+        long next = nextLsn();
+        withdraw.setInt(1, transfer.amount());
+        withdraw.setLong(2, next);
+        withdraw.setString(3, transfer.fromCardNumber());
+        withdraw.setInt(4, transfer.amount());
+
+        if (withdraw.executeUpdate() == 0) {
+          statuses.add(TransferStatus.NOT_ENOUGH_MONEY);
+          continue;
+        }
+
+        deposit.setInt(1, transfer.amount());
+        deposit.setLong(2, next);
+        deposit.setString(3, transfer.toCardNumber());
+        deposit.addBatch();
+        pendingDeposits.add(transfer.toCardNumber());
+        addTransfer(history, transfer.fromCardNumber(), transfer.toCardNumber(), transfer.amount(), timestamp);
+        lsns[statuses.size()] = next;
+        statuses.add(TransferStatus.SUCCESS);
+      }
+
+      deposit.executeBatch();
+      history.executeBatch();
+      connection.commit();
+
+      for (int i = 0; i < statuses.size(); i++) {
+        if (statuses.get(i) == TransferStatus.SUCCESS) {
+          Transfer transfer = transfers.get(i);
+          journal(JournalRecord.transfer(lsns[i], transfer.fromCardNumber(), transfer.toCardNumber(), transfer.amount()));
+          lsn = lsns[i];
+        }
+      }
+    } catch (SQLException e) {
+      error("Cannot transfer money!", e);
+      return Collections.nCopies(transfers.size(), TransferStatus.FAILED);
+    }
+    awaitDurable(lsn);
+    return statuses;
+  }
+
+  /**
+   * This method applies the queued deposits, transfers and closings in a single transaction, in the order they are
+   * given, and sets the result of every command: the new balance of the account or of the sender, empty if the
+   * command could not be applied. A command that cannot be applied doesn't affect the others; if the transaction fails
+   * every result is empty. With a journal it returns once all changes are on the disk, with one sync for the batch.
+   *
+   * @param commands
+   */
+  void apply(List<AccountCommand> commands) {
+    long lsn = 0;
+
+    try (PooledConnection connection = connectionProvider.writer()) {
+      connection.beginTransaction();
+
+      PreparedStatement contains = connection.prepare(ACCOUNT_IS_PRESENT_QUERY);
+      PreparedStatement withdraw = connection.prepare(WITHDRAW_QUERY);
+      PreparedStatement deposit = connection.prepare(UPDATE_ACCOUNT_QUERY);
+      PreparedStatement balance = connection.prepare(GET_BALANCE_QUERY);
+      PreparedStatement delete = connection.prepare(DELETE_ACCOUNT_QUERY);
+      PreparedStatement history = connection.prepare(INSERT_TRANSACTION_QUERY);
+      long timestamp = System.currentTimeMillis();
+      List<JournalRecord> records = new ArrayList<>(commands.size());
+      List<AccountCommand> keyed = new ArrayList<>();
+
+      for (AccountCommand command : commands) {
+        if (command.operationKey != null) {
+          command.result = getOperation(connection, command.cardNumber, command.operationKey, timestamp);
+
+          if (command.result.isPresent()) {
+            continue;
+          }
+        }
+
+        long next = nextLsn();
+
+        switch (command.type) {
+          case DEPOSIT -> {
+            deposit.setInt(1, command.amount);
+            deposit.setLong(2, next);
+            deposit.setString(3, command.cardNumber);
+
+            if (deposit.executeUpdate() == 0) {
+              continue;
+            }
+
+            addTransaction(history, command.cardNumber, timestamp, TransactionType.DEPOSIT, command.amount, "");
+            history.addBatch();
+          }
+          case TRANSFER -> {
+            contains.setString(1, command.toCardNumber);
+
+            try (ResultSet resultSet = contains.executeQuery()) {
+              if (!resultSet.next()) {
+                command.status = TransferStatus.NO_SUCH_RECIPIENT;
+                continue;
+              }
+            }
+
+            withdraw.setInt(1, command.amount);
+            withdraw.setLong(2, next);
+            withdraw.setString(3, command.cardNumber);
+            withdraw.setInt(4, command.amount);
+
+            if (withdraw.executeUpdate() == 0) {
+              command.status = TransferStatus.NOT_ENOUGH_MONEY;
+              continue;
+            }
+
+            deposit.setInt(1, command.amount);
+            deposit.setLong(2, next);
+            deposit.setString(3, command.toCardNumber);
+            deposit.executeUpdate();
+            addTransfer(history, command.cardNumber, command.toCardNumber, command.amount, timestamp);
+          }
+          case CLOSE -> {
+            delete.setString(1, command.cardNumber);
+
+            if (delete.executeUpdate() > 0) {
+              command.result = OptionalInt.of(0);
+              records.add(JournalRecord.close(next, command.cardNumber));
+            }
+            continue;
+          }
+        }
+
+        balance.setString(1, command.cardNumber);
+
+        try (ResultSet resultSet = balance.executeQuery()) {
+          resultSet.next();
+          command.result = OptionalInt.of(resultSet.getInt("balance"));
+        }
+
+        records.add(command.type == AccountCommand.Type.DEPOSIT
+                    ? JournalRecord.deposit(next, command.cardNumber, command.amount, command.operationKey,
+                                            command.result.getAsInt())
+                    : JournalRecord.transfer(next, command.cardNumber, command.toCardNumber, command.amount,
+                                             command.operationKey, command.result.getAsInt()));
+
+        if (command.operationKey != null) {
+          setOperation(connection, command.cardNumber, command.operationKey, command.result.getAsInt(), timestamp);
+          keyed.add(command);
+        }
+      }
+
+      history.executeBatch();
+      connection.commit();
+
+      for (JournalRecord record : records) {
+        journal(record);
+        lsn = record.lsn();
+      }
+
+      for (AccountCommand command : keyed) {
+        recorded(command.cardNumber, command.operationKey, command.result.getAsInt(), timestamp);
+      }
+    } catch (SQLException e) {
+      error("Cannot apply the account commands!", e);
+
+      for (AccountCommand command : commands) {
+        command.result = OptionalInt.empty();
+        command.status = TransferStatus.FAILED;
+      }
+    }
+    awaitDurable(lsn);
+  }
+
+  /**
+   * This method reads a page of the statement from the index on (number, timestamp, id), starting right before the
+   * last entry of the previous page instead of skipping the entries of the previous pages.
+   *
+   * @param cardNumber
+   * @param before
+   * @param limit
+   *
+   * @return The entries, newest first.
+   */
+  @Override
+  public List<Transaction> getStatement(String cardNumber, Transaction before, int limit) {
+    List<Transaction> transactions = new ArrayList<>(limit);
+
+    try (PooledConnection connection = connectionProvider.reader()) {
+      PreparedStatement statement = connection.prepare(GET_STATEMENT_QUERY);
+      statement.setString(1, cardNumber);
+      statement.setLong(2, before == null ? Long.MAX_VALUE : before.timestamp());
+      statement.setLong(3, before == null ? Long.MAX_VALUE : before.id());
+      statement.setInt(4, limit);
+
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          transactions.add(transaction(resultSet));
+        }
+      }
+    } catch (SQLException e) {
+      error("Cannot read the statement!", e);
+    }
+    return transactions;
+  }
+
+  /**
+   * This method streams the statement entries of the time range from a snapshot connection, the rows are fetched in
+   * chunks rather than all at once.
+   *
+   * @param cardNumber
+   * @param from
+   * @param to
+   * @param action
+   */
+  @Override
+  public void forEachTransaction(String cardNumber, long from, long to, Consumer<Transaction> action) {
+    try (PooledConnection connection = connectionProvider.snapshot()) {
+      PreparedStatement statement = connection.prepare(GET_TRANSACTIONS_QUERY);
+      statement.setString(1, cardNumber);
+      statement.setLong(2, from);
+      statement.setLong(3, to);
+      statement.setFetchSize(FETCH_SIZE);
+
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          action.accept(transaction(resultSet));
+        }
+      }
+    } catch (SQLException e) {
+      error("Cannot read the statement!", e);
+    }
+  }
+
+  /**
+   * This method deletes an account from the database.
+   *
+   * @param account
+   *
+   * @return true if the row was deleted.
+   */
+  @Override
+  public boolean delete(Account account) {
+    long lsn = 0;
+    boolean deleted = false;
+
+    try (PooledConnection connection = connectionProvider.writer()) {
+      long next = nextLsn();
+      PreparedStatement statement = connection.prepare(DELETE_ACCOUNT_QUERY);
+      statement.setString(1, account.getCard().number());
+      deleted = statement.executeUpdate() > 0;
+
+      if (deleted) {
+        journal(JournalRecord.close(next, account.getCard().number()));
+        lsn = next;
+      }
+    } catch (SQLException e) {
+      error("Cannot delete account!", e);
+    }
+    awaitDurable(lsn);
+    return deleted;
+  }
+
+  /**
+   * This method replays the transaction journal over the database in a single transaction. A change is applied only to
+   * the rows that don't have it yet, so replaying the same journal again changes nothing. The changes up to the
+   * checkpoint, which the database holds durably, are skipped, so the accounts closed since are not opened again. The
+   * journal then continues after the highest sequence number found in the database, e.g. when it was started afresh,
+   * and a new checkpoint is taken.
+   *
+   * @return The number of changes that were applied.
+   */
+  public int recover() throws IOException {
+    if (journal == null) {
+      return 0;
+    }
+
+    int[] applied = new int[1];
+
+    try (PooledConnection connection = connectionProvider.writer()) {
+      long checkpoint = getCheckpoint(connection);
+      connection.beginTransaction();
+
+      SQLException[] failure = new SQLException[1];
+
+      journal.forEach(record -> {
+        if (failure[0] == null && record.lsn() > checkpoint) {
+          try {
+            applied[0] += replay(connection, record) ? 1 : 0;
+          } catch (SQLException e) {
+            failure[0] = e;
+          }
+        }
+      });
+
+      if (failure[0] != null) {
+        throw failure[0];
+      }
+
+      journal.skipTo(checkpoint);
+
+      try (ResultSet resultSet = connection.prepare(MAX_LSN_QUERY).executeQuery()) {
+        if (resultSet.next()) {
+          journal.skipTo(resultSet.getLong(1));
+        }
+      }
+
+      connection.commit();
+    } catch (SQLException e) {
+      error("Cannot replay the transaction journal!", e);
+      return 0;
+    }
+
+    checkpoint();
+    return applied[0];
+  }
+
+  /**
+   * This method replaces the plain PINs stored by earlier versions with their hashes, a chunk at a time. A PIN that
+   * changed in the meantime is left alone.
+   *
+   * @return The number of PINs that were hashed.
+   */
+  public long migratePins() {
+    long migrated = 0;
+
+    try (PooledConnection reader = connectionProvider.reader()) {
+      PreparedStatement statement = reader.prepare(GET_PLAIN_PINS_QUERY);
+      statement.setFetchSize(FETCH_SIZE);
+
+      try (ResultSet resultSet = statement.executeQuery()) {
+        List<String> numbers = new ArrayList<>(FETCH_SIZE);
+        List<String> pins = new ArrayList<>(FETCH_SIZE);
+        boolean more = true;
+
+        while (more) {
+          more = resultSet.next();
+
+          if (more) {
+            numbers.add(resultSet.getString(1));
+            pins.add(resultSet.getString(2));
+          }
+
+          if (numbers.size() == FETCH_SIZE || !more && !numbers.isEmpty()) {
+            migrated += setPins(numbers, pins, pinVerifier.hashAll(pins));
+            numbers.clear();
+            pins.clear();
+          }
+        }
+      }
+    } catch (SQLException e) {
+      error("Cannot migrate the PINs!", e);
+    }
+    return migrated;
+  }
+
+  /**
+   * This method takes the money of a transfer to another shard from the sender, and records the transfer as pending in
+   * the same transaction. The entry of the sender is added to its statement, and the balance left to the sender is read
+   * in the transaction and returned with the transfer.
+   *
+   * @param fromCardNumber
+   * @param toCardNumber
+   * @param amount
+   *
+   * @return The pending transfer, or empty if the sender doesn't have enough money.
+   */
+  Optional<PendingTransfer> prepareTransfer(String fromCardNumber, String toCardNumber, int amount) {
+    return prepareTransfer(fromCardNumber, toCardNumber, amount, null);
+  }
+
+  /**
+   * This method prepares the transfer like {@link #prepareTransfer(String, String, int)}, unless the operation key of
+   * the sender was recorded already, and records the key with the balance left to the sender in the same transaction.
+   *
+   * @param fromCardNumber
+   * @param toCardNumber
+   * @param amount
+   * @param operationKey
+   *
+   * @return The pending transfer, or empty if the sender doesn't have enough money or the key was recorded.
+   */
+  Optional<PendingTransfer> prepareTransfer(String fromCardNumber, String toCardNumber, int amount,
+                                            String operationKey) {
+    long timestamp = System.currentTimeMillis();
+    int left = 0;
+
+    try (PooledConnection connection = connectionProvider.writer()) {
+      connection.beginTransaction();
+
+      if (operationKey != null && getOperation(connection, fromCardNumber, operationKey, timestamp).isPresent()) {
+        return Optional.empty();
+      }
+
+      PreparedStatement withdraw = connection.prepare(WITHDRAW_QUERY);
+      withdraw.setInt(1, amount);
+      withdraw.setLong(2, 0);
+      withdraw.setString(3, fromCardNumber);
+      withdraw.setInt(4, amount);
+
+      if (withdraw.executeUpdate() == 0) {
+        return Optional.empty();
+      }
+
+      PreparedStatement pending = connection.prepare(INSERT_PENDING_QUERY);
+      pending.setString(1, fromCardNumber);
+      pending.setString(2, toCardNumber);
+      pending.setInt(3, amount);
+      pending.setLong(4, timestamp);
+      pending.setString(5, operationKey);
+      pending.executeUpdate();
+
+      long id;
+
+      try (ResultSet resultSet = connection.prepare(LAST_ID_QUERY).executeQuery()) {
+        resultSet.next();
+        id = resultSet.getLong(1);
+      }
+
+      PreparedStatement history = connection.prepare(INSERT_TRANSACTION_QUERY);
+      addTransaction(history, fromCardNumber, timestamp, TransactionType.TRANSFER_OUT, -amount, toCardNumber);
+      history.executeUpdate();
+
+      PreparedStatement balance = connection.prepare(GET_BALANCE_QUERY);
+      balance.setString(1, fromCardNumber);
+
+      try (ResultSet resultSet = balance.executeQuery()) {
+        resultSet.next();
+        left = resultSet.getInt("balance");
+      }
+      setOperation(connection, fromCardNumber, operationKey, left, timestamp);
+
+      connection.commit();
+      recorded(fromCardNumber, operationKey, left, timestamp);
+      return Optional.of(new PendingTransfer(id, fromCardNumber, toCardNumber, amount, timestamp, operationKey,
+                                             left));
+    } catch (SQLException e) {
+      error("Cannot transfer money!", e);
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * This method gives the money of a pending transfer from another shard to the recipient. The transfer is recorded as
+   * applied in the same transaction, so applying it again changes nothing.
+   *
+   * @param source
+   *     The shard the transfer is pending in.
+   * @param transfer
+   *
+   * @return SUCCESS if the recipient has the money, also from an earlier call, NO_SUCH_RECIPIENT if there is no such
+   *     account, FAILED if the database failed.
+   */
+  TransferStatus applyTransfer(int source, PendingTransfer transfer) {
+    try (PooledConnection connection = connectionProvider.writer()) {
+      connection.beginTransaction();
+
+      PreparedStatement applied = connection.prepare(INSERT_APPLIED_QUERY);
+      applied.setInt(1, source);
+      applied.setLong(2, transfer.id());
+
+      if (applied.executeUpdate() == 0) {
+        return TransferStatus.SUCCESS;
+      }
+
+      PreparedStatement deposit = connection.prepare(UPDATE_ACCOUNT_QUERY);
+      deposit.setInt(1, transfer.amount());
+      deposit.setLong(2, 0);
+      deposit.setString(3, transfer.toCardNumber());
+
+      if (deposit.executeUpdate() == 0) {
+        return TransferStatus.NO_SUCH_RECIPIENT;
+      }
+
+      PreparedStatement history = connection.prepare(INSERT_TRANSACTION_QUERY);
+      addTransaction(history, transfer.toCardNumber(), transfer.timestamp(), TransactionType.TRANSFER_IN,
+                     transfer.amount(), transfer.fromCardNumber());
+      history.executeUpdate();
+
+      connection.commit();
+      return TransferStatus.SUCCESS;
+    } catch (SQLException e) {
+      error("Cannot transfer money!", e);
+    }
+    return TransferStatus.FAILED;
+  }
+
+  /**
+   * This method forgets a pending transfer once the recipient has the money.
+   *
+   * @param id
+   *
+   * @return true if the transfer is no longer pending, false if the database failed.
+   */
+  boolean completeTransfer(long id) {
+    try (PooledConnection connection = connectionProvider.writer()) {
+      PreparedStatement statement = connection.prepare(DELETE_PENDING_QUERY);
+      statement.setLong(1, id);
+      statement.executeUpdate();
+      return true;
+    } catch (SQLException e) {
+      error("Cannot complete the transfer!", e);
+    }
+    return false;
+  }
+
+  /**
+   * This method gives the money of a pending transfer that cannot be applied back to the sender, and forgets the
+   * transfer and its operation key in the same transaction, so a retry with the key is not told the transfer was made.
+   * The refund is added to the statement of the sender.
+   *
+   * @param transfer
+   *
+   * @return true if the transfer is no longer pending, also from an earlier call, false if the database failed.
+   */
+  boolean cancelTransfer(PendingTransfer transfer) {
+    try (PooledConnection connection = connectionProvider.writer()) {
+      connection.beginTransaction();
+
+      PreparedStatement pending = connection.prepare(DELETE_PENDING_QUERY);
+      pending.setLong(1, transfer.id());
+
+      if (pending.executeUpdate() == 0) {
+        return true;
+      }
+
+      PreparedStatement refund = connection.prepare(UPDATE_ACCOUNT_QUERY);
+      refund.setInt(1, transfer.amount());
+      refund.setLong(2, 0);
+      refund.setString(3, transfer.fromCardNumber());
+      refund.executeUpdate();
+
+      PreparedStatement history = connection.prepare(INSERT_TRANSACTION_QUERY);
+      addTransaction(history, transfer.fromCardNumber(), System.currentTimeMillis(), TransactionType.TRANSFER_IN,
+                     transfer.amount(), transfer.toCardNumber());
+      history.executeUpdate();
+
+      if (transfer.operationKey() != null) {
+        PreparedStatement operation = connection.prepare(DELETE_OPERATION_QUERY);
+        operation.setString(1, transfer.fromCardNumber());
+        operation.setString(2, transfer.operationKey());
+        operation.executeUpdate();
+      }
+
+      connection.commit();
+      forgotten(transfer.fromCardNumber(), transfer.operationKey());
+      return true;
+    } catch (SQLException e) {
+      error("Cannot cancel the transfer!", e);
+    }
+    return false;
+  }
+
+  /**
+   * This method forgets that a transfer from another shard was applied, once that shard has forgotten the transfer.
+   *
+   * @param source
+   * @param id
+   */
+  void forgetTransfer(int source, long id) {
+    try (PooledConnection connection = connectionProvider.writer()) {
+      PreparedStatement statement = connection.prepare(DELETE_APPLIED_QUERY);
+      statement.setInt(1, source);
+      statement.setLong(2, id);
+      statement.executeUpdate();
+    } catch (SQLException e) {
+      error("Cannot complete the transfer!", e);
+    }
+  }
+
+  /**
+   * This method returns the transfers to other shards that are still pending, oldest first.
+   *
+   * @return List<PendingTransfer>
+   */
+  List<PendingTransfer> getPendingTransfers() {
+    List<PendingTransfer> transfers = new ArrayList<>();
+
+    try (PooledConnection connection = connectionProvider.reader()) {
+      try (ResultSet resultSet = connection.prepare(GET_PENDING_QUERY).executeQuery()) {
+        while (resultSet.next()) {
+          transfers.add(new PendingTransfer(resultSet.getLong("id"), resultSet.getString("from_number"),
+                                            resultSet.getString("to_number"), resultSet.getInt("amount"),
+                                            resultSet.getLong("timestamp"), resultSet.getString("operation"),
+                                            0));
+        }
+      }
+    } catch (SQLException e) {
+      error("Cannot read the pending transfers!", e);
+    }
+    return transfers;
+  }
+
+  /**
+   * This method records the database as the shard at the given position of the given count, unless it is recorded
+   * already. A database that holds accounts but no shard yet is taken only as the single shard.
+   *
+   * @param position
+   * @param count
+   *
+   * @return true if the database is that shard.
+   */
+  boolean claimShard(int position, int count) {
+    try (PooledConnection connection = connectionProvider.writer()) {
+      connection.beginTransaction();
+
+      try (ResultSet resultSet = connection.prepare(GET_SHARD_QUERY).executeQuery()) {
+        if (resultSet.next()) {
+          return resultSet.getInt("position") == position && resultSet.getInt("count") == count;
+        }
+      }
+
+      if (count > 1) {
+        try (ResultSet resultSet = connection.prepare(COUNT_ACCOUNTS_QUERY).executeQuery()) {
+          if (resultSet.next() && resultSet.getLong(1) > 0) {
+            return false;
+          }
+        }
+      }
+
+      PreparedStatement statement = connection.prepare(SET_SHARD_QUERY);
+      statement.setInt(1, position);
+      statement.setInt(2, count);
+      statement.executeUpdate();
+
+      connection.commit();
+      return true;
+    } catch (SQLException e) {
+      error("Cannot read the shard of the database!", e);
+    }
+    return false;
+  }
+
+  /**
+   * This method returns the number of database errors, every one is also printed.
+   */
+  public long getErrors() {
+    return errors.sum();
+  }
+
+  PinVerifier getPinVerifier() {
+    return pinVerifier;
+  }
+
+  /**
+   * This method takes a checkpoint of the transaction journal, closes the connections with the database, the journal
+   * and the login pool, and prints the statistics of the operation keys.
+   */
+  @Override
+  public void close() {
+    if (journal != null) {
+      checkpoint();
+    }
+
+    connectionProvider.close();
+    pinVerifier.close();
+    operationKeys.close();
+
+    if (journal != null) {
+      journal.close();
+    }
+  }
+
+  /**
+   * It syncs the changes up to the last sequence number reserved from the journal to the disk, whatever the
+   * {@code synchronous} setting, records that number as the checkpoint and deletes the segments of the journal the
+   * checkpoint covers. The database file is synced first, since the pages checkpointed from the WAL were not; the
+   * commit of the checkpoint then syncs the WAL with the rest of the changes. The number is read while holding the
+   * writer, which every change reserves its number and is committed under, so it is safe while changes are being made.
+   *
+   * @return true if the checkpoint was taken.
+   */
+  private boolean checkpoint() {
+    long lsn;
+    long segment;
+
+    try (PooledConnection connection = connectionProvider.writer();
+         Statement statement = connection.getConnection().createStatement()) {
+      lsn = journal.getLsn();
+      segment = journal.getSegmentNumber();
+      int synchronous;
+
+      try (ResultSet resultSet = statement.executeQuery(GET_SYNCHRONOUS_QUERY)) {
+        resultSet.next();
+        synchronous = resultSet.getInt(1);
+      }
+
+      try (ResultSet resultSet = statement.executeQuery(DATABASE_FILE_QUERY)) {
+        if (resultSet.next() && !resultSet.getString(1).isEmpty()) {
+          try (FileChannel file = FileChannel.open(Path.of(resultSet.getString(1)), StandardOpenOption.READ)) {
+            file.force(true);
+          }
+        }
+      }
+
+      try {
+        statement.execute(SET_SYNCHRONOUS_QUERY + SYNCHRONOUS_FULL);
+
+        PreparedStatement checkpoint = connection.prepare(SET_CHECKPOINT_QUERY);
+        checkpoint.setLong(1, lsn);
+        checkpoint.executeUpdate();
+      } finally {
+        statement.execute(SET_SYNCHRONOUS_QUERY + synchronous);
+      }
+    } catch (SQLException | IOException e) {
+      System.err.println("Cannot take a checkpoint of the transaction journal! " + e.getMessage());
+      return false;
+    }
+
+    try {
+      journal.truncate(lsn);
+    } catch (IOException e) {
+      System.err.println("Cannot delete the checkpointed journal segments! " + e.getMessage());
+    }
+    checkpointedSegment.set(segment);
+    return true;
+  }
+
+  /**
+   * It takes a checkpoint once the journal started a new segment since the previous one, so the segments before it are
+   * deleted while the application keeps running. Only one thread takes it, and only after the journal was recovered,
+   * since a checkpoint before that would skip the changes the database is missing.
+   */
+  private void checkpointIfRolled() {
+    long checkpointed = checkpointedSegment.get();
+
+    if (checkpointed > 0 && journal.getSegmentNumber() > checkpointed
+        && checkpointedSegment.compareAndSet(checkpointed, 0) && !checkpoint()) {
+      checkpointedSegment.set(checkpointed);
+    }
+  }
+
+  private long getCheckpoint(PooledConnection connection) throws SQLException {
+    try (ResultSet resultSet = connection.prepare(GET_CHECKPOINT_QUERY).executeQuery()) {
+      return resultSet.next() ? resultSet.getLong(1) : 0;
+    }
+  }
+
+  private boolean replay(PooledConnection connection, JournalRecord record) throws SQLException {
+    if (!record.operationKey().isEmpty()) {
+      replayOperation(connection, record);
+    }
+
+    switch (record.type()) {
+      case OPEN -> {
+        PreparedStatement open = connection.prepare(REPLAY_OPEN_QUERY);
+        open.setString(1, record.cardNumber());
+        open.setString(2, record.pin());
+        open.setLong(3, record.lsn());
+        open.setString(4, record.cardNumber());
+        return open.executeUpdate() > 0;
+      }
+      case DEPOSIT -> {
+        if (!deposit(connection, record.cardNumber(), record.amount(), record.lsn())) {
+          return false;
+        }
+
+        PreparedStatement history = connection.prepare(INSERT_TRANSACTION_QUERY);
+        addTransaction(history, record.cardNumber(), record.timestamp(), TransactionType.DEPOSIT,
+                       Math.toIntExact(record.amount()), "");
+        history.executeUpdate();
+        return true;
+      }
+      case TRANSFER -> {
+        if (record.cardNumber().equals(record.toCardNumber())) {
+          return deposit(connection, record.cardNumber(), 0, record.lsn());
+        }
+
+        PreparedStatement withdraw = connection.prepare(REPLAY_WITHDRAW_QUERY);
+        withdraw.setLong(1, record.amount());
+        withdraw.setLong(2, record.lsn());
+        withdraw.setString(3, record.cardNumber());
+        withdraw.setLong(4, record.lsn());
+        withdraw.setLong(5, record.amount());
+        if (withdraw.executeUpdate() == 0) {
+          return false;
+        }
+
+        // The recipient has the change already, or was closed since, so the history has it too
+        if (!deposit(connection, record.toCardNumber(), record.amount(), record.lsn())) {
+          return false;
+        }
+
+        PreparedStatement history = connection.prepare(INSERT_TRANSACTION_QUERY);
+        addTransfer(history, record.cardNumber(), record.toCardNumber(), Math.toIntExact(record.amount()),
+                    record.timestamp());
+        history.executeBatch();
+        return true;
+      }
+      case CLOSE -> {
+        PreparedStatement close = connection.prepare(REPLAY_CLOSE_QUERY);
+        close.setString(1, record.cardNumber());
+        close.setLong(2, record.lsn());
+        return close.executeUpdate() > 0;
+      }
+      default -> {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * It records the operation key of the change again, unless it expired meanwhile or the database has it, since the
+   * change was applied when it was journaled.
+   */
+  private void replayOperation(PooledConnection connection, JournalRecord record) throws SQLException {
+    long expires = operationKeys.expires(record.timestamp());
+
+    if (expires <= System.currentTimeMillis()) {
+      return;
+    }
+
+    PreparedStatement statement = connection.prepare(REPLAY_OPERATION_QUERY);
+    statement.setString(1, record.cardNumber());
+    statement.setString(2, record.operationKey());
+    statement.setInt(3, record.balance());
+    statement.setLong(4, expires);
+    statement.executeUpdate();
+  }
+
+  private boolean deposit(PooledConnection connection, String cardNumber, long amount, long lsn) throws SQLException {
+    PreparedStatement deposit = connection.prepare(REPLAY_DEPOSIT_QUERY);
+    deposit.setLong(1, amount);
+    deposit.setLong(2, lsn);
+    deposit.setString(3, cardNumber);
+    deposit.setLong(4, lsn);
+    return deposit.executeUpdate() > 0;
+  }
+
+  private int setPins(List<String> numbers, List<String> pins, List<String> pinHashes) throws SQLException {
+    try (PooledConnection connection = connectionProvider.writer()) {
+      connection.beginTransaction();
+
+      PreparedStatement statement = connection.prepare(SET_PIN_QUERY);
+
+      for (int i = 0; i < numbers.size(); i++) {
+        statement.setString(1, pinHashes.get(i));
+        statement.setString(2, numbers.get(i));
+        statement.setString(3, pins.get(i));
+        statement.addBatch();
+      }
+
+      int migrated = 0;
+
+      for (int count : statement.executeBatch()) {
+        migrated += count;
+      }
+
+      connection.commit();
+      return migrated;
+    }
+  }
+
+  /**
+   * It returns the balance recorded for the operation key of the card, or empty if the key was not recorded or has
+   * expired. It reads the memory first and then the database, with a reader connection.
+   */
+  OptionalInt getOperation(String cardNumber, String operationKey) {
+    long now = System.currentTimeMillis();
+    OptionalInt recent = operationKeys.recent(cardNumber, operationKey, now);
+
+    if (recent.isPresent()) {
+      return recent;
+    }
+
+    try (PooledConnection connection = connectionProvider.reader()) {
+      return getOperation(connection, cardNumber, operationKey, now);
+    } catch (SQLException e) {
+      error("Cannot read the operation key!", e);
+    }
+    return OptionalInt.empty();
+  }
+
+  OperationKeys getOperationKeys() {
+    return operationKeys;
+  }
+
+  private OptionalInt getOperation(PooledConnection connection, String cardNumber, String operationKey, long now)
+      throws SQLException {
+    PreparedStatement statement = connection.prepare(GET_OPERATION_QUERY);
+    statement.setString(1, cardNumber);
+    statement.setString(2, operationKey);
+    statement.setLong(3, now);
+
+    try (ResultSet resultSet = statement.executeQuery()) {
+      if (!resultSet.next()) {
+        return OptionalInt.empty();
+      }
+      return operationKeys.replayed(cardNumber, operationKey, resultSet.getInt("balance"),
+                                    resultSet.getLong("expires"));
+    }
+  }
+
+  /**
+   * It records the operation key of the card with the balance the operation returned, and deletes the expired keys
+   * when it is time to. Nothing is recorded without a key.
+   */
+  private void setOperation(PooledConnection connection, String cardNumber, String operationKey, int balance, long now)
+      throws SQLException {
+    if (operationKey == null) {
+      return;
+    }
+
+    PreparedStatement statement = connection.prepare(SET_OPERATION_QUERY);
+    statement.setString(1, cardNumber);
+    statement.setString(2, operationKey);
+    statement.setInt(3, balance);
+    statement.setLong(4, operationKeys.expires(now));
+    statement.executeUpdate();
+
+    if (operationKeys.purgeDue(now)) {
+      PreparedStatement purge = connection.prepare(PURGE_OPERATIONS_QUERY);
+      purge.setLong(1, now);
+      operationKeys.purged(purge.executeUpdate());
+    }
+  }
+
+  private void forgotten(String cardNumber, String operationKey) {
+    if (operationKey != null) {
+      operationKeys.forget(cardNumber, operationKey);
+    }
+  }
+
+  private void recorded(String cardNumber, String operationKey, int balance, long now) {
+    if (operationKey != null) {
+      operationKeys.recorded(cardNumber, operationKey, balance, operationKeys.expires(now));
+    }
+  }
+
+  private void error(String message, SQLException e) {
+    errors.increment();
+    System.err.println(message + " " + e.getMessage());
+  }
+
+  private static void addTransfer(PreparedStatement history, String fromCardNumber, String toCardNumber, int amount,
+                                  long timestamp) throws SQLException {
+    addTransaction(history, fromCardNumber, timestamp, TransactionType.TRANSFER_OUT, -amount, toCardNumber);
+    history.addBatch();
+    addTransaction(history, toCardNumber, timestamp, TransactionType.TRANSFER_IN, amount, fromCardNumber);
+    history.addBatch();
+  }
+
+  private static void addTransaction(PreparedStatement history, String cardNumber, long timestamp, TransactionType type,
+                                     int amount, String counterparty) throws SQLException {
+    history.setString(1, cardNumber);
+    history.setLong(2, timestamp);
+    history.setString(3, type.name());
+    history.setInt(4, amount);
+    history.setString(5, counterparty);
+  }
+
+  private static Transaction transaction(ResultSet resultSet) throws SQLException {
+    return new Transaction(resultSet.getLong("id"), resultSet.getString("number"), resultSet.getLong("timestamp"),
+                           TransactionType.valueOf(resultSet.getString("type")), resultSet.getInt("amount"),
+                           resultSet.getString("counterparty"));
+  }
+
+  private long nextLsn() {
+    return journal == null ? 0 : journal.nextLsn();
+  }
+
+  private void journal(JournalRecord record) {
+    if (journal != null) {
+      journal.append(record);
+    }
+  }
+
+  private void awaitDurable(long lsn) {
+    if (journal != null && lsn > 0) {
+      journal.awaitDurable(lsn);
+      checkpointIfRolled();
+    }
+  }
+
+}
@@ -0,0 +1,60 @@
+package dao;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.OptionalLong;
+
+import configuration.ConnectionProvider;
+import configuration.PooledConnection;
+
+/**
+ * This class represents a data access object for the card number sequences, backed by the {@code card_sequence} table
+ * of the SQLite database. The sequences reserve their positions in blocks, so it is written once per block.
+ */
+public class SqliteCardSequenceDao implements CardSequenceDao {
+
+  private static final String GET_POSITION_QUERY  = "SELECT position FROM card_sequence WHERE sequence_key = ?";
+  private static final String SAVE_POSITION_QUERY = """
+                                                    INSERT INTO card_sequence (sequence_key, position) VALUES (?, ?)
+                                                    ON CONFLICT (sequence_key) DO UPDATE
+                                                    SET position = max(position, excluded.position)""";
+
+  private final ConnectionProvider connectionProvider;
+
+  public SqliteCardSequenceDao(final ConnectionProvider connectionProvider) {
+    this.connectionProvider = connectionProvider;
+  }
+
+  @Override
+  public OptionalLong getPosition(long key) {
+    try (PooledConnection connection = connectionProvider.reader()) {
+      PreparedStatement statement = connection.prepare(GET_POSITION_QUERY);
+      statement.setLong(1, key);
+
+      try (ResultSet resultSet = statement.executeQuery()) {
+        if (resultSet.next()) {
+          return OptionalLong.of(resultSet.getLong("position"));
+        }
+      }
+    } catch (SQLException e) {
+      System.err.println("Cannot read the card sequence!");
+    }
+    return OptionalLong.empty();
+  }
+
+  @Override
+  public boolean save(long key, long position) {
+    try (PooledConnection connection = connectionProvider.writer()) {
+      PreparedStatement statement = connection.prepare(SAVE_POSITION_QUERY);
+      statement.setLong(1, key);
+      statement.setLong(2, position);
+      statement.executeUpdate();
+      return true;
+    } catch (SQLException e) {
+      System.err.println("Cannot save the card sequence!");
+    }
+    return false;
+  }
+
+}
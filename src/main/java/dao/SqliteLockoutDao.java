@@ -0,0 +1,70 @@
+package dao;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import configuration.ConnectionProvider;
+import configuration.PooledConnection;
+
+/**
+ * This class represents a data access object for the lockouts, backed by the {@code lockout} table of the SQLite
+ * database. Lockouts are rare, so every one is written at once.
+ */
+public class SqliteLockoutDao implements LockoutDao {
+
+  private static final String GET_ACTIVE_QUERY     = "SELECT number, until FROM lockout WHERE until > ?";
+  private static final String SAVE_LOCKOUT_QUERY   = "INSERT OR REPLACE INTO lockout (number, until) VALUES (?, ?)";
+  private static final String DELETE_EXPIRED_QUERY = "DELETE FROM lockout WHERE until <= ?";
+
+  private final ConnectionProvider connectionProvider;
+
+  public SqliteLockoutDao(final ConnectionProvider connectionProvider) {
+    this.connectionProvider = connectionProvider;
+  }
+
+  @Override
+  public Map<String, Long> getActive(long now) {
+    Map<String, Long> lockouts = new HashMap<>();
+
+    try (PooledConnection connection = connectionProvider.reader()) {
+      PreparedStatement statement = connection.prepare(GET_ACTIVE_QUERY);
+      statement.setLong(1, now);
+
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          lockouts.put(resultSet.getString("number"), resultSet.getLong("until"));
+        }
+      }
+    } catch (SQLException e) {
+      System.err.println("Cannot read the lockouts!");
+    }
+    return lockouts;
+  }
+
+  @Override
+  public void save(String cardNumber, long lockedUntil) {
+    try (PooledConnection connection = connectionProvider.writer()) {
+      PreparedStatement statement = connection.prepare(SAVE_LOCKOUT_QUERY);
+      statement.setString(1, cardNumber);
+      statement.setLong(2, lockedUntil);
+      statement.executeUpdate();
+    } catch (SQLException e) {
+      System.err.println("Cannot save the lockout!");
+    }
+  }
+
+  @Override
+  public void deleteExpired(long now) {
+    try (PooledConnection connection = connectionProvider.writer()) {
+      PreparedStatement statement = connection.prepare(DELETE_EXPIRED_QUERY);
+      statement.setLong(1, now);
+      statement.executeUpdate();
+    } catch (SQLException e) {
+      System.err.println("Cannot delete the expired lockouts!");
+    }
+  }
+
+}
@@ -0,0 +1,7 @@
+package dao;
+
+/**
+ * This record represents an account as it is stored in the database: with the PIN hash, and the log sequence number of
+ * the last change of the account written to the transaction journal.
+ */
+record StoredAccount(String cardNumber, String pin, int balance, long lsn) {}
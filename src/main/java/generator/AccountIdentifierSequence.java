@@ -0,0 +1,137 @@
+package generator;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
+
+/**
+ * This class hands out account identifiers that never repeat, without asking the database. <br/>
+ * The n-th identifier is the n-th element of a keyed pseudo-random permutation of {@code [0, size)}: a Feistel network
+ * over the smallest even number of bits that covers the range, cycle-walked back into it. The identifiers therefore
+ * look random, but two positions of the same sequence never produce the same value. A sequence that continues after a
+ * restart must be created with the same key and the position it stopped at. <br/>
+ * Every call takes one position from a shared counter. The counter is not worth splitting into per-thread blocks: a
+ * registration runs on its own short-lived thread, which would leave almost its whole block unused, and the insert
+ * that follows costs far more than the increment. <br/>
+ * Positions are reserved in blocks before they are handed out: the reservation is given the end of the block, e.g. to
+ * store it as the position to continue from, so a crash skips the rest of the block instead of repeating it.
+ */
+public class AccountIdentifierSequence {
+
+  private static final int  ROUNDS      = 4;
+  private static final long RESERVATION = 1_024;
+
+  private final    long          size;
+  private final    int           halfBits;
+  private final    long          halfMask;
+  private final    long[]        roundKeys = new long[ROUNDS];
+  private final    AtomicLong    position;
+  private final    LongPredicate reservation;
+  private volatile long          reserved;
+
+  public AccountIdentifierSequence(final long size, final long key, final long start) {
+    this(size, key, start, end -> true);
+  }
+
+  /**
+   * @param reservation
+   *     It is called with the end of every block of positions before the first of them is handed out, and returns
+   *     false if the block must not be used.
+   */
+  public AccountIdentifierSequence(final long size, final long key, final long start,
+                                   final LongPredicate reservation) {
+    if (size < 2 || start < 0 || start > size) {
+      throw new IllegalArgumentException("Wrong sequence range: size " + size + ", start " + start);
+    }
+
+    this.size = size;
+    this.halfBits = (64 - Long.numberOfLeadingZeros(size - 1) + 1) / 2;
+    this.halfMask = (1L << halfBits) - 1;
+    this.position = new AtomicLong(start);
+    this.reservation = reservation;
+    this.reserved = start;
+
+    long roundKey = key;
+    for (int i = 0; i < ROUNDS; i++) {
+      roundKey = mix(roundKey + 0x9E3779B97F4A7C15L);
+      roundKeys[i] = roundKey;
+    }
+  }
+
+  /**
+   * It returns the next identifier of the sequence, safe to call from any number of threads.
+   *
+   * @return A value in {@code [0, size)} that was not returned before.
+   * @throws IllegalStateException if the sequence is exhausted or its block cannot be reserved.
+   */
+  public long next() {
+    long index = position.getAndIncrement();
+
+    if (index >= size) {
+      throw new IllegalStateException("All " + size + " account identifiers were handed out!");
+    }
+
+    if (index >= reserved) {
+      reserve(index);
+    }
+
+    return permute(index);
+  }
+
+  /**
+   * It reserves the block that starts at the index, unless another thread already reserved past it. A failed
+   * reservation is retried by the next call.
+   */
+  private synchronized void reserve(long index) {
+    if (index < reserved) {
+      return;
+    }
+
+    long end = Math.min(size, index + RESERVATION);
+
+    if (!reservation.test(end)) {
+      throw new IllegalStateException("Cannot reserve the account identifiers!");
+    }
+    reserved = end;
+  }
+
+  /**
+   * It returns how many identifiers were handed out, i.e. the start position to continue the sequence from.
+   */
+  public long getPosition() {
+    return Math.min(position.get(), size);
+  }
+
+  /**
+   * It maps the index to its identifier, a bijection of {@code [0, size)}.
+   */
+  long permute(long index) {
+    long value = index;
+
+    do {
+      value = encrypt(value);
+    } while (value >= size);
+
+    return value;
+  }
+
+  private long encrypt(long value) {
+    long left = value >>> halfBits;
+    long right = value & halfMask;
+
+    for (long roundKey : roundKeys) {
+      long next = left ^ (mix(right ^ roundKey) & halfMask);
+      left = right;
+      right = next;
+    }
+
+    return left << halfBits | right;
+  }
+
+  private static long mix(long value) {
+    long z = value;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+}
@@ -0,0 +1,253 @@
+package generator;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongPredicate;
+import java.util.function.Supplier;
+import java.util.random.RandomGenerator;
+
+import metrics.MetricsRegistry;
+import metrics.Timer;
+import model.Card;
+
+public class CardGenerator {
+
+  private static final long BIN                      = 400_000L;
+  private static final int  ACCOUNT_IDENTIFIER_MIN   = 100_000_000;
+  private static final int  ACCOUNT_IDENTIFIERS      = 900_000_000;
+  private static final int  CARD_NUMBER_LENGTH       = 16;
+  private static final long ACCOUNT_IDENTIFIER_RANGE = 1_000_000_000L;
+  private static final long MIN_CARD_NUMBER          = 1_000_000_000_000_000L;
+  private static final long MAX_CARD_NUMBER          = 9_999_999_999_999_999L;
+
+  private static final Timer GENERATE = MetricsRegistry.global().timer("card.generate");
+
+  /**
+   * The Luhn value of a digit in a doubled position, i.e. the digit sum of twice the digit.
+   */
+  private static final int[] DOUBLED_DIGITS = {0, 2, 4, 6, 8, 1, 3, 5, 7, 9};
+
+  /**
+   * The Luhn sum of every two-digit group whose lower digit is in a doubled position.
+   */
+  private static final int[] LUHN_PAIR_SUMS = new int[100];
+
+  static {
+    for (int pair = 0; pair < LUHN_PAIR_SUMS.length; pair++) {
+      LUHN_PAIR_SUMS[pair] = DOUBLED_DIGITS[pair % 10] + pair / 10;
+    }
+  }
+
+  private final Supplier<? extends RandomGenerator> random;
+  private final AccountIdentifierSequence          identifiers;
+
+  public CardGenerator(final Random random) {
+    this(() -> random, null);
+  }
+
+  /**
+   * @param random
+   *     The source of randomness, called on every generation so it can return a per-thread generator.
+   * @param identifiers
+   *     The sequence of non-repeating account identifiers, or null to draw them at random.
+   */
+  public CardGenerator(final Supplier<? extends RandomGenerator> random, final AccountIdentifierSequence identifiers) {
+    this.random = random;
+    this.identifiers = identifiers;
+  }
+
+  /**
+   * It creates a generator that can be shared by any number of threads without contention, every thread draws from its
+   * own {@link ThreadLocalRandom}.
+   *
+   * @return A new thread-safe generator with random account identifiers.
+   */
+  public static CardGenerator concurrent() {
+    return new CardGenerator(ThreadLocalRandom::current, null);
+  }
+
+  /**
+   * It creates a thread-safe generator that takes account identifiers from the sequence, so the generated card numbers
+   * never collide with each other.
+   *
+   * @return A new thread-safe generator with non-repeating account identifiers.
+   */
+  public static CardGenerator concurrent(AccountIdentifierSequence identifiers) {
+    return new CardGenerator(ThreadLocalRandom::current, identifiers);
+  }
+
+  /**
+   * It creates the sequence of all account identifiers this generator can produce.
+   *
+   * @param key
+   *     The key that shuffles the identifiers.
+   * @param start
+   *     How many identifiers were already handed out by a sequence with the same key.
+   *
+   * @return A new sequence.
+   */
+  public static AccountIdentifierSequence identifierSequence(long key, long start) {
+    return new AccountIdentifierSequence(ACCOUNT_IDENTIFIERS, key, start);
+  }
+
+  /**
+   * It creates the sequence of all account identifiers this generator can produce, which stores the position to
+   * continue from with the reservation before it hands out a block of identifiers.
+   *
+   * @see AccountIdentifierSequence#AccountIdentifierSequence(long, long, long, LongPredicate)
+   */
+  public static AccountIdentifierSequence identifierSequence(long key, long start, LongPredicate reservation) {
+    return new AccountIdentifierSequence(ACCOUNT_IDENTIFIERS, key, start, reservation);
+  }
+
+  /**
+   * Generate a card and PIN, then return a new Card object with those values. The call is timed in the global
+   * {@link MetricsRegistry}.
+   *
+   * @return A new Card object with a randomly generated card number and PIN.
+   */
+  public Card generateCredentials() {
+    long start = System.nanoTime();
+
+    try {
+      return new Card(generateCard(), generatePIN());
+    } catch (RuntimeException e) {
+      GENERATE.recordError();
+      throw e;
+    } finally {
+      GENERATE.recordSince(start);
+    }
+  }
+
+  /**
+   * It generates a random number, adds a checksum to it, and returns the result as a string
+   *
+   * @return A string of a credit card number.
+   */
+  public String generateCard() {
+    return Long.toString(generateCardNumber());
+  }
+
+  /**
+   * It generates a card number without formatting, so nothing but the result is allocated.
+   *
+   * @return A 16-digit card number.
+   */
+  public long generateCardNumber() {
+    final long accountIdentifier = identifiers != null ? identifiers.next() : random.get().nextInt(ACCOUNT_IDENTIFIERS);
+    final long payload = BIN * ACCOUNT_IDENTIFIER_RANGE + ACCOUNT_IDENTIFIER_MIN + accountIdentifier;
+    return payload * 10 + luhnChecksum(payload);
+  }
+
+  /**
+   * It generates a random number between 1000 and 9999, converts it to a string, and returns it
+   *
+   * @return A random 4 digit number
+   */
+  public String generatePIN() {
+    return String.valueOf(1000 + random.get().nextInt(9000));
+  }
+
+  /**
+   * > The Luhn algorithm is a simple checksum formula used to validate a variety of identification numbers, such as
+   * credit card numbers, IMEI numbers, National Provider Identifier numbers in the United States, Canadian Social
+   * Insurance Numbers, Israel ID Numbers, South African ID Numbers, Greek Social Security Numbers (ΑΜΚΑ), and survey
+   * codes appearing on McDonald's, Taco Bell, and Tractor Supply Co. receipts
+   *
+   * @param bin
+   *     The first 6 digits of the card number.
+   * @param accountIdentifier
+   *     This is the account number that you want to generate the card number for.
+   *
+   * @return The last digit of the card number.
+   */
+  public int luhnAlgorithm(int bin, int accountIdentifier) {
+    return luhnChecksum(bin * ACCOUNT_IDENTIFIER_RANGE + accountIdentifier);
+  }
+
+  /**
+   * It computes the Luhn check digit of the number without allocating, two digits per division.
+   *
+   * @param payload
+   *     The card number without its last digit, e.g. the first 15 digits of a 16-digit card number.
+   *
+   * @return The check digit that completes the card number.
+   */
+  public int luhnChecksum(long payload) {
+    int sum = 0;
+
+    for (long rest = payload; rest > 0; rest /= 100) {
+      sum += LUHN_PAIR_SUMS[(int) (rest % 100)];
+    }
+
+    return (10 - sum % 10) % 10;
+  }
+
+  /**
+   * It checks that the card number has 16 digits and ends with a valid checksum.
+   *
+   * @param cardNumber
+   *     The card number to check.
+   *
+   * @return true if the card number is valid.
+   */
+  public boolean isValid(long cardNumber) {
+    return cardNumber >= MIN_CARD_NUMBER && cardNumber <= MAX_CARD_NUMBER
+           && luhnChecksum(cardNumber / 10) == cardNumber % 10;
+  }
+
+  /**
+   * It checks that the card number consists of 16 digits and ends with a valid checksum
+   *
+   * @param cardNumber
+   *     The card number to check.
+   *
+   * @return true if the card number is valid.
+   */
+  public boolean isValid(CharSequence cardNumber) {
+    if (cardNumber.length() != CARD_NUMBER_LENGTH) {
+      return false;
+    }
+
+    int sum = 0;
+
+    for (int i = 0; i < CARD_NUMBER_LENGTH; i++) {
+      int digit = cardNumber.charAt(i) - '0';
+
+      if (digit < 0 || digit > 9) {
+        return false;
+      }
+      sum += i % 2 == 0 ? DOUBLED_DIGITS[digit] : digit;
+    }
+
+    return sum % 10 == 0;
+  }
+
+  /**
+   * It checks that the card number consists of 16 digits and ends with a valid checksum
+   *
+   * @param cardNumber
+   *     The digits of the card number to check.
+   *
+   * @return true if the card number is valid.
+   */
+  public boolean isValid(char[] cardNumber) {
+    if (cardNumber.length != CARD_NUMBER_LENGTH) {
+      return false;
+    }
+
+    int sum = 0;
+
+    for (int i = 0; i < CARD_NUMBER_LENGTH; i++) {
+      int digit = cardNumber[i] - '0';
+
+      if (digit < 0 || digit > 9) {
+        return false;
+      }
+      sum += i % 2 == 0 ? DOUBLED_DIGITS[digit] : digit;
+    }
+
+    return sum % 10 == 0;
+  }
+
+}
@@ -0,0 +1,52 @@
+package journal;
+
+/**
+ * This record represents one change of the accounts, as written to the {@link TransactionJournal}. <br/>
+ * The log sequence number orders the changes the way the database applied them. Card numbers, the PIN and the
+ * operation key a change doesn't have are empty strings. A deposit or transfer made with an operation key also keeps
+ * the balance it returned, so the key can be recorded again when the change is replayed.
+ */
+public record JournalRecord(Type type, long lsn, long timestamp, String cardNumber, String toCardNumber, String pin,
+                            long amount, String operationKey, int balance) {
+
+  /**
+   * The kinds of changes.
+   */
+  public enum Type {
+    OPEN, DEPOSIT, TRANSFER, CLOSE
+  }
+
+  public static JournalRecord open(long lsn, String cardNumber, String pin) {
+    return new JournalRecord(Type.OPEN, lsn, System.currentTimeMillis(), cardNumber, "", pin, 0, "", 0);
+  }
+
+  public static JournalRecord deposit(long lsn, String cardNumber, long amount) {
+    return deposit(lsn, cardNumber, amount, null, 0);
+  }
+
+  /**
+   * It returns a deposit made with the operation key, or without a key if it is null.
+   */
+  public static JournalRecord deposit(long lsn, String cardNumber, long amount, String operationKey, int balance) {
+    return new JournalRecord(Type.DEPOSIT, lsn, System.currentTimeMillis(), cardNumber, "", "", amount,
+                             operationKey == null ? "" : operationKey, balance);
+  }
+
+  public static JournalRecord transfer(long lsn, String fromCardNumber, String toCardNumber, long amount) {
+    return transfer(lsn, fromCardNumber, toCardNumber, amount, null, 0);
+  }
+
+  /**
+   * It returns a transfer made with the operation key of the sender, or without a key if it is null.
+   */
+  public static JournalRecord transfer(long lsn, String fromCardNumber, String toCardNumber, long amount,
+                                       String operationKey, int balance) {
+    return new JournalRecord(Type.TRANSFER, lsn, System.currentTimeMillis(), fromCardNumber, toCardNumber, "", amount,
+                             operationKey == null ? "" : operationKey, balance);
+  }
+
+  public static JournalRecord close(long lsn, String cardNumber) {
+    return new JournalRecord(Type.CLOSE, lsn, System.currentTimeMillis(), cardNumber, "", "", 0, "", 0);
+  }
+
+}
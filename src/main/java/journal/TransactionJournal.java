@@ -0,0 +1,356 @@
+package journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * This class represents an append-only journal of the changes made to the accounts. <br/>
+ * The records are written to memory-mapped segment files of a fixed size, named after their sequence, and a new
+ * segment is started when a record doesn't fit into the current one. Every record is prefixed with its length and a
+ * CRC-32 of its content; a fresh segment is filled with zeros, so reading stops at the first zero length, and a record
+ * torn by a crash is recognized by its checksum. <br/>
+ * Appending only copies the record into the mapped segment, which the operating system keeps even if the process dies.
+ * {@link #awaitDurable(long)} forces it to the disk: the thread that gets to sync forces everything appended so far,
+ * so the threads that wait meanwhile are covered by the same sync (group commit). <br/>
+ * Once the database holds the changes durably, the segments before the current one are deleted by
+ * {@link #truncate(long)}.
+ */
+public class TransactionJournal implements AutoCloseable {
+
+  private static final String SEGMENT_PREFIX = "journal-";
+  private static final String SEGMENT_SUFFIX = ".log";
+  private static final int    HEADER_SIZE    = Integer.BYTES * 2;
+
+  private final Path       directory;
+  private final int        segmentSize;
+  private final AtomicLong lsn;
+  private final Object     syncLock = new Object();
+  private final CRC32      crc      = new CRC32();
+
+  private MappedByteBuffer segment;
+  private long             segmentNumber;
+  private long             appendedLsn;
+  private long             records;
+  private long             syncs;
+
+  private volatile long durableLsn;
+
+  public TransactionJournal(final Path directory, final int segmentSize) throws IOException {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+
+    Files.createDirectories(directory);
+    List<Path> segments = segments(directory);
+
+    if (segments.isEmpty()) {
+      segmentNumber = 1;
+      segment = map(path(segmentNumber));
+    } else {
+      Path last = segments.get(segments.size() - 1);
+      segmentNumber = number(last);
+      segment = map(last);
+      segment.position((int) read(last, record -> {}));
+    }
+
+    long[] lastLsn = new long[1];
+
+    for (int i = segments.size() - 1; i >= 0 && lastLsn[0] == 0; i--) {
+      read(segments.get(i), record -> lastLsn[0] = record.lsn());
+    }
+
+    this.lsn = new AtomicLong(lastLsn[0]);
+    this.appendedLsn = lastLsn[0];
+    this.durableLsn = lastLsn[0];
+  }
+
+  /**
+   * It reserves the log sequence number of the next change. The caller must append the changes in the order of their
+   * numbers, e.g. by reserving and appending while holding the database writer.
+   */
+  public long nextLsn() {
+    return lsn.incrementAndGet();
+  }
+
+  /**
+   * It makes the numbers reserved from now on greater than the given one.
+   */
+  public void skipTo(long lsn) {
+    this.lsn.accumulateAndGet(lsn, Math::max);
+  }
+
+  /**
+   * It returns the highest number reserved so far.
+   */
+  public long getLsn() {
+    return lsn.get();
+  }
+
+  /**
+   * It appends the record to the current segment, starting a new segment if it doesn't fit. The record is not durable
+   * before {@link #awaitDurable(long)} returns for its number.
+   */
+  public void append(JournalRecord record) {
+    byte[] body = encode(record);
+
+    synchronized (this) {
+      if (segment.remaining() < HEADER_SIZE + body.length + Integer.BYTES) {
+        roll();
+      }
+
+      crc.reset();
+      crc.update(body);
+      segment.putInt(body.length);
+      segment.putInt((int) crc.getValue());
+      segment.put(body);
+
+      appendedLsn = record.lsn();
+      records++;
+    }
+  }
+
+  /**
+   * It returns once the record with the given number, and every record before it, is on the disk.
+   */
+  public void awaitDurable(long lsn) {
+    if (durableLsn >= lsn) {
+      return;
+    }
+
+    synchronized (syncLock) {
+      if (durableLsn >= lsn) {
+        return;
+      }
+
+      MappedByteBuffer buffer;
+      long target;
+
+      synchronized (this) {
+        buffer = segment;
+        target = appendedLsn;
+      }
+
+      buffer.force();
+      syncs++;
+      durableLsn = target;
+    }
+  }
+
+  /**
+   * It passes every record of the journal to the action, oldest first.
+   */
+  public void forEach(Consumer<JournalRecord> action) throws IOException {
+    for (Path path : segments(directory)) {
+      read(path, action);
+    }
+  }
+
+  /**
+   * It deletes the segments, except the current one, whose records all have numbers up to the given one, because the
+   * database holds their changes durably.
+   *
+   * @return The number of segments deleted.
+   */
+  public int truncate(long lsn) throws IOException {
+    long current;
+
+    synchronized (this) {
+      current = segmentNumber;
+    }
+
+    int deleted = 0;
+
+    for (Path path : segments(directory)) {
+      long[] lastLsn = new long[1];
+
+      if (number(path) >= current) {
+        break;
+      }
+
+      read(path, record -> lastLsn[0] = record.lsn());
+
+      if (lastLsn[0] > lsn) {
+        break;
+      }
+
+      Files.delete(path);
+      deleted++;
+    }
+    return deleted;
+  }
+
+  /**
+   * It returns the number of the segment the records are appended to.
+   */
+  public synchronized long getSegmentNumber() {
+    return segmentNumber;
+  }
+
+  public synchronized long getRecords() {
+    return records;
+  }
+
+  public long getSyncs() {
+    synchronized (syncLock) {
+      return syncs;
+    }
+  }
+
+  /**
+   * It forces the appended records to the disk.
+   */
+  @Override
+  public void close() {
+    awaitDurable(lsn.get());
+    System.err.printf("Transaction journal: records=%d syncs=%d%n", getRecords(), getSyncs());
+  }
+
+  private void roll() {
+    segment.force();
+
+    try {
+      segmentNumber++;
+      segment = map(path(segmentNumber));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot create journal segment!", e);
+    }
+  }
+
+  private MappedByteBuffer map(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                StandardOpenOption.WRITE)) {
+      return channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segmentSize, channel.size()));
+    }
+  }
+
+  private Path path(long number) {
+    return directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+  }
+
+  private static long number(Path path) {
+    String name = path.getFileName().toString();
+    return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  private static List<Path> segments(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files
+          .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+          .filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+          .sorted()
+          .toList();
+    }
+  }
+
+  /**
+   * It reads the valid records of the segment.
+   *
+   * @return The position after the last valid record, where the next record goes.
+   */
+  private static long read(Path path, Consumer<JournalRecord> action) throws IOException {
+    ByteBuffer buffer;
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    CRC32 checksum = new CRC32();
+
+    while (buffer.remaining() >= HEADER_SIZE) {
+      int start = buffer.position();
+      int length = buffer.getInt();
+      int expected = buffer.getInt();
+
+      if (length <= 0 || length > buffer.remaining()) {
+        return start;
+      }
+
+      byte[] body = new byte[length];
+      buffer.get(body);
+      checksum.reset();
+      checksum.update(body);
+
+      if ((int) checksum.getValue() != expected) {
+        return start;
+      }
+
+      JournalRecord record;
+
+      try {
+        record = decode(ByteBuffer.wrap(body));
+      } catch (BufferUnderflowException | IllegalArgumentException e) {
+        return start;
+      }
+      action.accept(record);
+    }
+    return buffer.position();
+  }
+
+  /**
+   * It encodes the record. The operation key and the balance come last, so the records written before they were
+   * journaled are read with no key.
+   */
+  private static byte[] encode(JournalRecord record) {
+    byte[] cardNumber = record.cardNumber().getBytes(StandardCharsets.UTF_8);
+    byte[] toCardNumber = record.toCardNumber().getBytes(StandardCharsets.UTF_8);
+    byte[] pin = record.pin().getBytes(StandardCharsets.UTF_8);
+    byte[] operationKey = record.operationKey().getBytes(StandardCharsets.UTF_8);
+
+    ByteBuffer body = ByteBuffer.allocate(1 + Long.BYTES * 3 + Short.BYTES * 4 + Integer.BYTES + cardNumber.length
+                                          + toCardNumber.length + pin.length + operationKey.length);
+    body.put((byte) record.type().ordinal());
+    body.putLong(record.lsn());
+    body.putLong(record.timestamp());
+    body.putLong(record.amount());
+    putString(body, cardNumber);
+    putString(body, toCardNumber);
+    putString(body, pin);
+    putString(body, operationKey);
+    body.putInt(record.balance());
+    return body.array();
+  }
+
+  private static JournalRecord decode(ByteBuffer body) {
+    JournalRecord.Type[] types = JournalRecord.Type.values();
+    int type = body.get();
+
+    if (type < 0 || type >= types.length) {
+      throw new IllegalArgumentException("Unknown journal record type: " + type);
+    }
+
+    long lsn = body.getLong();
+    long timestamp = body.getLong();
+    long amount = body.getLong();
+    String cardNumber = getString(body);
+    String toCardNumber = getString(body);
+    String pin = getString(body);
+    String operationKey = body.hasRemaining() ? getString(body) : "";
+    int balance = body.hasRemaining() ? body.getInt() : 0;
+    return new JournalRecord(types[type], lsn, timestamp, cardNumber, toCardNumber, pin, amount, operationKey,
+                             balance);
+  }
+
+  private static void putString(ByteBuffer buffer, byte[] value) {
+    buffer.putShort((short) value.length);
+    buffer.put(value);
+  }
+
+  private static String getString(ByteBuffer buffer) {
+    byte[] value = new byte[buffer.getShort() & 0xFFFF];
+    buffer.get(value);
+    return new String(value, StandardCharsets.UTF_8);
+  }
+
+}
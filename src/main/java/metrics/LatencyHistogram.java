@@ -0,0 +1,114 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class represents a histogram of latencies in nanoseconds. <br/>
+ * Values below 64 ns have their own buckets, every larger power of two is split into 32 buckets, so a percentile is
+ * off by at most 3% and the whole range of long fits into 1920 counters. Recording is lock-free and doesn't allocate,
+ * so it can be called on every request; reading the percentiles while values are recorded gives an approximate
+ * snapshot.
+ */
+public class LatencyHistogram {
+
+  private static final int PRECISION_BITS = 5;
+  private static final int SUB_BUCKETS    = 1 << PRECISION_BITS;
+  private static final int EXACT_VALUES   = 2 * SUB_BUCKETS;
+  private static final int BUCKETS        = (Long.SIZE - PRECISION_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder       count  = new LongAdder();
+  private final LongAdder       sum    = new LongAdder();
+  private final AtomicLong      max    = new AtomicLong();
+
+  /**
+   * It records one latency, negative values are recorded as 0.
+   */
+  public void record(long nanos) {
+    long value = Math.max(nanos, 0);
+
+    counts.incrementAndGet(index(value));
+    count.increment();
+    sum.add(value);
+    max.accumulateAndGet(value, Math::max);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getSum() {
+    return sum.sum();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  public double getMean() {
+    long total = count.sum();
+    return total == 0 ? 0 : (double) sum.sum() / total;
+  }
+
+  /**
+   * It returns the latency that the given share of the recorded values don't exceed.
+   *
+   * @param quantile
+   *     The share between 0 and 1, e.g. 0.99 for the 99th percentile.
+   *
+   * @return The latency in nanoseconds, or 0 if nothing was recorded.
+   */
+  public long percentile(double quantile) {
+    long total = 0;
+
+    for (int i = 0; i < BUCKETS; i++) {
+      total += counts.get(i);
+    }
+
+    long rank = Math.max(1, (long) Math.ceil(quantile * total));
+    long seen = 0;
+
+    for (int i = 0; i < BUCKETS && total > 0; i++) {
+      seen += counts.get(i);
+
+      if (seen >= rank) {
+        return Math.min(highestValue(i), max.get());
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * It forgets the recorded values, values recorded at the same time may be partly kept.
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+    count.reset();
+    sum.reset();
+    max.set(0);
+  }
+
+  static int index(long value) {
+    if (value < EXACT_VALUES) {
+      return (int) value;
+    }
+
+    int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - PRECISION_BITS;
+    return shift * SUB_BUCKETS + (int) (value >>> shift);
+  }
+
+  static long highestValue(int index) {
+    if (index < EXACT_VALUES) {
+      return index;
+    }
+
+    int shift = index / SUB_BUCKETS - 1;
+    long mantissa = index - (long) shift * SUB_BUCKETS;
+    return ((mantissa + 1) << shift) - 1;
+  }
+
+}
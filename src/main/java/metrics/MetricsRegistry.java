@@ -0,0 +1,150 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class holds the operation timers and gauges of the application and exports them. <br/>
+ * A timer is looked up by name once and kept by the code it measures, so recording doesn't touch the registry. The
+ * metrics are written in the Prometheus text format, timers as summaries with their percentiles, and once
+ * {@link #registerJmx()} is called every metric is also an MXBean under the {@code banking} domain. <br/>
+ * The {@link #global()} registry is the one the application exports; tests create their own.
+ */
+public class MetricsRegistry {
+
+  private static final MetricsRegistry GLOBAL = new MetricsRegistry();
+
+  private static final String   JMX_DOMAIN     = "banking";
+  private static final double   NANOS_PER_SEC  = 1e9;
+  private static final double[] QUANTILES      = {0.5, 0.9, 0.99, 0.999};
+  private static final String   LATENCY_METRIC = "banking_operation_latency_seconds";
+  private static final String   ERRORS_METRIC  = "banking_operation_errors_total";
+
+  private final Map<String, Timer> timers = new ConcurrentSkipListMap<>();
+  private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+
+  private volatile MBeanServer mBeanServer;
+
+  public static MetricsRegistry global() {
+    return GLOBAL;
+  }
+
+  /**
+   * It returns the timer of the operation, creating it on first use.
+   */
+  public Timer timer(String name) {
+    return timers.computeIfAbsent(name, key -> register("Operation", key, new Timer(key)));
+  }
+
+  /**
+   * It adds a value that is read when the metrics are exported, e.g. a counter kept by another class.
+   *
+   * @param name
+   *     The name in snake case, exported with the {@code banking_} prefix.
+   */
+  public void gauge(String name, String help, LongSupplier value) {
+    gauges.computeIfAbsent(name, key -> register("Gauge", key, new Gauge(help, value)));
+  }
+
+  /**
+   * It registers every metric with the platform MBean server, and the metrics added later as well.
+   */
+  public synchronized void registerJmx() {
+    if (mBeanServer != null) {
+      return;
+    }
+
+    mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    timers.forEach((name, timer) -> register("Operation", name, timer));
+    gauges.forEach((name, gauge) -> register("Gauge", name, gauge));
+  }
+
+  /**
+   * It writes the metrics in the Prometheus text exposition format.
+   */
+  public String toPrometheus() {
+    StringBuilder out = new StringBuilder();
+
+    out.append("# HELP ").append(LATENCY_METRIC).append(" Latency of the operation.\n");
+    out.append("# TYPE ").append(LATENCY_METRIC).append(" summary\n");
+
+    timers.forEach((name, timer) -> {
+      LatencyHistogram latencies = timer.getLatencies();
+
+      for (double quantile : QUANTILES) {
+        sample(out, LATENCY_METRIC, name, "quantile=\"" + quantile + "\"",
+               seconds(latencies.percentile(quantile)));
+      }
+      sample(out, LATENCY_METRIC + "_sum", name, null, seconds(latencies.getSum()));
+      sample(out, LATENCY_METRIC + "_count", name, null, Long.toString(latencies.getCount()));
+    });
+
+    out.append("# HELP ").append(ERRORS_METRIC).append(" Calls of the operation that failed.\n");
+    out.append("# TYPE ").append(ERRORS_METRIC).append(" counter\n");
+    timers.forEach((name, timer) -> sample(out, ERRORS_METRIC, name, null, Long.toString(timer.getErrors())));
+
+    gauges.forEach((name, gauge) -> {
+      String metric = "banking_" + name;
+      out.append("# HELP ").append(metric).append(' ').append(gauge.help()).append('\n');
+      out.append("# TYPE ").append(metric).append(" gauge\n");
+      out.append(metric).append(' ').append(gauge.getValue()).append('\n');
+    });
+    return out.toString();
+  }
+
+  private <T> T register(String type, String name, T metric) {
+    MBeanServer server = mBeanServer;
+
+    if (server != null) {
+      try {
+        ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=" + type + ",name=" + name);
+
+        if (!server.isRegistered(objectName)) {
+          server.registerMBean(metric, objectName);
+        }
+      } catch (JMException e) {
+        System.err.println("Cannot register the metric " + name + " with JMX!");
+      }
+    }
+    return metric;
+  }
+
+  private static void sample(StringBuilder out, String metric, String operation, String label, String value) {
+    out.append(metric).append("{operation=\"").append(operation).append('"');
+
+    if (label != null) {
+      out.append(',').append(label);
+    }
+    out.append("} ").append(value).append('\n');
+  }
+
+  private static String seconds(long nanos) {
+    return String.format(Locale.ROOT, "%.9f", nanos / NANOS_PER_SEC);
+  }
+
+  /**
+   * This interface represents a gauge as seen over JMX.
+   */
+  public interface GaugeMXBean {
+
+    long getValue();
+
+  }
+
+  private record Gauge(String help, LongSupplier value) implements GaugeMXBean {
+
+    @Override
+    public long getValue() {
+      return value.getAsLong();
+    }
+
+  }
+
+}
@@ -0,0 +1,68 @@
+package metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * This class serves the metrics of a registry in the Prometheus text format at {@code GET /metrics}. <br/>
+ * It listens on the loopback address only, so the metrics are scraped locally or through a sidecar, and answers on a
+ * single thread, which is enough for a scraper.
+ */
+public class MetricsServer implements AutoCloseable {
+
+  private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private final MetricsRegistry registry;
+
+  private HttpServer httpServer;
+
+  public MetricsServer(final MetricsRegistry registry) {
+    this.registry = registry;
+  }
+
+  /**
+   * It starts serving the metrics in the background.
+   *
+   * @param port
+   *     The port to listen on, 0 picks a free one.
+   *
+   * @return The port the server listens on.
+   */
+  public int start(int port) throws IOException {
+    httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    httpServer.createContext("/metrics", this::metrics);
+    httpServer.start();
+    return httpServer.getAddress().getPort();
+  }
+
+  @Override
+  public void close() {
+    if (httpServer != null) {
+      httpServer.stop(0);
+    }
+  }
+
+  private void metrics(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      if (!exchange.getRequestMethod().equals("GET")) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+
+      byte[] body = registry.toPrometheus().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+      exchange.sendResponseHeaders(200, body.length);
+
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,80 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class represents the metrics of one operation: how often it ran, how often it failed and how long it took. <br/>
+ * The latencies go into a {@link LatencyHistogram}, so recording is lock-free and doesn't allocate; a failed call is
+ * counted as an error and its latency is recorded as well.
+ */
+public class Timer implements TimerMXBean {
+
+  private static final double NANOS_PER_MICRO = 1_000.0;
+
+  private final String           name;
+  private final LatencyHistogram latencies = new LatencyHistogram();
+  private final LongAdder        errors    = new LongAdder();
+
+  Timer(final String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * It records a call that started at the given {@link System#nanoTime()}.
+   */
+  public void recordSince(long startNanos) {
+    latencies.record(System.nanoTime() - startNanos);
+  }
+
+  public void record(long nanos) {
+    latencies.record(nanos);
+  }
+
+  public void recordError() {
+    errors.increment();
+  }
+
+  public LatencyHistogram getLatencies() {
+    return latencies;
+  }
+
+  @Override
+  public long getCount() {
+    return latencies.getCount();
+  }
+
+  @Override
+  public long getErrors() {
+    return errors.sum();
+  }
+
+  @Override
+  public double getMeanMicros() {
+    return latencies.getMean() / NANOS_PER_MICRO;
+  }
+
+  @Override
+  public double getP50Micros() {
+    return latencies.percentile(0.5) / NANOS_PER_MICRO;
+  }
+
+  @Override
+  public double getP99Micros() {
+    return latencies.percentile(0.99) / NANOS_PER_MICRO;
+  }
+
+  @Override
+  public double getP999Micros() {
+    return latencies.percentile(0.999) / NANOS_PER_MICRO;
+  }
+
+  @Override
+  public double getMaxMicros() {
+    return latencies.getMax() / NANOS_PER_MICRO;
+  }
+
+}
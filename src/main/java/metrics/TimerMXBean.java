@@ -0,0 +1,22 @@
+package metrics;
+
+/**
+ * This interface represents an operation timer as seen over JMX, latencies in microseconds.
+ */
+public interface TimerMXBean {
+
+  long getCount();
+
+  long getErrors();
+
+  double getMeanMicros();
+
+  double getP50Micros();
+
+  double getP99Micros();
+
+  double getP999Micros();
+
+  double getMaxMicros();
+
+}
@@ -0,0 +1,18 @@
+package model;
+
+/**
+ * This enum represents how fresh a read must be.
+ */
+public enum ReadConsistency {
+
+  /**
+   * The read sees every write committed before it.
+   */
+  CONSISTENT,
+
+  /**
+   * The read may be served from a snapshot of the database that is at most the staleness bound old.
+   */
+  SNAPSHOT
+
+}
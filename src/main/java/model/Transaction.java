@@ -0,0 +1,10 @@
+package model;
+
+/**
+ * This record represents an entry of the account statement. <br/>
+ * The amount is positive for money that came in and negative for money that went out; the counterparty is the other
+ * card of a transfer, empty otherwise. Entries are ordered by their timestamp, in milliseconds since the epoch, and then
+ * by their id.
+ */
+public record Transaction(long id, String cardNumber, long timestamp, TransactionType type, int amount,
+                          String counterparty) {}
@@ -0,0 +1,12 @@
+package model;
+
+/**
+ * This enum represents the kinds of statement entries.
+ */
+public enum TransactionType {
+
+  DEPOSIT,
+  TRANSFER_IN,
+  TRANSFER_OUT
+
+}
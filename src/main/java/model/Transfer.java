@@ -0,0 +1,6 @@
+package model;
+
+/**
+ * This record represents a money transfer between two cards.
+ */
+public record Transfer(String fromCardNumber, String toCardNumber, int amount) {}
@@ -0,0 +1,36 @@
+package model;
+
+import java.util.OptionalInt;
+
+/**
+ * This record represents the outcome of a single transfer: its status and, if the money left the sender, the balance
+ * left to the sender.
+ */
+public record TransferResult(TransferStatus status, int balance) {
+
+  /**
+   * It returns the result of a transfer that was made and left the balance to the sender.
+   */
+  public static TransferResult success(int balance) {
+    return new TransferResult(TransferStatus.SUCCESS, balance);
+  }
+
+  /**
+   * It returns the result of a transfer that was not made.
+   */
+  public static TransferResult refused(TransferStatus status) {
+    return new TransferResult(status, 0);
+  }
+
+  public boolean isMade() {
+    return status.isMade();
+  }
+
+  /**
+   * It returns the balance left to the sender, or empty if the transfer was not made.
+   */
+  public OptionalInt getBalance() {
+    return isMade() ? OptionalInt.of(balance) : OptionalInt.empty();
+  }
+
+}
@@ -0,0 +1,28 @@
+package model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * This enum represents the outcome of a transfer, single or in a batch.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum TransferStatus {
+
+  SUCCESS("Success!", true),
+  /**
+   * The money was taken from the sender, but the recipient could not be given it yet; it is given in the background.
+   */
+  PENDING("The transfer is being processed.", true),
+  NOT_ENOUGH_MONEY("Not enough money!", false),
+  NO_SUCH_RECIPIENT("Such a card does not exist.", false),
+  FAILED("Cannot transfer money!", false);
+
+  private final String  message;
+  /**
+   * Whether the money left the sender, so the transfer will reach the recipient.
+   */
+  private final boolean made;
+
+}
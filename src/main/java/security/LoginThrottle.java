@@ -0,0 +1,215 @@
+package security;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import dao.LockoutDao;
+
+/**
+ * This class limits the failed logins per card and per session, so PINs can't be guessed by trying them all. <br/>
+ * The failures are counted in time buckets that expire one by one, so a counter decays over the window instead of
+ * being reset at once. A card that reaches its limit is locked for the lockout time; the lockout is written to the
+ * database and loaded again on startup, so restarting doesn't unlock it. A session that reaches its limit is turned away
+ * until its oldest failures expire. The servers identify a session by the client address, so reconnecting doesn't
+ * reset it. <br/>
+ * Logins are checked before the account is read, so rejected tries don't reach the database or the PIN hashing. The
+ * counters are kept in concurrent maps and updated with compare-and-set, every check and failure takes constant time
+ * without locks; counters that expired are dropped every few thousand failures.
+ */
+public class LoginThrottle {
+
+  public static final int  DEFAULT_MAX_CARD_FAILURES    = 5;
+  public static final int  DEFAULT_MAX_SESSION_FAILURES = 20;
+  public static final long DEFAULT_WINDOW_MILLIS        = TimeUnit.MINUTES.toMillis(15);
+  public static final long DEFAULT_LOCKOUT_MILLIS       = TimeUnit.MINUTES.toMillis(15);
+
+  private static final int BUCKETS        = 8;
+  private static final int PURGE_INTERVAL = 4_096;
+
+  private final LockoutDao   lockoutDao;
+  private final int          maxCardFailures;
+  private final int          maxSessionFailures;
+  private final long         bucketMillis;
+  private final long         lockoutMillis;
+  private final LongSupplier clock;
+
+  private final Map<String, FailureCounter> cardFailures    = new ConcurrentHashMap<>();
+  private final Map<String, FailureCounter> sessionFailures = new ConcurrentHashMap<>();
+  private final Map<String, Long>           lockedUntil     = new ConcurrentHashMap<>();
+  private final AtomicInteger               untilPurge      = new AtomicInteger(PURGE_INTERVAL);
+
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder lockouts = new LongAdder();
+
+  public LoginThrottle(final LockoutDao lockoutDao) {
+    this(lockoutDao, DEFAULT_MAX_CARD_FAILURES, DEFAULT_MAX_SESSION_FAILURES, DEFAULT_WINDOW_MILLIS,
+         DEFAULT_LOCKOUT_MILLIS, System::currentTimeMillis);
+  }
+
+  public LoginThrottle(final LockoutDao lockoutDao, final int maxCardFailures, final int maxSessionFailures,
+                       final long windowMillis, final long lockoutMillis, final LongSupplier clock) {
+    if (maxCardFailures < 1 || maxSessionFailures < 1 || windowMillis < BUCKETS) {
+      throw new IllegalArgumentException("Wrong login throttle limits!");
+    }
+
+    this.lockoutDao = lockoutDao;
+    this.maxCardFailures = maxCardFailures;
+    this.maxSessionFailures = maxSessionFailures;
+    this.bucketMillis = windowMillis / BUCKETS;
+    this.lockoutMillis = lockoutMillis;
+    this.clock = clock;
+
+    long now = clock.getAsLong();
+    lockoutDao.deleteExpired(now);
+    lockedUntil.putAll(lockoutDao.getActive(now));
+  }
+
+  /**
+   * It checks if the session may try to log into the card.
+   *
+   * @return false if the card is locked or the session failed too often.
+   */
+  public boolean isAllowed(String session, String cardNumber) {
+    long now = clock.getAsLong();
+    Long until = lockedUntil.get(cardNumber);
+
+    if (until != null) {
+      if (until > now) {
+        rejected.increment();
+        return false;
+      }
+      lockedUntil.remove(cardNumber, until);
+    }
+
+    FailureCounter sessionCounter = sessionFailures.get(session);
+
+    if (sessionCounter != null && sessionCounter.count(now / bucketMillis) >= maxSessionFailures) {
+      rejected.increment();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * It counts a wrong PIN for the card and the session, and locks the card once it reaches the limit.
+   */
+  public void recordFailure(String session, String cardNumber) {
+    long now = clock.getAsLong();
+    long bucket = now / bucketMillis;
+
+    counter(sessionFailures, session).increment(bucket);
+
+    if (counter(cardFailures, cardNumber).increment(bucket) >= maxCardFailures) {
+      lock(cardNumber, now + lockoutMillis);
+    }
+
+    if (untilPurge.decrementAndGet() == 0) {
+      untilPurge.set(PURGE_INTERVAL);
+      purge(now, bucket);
+    }
+  }
+
+  /**
+   * It forgets the failures of the card. The failures of the session are kept, so a session can't clear them by
+   * logging into its own card between guesses.
+   */
+  public void recordSuccess(String cardNumber) {
+    cardFailures.remove(cardNumber);
+  }
+
+  public long getRejected() {
+    return rejected.sum();
+  }
+
+  public long getLockouts() {
+    return lockouts.sum();
+  }
+
+  private void lock(String cardNumber, long until) {
+    Long previous = lockedUntil.put(cardNumber, until);
+    cardFailures.remove(cardNumber);
+
+    if (previous == null || previous < until) {
+      lockouts.increment();
+      lockoutDao.save(cardNumber, until);
+    }
+  }
+
+  private void purge(long now, long bucket) {
+    cardFailures.values().removeIf(counter -> counter.count(bucket) == 0);
+    sessionFailures.values().removeIf(counter -> counter.count(bucket) == 0);
+    lockedUntil.values().removeIf(until -> until <= now);
+  }
+
+  private static FailureCounter counter(Map<String, FailureCounter> counters, String key) {
+    FailureCounter counter = counters.get(key);
+
+    if (counter == null) {
+      FailureCounter created = new FailureCounter();
+      counter = counters.putIfAbsent(key, created);
+      return counter != null ? counter : created;
+    }
+    return counter;
+  }
+
+  /**
+   * The failures of the last {@link #BUCKETS} time buckets. A slot holds the bucket number in the high bits and its
+   * count in the low bits, so a slot of an older bucket is recognized and restarted when its turn comes again.
+   */
+  private static final class FailureCounter {
+
+    private static final int  COUNT_BITS = 20;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final AtomicLongArray slots = new AtomicLongArray(BUCKETS);
+
+    /**
+     * It counts a failure in the bucket.
+     *
+     * @return The failures in the window that ends with the bucket.
+     */
+    int increment(long bucket) {
+      int index = (int) (bucket % BUCKETS);
+      long current;
+      long next;
+
+      do {
+        current = slots.get(index);
+
+        if (current >>> COUNT_BITS != bucket) {
+          next = bucket << COUNT_BITS | 1;
+        } else if ((current & COUNT_MASK) < COUNT_MASK) {
+          next = current + 1;
+        } else {
+          next = current;
+        }
+      } while (!slots.compareAndSet(index, current, next));
+
+      return count(bucket);
+    }
+
+    /**
+     * It returns the failures in the window that ends with the bucket.
+     */
+    int count(long bucket) {
+      int count = 0;
+
+      for (int i = 0; i < BUCKETS; i++) {
+        long slot = slots.get(i);
+        long slotBucket = slot >>> COUNT_BITS;
+
+        if (slotBucket > bucket - BUCKETS && slotBucket <= bucket) {
+          count += (int) (slot & COUNT_MASK);
+        }
+      }
+      return count;
+    }
+
+  }
+
+}
@@ -0,0 +1,100 @@
+package security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * This class hashes the PINs with PBKDF2-HMAC-SHA256 and a random salt per PIN. <br/>
+ * A hash is stored as {@code pbkdf2$iterations$salt$hash}, salt and hash in Base64, so the iteration count can be raised
+ * later without invalidating the PINs hashed before. PINs stored by earlier versions in plain text are recognized by the
+ * missing prefix and still verified.
+ */
+public class PinHasher {
+
+  /**
+   * The iteration count used unless another one is configured, a few milliseconds of CPU per hash.
+   */
+  public static final int DEFAULT_ITERATIONS = 10_000;
+
+  private static final String PREFIX      = "pbkdf2$";
+  private static final String ALGORITHM   = "PBKDF2WithHmacSHA256";
+  private static final int    SALT_LENGTH = 16;
+  private static final int    HASH_BITS   = 256;
+
+  private final int          iterations;
+  private final SecureRandom random = new SecureRandom();
+
+  public PinHasher(final int iterations) {
+    if (iterations < 1) {
+      throw new IllegalArgumentException("Wrong number of PIN hash iterations: " + iterations);
+    }
+    this.iterations = iterations;
+  }
+
+  /**
+   * It checks if the stored PIN is a hash rather than a plain PIN.
+   */
+  public static boolean isHashed(String storedPin) {
+    return storedPin.startsWith(PREFIX);
+  }
+
+  /**
+   * It hashes the PIN with a new salt.
+   *
+   * @return The hash in the stored format.
+   */
+  public String hash(String pin) {
+    byte[] salt = new byte[SALT_LENGTH];
+    random.nextBytes(salt);
+
+    Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+    return PREFIX + iterations + '$' + base64.encodeToString(salt) + '$'
+           + base64.encodeToString(pbkdf2(pin, salt, iterations));
+  }
+
+  /**
+   * It checks the PIN against the stored hash, or against the stored plain PIN, in constant time.
+   */
+  public boolean verify(String pin, String storedPin) {
+    if (!isHashed(storedPin)) {
+      return MessageDigest.isEqual(pin.getBytes(StandardCharsets.UTF_8), storedPin.getBytes(StandardCharsets.UTF_8));
+    }
+
+    String[] parts = storedPin.split("\\$");
+
+    if (parts.length != 4) {
+      return false;
+    }
+
+    try {
+      Base64.Decoder base64 = Base64.getDecoder();
+      byte[] expected = base64.decode(parts[3]);
+      return MessageDigest.isEqual(expected, pbkdf2(pin, base64.decode(parts[2]), Integer.parseInt(parts[1])));
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  public int getIterations() {
+    return iterations;
+  }
+
+  private static byte[] pbkdf2(String pin, byte[] salt, int iterations) {
+    PBEKeySpec spec = new PBEKeySpec(pin.toCharArray(), salt, iterations, HASH_BITS);
+
+    try {
+      return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(ALGORITHM + " is not available", e);
+    } finally {
+      spec.clearPassword();
+    }
+  }
+
+}
@@ -0,0 +1,194 @@
+package security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * This class hashes and verifies the PINs on a dedicated pool of login threads, with a cache of the PINs verified
+ * recently. <br/>
+ * Hashing is slow on purpose, so it runs on at most as many threads as the pool has, and the sessions waiting for a
+ * login don't take the CPU from those making transfers. After a successful verification the stored hash is mapped to an
+ * HMAC of the PIN under a key that lives only in this process; the next login with the same PIN is then checked with one
+ * HMAC instead of the slow hash. Wrong PINs are never cached, so guessing stays slow. The cache is bounded and evicts
+ * the least recently used hashes. Plain PINs stored by earlier versions are compared directly.
+ */
+public class PinVerifier implements AutoCloseable {
+
+  private static final String MAC_ALGORITHM = "HmacSHA256";
+
+  private final PinHasher                     hasher;
+  private final int                           cacheSize;
+  private final LinkedHashMap<String, byte[]> verified;
+  private final ExecutorService               loginPool;
+  private final SecretKeySpec                 cacheKey;
+
+  private final LongAdder     hits   = new LongAdder();
+  private final LongAdder     misses = new LongAdder();
+  private final AtomicBoolean closed = new AtomicBoolean();
+
+  public PinVerifier(final PinHasher hasher, final int cacheSize, final int loginThreads) {
+    this.hasher = hasher;
+    this.cacheSize = cacheSize;
+    this.verified = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+        return size() > PinVerifier.this.cacheSize;
+      }
+    };
+
+    AtomicInteger threads = new AtomicInteger();
+    this.loginPool = Executors.newFixedThreadPool(loginThreads, task -> {
+      Thread thread = new Thread(task, "login-" + threads.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    byte[] key = new byte[32];
+    new SecureRandom().nextBytes(key);
+    this.cacheKey = new SecretKeySpec(key, MAC_ALGORITHM);
+  }
+
+  /**
+   * It returns a verifier with the default iteration count, a cache of 100000 PINs and a login thread per CPU.
+   */
+  public static PinVerifier defaults() {
+    return new PinVerifier(new PinHasher(PinHasher.DEFAULT_ITERATIONS), 100_000,
+                           Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * It hashes the PIN on the login pool.
+   */
+  public String hash(String pin) {
+    return await(loginPool.submit(() -> hasher.hash(pin)));
+  }
+
+  /**
+   * It hashes the PINs in parallel on the login pool.
+   *
+   * @return The hashes, in the same order.
+   */
+  public List<String> hashAll(List<String> pins) {
+    List<Callable<String>> tasks = new ArrayList<>(pins.size());
+
+    for (String pin : pins) {
+      tasks.add(() -> hasher.hash(pin));
+    }
+
+    try {
+      List<String> hashes = new ArrayList<>(pins.size());
+
+      for (Future<String> future : loginPool.invokeAll(tasks)) {
+        hashes.add(await(future));
+      }
+      return hashes;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while hashing PINs", e);
+    }
+  }
+
+  /**
+   * It checks the PIN against the stored hash, from the cache if the same PIN was verified recently and on the login
+   * pool otherwise.
+   */
+  public boolean verify(String pin, String storedPin) {
+    if (!PinHasher.isHashed(storedPin)) {
+      return hasher.verify(pin, storedPin);
+    }
+
+    byte[] mac = mac(pin);
+    byte[] cached;
+
+    synchronized (verified) {
+      cached = verified.get(storedPin);
+    }
+
+    if (cached != null && MessageDigest.isEqual(cached, mac)) {
+      hits.increment();
+      return true;
+    }
+
+    misses.increment();
+
+    if (!await(loginPool.submit(() -> hasher.verify(pin, storedPin)))) {
+      return false;
+    }
+
+    if (cacheSize > 0) {
+      synchronized (verified) {
+        verified.put(storedPin, mac);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * It returns the cache counters: hits, misses and size.
+   */
+  public CacheCounters getCounters() {
+    synchronized (verified) {
+      return new CacheCounters(hits.sum(), misses.sum(), verified.size());
+    }
+  }
+
+  /**
+   * It stops the login pool and prints the cache counters, only the first time when the verifier is shared by shards.
+   */
+  @Override
+  public void close() {
+    if (!closed.compareAndSet(false, true)) {
+      return;
+    }
+
+    loginPool.shutdown();
+
+    CacheCounters counters = getCounters();
+    System.err.printf("PIN verification cache: hits=%d misses=%d size=%d%n", counters.hits(), counters.misses(),
+                      counters.size());
+  }
+
+  private byte[] mac(String pin) {
+    try {
+      Mac mac = Mac.getInstance(MAC_ALGORITHM);
+      mac.init(cacheKey);
+      return mac.doFinal(pin.getBytes(StandardCharsets.UTF_8));
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(MAC_ALGORITHM + " is not available", e);
+    }
+  }
+
+  private static <T> T await(Future<T> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the login pool", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("PIN hashing failed", e.getCause());
+    }
+  }
+
+  /**
+   * The counters of the verification cache.
+   */
+  public record CacheCounters(long hits, long misses, int size) {}
+
+}
@@ -0,0 +1,401 @@
+package server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import dao.AccountDao;
+import generator.CardGenerator;
+import metrics.LatencyHistogram;
+import model.Account;
+import model.Card;
+import model.ReadConsistency;
+import model.TransferResult;
+import model.TransferStatus;
+import security.LoginThrottle;
+
+/**
+ * This class serves the account operations as a JSON API over HTTP, on the server built into the JDK. <br/>
+ * Parameters are read from the query string and from a form-encoded or JSON body, and the responses are JSON objects
+ * written by hand. Logging in returns a token that the other account endpoints expect in the
+ * {@code Authorization: Bearer} header; a token expires when it was not used for half an hour, or when too many newer
+ * ones push it out, and it only stands for the card number, not the PIN. Every request runs on its own virtual thread, or on a small-stack platform
+ * thread before Java 21, and its latency is recorded per endpoint:
+ *
+ * <pre>
+ * POST   /accounts                           -> {"number", "pin"}
+ * POST   /login          number, pin         -> {"token"}
+ * GET    /balance        [consistent]        -> {"number", "balance"}
+ * POST   /deposit        amount              -> {"balance"}
+ * POST   /transfer       to, amount          -> {"balance"}
+ * POST   /close                              -> {"closed"}
+ * GET    /metrics/latency                    -> count, mean, p50, p90, p99, p99.9 and max in microseconds per endpoint
+ * DELETE /metrics/latency                    -> resets the latencies
+ * </pre>
+ *
+ * Errors are returned as {@code {"error"}} with the message the console shows. A transfer the sender can't cover gets
+ * status 409, one to a missing card 404 and one the database failed 500; a transfer between shards whose recipient is
+ * credited in the background gets 202. Failed logins are throttled per card and per client address, a throttled login
+ * gets status 429. The balance may be read from a snapshot of the database until the session wrote to the account, or
+ * when {@code consistent=true} is passed. A deposit or transfer sent with an {@code Idempotency-Key} header is applied
+ * once: a retry with the same key returns the balance of the first call.
+ */
+public class BankingHttpServer implements AutoCloseable {
+
+  private static final int BACKLOG                  = 4_096;
+  private static final int MAX_OPERATION_KEY_LENGTH = 64;
+  private static final int CREATE_ATTEMPTS          = 3;
+
+  static {
+    // The JDK server writes the headers and the body of a response separately, so without TCP_NODELAY the body waits
+    // for the delayed ACK of the client and every keep-alive request takes 40 ms. The property is read once, when the
+    // first server is created.
+    System.getProperties().putIfAbsent("sun.net.httpserver.nodelay", "true");
+  }
+
+  private final AccountDao                    accountDao;
+  private final CardGenerator                 cardGenerator;
+  private final LoginThrottle                 loginThrottle;
+  private final SessionTokens                 tokens;
+  private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+
+  private HttpServer      httpServer;
+  private ExecutorService executor;
+
+  public BankingHttpServer(final AccountDao accountDao, final CardGenerator cardGenerator,
+                           final LoginThrottle loginThrottle) {
+    this.accountDao = accountDao;
+    this.cardGenerator = cardGenerator;
+    this.loginThrottle = loginThrottle;
+    this.tokens = new SessionTokens(SessionTokens.DEFAULT_TTL_MILLIS, SessionTokens.DEFAULT_CAPACITY,
+                                    System::currentTimeMillis);
+  }
+
+  /**
+   * It starts serving the requests in the background.
+   *
+   * @param port
+   *     The port to listen on, 0 picks a free one.
+   *
+   * @return The port the server listens on.
+   */
+  public int start(int port) throws IOException {
+    httpServer = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+    executor = VirtualThreads.newThreadPerTaskExecutor("banking-http");
+    httpServer.setExecutor(executor);
+
+    route("POST", "/accounts", this::createAccount);
+    route("POST", "/login", this::login);
+    route("GET", "/balance", this::balance);
+    route("POST", "/deposit", this::deposit);
+    route("POST", "/transfer", this::transfer);
+    route("POST", "/close", this::closeAccount);
+    httpServer.createContext("/metrics/latency", this::latency);
+
+    httpServer.start();
+    return httpServer.getAddress().getPort();
+  }
+
+  /**
+   * It stops the server, letting the requests in progress finish for up to a second.
+   */
+  @Override
+  public void close() {
+    if (httpServer != null) {
+      httpServer.stop(1);
+      executor.shutdown();
+    }
+  }
+
+  private Response createAccount(Request request) {
+    for (int attempt = 0; attempt < CREATE_ATTEMPTS; attempt++) {
+      Card card = cardGenerator.generateCredentials();
+
+      if (accountDao.save(new Account(card, 0))) {
+        return Response.created(Json.object().put("number", card.number()).put("pin", card.pin()));
+      }
+    }
+    throw new ApiException(503, "The card cannot be created! Try again later.");
+  }
+
+  private Response login(Request request) {
+    String number = request.required("number");
+    String pin = request.required("pin");
+
+    if (!loginThrottle.isAllowed(request.client, number)) {
+      throw new ApiException(429, "Too many failed attempts! Try again later.");
+    }
+
+    if (accountDao.get(number, pin).isEmpty()) {
+      loginThrottle.recordFailure(request.client, number);
+      throw new ApiException(401, "Wrong card number or PIN!");
+    }
+
+    loginThrottle.recordSuccess(number);
+
+    return Response.ok(Json.object().put("token", tokens.open(number)));
+  }
+
+  private Response balance(Request request) {
+    String number = cardNumber(request);
+    ReadConsistency consistency = tokens.isWritten(request.token) || "true".equals(request.parameters.get("consistent"))
+                                  ? ReadConsistency.CONSISTENT
+                                  : ReadConsistency.SNAPSHOT;
+
+    int balance = accountDao
+        .getBalance(number, consistency)
+        .orElseThrow(() -> new ApiException(401, "Log into account first!"));
+
+    return Response.ok(Json.object().put("number", number).put("balance", balance));
+  }
+
+  private Response deposit(Request request) {
+    String number = cardNumber(request);
+    int amount = amount(request);
+
+    int balance = accountDao
+        .update(number, amount, request.operationKey)
+        .orElseThrow(() -> new ApiException(401, "Log into account first!"));
+    tokens.written(request.token);
+
+    return Response.ok(Json.object().put("balance", balance));
+  }
+
+  private Response transfer(Request request) {
+    String number = cardNumber(request);
+    String recipient = request.required("to");
+    int amount = amount(request);
+
+    if (recipient.equals(number)) {
+      throw new ApiException(400, "You can't transfer money to the same account!");
+    }
+
+    if (!cardGenerator.isValid(recipient)) {
+      throw new ApiException(400, "Probably you made a mistake in the card number. Please try again!");
+    }
+
+    if (!accountDao.contains(recipient)) {
+      throw new ApiException(404, "Such a card does not exist.");
+    }
+
+    TransferResult result = accountDao.transfer(number, recipient, amount, request.operationKey);
+
+    switch (result.status()) {
+      case NOT_ENOUGH_MONEY -> throw new ApiException(409, result.status().getMessage());
+      case NO_SUCH_RECIPIENT -> throw new ApiException(404, result.status().getMessage());
+      case FAILED -> throw new ApiException(500, result.status().getMessage());
+      default -> {
+      }
+    }
+    tokens.written(request.token);
+
+    Json balance = Json.object().put("balance", result.balance());
+    return result.status() == TransferStatus.PENDING ? new Response(202, balance) : Response.ok(balance);
+  }
+
+  private Response closeAccount(Request request) {
+    String number = cardNumber(request);
+
+    accountDao.getStored(number).ifPresent(accountDao::delete);
+    tokens.close(number);
+
+    return Response.ok(Json.object().put("closed", true));
+  }
+
+  private void latency(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      if (exchange.getRequestMethod().equals("DELETE")) {
+        latencies.values().forEach(LatencyHistogram::reset);
+        send(exchange, Response.ok(Json.object().put("reset", true)));
+        return;
+      }
+
+      Json endpoints = Json.object();
+
+      latencies.forEach((endpoint, histogram) -> endpoints.put(endpoint, Json
+          .object()
+          .put("count", histogram.getCount())
+          .put("mean", Math.round(histogram.getMean() / 1_000))
+          .put("p50", histogram.percentile(0.5) / 1_000)
+          .put("p90", histogram.percentile(0.9) / 1_000)
+          .put("p99", histogram.percentile(0.99) / 1_000)
+          .put("p999", histogram.percentile(0.999) / 1_000)
+          .put("max", histogram.getMax() / 1_000)));
+
+      send(exchange, Response.ok(Json.object().put("unit", "us").put("endpoints", endpoints)));
+    }
+  }
+
+  /**
+   * It serves the endpoint at the exact path and method, and records its latency.
+   */
+  private void route(String method, String path, Endpoint endpoint) {
+    LatencyHistogram histogram = new LatencyHistogram();
+    latencies.put(method + " " + path, histogram);
+
+    httpServer.createContext(path, exchange -> {
+      long start = System.nanoTime();
+
+      try (exchange) {
+        Response response;
+
+        try {
+          if (!exchange.getRequestURI().getPath().equals(path)) {
+            throw new ApiException(404, "No such endpoint.");
+          }
+
+          if (!exchange.getRequestMethod().equals(method)) {
+            throw new ApiException(405, "Use " + method + " " + path + ".");
+          }
+
+          response = endpoint.handle(Request.of(exchange));
+        } catch (ApiException e) {
+          response = new Response(e.status, Json.object().put("error", e.getMessage()));
+        } catch (IllegalArgumentException e) {
+          response = new Response(400, Json.object().put("error", "Wrong request!"));
+        }
+
+        send(exchange, response);
+      } finally {
+        histogram.record(System.nanoTime() - start);
+      }
+    });
+  }
+
+  private String cardNumber(Request request) {
+    String number = request.token == null ? null : tokens.cardNumber(request.token);
+
+    if (number == null) {
+      throw new ApiException(401, "Log into account first!");
+    }
+    return number;
+  }
+
+  private static int amount(Request request) {
+    int amount;
+
+    try {
+      amount = Integer.parseInt(request.required("amount"));
+    } catch (NumberFormatException e) {
+      throw new ApiException(400, "You should enter the amount of money!");
+    }
+
+    if (amount <= 0) {
+      throw new ApiException(400, "Money can't be a zero or a negative number!");
+    }
+    return amount;
+  }
+
+  private static void send(HttpExchange exchange, Response response) throws IOException {
+    byte[] body = response.body.toString().getBytes(StandardCharsets.UTF_8);
+
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(response.status, body.length);
+
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  private interface Endpoint {
+
+    Response handle(Request request);
+
+  }
+
+  private record Response(int status, Json body) {
+
+    static Response ok(Json body) {
+      return new Response(200, body);
+    }
+
+    static Response created(Json body) {
+      return new Response(201, body);
+    }
+
+  }
+
+  private record Request(Map<String, String> parameters, String token, String operationKey, String client) {
+
+    static Request of(HttpExchange exchange) throws IOException {
+      Map<String, String> parameters = new HashMap<>();
+      parseForm(exchange.getRequestURI().getRawQuery(), parameters);
+
+      String body;
+
+      try (InputStream in = exchange.getRequestBody()) {
+        body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+      }
+
+      String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+
+      if (contentType != null && contentType.startsWith("application/json")) {
+        parameters.putAll(Json.parse(body));
+      } else {
+        parseForm(body, parameters);
+      }
+
+      String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+      String token = authorization != null && authorization.startsWith("Bearer ")
+                     ? authorization.substring("Bearer ".length()).trim()
+                     : null;
+
+      String operationKey = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+
+      if (operationKey != null && (operationKey.isBlank() || operationKey.length() > MAX_OPERATION_KEY_LENGTH)) {
+        throw new ApiException(400, "The Idempotency-Key should have 1 to " + MAX_OPERATION_KEY_LENGTH
+                                    + " characters!");
+      }
+
+      return new Request(parameters, token, operationKey,
+                         exchange.getRemoteAddress().getAddress().getHostAddress());
+    }
+
+    String required(String name) {
+      String value = parameters.get(name);
+
+      if (value == null || value.isBlank()) {
+        throw new ApiException(400, "The " + name + " is missing!");
+      }
+      return value;
+    }
+
+    private static void parseForm(String form, Map<String, String> parameters) {
+      if (form == null || form.isEmpty()) {
+        return;
+      }
+
+      for (String pair : form.split("&")) {
+        int separator = pair.indexOf('=');
+
+        if (separator > 0) {
+          parameters.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                         URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+        }
+      }
+    }
+
+  }
+
+  private static final class ApiException extends RuntimeException {
+
+    private final int status;
+
+    private ApiException(int status, String message) {
+      super(message);
+      this.status = status;
+    }
+
+  }
+
+}
@@ -0,0 +1,207 @@
+package server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class writes and reads the flat JSON objects of the HTTP API by hand, without reflection. <br/>
+ * Objects are written field by field into one builder; reading supports a single object of strings, numbers, booleans
+ * and nulls, which is all a request carries.
+ */
+final class Json {
+
+  private final StringBuilder json = new StringBuilder("{");
+
+  static Json object() {
+    return new Json();
+  }
+
+  Json put(String name, String value) {
+    name(name);
+    string(value);
+    return this;
+  }
+
+  Json put(String name, long value) {
+    name(name).append(value);
+    return this;
+  }
+
+  Json put(String name, boolean value) {
+    name(name).append(value);
+    return this;
+  }
+
+  Json put(String name, Json value) {
+    name(name).append(value);
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return json + "}";
+  }
+
+  private StringBuilder name(String name) {
+    if (json.length() > 1) {
+      json.append(',');
+    }
+    string(name);
+    return json.append(':');
+  }
+
+  private void string(String value) {
+    json.append('"');
+
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+
+      switch (c) {
+        case '"' -> json.append("\\\"");
+        case '\\' -> json.append("\\\\");
+        case '\n' -> json.append("\\n");
+        case '\r' -> json.append("\\r");
+        case '\t' -> json.append("\\t");
+        default -> {
+          if (c < 0x20) {
+            json.append(String.format("\\u%04x", (int) c));
+          } else {
+            json.append(c);
+          }
+        }
+      }
+    }
+    json.append('"');
+  }
+
+  /**
+   * It reads a flat JSON object, every value is returned as its text.
+   *
+   * @throws IllegalArgumentException
+   *     If the text is not a flat JSON object.
+   */
+  static Map<String, String> parse(String text) {
+    return new Parser(text).object();
+  }
+
+  private static final class Parser {
+
+    private final String text;
+    private       int    position;
+
+    private Parser(String text) {
+      this.text = text;
+    }
+
+    private Map<String, String> object() {
+      Map<String, String> fields = new LinkedHashMap<>();
+      expect('{');
+
+      if (peek() == '}') {
+        position++;
+      } else {
+        do {
+          String name = string();
+          expect(':');
+          fields.put(name, value());
+        } while (next(',', '}') == ',');
+      }
+
+      if (peek() != 0) {
+        throw error();
+      }
+      return fields;
+    }
+
+    private String value() {
+      char c = peek();
+
+      if (c == '"') {
+        return string();
+      }
+
+      int start = position;
+
+      while (position < text.length() && "{}[]:,\"".indexOf(text.charAt(position)) < 0
+             && !Character.isWhitespace(text.charAt(position))) {
+        position++;
+      }
+
+      String value = text.substring(start, position);
+
+      if (value.isEmpty()) {
+        throw error();
+      }
+      return value.equals("null") ? null : value;
+    }
+
+    private String string() {
+      expect('"');
+      StringBuilder value = new StringBuilder();
+
+      while (position < text.length()) {
+        char c = text.charAt(position++);
+
+        if (c == '"') {
+          return value.toString();
+        }
+
+        if (c == '\\' && position < text.length()) {
+          char escaped = text.charAt(position++);
+
+          switch (escaped) {
+            case 'n' -> value.append('\n');
+            case 'r' -> value.append('\r');
+            case 't' -> value.append('\t');
+            case 'b' -> value.append('\b');
+            case 'f' -> value.append('\f');
+            case 'u' -> {
+              if (position + 4 > text.length()) {
+                throw error();
+              }
+              value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+              position += 4;
+            }
+            default -> value.append(escaped);
+          }
+        } else {
+          value.append(c);
+        }
+      }
+      throw error();
+    }
+
+    private void expect(char expected) {
+      if (peek() != expected) {
+        throw error();
+      }
+      position++;
+    }
+
+    private char next(char first, char second) {
+      char c = peek();
+
+      if (c != first && c != second) {
+        throw error();
+      }
+      position++;
+      return c;
+    }
+
+    /**
+     * It skips the whitespace and returns the next character, or 0 at the end of the text.
+     */
+    private char peek() {
+      while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+        position++;
+      }
+      return position < text.length() ? text.charAt(position) : 0;
+    }
+
+    private IllegalArgumentException error() {
+      return new IllegalArgumentException("Wrong JSON at position " + position + ": " + text);
+    }
+
+  }
+
+}
@@ -0,0 +1,177 @@
+package server;
+
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * This class keeps the tokens of the logged-in HTTP sessions. <br/>
+ * A token maps to the card number only, the PIN is checked at login and never kept. The tokens are held in a bounded
+ * map in access order, evicting the least recently used, and a token not used for the time to live expires; since the
+ * least recently used tokens come first, the expired ones are dropped from the head whenever a token is issued. The
+ * tokens of every card are indexed too, so closing an account ends its sessions without scanning all of them. The
+ * methods are synchronized, each one does constant work apart from dropping expired tokens.
+ */
+final class SessionTokens {
+
+  /**
+   * How long a token is kept without being used unless configured otherwise, half an hour.
+   */
+  static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(30);
+  /**
+   * How many tokens are kept unless configured otherwise.
+   */
+  static final int  DEFAULT_CAPACITY   = 100_000;
+
+  private static final int TOKEN_LENGTH = 16;
+
+  private final long                           ttlMillis;
+  private final LongSupplier                   clock;
+  private final LinkedHashMap<String, Session> sessions;
+  private final Map<String, Set<String>>       tokensByCard = new HashMap<>();
+  private final SecureRandom                   random       = new SecureRandom();
+
+  /**
+   * @param ttlMillis
+   *     How long a token is kept after its last use.
+   * @param capacity
+   *     The number of tokens kept, the least recently used one is dropped beyond it.
+   */
+  SessionTokens(final long ttlMillis, final int capacity, final LongSupplier clock) {
+    this.ttlMillis = ttlMillis;
+    this.clock = clock;
+    this.sessions = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Session> eldest) {
+        if (size() <= capacity) {
+          return false;
+        }
+        unindex(eldest.getKey(), eldest.getValue());
+        return true;
+      }
+    };
+  }
+
+  /**
+   * It issues a new token for the card.
+   */
+  synchronized String open(String cardNumber) {
+    long now = clock.getAsLong();
+    dropExpired(now);
+
+    byte[] bytes = new byte[TOKEN_LENGTH];
+    random.nextBytes(bytes);
+    String token = HexFormat.of().formatHex(bytes);
+
+    tokensByCard.computeIfAbsent(cardNumber, card -> new HashSet<>()).add(token);
+    sessions.put(token, new Session(cardNumber, now));
+    return token;
+  }
+
+  /**
+   * It returns the card number of the token and counts the call as a use of it.
+   *
+   * @return null if the token is unknown or expired.
+   */
+  synchronized String cardNumber(String token) {
+    Session session = use(token);
+    return session == null ? null : session.cardNumber;
+  }
+
+  /**
+   * It checks if the session of the token wrote to its account.
+   */
+  synchronized boolean isWritten(String token) {
+    Session session = sessions.get(token);
+    return session != null && session.written;
+  }
+
+  /**
+   * It marks the session of the token as having written to its account.
+   */
+  synchronized void written(String token) {
+    Session session = sessions.get(token);
+
+    if (session != null) {
+      session.written = true;
+    }
+  }
+
+  /**
+   * It ends all sessions of the card.
+   */
+  synchronized void close(String cardNumber) {
+    Set<String> tokens = tokensByCard.remove(cardNumber);
+
+    if (tokens != null) {
+      tokens.forEach(sessions::remove);
+    }
+  }
+
+  synchronized int size() {
+    return sessions.size();
+  }
+
+  private Session use(String token) {
+    Session session = sessions.get(token);
+
+    if (session == null) {
+      return null;
+    }
+
+    long now = clock.getAsLong();
+
+    if (now - session.lastUsed >= ttlMillis) {
+      sessions.remove(token);
+      unindex(token, session);
+      return null;
+    }
+
+    session.lastUsed = now;
+    return session;
+  }
+
+  private void dropExpired(long now) {
+    Iterator<Map.Entry<String, Session>> iterator = sessions.entrySet().iterator();
+
+    while (iterator.hasNext()) {
+      Map.Entry<String, Session> eldest = iterator.next();
+
+      if (now - eldest.getValue().lastUsed < ttlMillis) {
+        return;
+      }
+
+      iterator.remove();
+      unindex(eldest.getKey(), eldest.getValue());
+    }
+  }
+
+  private void unindex(String token, Session session) {
+    Set<String> tokens = tokensByCard.get(session.cardNumber);
+
+    if (tokens != null && tokens.remove(token) && tokens.isEmpty()) {
+      tokensByCard.remove(session.cardNumber);
+    }
+  }
+
+  private static final class Session {
+
+    private final String  cardNumber;
+    private       long    lastUsed;
+    private       boolean written;
+
+    private Session(String cardNumber, long lastUsed) {
+      this.cardNumber = cardNumber;
+      this.lastUsed = lastUsed;
+    }
+
+  }
+
+}
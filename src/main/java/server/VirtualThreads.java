@@ -0,0 +1,39 @@
+package server;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class creates the executors that run one task per thread, e.g. a network session or a request. <br/>
+ * The application is built for Java 17, so the virtual-thread executor of Java 21+ is looked up at runtime; on older
+ * runtimes the tasks run on daemon platform threads with a small stack, so thousands of them still fit in memory.
+ */
+public final class VirtualThreads {
+
+  private static final long STACK_SIZE = 256 * 1024;
+
+  private VirtualThreads() {
+  }
+
+  /**
+   * It returns an executor that starts a new thread for every task.
+   *
+   * @param name
+   *     The prefix of the platform thread names.
+   */
+  public static ExecutorService newThreadPerTaskExecutor(String name) {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      AtomicLong threads = new AtomicLong();
+
+      return Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(null, task, name + "-" + threads.incrementAndGet(), STACK_SIZE);
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+}
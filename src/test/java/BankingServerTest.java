@@ -0,0 +1,119 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import configuration.ConnectionProvider;
+import configuration.DBConfiguration;
+import dao.AccountDao;
+import dao.SqliteAccountDao;
+import dao.SqliteLockoutDao;
+import generator.CardGenerator;
+import security.LoginThrottle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BankingServerTest {
+
+  private static final int SESSIONS = 50;
+
+  @TempDir
+  Path directory;
+
+  private AccountDao    accountDao;
+  private BankingServer bankingServer;
+  private int           port;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    final ConnectionProvider connectionProvider = new DBConfiguration(directory.resolve("test.s3db").toString()).getConnectionProvider();
+    accountDao = new SqliteAccountDao(connectionProvider);
+    bankingServer = new BankingServer(accountDao, CardGenerator.concurrent(),
+                                      new LoginThrottle(new SqliteLockoutDao(connectionProvider)));
+    port = bankingServer.start(0);
+  }
+
+  @AfterEach
+  void tearDown() {
+    bankingServer.close();
+    accountDao.close();
+  }
+
+  @Test
+  void testConcurrentSessions() {
+    final List<CompletableFuture<String>> balances = new ArrayList<>();
+
+    for (int i = 0; i < SESSIONS; i++) {
+      final int income = i + 1;
+      balances.add(CompletableFuture.supplyAsync(() -> session(income)));
+    }
+
+    for (int i = 0; i < SESSIONS; i++) {
+      assertEquals("Balance: " + (i + 1), balances.get(i).join());
+    }
+  }
+
+  @Test
+  void testDisconnectEndsSession() throws IOException, InterruptedException {
+    try (Socket socket = new Socket("localhost", port)) {
+      readMenu(new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8)));
+      assertEquals(1, bankingServer.getActiveSessions());
+    }
+
+    for (int i = 0; i < 100 && bankingServer.getActiveSessions() > 0; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, bankingServer.getActiveSessions());
+  }
+
+  /**
+   * It registers an account, logs into it, adds the income and returns the balance line.
+   */
+  private String session(int income) {
+    try (Socket socket = new Socket("localhost", port);
+         BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+         PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8)) {
+      readMenu(in);
+      out.println("1");
+      List<String> created = readMenu(in);
+      String cardNumber = created.get(created.indexOf("Your card number:") + 1);
+      String pin = created.get(created.indexOf("Your card PIN:") + 1);
+
+      out.println("2\n" + cardNumber + "\n" + pin);
+      assertTrue(readMenu(in).contains("You have successfully logged in!"));
+      out.println("2\n" + income);
+      readMenu(in);
+      out.println("1");
+      String balance = readMenu(in).stream().filter(line -> line.startsWith("Balance")).findFirst().orElseThrow();
+
+      out.println("0");
+      assertEquals(List.of("", "Bye!"), List.of(in.readLine(), in.readLine()));
+      return balance;
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static List<String> readMenu(BufferedReader in) throws IOException {
+    List<String> lines = new ArrayList<>();
+    String line;
+
+    while ((line = in.readLine()) != null && !line.equals("0. Exit")) {
+      lines.add(line);
+    }
+    return lines;
+  }
+
+}
@@ -2,28 +2,41 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.OptionalInt;
 import java.util.Scanner;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import com.ginsberg.junit.exit.ExpectSystemExit;
-import configuration.DBConfiguration;
 import dao.AccountDao;
+import dao.LockoutDao;
+import generator.CardGenerator;
 import lombok.SneakyThrows;
 import model.Account;
 import model.Card;
+import model.ReadConsistency;
+import model.Transaction;
+import model.TransactionType;
+import model.TransferResult;
+import model.TransferStatus;
+import security.LoginThrottle;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -34,34 +47,33 @@ class BankingSystemTest {
   private static final String PIN         = "1234";
 
   @Mock
-  private AccountDao      accountDao;
+  private AccountDao    accountDao;
   @Mock
-  private CardGenerator   cardGenerator;
+  private CardGenerator cardGenerator;
   @Mock
-  private Account         currentAccount;
+  private Account       currentAccount;
   @Mock
-  private DBConfiguration dbConfiguration;
-  @InjectMocks
-  private BankingSystem   bankingSystem;
+  private Runnable      onExit;
+  @Mock
+  private LockoutDao    lockoutDao;
+
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
 
   @Test
   @ExpectSystemExit
   void testShowMenu() {
     final Scanner scanner = new Scanner(new ByteArrayInputStream("0\n".getBytes()));
-    BankingSystem bankingSystem = new BankingSystem(accountDao, cardGenerator, scanner);
-    when(accountDao.getDbConfiguration()).thenReturn(dbConfiguration);
-    doNothing().when(dbConfiguration).closeConnection();
+    BankingSystem bankingSystem = BankingSystem.console(accountDao, cardGenerator, new LoginThrottle(lockoutDao), scanner);
+    doNothing().when(accountDao).close();
 
     bankingSystem.showMenu();
 
-    verify(accountDao).getDbConfiguration();
-    verify(dbConfiguration).closeConnection();
+    verify(accountDao).close();
   }
 
   @Test
   void testWelcomeMenu() {
-    final ByteArrayOutputStream out = new ByteArrayOutputStream();
-    System.setOut(new PrintStream(out));
+    final BankingSystem bankingSystem = bankingSystem("");
 
     bankingSystem.welcomeMenu();
 
@@ -74,11 +86,10 @@ class BankingSystemTest {
 
   @Test
   void testRegisterAccount() {
-    final ByteArrayOutputStream out = new ByteArrayOutputStream();
-    System.setOut(new PrintStream(out));
+    final BankingSystem bankingSystem = bankingSystem("");
 
     when(cardGenerator.generateCredentials()).thenReturn(new Card(CARD_NUMBER, PIN));
-    doNothing().when(accountDao).save(any());
+    when(accountDao.save(any())).thenReturn(true);
 
     bankingSystem.registerAccount();
 
@@ -93,12 +104,36 @@ class BankingSystemTest {
   }
 
   @Test
-  void testLogIntoAccount() {
-    final Scanner scanner = new Scanner(new ByteArrayInputStream(String.format("%s %s ", CARD_NUMBER, PIN).getBytes()));
-    BankingSystem bankingSystem = new BankingSystem(accountDao, cardGenerator, scanner);
+  void testRefusedCardIsReplaced() {
+    final BankingSystem bankingSystem = bankingSystem("");
+    final Card taken = new Card("4000002454329010", PIN);
+    final Card card = new Card(CARD_NUMBER, PIN);
 
-    final ByteArrayOutputStream out = new ByteArrayOutputStream();
-    System.setOut(new PrintStream(out));
+    when(cardGenerator.generateCredentials()).thenReturn(taken, card);
+    when(accountDao.save(any())).thenReturn(false, true);
+
+    bankingSystem.registerAccount();
+
+    assertThat(out.toString()).contains("Your card has been created").contains(CARD_NUMBER)
+                              .doesNotContain(taken.number());
+  }
+
+  @Test
+  void testCardIsNotAnnouncedIfNeverCreated() {
+    final BankingSystem bankingSystem = bankingSystem("");
+
+    when(cardGenerator.generateCredentials()).thenReturn(new Card(CARD_NUMBER, PIN));
+    when(accountDao.save(any())).thenReturn(false);
+
+    bankingSystem.registerAccount();
+
+    verify(accountDao, times(3)).save(any());
+    assertEquals("The card cannot be created! Try again later.\n\n", out.toString());
+  }
+
+  @Test
+  void testLogIntoAccount() {
+    final BankingSystem bankingSystem = bankingSystem(String.format("%s %s ", CARD_NUMBER, PIN));
 
     when(accountDao.get(CARD_NUMBER, PIN)).thenReturn(Optional.empty());
 
@@ -114,18 +149,33 @@ class BankingSystemTest {
                  """, out.toString());
   }
 
+  @Test
+  void testLockedCardIsNotRead() {
+    final int tries = LoginThrottle.DEFAULT_MAX_CARD_FAILURES + 1;
+    final BankingSystem bankingSystem = bankingSystem(String.format("%s 0000 ", CARD_NUMBER).repeat(tries));
+
+    when(accountDao.get(CARD_NUMBER, "0000")).thenReturn(Optional.empty());
+
+    for (int i = 0; i < tries; i++) {
+      bankingSystem.logIntoAccount();
+    }
+
+    verify(accountDao, times(LoginThrottle.DEFAULT_MAX_CARD_FAILURES)).get(CARD_NUMBER, "0000");
+    verify(lockoutDao).save(eq(CARD_NUMBER), anyLong());
+    assertThat(out.toString()).endsWith("Too many failed attempts! Try again later.\n\n");
+  }
+
   @Test
   @SneakyThrows
   void testAddIncome() {
     final Card card = new Card(CARD_NUMBER, PIN);
-    final Scanner scanner = new Scanner(new ByteArrayInputStream(String.format("%s ", "111").getBytes()));
-    final BankingSystem bankingSystem = new BankingSystem(accountDao, cardGenerator, scanner);
+    final BankingSystem bankingSystem = bankingSystem(String.format("%s ", "111"));
     final Field field = bankingSystem.getClass().getDeclaredField("currentAccount");
     field.setAccessible(true);
     field.set(bankingSystem, currentAccount);
 
     when(currentAccount.getCard()).thenReturn(card);
-    doNothing().when(accountDao).update(CARD_NUMBER, 111);
+    when(accountDao.update(CARD_NUMBER, 111)).thenReturn(OptionalInt.of(111));
 
     bankingSystem.addIncome();
 
@@ -135,36 +185,51 @@ class BankingSystemTest {
   @Test
   @SneakyThrows
   void testDoTransfer() {
-    final Scanner scanner = new Scanner(new ByteArrayInputStream(String
-        .format("%s %s", CARD_NUMBER, "111")
-        .getBytes()));
+    final BankingSystem bankingSystem = bankingSystem(String.format("%s %s", CARD_NUMBER, "111"));
+    final Card card = new Card("4000002454329010", PIN);
 
-    final ByteArrayOutputStream out = new ByteArrayOutputStream();
-    System.setOut(new PrintStream(out));
+    final Field field = bankingSystem.getClass().getDeclaredField("currentAccount");
+    field.setAccessible(true);
+    field.set(bankingSystem, currentAccount);
+
+    when(cardGenerator.isValid(CARD_NUMBER)).thenReturn(true);
+    when(accountDao.contains(CARD_NUMBER)).thenReturn(true);
+    when(currentAccount.getCard()).thenReturn(card);
+    when(accountDao.transfer(card.number(), CARD_NUMBER, 111)).thenReturn(TransferResult.success(9888));
 
-    final BankingSystem bankingSystem = new BankingSystem(accountDao, cardGenerator, scanner);
+    bankingSystem.doTransfer();
+
+    assertThat(out.toString()).contains("Success!");
+    verify(currentAccount).setBalance(9888);
+  }
+
+  @Test
+  @SneakyThrows
+  void testFailedTransferPrintsItsReason() {
+    final BankingSystem bankingSystem = bankingSystem(String.format("%s %s", CARD_NUMBER, "111"));
     final Card card = new Card("4000002454329010", PIN);
 
     final Field field = bankingSystem.getClass().getDeclaredField("currentAccount");
     field.setAccessible(true);
     field.set(bankingSystem, currentAccount);
 
-    when(currentAccount.getBalance()).thenReturn(9999);
-    when(cardGenerator.luhnAlgorithm(400000, 493832089)).thenReturn(6);
+    when(cardGenerator.isValid(CARD_NUMBER)).thenReturn(true);
     when(accountDao.contains(CARD_NUMBER)).thenReturn(true);
     when(currentAccount.getCard()).thenReturn(card);
+    when(accountDao.transfer(card.number(), CARD_NUMBER, 111))
+        .thenReturn(TransferResult.refused(TransferStatus.FAILED));
 
     bankingSystem.doTransfer();
 
-    assertThat(out.toString()).contains("Success!");
+    assertThat(out.toString()).contains("Cannot transfer money!").doesNotContain("Not enough money!");
+    verify(currentAccount, never()).setBalance(anyInt());
   }
 
   @Test
   void testCloseAccount() {
-    final ByteArrayOutputStream out = new ByteArrayOutputStream();
-    System.setOut(new PrintStream(out));
+    final BankingSystem bankingSystem = bankingSystem("");
 
-    doNothing().when(accountDao).delete(any());
+    when(accountDao.delete(any())).thenReturn(true);
 
     bankingSystem.closeAccount();
 
@@ -176,8 +241,7 @@ class BankingSystemTest {
 
   @Test
   void testLogOut() {
-    final ByteArrayOutputStream out = new ByteArrayOutputStream();
-    System.setOut(new PrintStream(out));
+    final BankingSystem bankingSystem = bankingSystem("");
 
     bankingSystem.logOut();
 
@@ -188,37 +252,103 @@ class BankingSystemTest {
   }
 
   @Test
+  @SneakyThrows
   void testUpdateAccount() {
-    final Card card = new Card(CARD_NUMBER, PIN);
+    final BankingSystem bankingSystem = bankingSystem("");
+    final Field field = bankingSystem.getClass().getDeclaredField("currentAccount");
+    field.setAccessible(true);
+    field.set(bankingSystem, currentAccount);
 
-    doNothing().when(accountDao).update(CARD_NUMBER, 9999);
-    when(currentAccount.getCard()).thenReturn(card);
-    when(currentAccount.getBalance()).thenReturn(123);
-    when(accountDao.get(CARD_NUMBER, currentAccount.getCard().pin())).thenReturn(Optional.of(currentAccount));
+    when(accountDao.update(CARD_NUMBER, 9999)).thenReturn(OptionalInt.of(123 + 9999 + 1000));
     doNothing().when(currentAccount).setBalance(anyInt());
 
     bankingSystem.updateAccount(CARD_NUMBER, 9999);
 
     verify(accountDao).update(CARD_NUMBER, 9999);
-    verify(currentAccount).setBalance(123 + 9999);
+    verify(currentAccount).setBalance(123 + 9999 + 1000);
+  }
+
+  @Test
+  @SneakyThrows
+  void testGetBalance() {
+    final BankingSystem bankingSystem = bankingSystem("");
+    final Field field = bankingSystem.getClass().getDeclaredField("currentAccount");
+    field.setAccessible(true);
+    final Card card = new Card(CARD_NUMBER, PIN);
+    field.set(bankingSystem, new Account(card, 100));
+
+    when(accountDao.getBalance(CARD_NUMBER, ReadConsistency.SNAPSHOT)).thenReturn(OptionalInt.of(250));
+
+    bankingSystem.getBalance();
+
+    assertEquals("Balance: 250\n", out.toString());
+  }
+
+  @Test
+  @SneakyThrows
+  void testGetBalanceAfterDepositIsConsistent() {
+    final BankingSystem bankingSystem = bankingSystem("");
+    final Field field = bankingSystem.getClass().getDeclaredField("currentAccount");
+    field.setAccessible(true);
+    field.set(bankingSystem, new Account(new Card(CARD_NUMBER, PIN), 100));
+
+    when(accountDao.update(CARD_NUMBER, 50)).thenReturn(OptionalInt.of(150));
+    when(accountDao.getBalance(CARD_NUMBER, ReadConsistency.CONSISTENT)).thenReturn(OptionalInt.of(150));
+
+    bankingSystem.updateAccount(CARD_NUMBER, 50);
+    bankingSystem.getBalance();
+
+    assertEquals("Balance: 150\n", out.toString());
+  }
+
+  @Test
+  @SneakyThrows
+  void testShowStatement() {
+    final BankingSystem bankingSystem = bankingSystem("1\n");
+    final Field field = bankingSystem.getClass().getDeclaredField("currentAccount");
+    field.setAccessible(true);
+    field.set(bankingSystem, new Account(new Card(CARD_NUMBER, PIN), 100));
+
+    final List<Transaction> firstPage = new ArrayList<>();
+    for (int i = 10; i > 0; i--) {
+      firstPage.add(new Transaction(i, CARD_NUMBER, i, TransactionType.DEPOSIT, 10, ""));
+    }
+    final Transaction transfer = new Transaction(0, CARD_NUMBER, 0, TransactionType.TRANSFER_OUT, -5, "4000002454329010");
+
+    when(accountDao.getStatement(CARD_NUMBER, null, 10)).thenReturn(firstPage);
+    when(accountDao.getStatement(CARD_NUMBER, firstPage.get(9), 10)).thenReturn(List.of(transfer));
+
+    bankingSystem.showStatement();
+
+    final String[] lines = out.toString().split("\n");
+    assertEquals(14, lines.length);
+    assertThat(lines[0]).matches("\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2} DEPOSIT      \\+10");
+    assertEquals("1. Older transactions", lines[11]);
+    assertThat(lines[13]).endsWith("TRANSFER_OUT -5 4000002454329010");
   }
 
   @Test
   void testCardNumberValidation() {
-    when(cardGenerator.luhnAlgorithm(400000, 493832089)).thenReturn(6);
+    final BankingSystem bankingSystem = bankingSystem("");
+    when(cardGenerator.isValid(CARD_NUMBER)).thenReturn(true);
 
     final boolean result = bankingSystem.cardNumberValidation(CARD_NUMBER);
 
     assertTrue(result);
 
-    verify(cardGenerator).luhnAlgorithm(400000, 493832089);
+    verify(cardGenerator).isValid(CARD_NUMBER);
   }
 
   @Test
+  @SneakyThrows
   void testRecipientCredentialsValidation() {
+    final BankingSystem bankingSystem = bankingSystem("");
+    final Field field = bankingSystem.getClass().getDeclaredField("currentAccount");
+    field.setAccessible(true);
+    field.set(bankingSystem, currentAccount);
     final Card card = new Card("1111111111111111", "1111");
 
-    when(cardGenerator.luhnAlgorithm(400000, 493832089)).thenReturn(6);
+    when(cardGenerator.isValid(CARD_NUMBER)).thenReturn(true);
     when(currentAccount.getCard()).thenReturn(card);
     when(accountDao.contains(CARD_NUMBER)).thenReturn(true);
 
@@ -231,17 +361,31 @@ class BankingSystemTest {
   @ExpectSystemExit
   void testStopApplication() {
     final Scanner scanner = new Scanner(new ByteArrayInputStream("".getBytes()));
-    BankingSystem bankingSystem = new BankingSystem(accountDao, cardGenerator, scanner);
+    BankingSystem bankingSystem = BankingSystem.console(accountDao, cardGenerator, new LoginThrottle(lockoutDao), scanner);
 
-    final ByteArrayOutputStream out = new ByteArrayOutputStream();
     System.setOut(new PrintStream(out));
 
-    when(accountDao.getDbConfiguration()).thenReturn(dbConfiguration);
-    doNothing().when(dbConfiguration).closeConnection();
+    doNothing().when(accountDao).close();
 
     bankingSystem.stopApplication();
 
     assertEquals("Bye!", out.toString());
   }
 
+  @Test
+  void testStopSession() {
+    final BankingSystem bankingSystem = bankingSystem("0\n");
+
+    bankingSystem.showMenu();
+
+    verify(onExit).run();
+    verify(accountDao, never()).close();
+    assertThat(out.toString()).endsWith("Bye!\n");
+  }
+
+  private BankingSystem bankingSystem(String input) {
+    return new BankingSystem(accountDao, cardGenerator, new LoginThrottle(lockoutDao), "test", new Scanner(input),
+                             new PrintStream(out), onExit);
+  }
+
 }
@@ -0,0 +1,169 @@
+package dao;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import configuration.DBConfiguration;
+import journal.TransactionJournal;
+import model.Account;
+import model.Card;
+import security.PinHasher;
+import security.PinVerifier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AccountArchiveTest {
+
+  private static final String PIN      = "1234";
+  private static final int    ACCOUNTS = 1_000;
+
+  @TempDir
+  Path directory;
+
+  private final List<SqliteAccountDao> opened = new ArrayList<>();
+
+  private PinVerifier pinVerifier;
+  private Path        archive;
+
+  @BeforeEach
+  void setUp() {
+    pinVerifier = new PinVerifier(new PinHasher(1), 100, 1);
+    archive = directory.resolve("accounts.bin");
+  }
+
+  @AfterEach
+  void tearDown() {
+    opened.forEach(SqliteAccountDao::close);
+  }
+
+  @Test
+  void testExportAndRestore() throws IOException {
+    SqliteAccountDao source = database("source.s3db");
+    save(source);
+    SqliteAccountDao target = database("target.s3db");
+
+    assertThat(new AccountArchive(List.of(source), 100).export(archive)).isEqualTo(ACCOUNTS);
+    assertThat(new AccountArchive(List.of(target), 100).restore(archive)).isEqualTo(ACCOUNTS);
+
+    assertThat(target.count()).isEqualTo(ACCOUNTS);
+    assertThat(target.get(cardNumber(0), PIN).orElseThrow().getBalance()).isEqualTo(-500);
+    assertThat(target.get(cardNumber(ACCOUNTS - 1), PIN).orElseThrow().getBalance()).isEqualTo(ACCOUNTS * 999);
+    assertThat(target.get(cardNumber(1), "4321")).isEmpty();
+
+    target.save(new Account(new Card(cardNumber(1), PIN), 0));
+    assertThat(target.count()).isEqualTo(ACCOUNTS);
+  }
+
+  @Test
+  void testRestoreIntoShards() throws IOException {
+    SqliteAccountDao source = database("source.s3db");
+    save(source);
+    List<SqliteAccountDao> shards = List.of(database("a.s3db"), database("b.s3db"));
+
+    new AccountArchive(List.of(source), 100).export(archive);
+    new AccountArchive(shards, 100).restore(archive);
+
+    ShardedAccountDao sharded = new ShardedAccountDao(shards);
+    assertThat(sharded.count()).isEqualTo(ACCOUNTS);
+    assertThat(shards.get(0).count()).isPositive();
+    assertThat(shards.get(1).count()).isPositive();
+    assertThat(sharded.get(cardNumber(7), PIN).orElseThrow().getBalance()).isEqualTo(ACCOUNTS * 7);
+  }
+
+  @Test
+  void testRestoreRefusesDatabaseWithAccounts() throws IOException {
+    SqliteAccountDao source = database("source.s3db");
+    save(source);
+    new AccountArchive(List.of(source), 100).export(archive);
+
+    assertThatThrownBy(() -> new AccountArchive(List.of(source), 100).restore(archive))
+        .isInstanceOf(IOException.class);
+    assertThat(source.count()).isEqualTo(ACCOUNTS);
+  }
+
+  @Test
+  void testTruncatedArchiveIsRolledBack() throws IOException {
+    SqliteAccountDao source = database("source.s3db");
+    save(source);
+    SqliteAccountDao target = database("target.s3db");
+    new AccountArchive(List.of(source), 100).export(archive);
+
+    try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.WRITE)) {
+      channel.truncate(Files.size(archive) / 2);
+    }
+
+    assertThatThrownBy(() -> new AccountArchive(List.of(target), 100).restore(archive))
+        .isInstanceOf(IOException.class);
+    assertThat(target.count()).isZero();
+
+    target.save(new Account(new Card(cardNumber(0), PIN), 0));
+    assertThat(target.contains(cardNumber(0))).isTrue();
+  }
+
+  @Test
+  void testJournalIsNotReplayedTwiceOverRestoredAccounts() throws IOException {
+    Path journalDirectory = directory.resolve("journal");
+
+    try (SqliteAccountDao journaled = journaled("source.s3db", journalDirectory)) {
+      journaled.save(new Account(new Card(cardNumber(0), PIN), 0));
+      journaled.update(cardNumber(0), 100);
+    }
+
+    new AccountArchive(List.of(database("source.s3db")), 100).export(archive);
+
+    try (SqliteAccountDao journaled = journaled("source.s3db", journalDirectory)) {
+      journaled.recover();
+      journaled.update(cardNumber(0), 50);
+    }
+
+    new AccountArchive(List.of(database("target.s3db")), 100).restore(archive);
+
+    try (SqliteAccountDao journaled = journaled("target.s3db", journalDirectory)) {
+      assertThat(journaled.recover()).isEqualTo(1);
+      assertThat(journaled.get(cardNumber(0), PIN).orElseThrow().getBalance()).isEqualTo(150);
+    }
+  }
+
+  private SqliteAccountDao journaled(String fileName, Path journalDirectory) throws IOException {
+    return new SqliteAccountDao(new DBConfiguration(directory.resolve(fileName).toString()).getConnectionProvider(),
+                                new TransactionJournal(journalDirectory, 1_024 * 1_024),
+                                new PinVerifier(new PinHasher(1), 100, 1));
+  }
+
+  private SqliteAccountDao database(String fileName) {
+    SqliteAccountDao database = new SqliteAccountDao(
+        new DBConfiguration(directory.resolve(fileName).toString()).getConnectionProvider(), null, pinVerifier);
+    opened.add(database);
+    return database;
+  }
+
+  private static void save(SqliteAccountDao database) {
+    List<Account> accounts = new ArrayList<>(ACCOUNTS);
+
+    for (int i = 0; i < ACCOUNTS; i++) {
+      accounts.add(new Account(new Card(cardNumber(i), PIN), 0));
+    }
+    database.saveAll(accounts);
+    database.update(cardNumber(0), -500);
+
+    for (int i = 1; i < ACCOUNTS; i++) {
+      database.update(cardNumber(i), ACCOUNTS * i);
+    }
+  }
+
+  private static String cardNumber(int index) {
+    return "400000" + (100_000_000L + index) + "0";
+  }
+
+}
@@ -0,0 +1,132 @@
+package dao;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BalanceLedgerTest {
+
+  @Test
+  void testKey() {
+    assertEquals(4000004938320896L, BalanceLedger.key("4000004938320896"));
+    assertEquals(BalanceLedger.MISSING, BalanceLedger.key("0400004938320896"));
+    assertEquals(BalanceLedger.MISSING, BalanceLedger.key("40000049383208a6"));
+    assertEquals(BalanceLedger.MISSING, BalanceLedger.key(""));
+  }
+
+  @Test
+  void testGrowsAndRemovesWithoutLosingAccounts() {
+    final BalanceLedger ledger = new BalanceLedger(0);
+
+    for (long key = 1; key <= 10_000; key++) {
+      assertTrue(ledger.put(key, "1234", key));
+    }
+
+    for (long key = 1; key <= 10_000; key += 2) {
+      assertTrue(ledger.remove(key));
+    }
+
+    assertEquals(5_000, ledger.size());
+
+    for (long key = 1; key <= 10_000; key++) {
+      assertEquals(key % 2 == 0, ledger.contains(key));
+      assertEquals(key % 2 == 0 ? key : BalanceLedger.MISSING, ledger.balance(key));
+    }
+  }
+
+  @Test
+  void testPins() {
+    final BalanceLedger ledger = new BalanceLedger(16);
+    ledger.put(1, "0042", 10);
+    ledger.put(2, "not a number", 20);
+
+    assertEquals("0042", ledger.pin(1));
+    assertEquals("not a number", ledger.pin(2));
+    assertNull(ledger.pin(3));
+    assertEquals(10, ledger.balance(1));
+    assertEquals(20, ledger.balance(2));
+  }
+
+  @Test
+  void testHashedPinsMoveWithTheirSlots() {
+    final BalanceLedger ledger = new BalanceLedger(0);
+
+    for (long key = 1; key <= 10_000; key++) {
+      assertTrue(ledger.put(key, "hash-" + key, key));
+    }
+
+    for (long key = 1; key <= 10_000; key += 2) {
+      assertTrue(ledger.remove(key));
+    }
+
+    for (long key = 1; key <= 10_000; key++) {
+      assertEquals(key % 2 == 0 ? "hash-" + key : null, ledger.pin(key));
+    }
+  }
+
+  @Test
+  void testTransfer() {
+    final BalanceLedger ledger = new BalanceLedger(16);
+    ledger.put(1, "1234", 100);
+    ledger.put(2, "1234", 0);
+
+    assertEquals(40, ledger.transfer(1, 2, 60, () -> { }));
+    assertEquals(BalanceLedger.NOT_ENOUGH, ledger.transfer(1, 2, 41, () -> { }));
+    assertEquals(BalanceLedger.MISSING, ledger.transfer(1, 3, 1, () -> { }));
+    assertEquals(60, ledger.balance(2));
+  }
+
+  @Test
+  void testChangeOverMaxBalanceIsRejectedBeforeItIsApplied() {
+    final BalanceLedger ledger = new BalanceLedger(16);
+    final int[] applied = new int[1];
+    ledger.load(1, "1234", 100);
+    ledger.load(2, "1234", BalanceLedger.MAX_BALANCE - 50);
+
+    assertEquals(BalanceLedger.TOO_LARGE, ledger.add(2, 51, () -> applied[0]++));
+    assertEquals(BalanceLedger.TOO_LARGE, ledger.transfer(1, 2, 51, () -> applied[0]++));
+    assertEquals(BalanceLedger.MAX_BALANCE, ledger.add(2, 50, () -> applied[0]++));
+
+    assertEquals(1, applied[0]);
+    assertEquals(100, ledger.balance(1));
+    assertEquals(1, ledger.getDirtyCount());
+  }
+
+  @Test
+  void testDrainChanges() {
+    final BalanceLedger ledger = new BalanceLedger(16);
+    ledger.load(1, "1234", 100);
+    ledger.load(2, "1234", 0);
+    ledger.put(3, "0007", 5);
+    ledger.add(1, 10, () -> { });
+    ledger.add(1, 10, () -> { });
+    ledger.remove(2);
+
+    final BalanceLedger.Changes changes = ledger.drainChanges(() -> { });
+
+    assertArrayEquals(new long[] {3, 1, 2}, changes.keys);
+    assertArrayEquals(new boolean[] {true, true, false}, changes.present);
+    assertEquals(5, changes.balances[0]);
+    assertEquals("0007", changes.pins[0]);
+    assertEquals(120, changes.balances[1]);
+    assertEquals(0, ledger.drainChanges(() -> { }).size);
+
+    ledger.restore(changes);
+
+    assertEquals(3, ledger.getDirtyCount());
+  }
+
+  @Test
+  void testLoadedAccountsAreNotDirty() {
+    final BalanceLedger ledger = new BalanceLedger(16);
+    ledger.load(1, "1234", 100);
+
+    assertFalse(ledger.put(1, "1234", 0));
+    assertEquals(0, ledger.getDirtyCount());
+  }
+
+}
@@ -0,0 +1,136 @@
+package dao;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import model.Account;
+import model.Card;
+import model.TransferResult;
+import model.TransferStatus;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BloomFilterAccountDaoTest {
+
+  private static final String CARD_NUMBER = "4000004938320896";
+  private static final String MISSING     = "4000002454329010";
+  private static final String PIN         = "1234";
+
+  @Mock
+  private AccountDao delegate;
+
+  private BloomFilterAccountDao bloomFilterAccountDao;
+
+  @BeforeEach
+  void setUp() {
+    when(delegate.count()).thenReturn(1L);
+    doAnswer(invocation -> {
+      invocation.<Consumer<String>>getArgument(0).accept(CARD_NUMBER);
+      return null;
+    }).when(delegate).forEachCardNumber(any());
+
+    bloomFilterAccountDao = new BloomFilterAccountDao(delegate, 0.01);
+  }
+
+  @Test
+  void testMissingCardDoesNotReachDatabase() {
+    assertFalse(bloomFilterAccountDao.contains(MISSING));
+    assertTrue(bloomFilterAccountDao.get(MISSING, PIN).isEmpty());
+    assertEquals(TransferStatus.NO_SUCH_RECIPIENT, bloomFilterAccountDao.transfer(CARD_NUMBER, MISSING, 10).status());
+
+    verify(delegate, never()).contains(MISSING);
+    verify(delegate, never()).get(MISSING, PIN);
+    verify(delegate, never()).transfer(CARD_NUMBER, MISSING, 10);
+    assertEquals(1, bloomFilterAccountDao.getStats().rejected());
+  }
+
+  @Test
+  void testLoadedCardIsCheckedByDatabase() {
+    when(delegate.contains(CARD_NUMBER)).thenReturn(true);
+
+    assertTrue(bloomFilterAccountDao.contains(CARD_NUMBER));
+    assertEquals(1, bloomFilterAccountDao.getStats().entries());
+  }
+
+  @Test
+  void testSavedCardIsAdded() {
+    final Account account = new Account(new Card(MISSING, PIN), 0);
+    when(delegate.save(account)).thenReturn(true);
+    when(delegate.get(MISSING, PIN)).thenReturn(Optional.of(account));
+
+    assertTrue(bloomFilterAccountDao.save(account));
+
+    assertEquals(Optional.of(account), bloomFilterAccountDao.get(MISSING, PIN));
+  }
+
+  @Test
+  void testSavedAllCardsAreAdded() {
+    final Account account = new Account(new Card(MISSING, PIN), 0);
+    when(delegate.saveAll(List.of(account))).thenReturn(List.of(account));
+    when(delegate.transfer(CARD_NUMBER, MISSING, 10)).thenReturn(TransferResult.success(90));
+
+    bloomFilterAccountDao.saveAll(List.of(account));
+
+    assertEquals(TransferResult.success(90), bloomFilterAccountDao.transfer(CARD_NUMBER, MISSING, 10));
+  }
+
+  @Test
+  void testDeletedCardIsRemoved() {
+    final Account account = new Account(new Card(CARD_NUMBER, PIN), 0);
+    when(delegate.delete(account)).thenReturn(true);
+
+    bloomFilterAccountDao.delete(account);
+
+    assertFalse(bloomFilterAccountDao.contains(CARD_NUMBER));
+    assertEquals(0, bloomFilterAccountDao.getStats().entries());
+  }
+
+  @Test
+  void testCardIsRemovedOnlyByTheDeletingCall() {
+    final Account account = new Account(new Card(CARD_NUMBER, PIN), 0);
+    when(delegate.delete(account)).thenReturn(true, false);
+
+    assertTrue(bloomFilterAccountDao.delete(account));
+    assertFalse(bloomFilterAccountDao.delete(account));
+
+    assertEquals(0, bloomFilterAccountDao.getStats().entries());
+  }
+
+  @Test
+  void testFalsePositiveRate() {
+    final CountingBloomFilter filter = new CountingBloomFilter(100_000, 0.01);
+
+    for (long i = 0; i < 100_000; i++) {
+      filter.add(Long.toString(4_000_000_000_000_000L + i * 7));
+    }
+
+    int falsePositives = 0;
+
+    for (long i = 0; i < 100_000; i++) {
+      assertTrue(filter.mightContain(Long.toString(4_000_000_000_000_000L + i * 7)));
+
+      if (filter.mightContain(Long.toString(4_000_000_000_000_003L + i * 7))) {
+        falsePositives++;
+      }
+    }
+
+    assertTrue(falsePositives < 2_000, "False positives: " + falsePositives);
+    assertEquals(0.01, filter.getExpectedFalsePositiveRate(), 0.002);
+  }
+
+}
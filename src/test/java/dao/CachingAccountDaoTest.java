@@ -0,0 +1,134 @@
+package dao;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import model.Account;
+import model.Card;
+import model.TransferResult;
+import security.PinHasher;
+import security.PinVerifier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CachingAccountDaoTest {
+
+  private static final String CARD_NUMBER = "4000004938320896";
+  private static final String RECIPIENT   = "4000002454329010";
+  private static final String PIN         = "1234";
+
+  @Mock
+  private AccountDao delegate;
+
+  private PinVerifier       pinVerifier;
+  private String            pinHash;
+  private CachingAccountDao cachingAccountDao;
+
+  @BeforeEach
+  void setUp() {
+    pinVerifier = new PinVerifier(new PinHasher(1), 100, 1);
+    pinHash = pinVerifier.hash(PIN);
+    cachingAccountDao = new CachingAccountDao(delegate, pinVerifier, 2);
+  }
+
+  @Test
+  void testGetIsServedFromCache() {
+    when(delegate.getStored(CARD_NUMBER)).thenReturn(Optional.of(stored(CARD_NUMBER, 100)));
+
+    cachingAccountDao.get(CARD_NUMBER, PIN);
+    final Optional<Account> account = cachingAccountDao.get(CARD_NUMBER, PIN);
+
+    assertEquals(100, account.orElseThrow().getBalance());
+    assertEquals(PIN, account.orElseThrow().getCard().pin());
+    verify(delegate, times(1)).getStored(CARD_NUMBER);
+    assertEquals(new CacheStats(1, 1, 0, 1), cachingAccountDao.getStats());
+    assertEquals(1, pinVerifier.getCounters().hits());
+  }
+
+  @Test
+  void testWrongPinIsRejectedFromCache() {
+    when(delegate.getStored(CARD_NUMBER)).thenReturn(Optional.of(stored(CARD_NUMBER, 100)));
+
+    cachingAccountDao.get(CARD_NUMBER, PIN);
+    final long hashed = pinVerifier.getCounters().misses();
+
+    assertTrue(cachingAccountDao.get(CARD_NUMBER, "0000").isEmpty());
+    assertTrue(cachingAccountDao.get(CARD_NUMBER, "0000").isEmpty());
+    verify(delegate, times(1)).getStored(CARD_NUMBER);
+    assertEquals(hashed + 2, pinVerifier.getCounters().misses());
+  }
+
+  @Test
+  void testContainsIsServedFromCache() {
+    when(delegate.contains(RECIPIENT)).thenReturn(true);
+
+    assertTrue(cachingAccountDao.contains(RECIPIENT));
+    assertTrue(cachingAccountDao.contains(RECIPIENT));
+
+    verify(delegate, times(1)).contains(RECIPIENT);
+  }
+
+  @Test
+  void testTransferDropsCachedBalances() {
+    when(delegate.getStored(CARD_NUMBER)).thenReturn(Optional.of(stored(CARD_NUMBER, 100)),
+                                                     Optional.of(stored(CARD_NUMBER, 40)));
+    when(delegate.contains(RECIPIENT)).thenReturn(true);
+    when(delegate.transfer(CARD_NUMBER, RECIPIENT, 60)).thenReturn(TransferResult.success(40));
+
+    cachingAccountDao.get(CARD_NUMBER, PIN);
+    cachingAccountDao.contains(RECIPIENT);
+    cachingAccountDao.transfer(CARD_NUMBER, RECIPIENT, 60);
+
+    assertEquals(40, cachingAccountDao.get(CARD_NUMBER, PIN).orElseThrow().getBalance());
+    assertTrue(cachingAccountDao.contains(RECIPIENT));
+    verify(delegate, times(1)).contains(RECIPIENT);
+  }
+
+  @Test
+  void testDeleteRemovesAccount() {
+    final Account account = account(CARD_NUMBER, 100);
+    when(delegate.contains(CARD_NUMBER)).thenReturn(true, false);
+
+    cachingAccountDao.contains(CARD_NUMBER);
+    cachingAccountDao.delete(account);
+
+    assertFalse(cachingAccountDao.contains(CARD_NUMBER));
+    verify(delegate).delete(account);
+  }
+
+  @Test
+  void testLeastRecentlyUsedAccountIsEvicted() {
+    when(delegate.contains("1")).thenReturn(true);
+    when(delegate.contains("2")).thenReturn(true);
+    when(delegate.contains("3")).thenReturn(true);
+
+    cachingAccountDao.contains("1");
+    cachingAccountDao.contains("2");
+    cachingAccountDao.contains("1");
+    cachingAccountDao.contains("3");
+    cachingAccountDao.contains("1");
+
+    assertEquals(1, cachingAccountDao.getStats().evictions());
+    verify(delegate, times(1)).contains("1");
+  }
+
+  private static Account account(String cardNumber, int balance) {
+    return new Account(new Card(cardNumber, PIN), balance);
+  }
+
+  private Account stored(String cardNumber, int balance) {
+    return new Account(new Card(cardNumber, pinHash), balance);
+  }
+
+}
@@ -0,0 +1,176 @@
+package dao;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import configuration.DBConfiguration;
+import model.Account;
+import model.Card;
+import model.TransactionType;
+import model.TransferResult;
+import model.TransferStatus;
+import security.PinHasher;
+import security.PinVerifier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CommandQueueAccountDaoTest {
+
+  private static final String SENDER    = "4000004938320896";
+  private static final String RECIPIENT = "4000002454329010";
+  private static final String MISSING   = "4000001111111111";
+  private static final String PIN       = "1234";
+
+  @TempDir
+  Path directory;
+
+  private SqliteAccountDao       sqliteAccountDao;
+  private CommandQueueAccountDao accountDao;
+
+  @BeforeEach
+  void setUp() {
+    sqliteAccountDao = new SqliteAccountDao(new DBConfiguration(directory.resolve("test.s3db").toString())
+                                                .getConnectionProvider(),
+                                            null, new PinVerifier(new PinHasher(1), 100, 1));
+    accountDao = new CommandQueueAccountDao(sqliteAccountDao, 16, 8);
+
+    accountDao.save(new Account(new Card(SENDER, PIN), 0));
+    accountDao.save(new Account(new Card(RECIPIENT, PIN), 0));
+  }
+
+  @AfterEach
+  void tearDown() {
+    accountDao.close();
+  }
+
+  @Test
+  void testCommandsReturnTheirResults() {
+    assertThat(accountDao.update(SENDER, 500)).isEqualTo(OptionalInt.of(500));
+    assertThat(accountDao.update(MISSING, 500)).isEmpty();
+    assertThat(accountDao.transfer(SENDER, RECIPIENT, 200)).isEqualTo(TransferResult.success(300));
+    assertThat(accountDao.transfer(SENDER, RECIPIENT, 301).status()).isEqualTo(TransferStatus.NOT_ENOUGH_MONEY);
+    assertThat(accountDao.transfer(SENDER, MISSING, 100).status()).isEqualTo(TransferStatus.NO_SUCH_RECIPIENT);
+
+    accountDao.delete(new Account(new Card(RECIPIENT, PIN), 200));
+
+    assertThat(accountDao.contains(RECIPIENT)).isFalse();
+    assertThat(accountDao.get(SENDER, PIN).orElseThrow().getBalance()).isEqualTo(300);
+    assertThat(accountDao.getStatement(SENDER, null, 10)).extracting("type")
+                                                          .containsExactly(TransactionType.TRANSFER_OUT,
+                                                                           TransactionType.DEPOSIT);
+  }
+
+  @Test
+  void testConcurrentDepositsAreAllApplied() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<?>> futures = new ArrayList<>();
+
+    for (int i = 0; i < 8; i++) {
+      futures.add(executor.submit(() -> {
+        for (int j = 0; j < 100; j++) {
+          accountDao.update(SENDER, 1);
+          accountDao.transfer(SENDER, RECIPIENT, 1);
+        }
+      }));
+    }
+
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    assertThat(accountDao.get(SENDER, PIN).orElseThrow().getBalance()
+               + accountDao.get(RECIPIENT, PIN).orElseThrow().getBalance()).isEqualTo(800);
+    assertThat(accountDao.getStatement(SENDER, null, 2_000)).hasSizeGreaterThanOrEqualTo(800);
+  }
+
+  @Test
+  void testCommandThatFailsDoesNotAffectTheBatch() {
+    List<AccountCommand> batch = List.of(command(AccountCommand.Type.DEPOSIT, SENDER, null, 100),
+                                         command(AccountCommand.Type.TRANSFER, SENDER, MISSING, 50),
+                                         command(AccountCommand.Type.TRANSFER, SENDER, RECIPIENT, 150),
+                                         command(AccountCommand.Type.TRANSFER, SENDER, RECIPIENT, 60),
+                                         command(AccountCommand.Type.CLOSE, MISSING, null, 0));
+
+    sqliteAccountDao.apply(batch);
+
+    assertThat(batch).extracting(command -> command.result)
+                     .containsExactly(OptionalInt.of(100), OptionalInt.empty(), OptionalInt.empty(),
+                                      OptionalInt.of(40), OptionalInt.empty());
+    assertThat(batch.subList(1, 3)).extracting(command -> command.status)
+                                    .containsExactly(TransferStatus.NO_SUCH_RECIPIENT, TransferStatus.NOT_ENOUGH_MONEY);
+    assertThat(accountDao.get(RECIPIENT, PIN).orElseThrow().getBalance()).isEqualTo(60);
+  }
+
+  @Test
+  void testOperationKeyIsAppliedOnceInBatch() {
+    List<AccountCommand> batch = List.of(command(AccountCommand.Type.DEPOSIT, SENDER, null, 100, "deposit-1"),
+                                         command(AccountCommand.Type.DEPOSIT, SENDER, null, 100, "deposit-1"),
+                                         command(AccountCommand.Type.DEPOSIT, SENDER, null, 100, null));
+
+    sqliteAccountDao.apply(batch);
+
+    assertThat(batch).extracting(command -> command.result)
+                     .containsExactly(OptionalInt.of(100), OptionalInt.of(100), OptionalInt.of(200));
+    assertThat(accountDao.update(SENDER, 100, "deposit-1")).isEqualTo(OptionalInt.of(100));
+    assertThat(accountDao.get(SENDER, PIN).orElseThrow().getBalance()).isEqualTo(200);
+  }
+
+  @Test
+  void testClosedQueueRejectsCommands() {
+    accountDao.close();
+
+    assertThatThrownBy(() -> accountDao.update(SENDER, 1)).isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  void testCommandsSubmittedWhileClosingDoNotHang() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<?>> futures = new ArrayList<>();
+
+    for (int i = 0; i < 8; i++) {
+      futures.add(executor.submit(() -> {
+        try {
+          while (true) {
+            accountDao.update(SENDER, 1);
+          }
+        } catch (IllegalStateException e) {
+          // The queue was closed
+        }
+      }));
+    }
+
+    Thread.sleep(20);
+    accountDao.close();
+
+    for (Future<?> future : futures) {
+      future.get(10, TimeUnit.SECONDS);
+    }
+    executor.shutdown();
+  }
+
+  private static AccountCommand command(AccountCommand.Type type, String cardNumber, String toCardNumber, int amount) {
+    return command(type, cardNumber, toCardNumber, amount, null);
+  }
+
+  private static AccountCommand command(AccountCommand.Type type, String cardNumber, String toCardNumber, int amount,
+                                        String operationKey) {
+    AccountCommand command = new AccountCommand();
+    command.set(type, cardNumber, toCardNumber, amount, operationKey, new CompletableFuture<>());
+    return command;
+  }
+
+}
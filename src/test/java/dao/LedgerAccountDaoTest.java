@@ -0,0 +1,152 @@
+package dao;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.OptionalInt;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import configuration.DBConfiguration;
+import model.Account;
+import model.Card;
+import model.Transaction;
+import model.TransactionType;
+import model.Transfer;
+import model.TransferResult;
+import model.TransferStatus;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LedgerAccountDaoTest {
+
+  private static final String SENDER    = "4000004938320896";
+  private static final String RECIPIENT = "4000002454329010";
+  private static final String PIN       = "1234";
+
+  @TempDir
+  Path directory;
+
+  private LedgerAccountDao ledgerAccountDao;
+
+  @BeforeEach
+  void setUp() {
+    SqliteAccountDao sqliteAccountDao = sqliteAccountDao();
+    sqliteAccountDao.save(new Account(new Card(SENDER, PIN), 0));
+    sqliteAccountDao.update(SENDER, 500);
+
+    ledgerAccountDao = new LedgerAccountDao(sqliteAccountDao, 60_000);
+  }
+
+  @AfterEach
+  void tearDown() {
+    ledgerAccountDao.close();
+  }
+
+  @Test
+  void testAccountsAreLoaded() {
+    assertEquals(500, ledgerAccountDao.get(SENDER, PIN).orElseThrow().getBalance());
+    assertTrue(ledgerAccountDao.get(SENDER, "0000").isEmpty());
+    assertEquals(1, ledgerAccountDao.count());
+  }
+
+  @Test
+  void testWritesAreServedBeforeTheyArePersisted() {
+    ledgerAccountDao.save(new Account(new Card(RECIPIENT, "0042"), 0));
+
+    assertEquals(TransferResult.success(300), ledgerAccountDao.transfer(SENDER, RECIPIENT, 200));
+    assertEquals(TransferStatus.NOT_ENOUGH_MONEY, ledgerAccountDao.transfer(SENDER, RECIPIENT, 301).status());
+    assertEquals(OptionalInt.of(250), ledgerAccountDao.update(RECIPIENT, 50));
+    assertTrue(ledgerAccountDao.update("4000001111111111", 50).isEmpty());
+    assertEquals(250, ledgerAccountDao.get(RECIPIENT, "0042").orElseThrow().getBalance());
+  }
+
+  @Test
+  void testBalanceOverIntIsRejectedWithoutStatementEntry() {
+    assertTrue(ledgerAccountDao.update(SENDER, Integer.MAX_VALUE - 500 + 1).isEmpty());
+    assertEquals(OptionalInt.of(Integer.MAX_VALUE), ledgerAccountDao.update(SENDER, Integer.MAX_VALUE - 500));
+
+    assertEquals(2, ledgerAccountDao.getStatement(SENDER, null, 10).size());
+    assertEquals(Integer.MAX_VALUE, ledgerAccountDao.get(SENDER, PIN).orElseThrow().getBalance());
+  }
+
+  @Test
+  void testCloseFlushesChanges() {
+    ledgerAccountDao.save(new Account(new Card(RECIPIENT, "0042"), 0));
+    ledgerAccountDao.transfer(SENDER, RECIPIENT, 200);
+    ledgerAccountDao.close();
+
+    try (SqliteAccountDao sqliteAccountDao = sqliteAccountDao()) {
+      assertEquals(300, sqliteAccountDao.get(SENDER, PIN).orElseThrow().getBalance());
+      assertEquals(200, sqliteAccountDao.get(RECIPIENT, "0042").orElseThrow().getBalance());
+    }
+  }
+
+  @Test
+  void testFlushPersistsDeletes() {
+    ledgerAccountDao.delete(new Account(new Card(SENDER, PIN), 0));
+
+    assertFalse(ledgerAccountDao.contains(SENDER));
+    assertEquals(1, ledgerAccountDao.flush());
+    assertEquals(0, ledgerAccountDao.flush());
+
+    try (SqliteAccountDao sqliteAccountDao = sqliteAccountDao()) {
+      assertFalse(sqliteAccountDao.contains(SENDER));
+    }
+  }
+
+  @Test
+  void testStatementIncludesPendingChanges() {
+    ledgerAccountDao.save(new Account(new Card(RECIPIENT, PIN), 0));
+    ledgerAccountDao.transfer(SENDER, RECIPIENT, 200);
+
+    final List<Transaction> statement = ledgerAccountDao.getStatement(RECIPIENT, null, 10);
+
+    assertEquals(1, statement.size());
+    assertEquals(TransactionType.TRANSFER_IN, statement.get(0).type());
+    assertEquals(SENDER, statement.get(0).counterparty());
+  }
+
+  @Test
+  void testOperationKeyIsPersistedWithTheBalance() {
+    assertEquals(OptionalInt.of(600), ledgerAccountDao.update(SENDER, 100, "deposit-1"));
+    assertEquals(OptionalInt.of(600), ledgerAccountDao.update(SENDER, 100, "deposit-1"));
+    assertEquals(1, ledgerAccountDao.flush());
+    assertEquals(OptionalInt.of(600), ledgerAccountDao.update(SENDER, 100, "deposit-1"));
+    ledgerAccountDao.close();
+
+    try (SqliteAccountDao sqliteAccountDao = sqliteAccountDao()) {
+      assertEquals(OptionalInt.of(600), sqliteAccountDao.update(SENDER, 100, "deposit-1"));
+      assertEquals(600, sqliteAccountDao.get(SENDER, PIN).orElseThrow().getBalance());
+    }
+  }
+
+  @Test
+  void testTransferBatch() {
+    final String third = "4000003305061034";
+    ledgerAccountDao.saveAll(List.of(new Account(new Card(RECIPIENT, PIN), 0), new Account(new Card(third, PIN), 0)));
+
+    final List<TransferStatus> statuses = ledgerAccountDao.transfer(List.of(
+        new Transfer(SENDER, RECIPIENT, 300),
+        new Transfer(RECIPIENT, third, 250),
+        new Transfer(RECIPIENT, third, 100),
+        new Transfer(SENDER, "4000001111111111", 100)));
+
+    assertEquals(List.of(TransferStatus.SUCCESS,
+                         TransferStatus.SUCCESS,
+                         TransferStatus.NOT_ENOUGH_MONEY,
+                         TransferStatus.NO_SUCH_RECIPIENT), statuses);
+    assertEquals(200, ledgerAccountDao.get(SENDER, PIN).orElseThrow().getBalance());
+    assertEquals(50, ledgerAccountDao.get(RECIPIENT, PIN).orElseThrow().getBalance());
+    assertEquals(250, ledgerAccountDao.get(third, PIN).orElseThrow().getBalance());
+  }
+
+  private SqliteAccountDao sqliteAccountDao() {
+    return new SqliteAccountDao(new DBConfiguration(directory.resolve("test.s3db").toString()).getConnectionProvider());
+  }
+
+}
@@ -0,0 +1,169 @@
+package dao;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import configuration.ConnectionProvider;
+import configuration.DBConfiguration;
+import generator.CardGenerator;
+import model.Account;
+import model.Card;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LockingAccountDaoTest {
+
+  private static final int    ACCOUNTS        = 20;
+  private static final int    INITIAL_BALANCE = 1_000;
+  private static final int    THREADS         = 8;
+  private static final int    OPERATIONS      = 250;
+  private static final String PIN             = "1234";
+
+  @TempDir
+  Path directory;
+
+  private final AccountLocks accountLocks = new AccountLocks(1_024);
+  private final List<String> cardNumbers  = new ArrayList<>();
+
+  private ConnectionProvider connectionProvider;
+  private AccountDao         database;
+  private AccountDao         accountDao;
+
+  @BeforeEach
+  void setUp() {
+    connectionProvider = new DBConfiguration(directory.resolve("test.s3db").toString()).getConnectionProvider();
+    SqliteAccountDao sqliteAccountDao = new SqliteAccountDao(connectionProvider);
+    database = sqliteAccountDao;
+    accountDao = new LockingAccountDao(new CachingAccountDao(database, sqliteAccountDao.getPinVerifier(), 1_000),
+                                       accountLocks);
+
+    CardGenerator cardGenerator = CardGenerator.concurrent();
+
+    for (int i = 0; i < ACCOUNTS; i++) {
+      String cardNumber = cardGenerator.generateCard();
+      cardNumbers.add(cardNumber);
+      accountDao.save(new Account(new Card(cardNumber, PIN), 0));
+      accountDao.update(cardNumber, INITIAL_BALANCE);
+    }
+  }
+
+  @AfterEach
+  void tearDown() {
+    connectionProvider.close();
+  }
+
+  @Test
+  void testConcurrentTransfersNeitherLoseNorCreateMoney() throws Exception {
+    final LongAdder deposits = new LongAdder();
+    final CountDownLatch start = new CountDownLatch(1);
+    final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    final List<Future<?>> results = new ArrayList<>();
+
+    for (int t = 0; t < THREADS; t++) {
+      results.add(executor.submit(() -> {
+        start.await();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        for (int i = 0; i < OPERATIONS; i++) {
+          String from = cardNumbers.get(random.nextInt(ACCOUNTS));
+          String to = cardNumbers.get(random.nextInt(ACCOUNTS));
+
+          if (random.nextInt(10) == 0) {
+            int income = random.nextInt(1, 100);
+            accountDao.update(from, income);
+            deposits.add(income);
+          } else if (!from.equals(to)) {
+            accountDao.transfer(from, to, random.nextInt(1, 400));
+          }
+
+          accountDao.get(to, PIN).orElseThrow();
+        }
+        return null;
+      }));
+    }
+
+    start.countDown();
+
+    for (Future<?> result : results) {
+      result.get(60, TimeUnit.SECONDS);
+    }
+    executor.shutdown();
+
+    long total = 0;
+
+    for (String cardNumber : cardNumbers) {
+      int balance = database.get(cardNumber, PIN).orElseThrow().getBalance();
+
+      assertTrue(balance >= 0, "Negative balance of " + cardNumber);
+      assertEquals(balance, accountDao.get(cardNumber, PIN).orElseThrow().getBalance(), "Stale cached balance");
+      total += balance;
+    }
+
+    assertEquals((long) ACCOUNTS * INITIAL_BALANCE + deposits.sum(), total);
+  }
+
+  @Test
+  void testOppositeTransfersDoNotDeadlock() {
+    final String first = cardNumbers.get(0);
+    final String second = cardNumbers.get(1);
+
+    assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+      CompletableFuture<Void> forward = CompletableFuture.runAsync(() -> lockRepeatedly(first, second));
+      CompletableFuture<Void> backward = CompletableFuture.runAsync(() -> lockRepeatedly(second, first));
+      CompletableFuture.allOf(forward, backward).join();
+    });
+  }
+
+  @Test
+  void testUnrelatedAccountsProceedInParallel() throws Exception {
+    final String locked = cardNumbers.get(0);
+    final String unrelated = cardNumbers
+        .stream()
+        .filter(cardNumber -> accountLocks.stripe(cardNumber) != accountLocks.stripe(locked))
+        .findFirst()
+        .orElseThrow();
+
+    assertNotEquals(accountLocks.stripe(locked), accountLocks.stripe(unrelated));
+
+    final CompletableFuture<Integer> blocked;
+
+    try (AccountLocks.Locked ignored = accountLocks.lock(locked)) {
+      final CompletableFuture<Integer> update = CompletableFuture.supplyAsync(() -> accountDao.update(unrelated, 1).orElseThrow());
+      blocked = CompletableFuture.supplyAsync(() -> accountDao.update(locked, 1).orElseThrow());
+
+      assertEquals(INITIAL_BALANCE + 1, update.get(10, TimeUnit.SECONDS));
+      Thread.sleep(100);
+      assertFalse(blocked.isDone());
+    }
+
+    assertEquals(INITIAL_BALANCE + 1, blocked.get(10, TimeUnit.SECONDS));
+  }
+
+  private void lockRepeatedly(String from, String to) {
+    for (int i = 0; i < 100_000; i++) {
+      try (AccountLocks.Locked ignored = accountLocks.lock(from, to)) {
+        assertTrue(accountLocks.isHeldByCurrentThread(from) && accountLocks.isHeldByCurrentThread(to));
+      }
+    }
+  }
+
+}
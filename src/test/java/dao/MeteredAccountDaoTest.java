@@ -0,0 +1,49 @@
+package dao;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import metrics.MetricsRegistry;
+import model.Account;
+import model.Card;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class MeteredAccountDaoTest {
+
+  private static final String CARD_NUMBER = "4000004938320896";
+  private static final String PIN         = "1234";
+
+  @Mock
+  private AccountDao delegate;
+
+  @Test
+  void testCallsAndErrorsAreCounted() {
+    final MetricsRegistry registry = new MetricsRegistry();
+    final AccountDao accountDao = new MeteredAccountDao(delegate, registry);
+    final Account account = new Account(new Card(CARD_NUMBER, PIN), 10);
+
+    when(delegate.get(CARD_NUMBER, PIN)).thenReturn(Optional.of(account));
+    when(delegate.contains(CARD_NUMBER)).thenThrow(new IllegalStateException("Database is gone"));
+
+    assertEquals(account, accountDao.get(CARD_NUMBER, PIN).orElseThrow());
+    assertEquals(account, accountDao.get(CARD_NUMBER, PIN).orElseThrow());
+    assertThrows(IllegalStateException.class, () -> accountDao.contains(CARD_NUMBER));
+
+    assertEquals(2, registry.timer("dao.get").getCount());
+    assertEquals(0, registry.timer("dao.get").getErrors());
+    assertEquals(1, registry.timer("dao.contains").getCount());
+    assertEquals(1, registry.timer("dao.contains").getErrors());
+    assertEquals(0, registry.timer("dao.update").getCount());
+    assertTrue(registry.timer("dao.get").getMaxMicros() > 0);
+  }
+
+}
@@ -0,0 +1,287 @@
+package dao;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import configuration.DBConfiguration;
+import model.Account;
+import model.Card;
+import model.Transaction;
+import model.TransactionType;
+import model.Transfer;
+import model.TransferResult;
+import model.TransferStatus;
+import security.PinHasher;
+import security.PinVerifier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+class ShardedAccountDaoTest {
+
+  private static final String PIN = "1234";
+
+  @TempDir
+  Path directory;
+
+  private PinVerifier            pinVerifier;
+  private List<SqliteAccountDao> shards;
+  private ShardedAccountDao      accountDao;
+  private String                 sender;
+  private String                 neighbour;
+  private String                 recipient;
+
+  @BeforeEach
+  void setUp() {
+    pinVerifier = new PinVerifier(new PinHasher(1), 100, 1);
+    shards = shards("a.s3db", "b.s3db");
+    accountDao = new ShardedAccountDao(shards);
+
+    sender = cardNumber(0, 0);
+    neighbour = cardNumber(0, 1);
+    recipient = cardNumber(1, 0);
+
+    accountDao.saveAll(List.of(new Account(new Card(sender, PIN), 0), new Account(new Card(neighbour, PIN), 0),
+                               new Account(new Card(recipient, PIN), 0)));
+    accountDao.update(sender, 500);
+  }
+
+  @AfterEach
+  void tearDown() {
+    accountDao.close();
+  }
+
+  @Test
+  void testAccountsAreSpreadOverTheShards() {
+    assertThat(accountDao.count()).isEqualTo(3);
+    assertThat(shards.get(0).count()).isEqualTo(2);
+    assertThat(shards.get(1).count()).isEqualTo(1);
+    assertThat(shards.get(1).contains(recipient)).isTrue();
+    assertThat(accountDao.get(recipient, PIN)).isPresent();
+  }
+
+  @Test
+  void testTransferWithinShard() {
+    assertThat(accountDao.transfer(sender, neighbour, 200)).isEqualTo(TransferResult.success(300));
+    assertThat(balance(neighbour)).isEqualTo(200);
+  }
+
+  @Test
+  void testTransferBetweenShards() {
+    assertThat(accountDao.transfer(sender, recipient, 200)).isEqualTo(TransferResult.success(300));
+
+    assertThat(balance(sender)).isEqualTo(300);
+    assertThat(balance(recipient)).isEqualTo(200);
+    assertThat(shards.get(0).getPendingTransfers()).isEmpty();
+    assertThat(accountDao.getStatement(sender, null, 10).get(0).type()).isEqualTo(TransactionType.TRANSFER_OUT);
+
+    Transaction received = accountDao.getStatement(recipient, null, 10).get(0);
+    assertThat(received.type()).isEqualTo(TransactionType.TRANSFER_IN);
+    assertThat(received.counterparty()).isEqualTo(sender);
+  }
+
+  @Test
+  void testTransferBetweenShardsReturnsTheBalanceItLeft() {
+    SqliteAccountDao senderShard = spy(shards.get(0));
+    ShardedAccountDao sharded = new ShardedAccountDao(List.of(senderShard, shards.get(1)));
+
+    assertThat(sharded.transfer(sender, recipient, 200)).isEqualTo(TransferResult.success(300));
+    verify(senderShard, never()).getBalance(any(), any());
+  }
+
+  @Test
+  void testTransferBetweenShardsNotEnoughMoney() {
+    assertThat(accountDao.transfer(sender, recipient, 501).status()).isEqualTo(TransferStatus.NOT_ENOUGH_MONEY);
+
+    assertThat(balance(sender)).isEqualTo(500);
+    assertThat(balance(recipient)).isZero();
+  }
+
+  @Test
+  void testTransferToMissingAccountInOtherShard() {
+    assertThat(accountDao.transfer(sender, cardNumber(1, 1), 100).status()).isEqualTo(TransferStatus.NO_SUCH_RECIPIENT);
+    assertThat(balance(sender)).isEqualTo(500);
+  }
+
+  @Test
+  void testTransferBetweenShardsWithOperationKeyIsAppliedOnce() {
+    assertThat(accountDao.transfer(sender, recipient, 200, "transfer-1")).isEqualTo(TransferResult.success(300));
+    assertThat(reopen().transfer(sender, recipient, 200, "transfer-1")).isEqualTo(TransferResult.success(300));
+
+    assertThat(balance(sender)).isEqualTo(300);
+    assertThat(balance(recipient)).isEqualTo(200);
+  }
+
+  @Test
+  void testBatchKeepsOrderAcrossShards() {
+    List<TransferStatus> statuses = accountDao.transfer(List.of(new Transfer(sender, recipient, 300),
+                                                                new Transfer(sender, neighbour, 300),
+                                                                new Transfer(recipient, neighbour, 100),
+                                                                new Transfer(neighbour, sender, 50),
+                                                                new Transfer(sender, cardNumber(1, 1), 10)));
+
+    assertThat(statuses).containsExactly(TransferStatus.SUCCESS, TransferStatus.NOT_ENOUGH_MONEY,
+                                         TransferStatus.SUCCESS, TransferStatus.SUCCESS,
+                                         TransferStatus.NO_SUCH_RECIPIENT);
+    assertThat(balance(sender)).isEqualTo(250);
+    assertThat(balance(neighbour)).isEqualTo(50);
+    assertThat(balance(recipient)).isEqualTo(200);
+  }
+
+  @Test
+  void testRecoverFinishesPreparedTransfer() {
+    shards.get(0).prepareTransfer(sender, recipient, 200);
+    assertThat(balance(sender)).isEqualTo(300);
+    assertThat(balance(recipient)).isZero();
+
+    assertThat(reopen().recover()).isEqualTo(1);
+    assertThat(balance(sender)).isEqualTo(300);
+    assertThat(balance(recipient)).isEqualTo(200);
+    assertThat(accountDao.recover()).isZero();
+  }
+
+  @Test
+  void testRecoverDoesNotApplyTransferTwice() {
+    PendingTransfer pending = shards.get(0).prepareTransfer(sender, recipient, 200).orElseThrow();
+    assertThat(shards.get(1).applyTransfer(0, pending)).isEqualTo(TransferStatus.SUCCESS);
+
+    assertThat(reopen().recover()).isEqualTo(1);
+    assertThat(balance(sender)).isEqualTo(300);
+    assertThat(balance(recipient)).isEqualTo(200);
+    assertThat(shards.get(0).getPendingTransfers()).isEmpty();
+  }
+
+  @Test
+  void testRecoverRefundsTransferToMissingAccount() {
+    shards.get(0).prepareTransfer(sender, cardNumber(1, 1), 200);
+
+    assertThat(reopen().recover()).isEqualTo(1);
+    assertThat(balance(sender)).isEqualTo(500);
+    assertThat(accountDao.getStatement(sender, null, 10).get(0).type()).isEqualTo(TransactionType.TRANSFER_IN);
+  }
+
+  @Test
+  void testRefundedTransferForgetsOperationKey() {
+    shards.get(0).prepareTransfer(sender, cardNumber(1, 1), 200, "key-1");
+    assertThat(shards.get(0).getOperation(sender, "key-1")).isEqualTo(OptionalInt.of(300));
+
+    assertThat(accountDao.recover()).isEqualTo(1);
+    assertThat(balance(sender)).isEqualTo(500);
+    assertThat(accountDao.transfer(sender, cardNumber(1, 1), 200, "key-1").isMade()).isFalse();
+    assertThat(reopen().getShards().get(0).getOperation(sender, "key-1")).isEmpty();
+  }
+
+  @Test
+  void testTransferToFailingShardIsFinishedInTheBackground() throws InterruptedException {
+    SqliteAccountDao failing = spy(shards.get(1));
+    doReturn(TransferStatus.FAILED, TransferStatus.FAILED, TransferStatus.FAILED).doCallRealMethod()
+        .when(failing).applyTransfer(anyInt(), any());
+    ShardedAccountDao sharded = new ShardedAccountDao(List.of(shards.get(0), failing));
+    List<String> finished = new CopyOnWriteArrayList<>();
+    sharded.setFinishListener(finished::add);
+
+    assertThat(sharded.transfer(List.of(new Transfer(sender, recipient, 200))))
+        .containsExactly(TransferStatus.PENDING);
+    assertThat(balance(sender)).isEqualTo(300);
+
+    for (int i = 0; i < 100 && sharded.getParkedTransfers() > 0; i++) {
+      Thread.sleep(10);
+    }
+
+    assertThat(sharded.getParkedTransfers()).isZero();
+    assertThat(finished).containsExactly(recipient);
+    assertThat(balance(recipient)).isEqualTo(200);
+    assertThat(shards.get(0).getPendingTransfers()).isEmpty();
+  }
+
+  @Test
+  void testTransferIsNotAppliedTwiceWhenSenderShardFailsToComplete() throws InterruptedException {
+    SqliteAccountDao failing = spy(shards.get(0));
+    doReturn(false).doCallRealMethod().when(failing).completeTransfer(anyLong());
+    ShardedAccountDao sharded = new ShardedAccountDao(List.of(failing, shards.get(1)));
+
+    assertThat(sharded.transfer(List.of(new Transfer(sender, recipient, 200))))
+        .containsExactly(TransferStatus.PENDING);
+
+    for (int i = 0; i < 100 && sharded.getParkedTransfers() > 0; i++) {
+      Thread.sleep(10);
+    }
+
+    assertThat(sharded.getParkedTransfers()).isZero();
+    assertThat(shards.get(0).getPendingTransfers()).isEmpty();
+    assertThat(reopen().recover()).isZero();
+    assertThat(balance(sender)).isEqualTo(300);
+    assertThat(balance(recipient)).isEqualTo(200);
+  }
+
+  @Test
+  void testShardsInOtherOrderAreRefused() {
+    accountDao.close();
+    List<SqliteAccountDao> reversed = shards("b.s3db", "a.s3db");
+
+    assertThatThrownBy(() -> new ShardedAccountDao(reversed)).isInstanceOf(IllegalArgumentException.class);
+    reversed.forEach(SqliteAccountDao::close);
+    accountDao = new ShardedAccountDao(shards("a.s3db", "b.s3db"));
+  }
+
+  @Test
+  void testUnshardedDatabaseWithAccountsIsRefused() {
+    SqliteAccountDao single = shards("single.s3db").get(0);
+    single.save(new Account(new Card(sender, PIN), 0));
+    List<SqliteAccountDao> sharded = List.of(single, shards("c.s3db").get(0));
+
+    assertThatThrownBy(() -> new ShardedAccountDao(sharded)).isInstanceOf(IllegalArgumentException.class);
+    sharded.forEach(SqliteAccountDao::close);
+  }
+
+  private ShardedAccountDao reopen() {
+    accountDao.close();
+    pinVerifier = new PinVerifier(new PinHasher(1), 100, 1);
+    shards = shards("a.s3db", "b.s3db");
+    accountDao = new ShardedAccountDao(shards);
+    return accountDao;
+  }
+
+  private List<SqliteAccountDao> shards(String... fileNames) {
+    List<SqliteAccountDao> daos = new ArrayList<>();
+
+    for (String fileName : fileNames) {
+      daos.add(new SqliteAccountDao(new DBConfiguration(directory.resolve(fileName).toString()).getConnectionProvider(),
+                                    null, pinVerifier));
+    }
+    return daos;
+  }
+
+  private int balance(String cardNumber) {
+    return accountDao.get(cardNumber, PIN).orElseThrow().getBalance();
+  }
+
+  /**
+   * It returns the card number with the given index among those that belong to the shard.
+   */
+  private static String cardNumber(int shard, int index) {
+    for (long identifier = 100_000_000L; ; identifier++) {
+      String cardNumber = "400000" + identifier + "0";
+
+      if (ShardedAccountDao.shardOf(cardNumber, 2) == shard && index-- == 0) {
+        return cardNumber;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,385 @@
+package dao;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import configuration.ConnectionProvider;
+import configuration.DBConfiguration;
+import configuration.DatabaseSettings;
+import configuration.PooledConnection;
+import journal.TransactionJournal;
+import model.Account;
+import model.Card;
+import model.ReadConsistency;
+import model.Transaction;
+import model.TransactionType;
+import model.Transfer;
+import model.TransferResult;
+import model.TransferStatus;
+import security.PinHasher;
+import security.PinVerifier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SqliteAccountDaoTest {
+
+  private static final String SENDER    = "4000004938320896";
+  private static final String RECIPIENT = "4000002454329010";
+  private static final String PIN       = "1234";
+
+  @TempDir
+  Path directory;
+
+  private ConnectionProvider connectionProvider;
+  private AccountDao         accountDao;
+
+  @BeforeEach
+  void setUp() {
+    connectionProvider = new DBConfiguration(directory.resolve("test.s3db").toString()).getConnectionProvider();
+    accountDao = new SqliteAccountDao(connectionProvider);
+
+    accountDao.save(new Account(new Card(SENDER, PIN), 0));
+    accountDao.save(new Account(new Card(RECIPIENT, PIN), 0));
+    accountDao.update(SENDER, 500);
+  }
+
+  @AfterEach
+  void tearDown() {
+    connectionProvider.close();
+  }
+
+  @Test
+  void testSaveReportsTakenCardNumber() {
+    assertFalse(accountDao.save(new Account(new Card(SENDER, "0000"), 0)));
+    assertTrue(accountDao.save(new Account(new Card("4000003305061034", PIN), 0)));
+  }
+
+  @Test
+  void testTransfer() {
+    final TransferResult result = accountDao.transfer(SENDER, RECIPIENT, 200);
+
+    assertEquals(TransferResult.success(300), result);
+    assertEquals(300, balance(SENDER));
+    assertEquals(200, balance(RECIPIENT));
+  }
+
+  @Test
+  void testTransferNotEnoughMoney() {
+    final TransferResult result = accountDao.transfer(SENDER, RECIPIENT, 501);
+
+    assertEquals(TransferStatus.NOT_ENOUGH_MONEY, result.status());
+    assertEquals(500, balance(SENDER));
+    assertEquals(0, balance(RECIPIENT));
+  }
+
+  @Test
+  void testTransferToMissingAccountIsRolledBack() {
+    final TransferResult result = accountDao.transfer(SENDER, "4000001111111111", 100);
+
+    assertEquals(TransferStatus.NO_SUCH_RECIPIENT, result.status());
+    assertEquals(500, balance(SENDER));
+  }
+
+  @Test
+  void testTransferBatch() {
+    final String third = "4000003305061034";
+    accountDao.save(new Account(new Card(third, PIN), 0));
+
+    final List<TransferStatus> statuses = accountDao.transfer(List.of(
+        new Transfer(SENDER, RECIPIENT, 300),
+        new Transfer(RECIPIENT, third, 250),
+        new Transfer(RECIPIENT, third, 100),
+        new Transfer(SENDER, "4000001111111111", 100)));
+
+    assertEquals(List.of(TransferStatus.SUCCESS,
+                         TransferStatus.SUCCESS,
+                         TransferStatus.NOT_ENOUGH_MONEY,
+                         TransferStatus.NO_SUCH_RECIPIENT), statuses);
+    assertEquals(200, balance(SENDER));
+    assertEquals(50, balance(RECIPIENT));
+    assertEquals(250, balance(third));
+  }
+
+  @Test
+  void testSaveAllSkipsTakenNumbers() {
+    final Account taken = new Account(new Card(SENDER, "0000"), 0);
+    final Account created = new Account(new Card("4000003305061034", PIN), 0);
+
+    final List<Account> saved = accountDao.saveAll(List.of(taken, created));
+
+    assertEquals(List.of(created), saved);
+    assertTrue(accountDao.contains(created.getCard().number()));
+    assertEquals(500, balance(SENDER));
+  }
+
+  @Test
+  void testTransfersAreInBothStatements() {
+    accountDao.transfer(SENDER, RECIPIENT, 200);
+
+    final List<Transaction> sender = accountDao.getStatement(SENDER, null, 10);
+    final List<Transaction> recipient = accountDao.getStatement(RECIPIENT, null, 10);
+
+    assertEquals(List.of(TransactionType.TRANSFER_OUT, TransactionType.DEPOSIT),
+                 sender.stream().map(Transaction::type).toList());
+    assertEquals(-200, sender.get(0).amount());
+    assertEquals(RECIPIENT, sender.get(0).counterparty());
+    assertEquals(1, recipient.size());
+    assertEquals(200, recipient.get(0).amount());
+    assertEquals(SENDER, recipient.get(0).counterparty());
+  }
+
+  @Test
+  void testStatementPages() {
+    for (int i = 1; i <= 24; i++) {
+      accountDao.update(SENDER, i);
+    }
+
+    final List<Integer> amounts = new ArrayList<>();
+    Transaction last = null;
+    List<Transaction> page;
+
+    do {
+      page = accountDao.getStatement(SENDER, last, 10);
+      page.forEach(transaction -> amounts.add(transaction.amount()));
+      last = page.isEmpty() ? last : page.get(page.size() - 1);
+    } while (page.size() == 10);
+
+    assertEquals(25, amounts.size());
+    assertEquals(24, amounts.get(0));
+    assertEquals(500, amounts.get(24));
+
+    final List<Transaction> all = new ArrayList<>();
+    accountDao.forEachTransaction(SENDER, 0, Long.MAX_VALUE, all::add);
+    assertEquals(500, all.get(0).amount());
+    assertEquals(25, all.size());
+  }
+
+  @Test
+  void testJournalIsReplayedOverLostChanges() throws IOException {
+    final Path journalDirectory = directory.resolve("journal");
+
+    try (SqliteAccountDao journaled = journaledDao("journaled.s3db", journalDirectory)) {
+      journaled.save(new Account(new Card(SENDER, PIN), 0));
+      journaled.save(new Account(new Card(RECIPIENT, PIN), 0));
+      journaled.update(SENDER, 500);
+      journaled.transfer(SENDER, RECIPIENT, 200);
+      journaled.transfer(SENDER, RECIPIENT, 1_000);
+      journaled.transfer(List.of(new Transfer(RECIPIENT, SENDER, 50)));
+    }
+
+    try (SqliteAccountDao recovered = journaledDao("recovered.s3db", journalDirectory)) {
+      assertEquals(5, recovered.recover());
+      assertEquals(0, recovered.recover());
+      assertEquals(350, recovered.get(SENDER, PIN).orElseThrow().getBalance());
+      assertEquals(150, recovered.get(RECIPIENT, PIN).orElseThrow().getBalance());
+      assertEquals(3, recovered.getStatement(SENDER, null, 10).size());
+    }
+  }
+
+  @Test
+  void testJournalSkipsAppliedChanges() throws IOException {
+    final Path journalDirectory = directory.resolve("journal");
+
+    try (SqliteAccountDao journaled = journaledDao("journaled.s3db", journalDirectory)) {
+      journaled.save(new Account(new Card(SENDER, PIN), 0));
+      journaled.update(SENDER, 500);
+      journaled.delete(new Account(new Card(RECIPIENT, PIN), 0));
+    }
+
+    try (SqliteAccountDao journaled = journaledDao("journaled.s3db", journalDirectory)) {
+      assertEquals(0, journaled.recover());
+      journaled.update(SENDER, 1);
+      assertEquals(501, journaled.get(SENDER, PIN).orElseThrow().getBalance());
+    }
+  }
+
+  @Test
+  void testJournalRestoresOperationKeys() throws IOException {
+    final Path journalDirectory = directory.resolve("journal");
+
+    try (SqliteAccountDao journaled = journaledDao("journaled.s3db", journalDirectory)) {
+      journaled.save(new Account(new Card(SENDER, PIN), 0));
+      journaled.save(new Account(new Card(RECIPIENT, PIN), 0));
+      journaled.update(SENDER, 500, "deposit-1");
+      journaled.transfer(SENDER, RECIPIENT, 200, "transfer-1");
+    }
+
+    try (SqliteAccountDao recovered = journaledDao("recovered.s3db", journalDirectory)) {
+      assertEquals(4, recovered.recover());
+      assertEquals(OptionalInt.of(500), recovered.update(SENDER, 500, "deposit-1"));
+      assertEquals(TransferResult.success(300), recovered.transfer(SENDER, RECIPIENT, 200, "transfer-1"));
+      assertEquals(300, recovered.get(SENDER, PIN).orElseThrow().getBalance());
+      assertEquals(200, recovered.get(RECIPIENT, PIN).orElseThrow().getBalance());
+    }
+  }
+
+  @Test
+  void testRestartDoesNotReplayClosedAccounts() throws IOException {
+    final Path journalDirectory = directory.resolve("journal");
+
+    try (SqliteAccountDao journaled = journaledDao("journaled.s3db", journalDirectory)) {
+      journaled.save(new Account(new Card(SENDER, PIN), 0));
+      journaled.save(new Account(new Card(RECIPIENT, PIN), 0));
+      journaled.update(SENDER, 500);
+      journaled.transfer(SENDER, RECIPIENT, 200);
+      journaled.delete(new Account(new Card(SENDER, PIN), 0));
+    }
+
+    for (int restart = 0; restart < 2; restart++) {
+      try (SqliteAccountDao journaled = journaledDao("journaled.s3db", journalDirectory)) {
+        assertEquals(0, journaled.recover());
+        assertFalse(journaled.contains(SENDER));
+        assertEquals(200, journaled.get(RECIPIENT, PIN).orElseThrow().getBalance());
+        assertEquals(1, journaled.getStatement(RECIPIENT, null, 10).size());
+      }
+    }
+  }
+
+  @Test
+  void testJournalSegmentsAreDeletedWhileOpen() throws IOException {
+    final Path journalDirectory = directory.resolve("journal");
+    final TransactionJournal journal = new TransactionJournal(journalDirectory, 4_096);
+
+    try (SqliteAccountDao journaled = new SqliteAccountDao(
+        new DBConfiguration(directory.resolve("journaled.s3db").toString()).getConnectionProvider(), journal)) {
+      journaled.recover();
+      journaled.save(new Account(new Card(SENDER, PIN), 0));
+
+      for (int i = 0; i < 1_000; i++) {
+        journaled.update(SENDER, 1);
+      }
+
+      assertTrue(journal.getSegmentNumber() > 5);
+      assertTrue(segments(journalDirectory) <= 2, "Segments: " + segments(journalDirectory));
+      assertEquals(1_000, journaled.get(SENDER, PIN).orElseThrow().getBalance());
+    }
+
+    try (SqliteAccountDao journaled = journaledDao("journaled.s3db", journalDirectory)) {
+      assertEquals(0, journaled.recover());
+      assertEquals(1_000, journaled.get(SENDER, PIN).orElseThrow().getBalance());
+    }
+  }
+
+  @Test
+  void testPinIsStoredHashed() throws SQLException {
+    assertTrue(PinHasher.isHashed(storedPin(SENDER)));
+    assertTrue(accountDao.get(SENDER, PIN).isPresent());
+    assertTrue(accountDao.get(SENDER, "4321").isEmpty());
+  }
+
+  @Test
+  void testPlainPinsAreMigrated() throws SQLException {
+    try (PooledConnection connection = connectionProvider.writer()) {
+      connection.prepare("UPDATE account SET pin = '" + PIN + "'").executeUpdate();
+    }
+
+    assertEquals(500, balance(SENDER));
+    assertEquals(2, ((SqliteAccountDao) accountDao).migratePins());
+    assertEquals(0, ((SqliteAccountDao) accountDao).migratePins());
+    assertTrue(PinHasher.isHashed(storedPin(SENDER)));
+    assertEquals(500, balance(SENDER));
+  }
+
+  @Test
+  void testOperationKeyIsAppliedOnce() {
+    assertEquals(OptionalInt.of(600), accountDao.update(SENDER, 100, "deposit-1"));
+    assertEquals(OptionalInt.of(600), accountDao.update(SENDER, 100, "deposit-1"));
+    assertEquals(OptionalInt.of(100), accountDao.update(RECIPIENT, 100, "deposit-1"));
+    assertEquals(TransferResult.success(400), accountDao.transfer(SENDER, RECIPIENT, 200, "transfer-1"));
+    assertEquals(TransferResult.success(400), accountDao.transfer(SENDER, RECIPIENT, 200, "transfer-1"));
+
+    assertEquals(400, balance(SENDER));
+    assertEquals(300, balance(RECIPIENT));
+    assertEquals(3, accountDao.getStatement(SENDER, null, 10).size());
+  }
+
+  @Test
+  void testOperationKeyIsFoundInDatabase() {
+    AccountDao forgetful = new SqliteAccountDao(connectionProvider, null, PinVerifier.defaults(),
+                                                new OperationKeys(60_000, 0));
+
+    assertEquals(OptionalInt.of(600), forgetful.update(SENDER, 100, "deposit-1"));
+    assertEquals(OptionalInt.of(600), forgetful.update(SENDER, 100, "deposit-1"));
+    assertEquals(OptionalInt.of(600), accountDao.update(SENDER, 100, "deposit-1"));
+    assertEquals(600, balance(SENDER));
+  }
+
+  @Test
+  void testExpiredOperationKeyIsAppliedAgain() {
+    AccountDao forgetful = new SqliteAccountDao(connectionProvider, null, PinVerifier.defaults(),
+                                                new OperationKeys(0, 0));
+
+    assertEquals(OptionalInt.of(600), forgetful.update(SENDER, 100, "deposit-1"));
+    assertEquals(OptionalInt.of(700), forgetful.update(SENDER, 100, "deposit-1"));
+  }
+
+  @Test
+  void testOperationThatFailedIsNotRecorded() {
+    assertFalse(accountDao.transfer(SENDER, RECIPIENT, 501, "transfer-1").isMade());
+    accountDao.update(SENDER, 1);
+
+    assertEquals(TransferResult.success(0), accountDao.transfer(SENDER, RECIPIENT, 501, "transfer-1"));
+  }
+
+  @Test
+  void testSnapshotReadsMayBeStale() {
+    DatabaseSettings settings = DatabaseSettings.builder().snapshotReaders(1).snapshotStalenessMillis(60_000).build();
+    ConnectionProvider snapshotProvider = new DBConfiguration(directory.resolve("test.s3db").toString(), settings)
+        .getConnectionProvider();
+    SqliteAccountDao snapshotDao = new SqliteAccountDao(snapshotProvider);
+
+    try {
+      assertEquals(OptionalInt.of(500), snapshotDao.getBalance(SENDER, ReadConsistency.SNAPSHOT));
+      snapshotDao.update(SENDER, 100);
+
+      assertEquals(OptionalInt.of(500), snapshotDao.getBalance(SENDER, ReadConsistency.SNAPSHOT));
+      assertEquals(OptionalInt.of(600), snapshotDao.getBalance(SENDER, ReadConsistency.CONSISTENT));
+      assertEquals(OptionalInt.empty(), snapshotDao.getBalance("4000001111111111", ReadConsistency.SNAPSHOT));
+    } finally {
+      snapshotProvider.close();
+    }
+  }
+
+  private SqliteAccountDao journaledDao(String fileName, Path journalDirectory) throws IOException {
+    return new SqliteAccountDao(new DBConfiguration(directory.resolve(fileName).toString()).getConnectionProvider(),
+                                new TransactionJournal(journalDirectory, 1_024 * 1_024));
+  }
+
+  private static long segments(Path journalDirectory) throws IOException {
+    try (Stream<Path> files = Files.list(journalDirectory)) {
+      return files.count();
+    }
+  }
+
+  private String storedPin(String cardNumber) throws SQLException {
+    try (PooledConnection connection = connectionProvider.reader()) {
+      PreparedStatement statement = connection.prepare("SELECT pin FROM account WHERE number = ?");
+      statement.setString(1, cardNumber);
+
+      try (ResultSet resultSet = statement.executeQuery()) {
+        resultSet.next();
+        return resultSet.getString(1);
+      }
+    }
+  }
+
+  private int balance(String cardNumber) {
+    return accountDao.get(cardNumber, PIN).orElseThrow().getBalance();
+  }
+
+}
@@ -0,0 +1,76 @@
+package generator;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AccountIdentifierSequenceTest {
+
+  @Test
+  void testNextIsPermutationOfRange() {
+    final int size = 1_000;
+    final AccountIdentifierSequence sequence = new AccountIdentifierSequence(size, 42, 0);
+    final BitSet seen = new BitSet(size);
+
+    for (int i = 0; i < size; i++) {
+      final long identifier = sequence.next();
+
+      assertTrue(identifier >= 0 && identifier < size);
+      assertFalse(seen.get((int) identifier));
+      seen.set((int) identifier);
+    }
+
+    assertThrows(IllegalStateException.class, sequence::next);
+  }
+
+  @Test
+  void testSequenceContinuesAfterHandedOutPositions() {
+    final AccountIdentifierSequence first = new AccountIdentifierSequence(900_000_000, 7, 0);
+    first.next();
+    first.next();
+
+    final AccountIdentifierSequence restarted = new AccountIdentifierSequence(900_000_000, 7, first.getPosition());
+
+    assertEquals(2, first.getPosition());
+    assertEquals(first.permute(first.getPosition()), restarted.next());
+  }
+
+  @Test
+  void testPositionsAreReservedBeforeTheyAreHandedOut() {
+    final List<Long> reservations = new ArrayList<>();
+    final AccountIdentifierSequence sequence = new AccountIdentifierSequence(900_000_000, 7, 5, end -> {
+      reservations.add(end);
+      return true;
+    });
+
+    for (int i = 0; i < 1_025; i++) {
+      sequence.next();
+    }
+
+    assertEquals(List.of(1_029L, 2_053L), reservations);
+  }
+
+  @Test
+  void testFailedReservationHandsOutNothing() {
+    final AccountIdentifierSequence sequence = new AccountIdentifierSequence(900_000_000, 7, 0, end -> false);
+
+    assertThrows(IllegalStateException.class, sequence::next);
+  }
+
+  @Test
+  void testKeyShufflesSequence() {
+    final AccountIdentifierSequence sequence = new AccountIdentifierSequence(900_000_000, 1, 0);
+    final AccountIdentifierSequence other = new AccountIdentifierSequence(900_000_000, 2, 0);
+
+    assertNotEquals(sequence.next(), other.next());
+  }
+
+}
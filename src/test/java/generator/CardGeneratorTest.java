@@ -0,0 +1,102 @@
+package generator;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import model.Card;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CardGeneratorTest {
+
+  private final CardGenerator cardGenerator = new CardGenerator(new Random());
+
+  @Test
+  void testGenerateCredentials() {
+    final Card card = cardGenerator.generateCredentials();
+
+    assertNotNull(card);
+    assertNotNull(card.number());
+    assertNotNull(card.pin());
+
+    assertEquals(16, card.number().length());
+    assertEquals(4, card.pin().length());
+  }
+
+  @Test
+  void testGenerateCard() {
+    final String cardNumber = cardGenerator.generateCard();
+
+    assertNotNull(cardNumber);
+    assertEquals(16, cardNumber.length());
+  }
+
+  @Test
+  void testGenerateCardFromSequence() {
+    final CardGenerator generator = CardGenerator.concurrent(CardGenerator.identifierSequence(42, 0));
+
+    final long first = generator.generateCardNumber();
+    final long second = generator.generateCardNumber();
+
+    assertNotEquals(first, second);
+    assertTrue(generator.isValid(first));
+    assertTrue(generator.isValid(second));
+    assertTrue(String.valueOf(first).startsWith("400000"));
+  }
+
+  @Test
+  void testGeneratePIN() {
+    final String pin = cardGenerator.generatePIN();
+
+    assertNotNull(pin);
+    assertEquals(4, pin.length());
+  }
+
+  @Test
+  void testLuhnAlgorithm() {
+    final int bin = 400_000;
+    final int accountIdentifier = 493832089;
+
+    final int checkSum = cardGenerator.luhnAlgorithm(bin, accountIdentifier);
+
+    assertEquals(6, checkSum);
+  }
+
+  @Test
+  void testIsValid() {
+    assertTrue(cardGenerator.isValid("4000004938320896"));
+    assertTrue(cardGenerator.isValid(cardGenerator.generateCard()));
+
+    assertFalse(cardGenerator.isValid("4000004938320897"));
+    assertFalse(cardGenerator.isValid("400000493832089"));
+    assertFalse(cardGenerator.isValid("40000049383208x6"));
+  }
+
+  @Test
+  void testIsValidLong() {
+    assertTrue(cardGenerator.isValid(4000004938320896L));
+
+    assertFalse(cardGenerator.isValid(4000004938320897L));
+    assertFalse(cardGenerator.isValid(400000493832089L));
+  }
+
+  @Test
+  void testIsValidChars() {
+    assertTrue(cardGenerator.isValid("4000004938320896".toCharArray()));
+
+    assertFalse(cardGenerator.isValid("4000004938320897".toCharArray()));
+    assertFalse(cardGenerator.isValid("400000493832089".toCharArray()));
+  }
+
+  @Test
+  void testLuhnChecksum() {
+    assertEquals(6, cardGenerator.luhnChecksum(400000493832089L));
+    assertEquals(3, cardGenerator.luhnChecksum(7992739871L));
+  }
+
+}
@@ -0,0 +1,127 @@
+package journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionJournalTest {
+
+  private static final String CARD_NUMBER = "4000004938320896";
+  private static final String RECIPIENT   = "4000002454329010";
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void testRecordsAreReadBackInOrder() throws IOException {
+    final List<JournalRecord> appended = new ArrayList<>();
+
+    try (TransactionJournal journal = new TransactionJournal(directory, 1_024)) {
+      appended.add(JournalRecord.open(journal.nextLsn(), CARD_NUMBER, "0042"));
+      appended.add(JournalRecord.deposit(journal.nextLsn(), CARD_NUMBER, 500));
+      appended.add(JournalRecord.transfer(journal.nextLsn(), CARD_NUMBER, RECIPIENT, 200));
+      appended.add(JournalRecord.deposit(journal.nextLsn(), CARD_NUMBER, 100, "retry-1", 400));
+      appended.add(JournalRecord.close(journal.nextLsn(), CARD_NUMBER));
+      appended.forEach(journal::append);
+      journal.awaitDurable(appended.get(4).lsn());
+    }
+
+    assertEquals(appended, records());
+  }
+
+  @Test
+  void testSegmentsRollOver() throws IOException {
+    try (TransactionJournal journal = new TransactionJournal(directory, 256)) {
+      for (int i = 0; i < 100; i++) {
+        journal.append(JournalRecord.deposit(journal.nextLsn(), CARD_NUMBER, i));
+      }
+    }
+
+    try (Stream<Path> files = Files.list(directory)) {
+      assertTrue(files.count() > 10);
+    }
+    assertEquals(100, records().size());
+    assertEquals(99, records().get(99).amount());
+  }
+
+  @Test
+  void testTruncateKeepsCurrentSegmentAndLaterChanges() throws IOException {
+    try (TransactionJournal journal = new TransactionJournal(directory, 256)) {
+      for (int i = 0; i < 100; i++) {
+        journal.append(JournalRecord.deposit(journal.nextLsn(), CARD_NUMBER, i));
+      }
+
+      assertTrue(journal.truncate(50) > 0);
+      assertTrue(records().get(0).lsn() > 1);
+      assertTrue(records().get(0).lsn() <= 51);
+      assertEquals(50, records().stream().filter(record -> record.lsn() > 50).count());
+
+      journal.truncate(journal.getLsn());
+    }
+
+    try (Stream<Path> files = Files.list(directory)) {
+      assertEquals(1, files.count());
+    }
+    assertEquals(100, records().get(records().size() - 1).lsn());
+  }
+
+  @Test
+  void testReopenedJournalContinues() throws IOException {
+    try (TransactionJournal journal = new TransactionJournal(directory, 1_024)) {
+      journal.append(JournalRecord.deposit(journal.nextLsn(), CARD_NUMBER, 1));
+      journal.append(JournalRecord.deposit(journal.nextLsn(), CARD_NUMBER, 2));
+    }
+
+    try (TransactionJournal journal = new TransactionJournal(directory, 1_024)) {
+      assertEquals(3, journal.nextLsn());
+      journal.append(JournalRecord.deposit(3, CARD_NUMBER, 3));
+    }
+
+    assertEquals(List.of(1L, 2L, 3L), records().stream().map(JournalRecord::lsn).toList());
+  }
+
+  @Test
+  void testTornRecordEndsTheJournal() throws IOException {
+    try (TransactionJournal journal = new TransactionJournal(directory, 1_024)) {
+      journal.append(JournalRecord.deposit(journal.nextLsn(), CARD_NUMBER, 1));
+      journal.append(JournalRecord.deposit(journal.nextLsn(), CARD_NUMBER, 2));
+    }
+
+    final Path segment;
+    try (Stream<Path> files = Files.list(directory)) {
+      segment = files.findFirst().orElseThrow();
+    }
+
+    // A deposit takes 55 bytes, so this flips a byte in the body of the second one.
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] {(byte) 0xFF}), 55 + 20);
+    }
+
+    try (TransactionJournal journal = new TransactionJournal(directory, 1_024)) {
+      assertEquals(2, journal.nextLsn());
+    }
+    assertEquals(1, records().size());
+  }
+
+  private List<JournalRecord> records() throws IOException {
+    final List<JournalRecord> records = new ArrayList<>();
+
+    try (TransactionJournal journal = new TransactionJournal(directory, 1_024)) {
+      journal.forEach(records::add);
+    }
+    return records;
+  }
+
+}
@@ -0,0 +1,51 @@
+package metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+  @Test
+  void testPercentiles() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+
+    for (long i = 1; i <= 100_000; i++) {
+      histogram.record(i * 1_000);
+    }
+
+    assertEquals(100_000, histogram.getCount());
+    assertEquals(100_000_000, histogram.getMax());
+    assertEquals(50_000_500, histogram.getMean(), 1);
+    assertWithin(50_000_000, histogram.percentile(0.5));
+    assertWithin(99_000_000, histogram.percentile(0.99));
+    assertEquals(100_000_000, histogram.percentile(1));
+  }
+
+  @Test
+  void testBuckets() {
+    for (long value : new long[] {0, 1, 63, 64, 65, 127, 128, 1_000_000, Long.MAX_VALUE}) {
+      final int index = LatencyHistogram.index(value);
+
+      assertTrue(LatencyHistogram.highestValue(index) >= value, "Bucket of " + value);
+      assertTrue(index == 0 || LatencyHistogram.highestValue(index - 1) < value, "Bucket of " + value);
+    }
+  }
+
+  @Test
+  void testReset() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(5);
+
+    histogram.reset();
+
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.percentile(0.99));
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    assertTrue(Math.abs(actual - expected) <= expected * 0.03, "Expected about " + expected + " but was " + actual);
+  }
+
+}
@@ -0,0 +1,57 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MetricsRegistryTest {
+
+  @Test
+  void testPrometheusFormat() {
+    final MetricsRegistry registry = new MetricsRegistry();
+    final Timer timer = registry.timer("dao.get");
+    timer.record(2_000);
+    timer.record(4_000);
+    timer.recordError();
+    registry.gauge("database_errors", "Database errors since the start.", () -> 3);
+
+    assertThat(registry.toPrometheus()).contains(
+        "# TYPE banking_operation_latency_seconds summary\n",
+        "banking_operation_latency_seconds{operation=\"dao.get\",quantile=\"0.5\"} 0.000002",
+        "banking_operation_latency_seconds_sum{operation=\"dao.get\"} 0.000006000\n",
+        "banking_operation_latency_seconds_count{operation=\"dao.get\"} 2\n",
+        "# TYPE banking_operation_errors_total counter\n",
+        "banking_operation_errors_total{operation=\"dao.get\"} 1\n",
+        "# HELP banking_database_errors Database errors since the start.\n",
+        "# TYPE banking_database_errors gauge\n",
+        "banking_database_errors 3\n");
+  }
+
+  @Test
+  void testJmx() throws JMException {
+    final MetricsRegistry registry = new MetricsRegistry();
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    final ObjectName timerName = new ObjectName("banking:type=Operation,name=test.jmx");
+    final ObjectName gaugeName = new ObjectName("banking:type=Gauge,name=test_jmx");
+
+    registry.timer("test.jmx").record(1_000);
+    registry.registerJmx();
+    registry.gauge("test_jmx", "A gauge registered after JMX.", () -> 7);
+
+    try {
+      assertEquals(1L, server.getAttribute(timerName, "Count"));
+      assertEquals(7L, server.getAttribute(gaugeName, "Value"));
+    } finally {
+      server.unregisterMBean(timerName);
+      server.unregisterMBean(gaugeName);
+    }
+  }
+
+}
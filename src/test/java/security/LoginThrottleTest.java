@@ -0,0 +1,122 @@
+package security;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import configuration.ConnectionProvider;
+import configuration.DBConfiguration;
+import dao.SqliteLockoutDao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoginThrottleTest {
+
+  private static final String CARD_NUMBER = "4000004938320896";
+  private static final String OTHER_CARD  = "4000002454329010";
+  private static final String SESSION     = "127.0.0.1";
+  private static final long   WINDOW      = 80_000;
+  private static final long   LOCKOUT     = 60_000;
+
+  @TempDir
+  Path directory;
+
+  private final AtomicLong clock = new AtomicLong(1_000_000);
+
+  private ConnectionProvider connectionProvider;
+
+  @BeforeEach
+  void setUp() {
+    connectionProvider = new DBConfiguration(directory.resolve("test.s3db").toString()).getConnectionProvider();
+  }
+
+  @AfterEach
+  void tearDown() {
+    connectionProvider.close();
+  }
+
+  @Test
+  void testCardIsLockedAndUnlocked() {
+    final LoginThrottle throttle = throttle();
+
+    for (int i = 0; i < 3; i++) {
+      assertTrue(throttle.isAllowed(SESSION, CARD_NUMBER));
+      throttle.recordFailure(SESSION, CARD_NUMBER);
+    }
+
+    assertFalse(throttle.isAllowed(SESSION, CARD_NUMBER));
+    assertTrue(throttle.isAllowed(SESSION, OTHER_CARD));
+
+    clock.addAndGet(LOCKOUT);
+
+    assertTrue(throttle.isAllowed(SESSION, CARD_NUMBER));
+    assertEquals(1, throttle.getRejected());
+    assertEquals(1, throttle.getLockouts());
+  }
+
+  @Test
+  void testFailuresDecay() {
+    final LoginThrottle throttle = throttle();
+
+    throttle.recordFailure(SESSION, CARD_NUMBER);
+    throttle.recordFailure(SESSION, CARD_NUMBER);
+    clock.addAndGet(WINDOW);
+    throttle.recordFailure(SESSION, CARD_NUMBER);
+
+    assertTrue(throttle.isAllowed(SESSION, CARD_NUMBER));
+  }
+
+  @Test
+  void testSuccessForgetsCardFailures() {
+    final LoginThrottle throttle = throttle();
+
+    throttle.recordFailure(SESSION, CARD_NUMBER);
+    throttle.recordFailure(SESSION, CARD_NUMBER);
+    throttle.recordSuccess(CARD_NUMBER);
+    throttle.recordFailure(SESSION, CARD_NUMBER);
+
+    assertTrue(throttle.isAllowed(SESSION, CARD_NUMBER));
+  }
+
+  @Test
+  void testSessionIsTurnedAway() {
+    final LoginThrottle throttle = throttle();
+
+    for (int i = 0; i < 5; i++) {
+      throttle.recordFailure(SESSION, Integer.toString(i));
+    }
+
+    assertFalse(throttle.isAllowed(SESSION, OTHER_CARD));
+    assertTrue(throttle.isAllowed("10.0.0.1", OTHER_CARD));
+
+    clock.addAndGet(WINDOW);
+
+    assertTrue(throttle.isAllowed(SESSION, OTHER_CARD));
+  }
+
+  @Test
+  void testLockoutSurvivesRestart() {
+    final LoginThrottle throttle = throttle();
+
+    for (int i = 0; i < 3; i++) {
+      throttle.recordFailure(SESSION, CARD_NUMBER);
+    }
+
+    assertFalse(throttle().isAllowed("10.0.0.1", CARD_NUMBER));
+
+    clock.addAndGet(LOCKOUT);
+
+    assertTrue(throttle().isAllowed("10.0.0.1", CARD_NUMBER));
+  }
+
+  private LoginThrottle throttle() {
+    return new LoginThrottle(new SqliteLockoutDao(connectionProvider), 3, 5, WINDOW, LOCKOUT, clock::get);
+  }
+
+}
@@ -0,0 +1,63 @@
+package security;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PinVerifierTest {
+
+  private static final PinHasher HASHER = new PinHasher(1_000);
+
+  @Test
+  void testHashIsSaltedAndVerified() {
+    final String hash = HASHER.hash("0042");
+
+    assertTrue(PinHasher.isHashed(hash));
+    assertNotEquals(hash, HASHER.hash("0042"));
+    assertTrue(HASHER.verify("0042", hash));
+    assertFalse(HASHER.verify("42", hash));
+  }
+
+  @Test
+  void testPlainPinIsComparedDirectly() {
+    assertFalse(PinHasher.isHashed("0042"));
+    assertTrue(HASHER.verify("0042", "0042"));
+    assertFalse(HASHER.verify("0043", "0042"));
+  }
+
+  @Test
+  void testOnlySuccessfulLoginsAreCached() {
+    try (PinVerifier verifier = new PinVerifier(HASHER, 16, 2)) {
+      final String hash = verifier.hash("1234");
+
+      assertFalse(verifier.verify("4321", hash));
+      assertFalse(verifier.verify("4321", hash));
+      assertTrue(verifier.verify("1234", hash));
+      assertTrue(verifier.verify("1234", hash));
+      assertFalse(verifier.verify("4321", hash));
+
+      assertEquals(new PinVerifier.CacheCounters(1, 4, 1), verifier.getCounters());
+    }
+  }
+
+  @Test
+  void testCacheEvictsLeastRecentlyUsed() {
+    try (PinVerifier verifier = new PinVerifier(HASHER, 2, 2)) {
+      final List<String> hashes = verifier.hashAll(List.of("0001", "0002", "0003"));
+
+      assertTrue(verifier.verify("0001", hashes.get(0)));
+      assertTrue(verifier.verify("0002", hashes.get(1)));
+      assertTrue(verifier.verify("0001", hashes.get(0)));
+      assertTrue(verifier.verify("0003", hashes.get(2)));
+      assertTrue(verifier.verify("0002", hashes.get(1)));
+
+      assertEquals(new PinVerifier.CacheCounters(1, 4, 2), verifier.getCounters());
+    }
+  }
+
+}
@@ -0,0 +1,169 @@
+package server;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import configuration.ConnectionProvider;
+import configuration.DBConfiguration;
+import dao.AccountDao;
+import dao.SqliteAccountDao;
+import dao.SqliteLockoutDao;
+import generator.CardGenerator;
+import security.LoginThrottle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BankingHttpServerTest {
+
+  private static final String MISSING_CARD = "4000002454329010";
+
+  @TempDir
+  Path directory;
+
+  private final HttpClient httpClient = HttpClient.newHttpClient();
+
+  private AccountDao        accountDao;
+  private BankingHttpServer bankingHttpServer;
+  private int               port;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    final ConnectionProvider connectionProvider = new DBConfiguration(directory.resolve("test.s3db").toString()).getConnectionProvider();
+    accountDao = new SqliteAccountDao(connectionProvider);
+    bankingHttpServer = new BankingHttpServer(accountDao, CardGenerator.concurrent(),
+                                              new LoginThrottle(new SqliteLockoutDao(connectionProvider)));
+    port = bankingHttpServer.start(0);
+  }
+
+  @AfterEach
+  void tearDown() {
+    bankingHttpServer.close();
+    accountDao.close();
+  }
+
+  @Test
+  void testAccountOperations() throws IOException, InterruptedException {
+    final Map<String, String> sender = Json.parse(send("POST", "/accounts", null, "").body());
+    final Map<String, String> recipient = Json.parse(send("POST", "/accounts", null, "").body());
+    final String token = token(sender);
+
+    assertEquals("{\"balance\":500}", send("POST", "/deposit", token, "amount=500").body());
+    assertEquals("{\"balance\":300}", send("POST", "/transfer", token, "to=" + recipient.get("number") + "&amount=200").body());
+    assertEquals("{\"number\":\"" + sender.get("number") + "\",\"balance\":300}", send("GET", "/balance", token, null).body());
+    assertEquals("{\"balance\":200}", send("GET", "/balance", token(recipient), null).body().replaceAll("\"number\":\"\\d+\",", ""));
+  }
+
+  @Test
+  void testRetriedDepositIsAppliedOnce() throws IOException, InterruptedException {
+    final String token = token(Json.parse(send("POST", "/accounts", null, "").body()));
+    final HttpRequest deposit = HttpRequest
+        .newBuilder(uri("/deposit"))
+        .header("Content-Type", "application/x-www-form-urlencoded")
+        .header("Authorization", "Bearer " + token)
+        .header("Idempotency-Key", "deposit-1")
+        .POST(HttpRequest.BodyPublishers.ofString("amount=500"))
+        .build();
+
+    assertEquals("{\"balance\":500}", httpClient.send(deposit, HttpResponse.BodyHandlers.ofString()).body());
+    assertEquals("{\"balance\":500}", httpClient.send(deposit, HttpResponse.BodyHandlers.ofString()).body());
+    assertEquals("{\"balance\":600}", send("POST", "/deposit", token, "amount=100").body());
+  }
+
+  @Test
+  void testJsonRequest() throws IOException, InterruptedException {
+    final Map<String, String> account = Json.parse(send("POST", "/accounts", null, "").body());
+
+    final HttpResponse<String> response = httpClient.send(HttpRequest
+        .newBuilder(uri("/login"))
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofString("{\"number\": \"" + account.get("number") + "\", \"pin\": \"" + account.get("pin") + "\"}"))
+        .build(), HttpResponse.BodyHandlers.ofString());
+
+    assertEquals(200, response.statusCode());
+    assertTrue(Json.parse(response.body()).containsKey("token"));
+  }
+
+  @Test
+  void testErrors() throws IOException, InterruptedException {
+    final Map<String, String> account = Json.parse(send("POST", "/accounts", null, "").body());
+    final String token = token(account);
+
+    assertEquals(401, send("GET", "/balance", null, null).statusCode());
+    assertEquals(401, send("POST", "/login", null, "number=" + account.get("number") + "&pin=0000").statusCode());
+    assertEquals(400, send("POST", "/deposit", token, "amount=-1").statusCode());
+    assertEquals(404, send("POST", "/transfer", token, "to=" + MISSING_CARD + "&amount=1").statusCode());
+    assertEquals(405, send("GET", "/deposit", token, null).statusCode());
+
+    final Map<String, String> recipient = Json.parse(send("POST", "/accounts", null, "").body());
+    final HttpResponse<String> response = send("POST", "/transfer", token, "to=" + recipient.get("number") + "&amount=1");
+
+    assertEquals(409, response.statusCode());
+    assertEquals("{\"error\":\"Not enough money!\"}", response.body());
+  }
+
+  @Test
+  void testLockout() throws IOException, InterruptedException {
+    final Map<String, String> account = Json.parse(send("POST", "/accounts", null, "").body());
+
+    for (int i = 0; i < LoginThrottle.DEFAULT_MAX_CARD_FAILURES; i++) {
+      assertEquals(401, send("POST", "/login", null, "number=" + account.get("number") + "&pin=0000").statusCode());
+    }
+
+    final HttpResponse<String> response = send("POST", "/login", null, "number=" + account.get("number") + "&pin=" + account.get("pin"));
+
+    assertEquals(429, response.statusCode());
+    assertEquals("{\"error\":\"Too many failed attempts! Try again later.\"}", response.body());
+  }
+
+  @Test
+  void testCloseAccount() throws IOException, InterruptedException {
+    final Map<String, String> account = Json.parse(send("POST", "/accounts", null, "").body());
+    final String token = token(account);
+
+    assertEquals(200, send("POST", "/close", token, "").statusCode());
+    assertEquals(401, send("GET", "/balance", token, null).statusCode());
+    assertEquals(401, send("POST", "/login", null, "number=" + account.get("number") + "&pin=" + account.get("pin")).statusCode());
+  }
+
+  @Test
+  void testLatency() throws IOException, InterruptedException {
+    send("POST", "/accounts", null, "");
+
+    final String latency = send("GET", "/metrics/latency", null, null).body();
+
+    assertTrue(latency.startsWith("{\"unit\":\"us\",\"endpoints\":{\"POST /accounts\":{\"count\":1,"), latency);
+  }
+
+  private String token(Map<String, String> account) throws IOException, InterruptedException {
+    final HttpResponse<String> response = send("POST", "/login", null, "number=" + account.get("number") + "&pin=" + account.get("pin"));
+    return Json.parse(response.body()).get("token");
+  }
+
+  private HttpResponse<String> send(String method, String path, String token, String form) throws IOException, InterruptedException {
+    final HttpRequest.Builder request = HttpRequest
+        .newBuilder(uri(path))
+        .header("Content-Type", "application/x-www-form-urlencoded")
+        .method(method, form == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(form));
+
+    if (token != null) {
+      request.header("Authorization", "Bearer " + token);
+    }
+    return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+  }
+
+  private URI uri(String path) {
+    return URI.create("http://localhost:" + port + path);
+  }
+
+}
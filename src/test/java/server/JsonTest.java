@@ -0,0 +1,36 @@
+package server;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JsonTest {
+
+  @Test
+  void testWrite() {
+    final String json = Json.object().put("text", "a \"quoted\"\n\\ line").put("amount", 10).put("nested", Json.object().put("ok", true)).toString();
+
+    assertEquals("{\"text\":\"a \\\"quoted\\\"\\n\\\\ line\",\"amount\":10,\"nested\":{\"ok\":true}}", json);
+  }
+
+  @Test
+  void testParse() {
+    final Map<String, String> fields = Json.parse(" { \"number\" : \"4000\\u0030\", \"amount\": 15, \"note\": null } ");
+
+    assertEquals("40000", fields.get("number"));
+    assertEquals("15", fields.get("amount"));
+    assertEquals(null, fields.get("note"));
+    assertEquals(Map.of(), Json.parse("{}"));
+  }
+
+  @Test
+  void testParseWrongJson() {
+    assertThrows(IllegalArgumentException.class, () -> Json.parse("{\"amount\": }"));
+    assertThrows(IllegalArgumentException.class, () -> Json.parse("{\"amount\": 1"));
+    assertThrows(IllegalArgumentException.class, () -> Json.parse("{\"amount\": 1} trailing"));
+  }
+
+}
@@ -0,0 +1,80 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionTokensTest {
+
+  private static final String CARD_NUMBER = "4000004938320896";
+  private static final String OTHER       = "4000002454329010";
+
+  private final AtomicLong    clock  = new AtomicLong();
+  private final SessionTokens tokens = new SessionTokens(1_000, 3, clock::get);
+
+  @Test
+  void testTokenExpiresWhenIdle() {
+    final String token = tokens.open(CARD_NUMBER);
+
+    clock.set(999);
+    assertEquals(CARD_NUMBER, tokens.cardNumber(token));
+
+    clock.set(1_998);
+    assertEquals(CARD_NUMBER, tokens.cardNumber(token));
+
+    clock.set(2_998);
+    assertNull(tokens.cardNumber(token));
+    assertEquals(0, tokens.size());
+  }
+
+  @Test
+  void testExpiredTokensAreDroppedWhenTokenIsIssued() {
+    tokens.open(CARD_NUMBER);
+    tokens.open(OTHER);
+
+    clock.set(1_000);
+    tokens.open(OTHER);
+
+    assertEquals(1, tokens.size());
+  }
+
+  @Test
+  void testLeastRecentlyUsedTokenIsEvicted() {
+    final String first = tokens.open(CARD_NUMBER);
+    final String second = tokens.open(OTHER);
+    tokens.open(OTHER);
+
+    tokens.cardNumber(first);
+    tokens.open(OTHER);
+
+    assertEquals(3, tokens.size());
+    assertEquals(CARD_NUMBER, tokens.cardNumber(first));
+    assertNull(tokens.cardNumber(second));
+  }
+
+  @Test
+  void testCloseEndsAllSessionsOfTheCard() {
+    final String first = tokens.open(CARD_NUMBER);
+    final String second = tokens.open(CARD_NUMBER);
+    final String other = tokens.open(OTHER);
+    tokens.written(first);
+
+    assertNotEquals(first, second);
+    assertTrue(tokens.isWritten(first));
+    assertFalse(tokens.isWritten(second));
+
+    tokens.close(CARD_NUMBER);
+
+    assertNull(tokens.cardNumber(first));
+    assertNull(tokens.cardNumber(second));
+    assertFalse(tokens.isWritten(first));
+    assertEquals(OTHER, tokens.cardNumber(other));
+  }
+
+}